@@ -0,0 +1,199 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import model.EpisodeFilter;
+import model.EpisodeQuery;
+import model.JdbcLibraryStore;
+import model.PodcastPlayerModel;
+import model.PodcastPlayerModel.Episode;
+import model.PodcastPlayerModel.Podcast;
+import model.SegmentStore;
+import server.LibraryServer;
+
+public class PowerfullPodcastIngest {
+
+	private static final String DEFAULT_SAVE = "podcastSaveState.txt";
+	private static final String DEFAULT_LIBRARY = "podcastLibrary";
+	private static final int RECENT_LIMIT = 100;
+
+	/**
+	 * Runs the Powerful Podcast Player library in batch mode, with no display.
+	 *
+	 * Usage: PowerfullPodcastIngest [-threads N] [-library DIR] [-database URL] [-save FILE]
+	 *                               [-catalog DIR] COMMAND
+	 *  where COMMAND is one of
+	 *  ingest FEEDLIST  adds every feed link in FEEDLIST, one per line,
+	 *  refresh          adds the new Episodes of every saved Podcast,
+	 *  recent DAYS      lists unplayed Episodes published in the last DAYS days,
+	 *  snapshot OUT     copies the saved library to OUT as one file and lists it,
+	 *  serve PORT       serves the saved library over HTTP until stopped,
+	 *                   saving changes as it goes.
+	 * The library is read from and written back to the segment directory,
+	 *  which is the same one the player loads on start up. An old
+	 *  single-file save is read once, while the directory does not exist.
+	 *  With -database the library is kept in that JDBC database instead; a
+	 *  new database starts from the segment directory.
+	 *
+	 * @param args are the command-line arguments described above.
+	 * @author Todd Noecker
+	 */
+	public static void main(String[] args) throws IOException, URISyntaxException, InterruptedException,
+			ClassNotFoundException {
+		// Feeds are fetched as well as parsed, so keep more feeds in flight than
+		// there are cores.
+		int threads = Runtime.getRuntime().availableProcessors() * 4;
+		String save = DEFAULT_SAVE;
+		String library = DEFAULT_LIBRARY;
+		String database = null;
+		String catalog = null;
+		List<String> rest = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-threads") && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-library") && i + 1 < args.length) {
+				library = args[++i];
+			} else if (args[i].equals("-database") && i + 1 < args.length) {
+				database = args[++i];
+			} else if (args[i].equals("-save") && i + 1 < args.length) {
+				save = args[++i];
+			} else if (args[i].equals("-catalog") && i + 1 < args.length) {
+				catalog = args[++i];
+			} else {
+				rest.add(args[i]);
+			}
+		}
+		if (rest.isEmpty()) {
+			usage();
+			return;
+		}
+
+		PodcastPlayerModel model = new PodcastPlayerModel();
+		if (database == null && new File(save).exists() && !new File(library).exists()) {
+			model = model.loadModel(save);
+		}
+		model.setCatalogDirectory(catalog);
+		int readers = Runtime.getRuntime().availableProcessors();
+		if (database != null) {
+			model.setLibraryStore(JdbcLibraryStore.open(database, JdbcLibraryStore.DEFAULT_CACHED_PODCASTS));
+			if (model.getLibraryStore().keys().isEmpty() && new File(library).exists()) {
+				SegmentStore.open(model, Paths.get(library), SegmentStore.DEFAULT_SAVE_MILLIS, readers).closeAsync()
+						.join();
+			}
+		}
+		SegmentStore segments = database != null ? null
+				: SegmentStore.open(model, Paths.get(library), SegmentStore.DEFAULT_SAVE_MILLIS, readers);
+
+		long start = System.currentTimeMillis();
+		String command = rest.get(0);
+		if (command.equals("ingest") && rest.size() == 2) {
+			List<String> feeds = new ArrayList<String>();
+			for (String line : Files.readAllLines(Paths.get(rest.get(1)))) {
+				line = line.trim();
+				if (!line.isEmpty() && !line.startsWith("#")) {
+					feeds.add(line);
+				}
+			}
+			model.addPodcasts(feeds, threads);
+			finish(model, segments);
+			System.out.println("Ingested " + feeds.size() + " feeds, library holds " + model.getLibrary().size()
+					+ " podcasts");
+		} else if (command.equals("refresh") && rest.size() == 1) {
+			int found = model.refreshLibrary(threads);
+			finish(model, segments);
+			System.out.println("Refreshed " + model.getLibrary().size() + " podcasts, found " + found
+					+ " new episodes");
+		} else if (command.equals("serve") && rest.size() == 2) {
+			// Responses are streamed in small chunks over kept-alive connections.
+			// With Nagle's algorithm on, each one can stall for a delayed ACK,
+			// which caps a client at about 25 requests a second. The JDK server
+			// reads this once, when the first server is created.
+			if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+				System.setProperty("sun.net.httpserver.nodelay", "true");
+			}
+			LibraryServer server = new LibraryServer(model, Integer.parseInt(rest.get(1)));
+			PodcastPlayerModel served = model;
+			// Play positions clients save are written as they come; the last
+			// ones when the server is stopped.
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				server.stop();
+				try {
+					finish(served, segments);
+				} catch (IOException ex) {
+					System.err.println("Library could not be saved: " + ex.getMessage());
+				}
+			}));
+			server.start();
+			System.out.println("Serving " + model.getLibrary().size() + " podcasts on port " + server.getPort());
+			return;
+		} else if (command.equals("recent") && rest.size() == 2) {
+			long since = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(Long.parseLong(rest.get(1)));
+			for (Episode ep : model.findEpisodes(new EpisodeQuery(null, since, EpisodeFilter.UNPLAYED, RECENT_LIMIT))) {
+				System.out.println(ep.getPodcast().getTitle() + "\t" + ep.getTitle());
+			}
+			finish(model, segments);
+		} else if (command.equals("snapshot") && rest.size() == 2) {
+			store(model, Paths.get(rest.get(1)));
+			finish(model, segments);
+			for (Podcast podcast : model.getLibrary()) {
+				System.out.println(podcast.getTitle() + "\t" + podcast.getEpisodes().size() + "\t" + podcast.getLink());
+			}
+		} else {
+			finish(model, segments);
+			usage();
+			return;
+		}
+		System.out.println("Done in " + (System.currentTimeMillis() - start) + " ms");
+	}
+
+	/**
+	 * Writes the model beside the target file and moves it into place, so an
+	 * interrupted run never leaves a half-written save.
+	 *
+	 * @param model the model to write.
+	 * @param file where the model is saved.
+	 * @throws IOException if the model can not be written.
+	 * @author Todd Noecker
+	 */
+	private static void store(PodcastPlayerModel model, Path file) throws IOException {
+		Path temp = file.resolveSibling(file.getFileName() + ".part");
+		model.storeModel(new ObjectOutputStream(Files.newOutputStream(temp)));
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Writes every change not yet saved and closes the library, waiting for
+	 * the last write.
+	 *
+	 * @param model the model.
+	 * @param segments the segment store, or null when a database holds the
+	 *  library.
+	 * @throws IOException if the library can not be written.
+	 * @author Todd Noecker
+	 */
+	private static void finish(PodcastPlayerModel model, SegmentStore segments) throws IOException {
+		if (segments != null) {
+			segments.closeAsync().join();
+		}
+		model.getLibraryStore().close();
+	}
+
+	private static void usage() {
+		System.out.println("Usage: PowerfullPodcastIngest [-threads N] [-library DIR] [-database URL] [-save FILE]"
+				+ " [-catalog DIR] COMMAND");
+		System.out.println("  ingest FEEDLIST   add every feed link in FEEDLIST, one per line");
+		System.out.println("  refresh           add new episodes to every saved podcast");
+		System.out.println("  recent DAYS       list unplayed episodes published in the last DAYS days");
+		System.out.println("  snapshot OUT      copy the saved library to OUT as one file and list it");
+		System.out.println("  serve PORT        serve the saved library over HTTP");
+	}
+
+}
@@ -3,14 +3,22 @@ package controller;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javafx.scene.media.Media;
 import javafx.scene.media.MediaPlayer;
 import javafx.util.Duration;
+import model.EpisodeFilter;
+import model.EpisodePage;
 import model.PodcastPlayerModel;
+import model.PodcastPlayerModel.Episode;
 import model.PodcastPlayerModel.Podcast;
+import server.MediaProxy;
 
 /**
  * This Class functions as the controller for the podcast Player Application.
@@ -25,6 +33,21 @@ public class PodCastPlayerController {
 	//the loaded Media file.
 	private MediaPlayer podPlayer;
 	private PodcastPlayerModel model;
+	//Serves remote episodes from a local cache, or null to stream them directly.
+	private MediaProxy proxy;
+	//The link of the episode loaded into the player.
+	private URI curLink;
+	//Saves the play position while the episode plays.
+	private final PositionCheckpointer checkpoints =
+			new PositionCheckpointer(PositionCheckpointer.DEFAULT_INTERVAL_MILLIS);
+	//How many artwork images may be downloaded at once.
+	private static final int ARTWORK_THREADS = 2;
+	//Downloads podcast artwork away from the FX thread.
+	private final ExecutorService artworkLoader = Executors.newFixedThreadPool(ARTWORK_THREADS, r -> {
+		Thread thread = new Thread(r, "artwork-loader");
+		thread.setDaemon(true);
+		return thread;
+	});
 
 	/**
 	 * Instantiates a model for this class to interact with.
@@ -37,9 +60,28 @@ public class PodCastPlayerController {
 	 */
 	public PodCastPlayerController(PodcastPlayerModel passedModel) throws MalformedURLException, 
 																		IOException, URISyntaxException {
+		this(passedModel, true);
+	}
+	
+	/**
+	 * Instantiates a controller over a model, adding the default podcasts to
+	 * it only if asked. A model that is already filled, such as a benchmark's
+	 * made-up library, is left as it is.
+	 * 
+	 * @param passedModel The PodcastPlayer Model object required.
+	 * @param defaultPodcasts Whether to add the default podcasts.
+	 * @throws URISyntaxException 
+	 * @throws IOException 
+	 * @throws MalformedURLException 
+	 * @author Garrett Scott, Todd Noecker 
+	 */
+	public PodCastPlayerController(PodcastPlayerModel passedModel, boolean defaultPodcasts)
+			throws MalformedURLException, IOException, URISyntaxException {
 		this.model = passedModel;
 		try {
-			model.getPodcastRSSContent();
+			if (defaultPodcasts) {
+				model.getPodcastRSSContent();
+			}
 		} catch (FileNotFoundException e) {
 			System.err.println("Oops: No File!");
 		}
@@ -65,18 +107,73 @@ public class PodCastPlayerController {
 	/**
 	 * This Changes the current episode being played. It will first check if there is a current
 	 * episode loaded. If there is, it will save its play time for future reference then get the 
-	 * new episode from the model. 
+	 * new episode from the model and create a MediaPlayer for it, starting where it was
+	 * last left off. While the new episode plays its play time is saved every so often,
+	 * and when it is paused, stopped or played to the end.
 	 *  
 	 * @param podcastName string name of the podcast
 	 * @param epTitle string name of the podcast episode
-	 * @author Garrett Scott
+	 * @author Garrett Scott, Todd Noecker
 	 */
 	public void changeEp(String podcastName, String epTitle) {
 		if (this.podPlayer != null) {
 			// Save the current playing episode time stamp
-			this.model.savePlayPos(this.podPlayer.getCurrentTime());
+			detach(this.podPlayer);
+			this.checkpoints.checkpoint(millis(this.podPlayer.getCurrentTime()));
+		}
+		Episode episode = model.getEpisode(podcastName, epTitle);
+		// Copies cross-posted to several feeds play from one cache entry.
+		this.curLink = model.getEnclosureLink(episode);
+		
+		URI local = model.getLocalFile(episode);
+		Media newM = new Media(local != null ? local.toString() : playLink(curLink));
+		MediaPlayer newMP = new MediaPlayer(newM);
+		// Get startTime, which may not have been written yet if the episode
+		// was only just left. A finished episode plays from the start.
+		long start = checkpoints.positionOf(episode);
+		if (start >= 0 && start != Episode.FINISHED) {
+			prefetch(Duration.millis(start));
+			newMP.setStartTime(Duration.millis(start));
+		}
+		this.podPlayer = newMP;
+		this.checkpoints.follow(episode);
+		attach(newMP);
+	}
+	
+	/**
+	 * Changes how often the play time of a playing episode is saved.
+	 * 
+	 * @param intervalMillis the interval in milliseconds.
+	 * @author Todd Noecker
+	 */
+	public void setCheckpointInterval(long intervalMillis) {
+		checkpoints.setIntervalMillis(intervalMillis);
+	}
+	
+	/**
+	 * Saves the play time of the current episode and waits for it, and
+	 * every play time saved before it, to reach the model. Called when the
+	 * player closes, before the library is saved.
+	 * 
+	 * @author Todd Noecker
+	 */
+	public void close() {
+		if (this.podPlayer != null) {
+			detach(this.podPlayer);
+			this.checkpoints.checkpoint(millis(this.podPlayer.getCurrentTime()));
 		}
-		this.podPlayer = model.getEpisode(podcastName, epTitle);
+		this.checkpoints.close();
+	}
+	
+	/**
+	 * Plays remote episodes through a local caching proxy, so a seek only
+	 * fetches the bytes near its target.
+	 * 
+	 * @param proxy the started proxy, or null to stream episodes directly.
+	 * @author Todd Noecker
+	 */
+	public void setMediaProxy(MediaProxy proxy) {
+		this.proxy = proxy;
 	}
 	
 	/**
@@ -109,7 +206,9 @@ public class PodCastPlayerController {
 		// Duration object = to 30 s.
 		Duration forward = Duration.seconds(30);
 		// Adds 30 seconds to the current time of the podcast and seeks to that time.
-		this.podPlayer.seek(this.podPlayer.getCurrentTime().add(forward));
+		Duration target = this.podPlayer.getCurrentTime().add(forward);
+		prefetch(target);
+		this.podPlayer.seek(target);
 	}
 	
 	/**
@@ -122,7 +221,35 @@ public class PodCastPlayerController {
 		// Duration object = to 15 s
 		Duration back = Duration.seconds(15);
 		// subtracts 15 seconds from current time of podcast and seeks to that time. 
-		this.podPlayer.seek(this.podPlayer.getCurrentTime().subtract(back));
+		Duration target = this.podPlayer.getCurrentTime().subtract(back);
+		prefetch(target);
+		this.podPlayer.seek(target);
+	}
+	
+	/**
+	 * Queues an episode to be downloaded for offline play, ahead of
+	 * automatic downloads. Does nothing without a download manager.
+	 * 
+	 * @param podcastName string name of the podcast
+	 * @param epTitle string name of the podcast episode
+	 * @author Todd Noecker
+	 */
+	public void downloadEp(String podcastName, String epTitle) {
+		if (model.getDownloadManager() != null) {
+			model.downloadEpisode(podcastName, epTitle);
+		}
+	}
+	
+	/**
+	 * Loads the artwork of a Podcast as image bytes on a background thread.
+	 * Repeated requests for the same artwork share one download.
+	 * 
+	 * @param podcast the Podcast whose artwork is wanted.
+	 * @return the image bytes when loaded, or null if there is no artwork.
+	 * @author Todd Noecker
+	 */
+	public CompletableFuture<byte[]> getArtwork(Podcast podcast) {
+		return CompletableFuture.supplyAsync(() -> model.getArtwork(podcast.getImage()), artworkLoader);
 	}
 	
 	/**
@@ -136,4 +263,90 @@ public class PodCastPlayerController {
 		return model.getLibrary();
 	}
 	
+	/**
+	 * Returns the next page of a Podcast's Episodes for the episode list.
+	 * 
+	 * @param podcastName the title of the Podcast.
+	 * @param cursor the cursor from the previous page, or null for the first.
+	 * @param limit the most Episodes to return.
+	 * @return the page.
+	 * @author Todd Noecker
+	 */
+	public EpisodePage getEpisodePage(String podcastName, String cursor, int limit) {
+		return model.getEpisodes(podcastName, cursor, limit, EpisodeFilter.ALL);
+	}
+	
+	/**
+	 * Returns the next page of the newest Episodes across every Podcast.
+	 * 
+	 * @param cursor the cursor from the previous page, or null for the first.
+	 * @param limit the most Episodes to return.
+	 * @return the page.
+	 * @author Todd Noecker
+	 */
+	public EpisodePage getLatestPage(String cursor, int limit) {
+		return model.getLatestEpisodes(cursor, limit);
+	}
+	
+	/* ------------------------------------------------------------------------ 
+	 * --------------------------PRIVATE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+	
+	/**
+	 * Picks the link the player opens for an episode: the proxy's link for
+	 * a remote episode when there is a proxy, and the episode's own link
+	 * otherwise.
+	 */
+	private String playLink(URI link) {
+		String scheme = link.getScheme();
+		if (proxy != null && ("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme))) {
+			try {
+				return proxy.localLink(link).toString();
+			} catch (IOException ex) {
+				System.err.println("Streaming " + link + " directly: " + ex.getMessage());
+			}
+		}
+		return link.toString();
+	}
+	
+	/**
+	 * Checkpoints a player's play time as it plays, pauses, stops and ends.
+	 */
+	private void attach(MediaPlayer player) {
+		player.currentTimeProperty().addListener(checkpoints.getTickListener());
+		player.setOnPaused(() -> checkpoints.checkpoint(millis(player.getCurrentTime())));
+		player.setOnStopped(() -> checkpoints.checkpoint(millis(player.getCurrentTime())));
+		// An episode played to the end is saved as finished.
+		player.setOnEndOfMedia(() -> checkpoints.finish(millis(player.getCurrentTime())));
+	}
+	
+	/**
+	 * Stops checkpointing a player that is being left, so none of its late
+	 * events lands on the next episode.
+	 */
+	private void detach(MediaPlayer player) {
+		player.currentTimeProperty().removeListener(checkpoints.getTickListener());
+		player.setOnPaused(null);
+		player.setOnStopped(null);
+		player.setOnEndOfMedia(null);
+	}
+	
+	/**
+	 * Reads a play time as whole milliseconds.
+	 */
+	private static long millis(Duration time) {
+		return (long) time.toMillis();
+	}
+	
+	/**
+	 * Starts fetching the bytes a seek target lies in, so the player finds
+	 * them cached.
+	 */
+	private void prefetch(Duration target) {
+		if (proxy != null && curLink != null) {
+			proxy.prefetch(curLink, (long) Math.max(0, target.toMillis()));
+		}
+	}
+	
 }
\ No newline at end of file
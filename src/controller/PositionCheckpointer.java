@@ -0,0 +1,351 @@
+package controller;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import javafx.beans.value.ChangeListener;
+import javafx.util.Duration;
+import model.PodcastPlayerModel.Episode;
+
+/**
+ * Saves the play position of the Episode being played every so often while
+ * it plays, and whenever playback pauses, stops or ends.
+ *
+ * The player's current time is followed by one listener. On every media
+ *  tick it asks whether a checkpoint is due, which compares two clock
+ *  readings and allocates nothing beyond the time the player already made.
+ *  A checkpoint hands the position to a writer thread through a single
+ *  slot: a newer position for the same Episode replaces one not yet
+ *  written, so however fast checkpoints come the Episode is written at most
+ *  once per wake of the writer. Setting a position locks its Podcast and
+ *  tells the listeners of the library, none of which the player thread
+ *  waits for. A position left in the slot when another Episode is loaded
+ *  waits in a queue behind it rather than being lost.
+ *
+ * An Episode played to the end is saved as finished. The player still
+ *  stands at the end afterwards, and checkpoints taken there do not undo
+ *  it; one taken earlier, after seeking back, does.
+ *
+ * follow, isDue, checkpoint, finish and the listener belong to the player
+ *  thread; flush and close may be called from any thread.
+ *
+ * @author Todd Noecker
+ */
+public final class PositionCheckpointer implements Closeable {
+
+	/**
+	 * How often a playing Episode's position is saved unless told otherwise.
+	 */
+	public static final long DEFAULT_INTERVAL_MILLIS = 5000;
+
+	/**
+	 * How long closing waits for the last positions to be written.
+	 */
+	private static final long CLOSE_MILLIS = 2000;
+
+	private volatile long intervalNanos;
+	private final Thread writer;
+	private final ChangeListener<Duration> ticks = (time, before, now) -> {
+		if (isDue()) {
+			checkpoint((long) now.toMillis());
+		}
+	};
+
+	// Player thread only.
+	private Episode playing;
+	private long lastNanos;
+	private long lastMillis;
+	private long endMillis = -1; // where the player stopped at the end, -1 until then
+
+	private Episode pending; // guarded by this
+	private long pendingMillis; // guarded by this
+	private final ArrayDeque<Checkpoint> earlier = new ArrayDeque<Checkpoint>(); // guarded by this
+	private Episode writing; // guarded by this
+	private long writingMillis; // guarded by this
+	private long writeCount; // guarded by this
+	private boolean closed; // guarded by this
+
+	/**
+	 * Starts a checkpointer and its writer thread.
+	 *
+	 * @param intervalMillis how often, at most, a playing Episode's position
+	 *                       is saved.
+	 * @author Todd Noecker
+	 */
+	public PositionCheckpointer(long intervalMillis) {
+		setIntervalMillis(intervalMillis);
+		writer = new Thread(this::write, "position-checkpoint");
+		// Positions still waiting are written by close; the writer must not
+		// keep the program running.
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/* ------------------------------------------------------------------------
+	 * ---------------------------PUBLIC METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Changes how often a playing Episode's position is saved, from the next
+	 * tick on.
+	 *
+	 * @param intervalMillis the interval in milliseconds.
+	 * @author Todd Noecker
+	 */
+	public void setIntervalMillis(long intervalMillis) {
+		if (intervalMillis < 1) {
+			throw new IllegalArgumentException("Checkpoint interval must be at least 1 ms");
+		}
+		this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+	}
+
+	/**
+	 * Fetches how often a playing Episode's position is saved.
+	 *
+	 * @return the interval in milliseconds.
+	 * @author Todd Noecker
+	 */
+	public long getIntervalMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(intervalNanos);
+	}
+
+	/**
+	 * Starts checkpointing an Episode that was just loaded. The position it
+	 * was loaded at is already saved, so the first checkpoint falls one
+	 * interval later. Positions handed off for the Episode before still get
+	 * written.
+	 *
+	 * @param ep the Episode, or null when nothing is loaded.
+	 * @author Todd Noecker
+	 */
+	public void follow(Episode ep) {
+		playing = ep;
+		lastNanos = System.nanoTime();
+		lastMillis = ep != null ? ep.getCurTimeMillis() : -1;
+		endMillis = -1;
+	}
+
+	/**
+	 * Fetches the listener to add to a player's current time property,
+	 * which checkpoints the time whenever a checkpoint is due.
+	 *
+	 * @return the listener, the same one every time.
+	 * @author Todd Noecker
+	 */
+	public ChangeListener<Duration> getTickListener() {
+		return ticks;
+	}
+
+	/**
+	 * Tells whether the Episode being played is due a checkpoint. Called on
+	 * every media tick, so it only reads the clock.
+	 *
+	 * @return true if a checkpoint should be taken.
+	 * @author Todd Noecker
+	 */
+	public boolean isDue() {
+		return playing != null && System.nanoTime() - lastNanos >= intervalNanos;
+	}
+
+	/**
+	 * Hands the position of the Episode being played to the writer, unless
+	 * it is the position last handed off. Returns at once.
+	 *
+	 * @param millis the play position in milliseconds.
+	 * @author Todd Noecker
+	 */
+	public void checkpoint(long millis) {
+		lastNanos = System.nanoTime();
+		if (endMillis >= 0) {
+			if (millis >= endMillis) {
+				return;
+			}
+			// Sought back from the end to play again.
+			endMillis = -1;
+		}
+		handOff(millis);
+	}
+
+	/**
+	 * Hands off that the Episode being played was played to the end.
+	 *
+	 * @param millis where the player stopped, which later checkpoints at or
+	 *               past do not undo.
+	 * @author Todd Noecker
+	 */
+	public void finish(long millis) {
+		lastNanos = System.nanoTime();
+		handOff(Episode.FINISHED);
+		endMillis = Math.max(0, millis);
+	}
+
+	/**
+	 * Finds the newest position of an Episode: one handed off but not yet
+	 * written if there is one, or the one it has. An Episode loaded again
+	 * straight after being left starts where it was left.
+	 *
+	 * @param ep the Episode.
+	 * @return its position in milliseconds, Episode.FINISHED, or -1 if it has
+	 *         none.
+	 * @author Todd Noecker
+	 */
+	public synchronized long positionOf(Episode ep) {
+		if (same(pending, ep)) {
+			return pendingMillis;
+		}
+		Iterator<Checkpoint> newest = earlier.descendingIterator();
+		while (newest.hasNext()) {
+			Checkpoint checkpoint = newest.next();
+			if (same(checkpoint.ep, ep)) {
+				return checkpoint.millis;
+			}
+		}
+		if (same(writing, ep)) {
+			return writingMillis;
+		}
+		return ep.getCurTimeMillis();
+	}
+
+	/**
+	 * Waits for every position handed off so far to be written.
+	 *
+	 * @param timeoutMillis the longest to wait.
+	 * @return true if they were all written.
+	 * @author Todd Noecker
+	 */
+	public synchronized boolean flush(long timeoutMillis) {
+		long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		try {
+			while (pending != null || !earlier.isEmpty() || writing != null) {
+				long left = TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime());
+				if (left <= 0 || !writer.isAlive()) {
+					return false;
+				}
+				wait(left);
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Fetches how many positions have been written.
+	 *
+	 * @return the count.
+	 * @author Todd Noecker
+	 */
+	public synchronized long getWriteCount() {
+		return writeCount;
+	}
+
+	/**
+	 * Writes the positions still waiting and stops the writer.
+	 *
+	 * @author Todd Noecker
+	 */
+	@Override
+	public void close() {
+		flush(CLOSE_MILLIS);
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PRIVATE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Puts a position for the Episode being played in the slot, unless it is
+	 * the position last handed off.
+	 */
+	private void handOff(long millis) {
+		if (playing == null || millis == lastMillis) {
+			return;
+		}
+		lastMillis = millis;
+		synchronized (this) {
+			if (pending != null && pending != playing) {
+				// Only when another Episode was loaded before its last
+				// position was written.
+				earlier.add(new Checkpoint(pending, pendingMillis));
+			}
+			pending = playing;
+			pendingMillis = millis;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Runs the writer: takes the oldest waiting position and sets it on its
+	 * Episode, until closed.
+	 */
+	private void write() {
+		while (true) {
+			Episode ep;
+			long millis;
+			synchronized (this) {
+				while (pending == null && earlier.isEmpty()) {
+					if (closed) {
+						return;
+					}
+					try {
+						wait();
+					} catch (InterruptedException ex) {
+						return;
+					}
+				}
+				if (!earlier.isEmpty()) {
+					Checkpoint checkpoint = earlier.poll();
+					ep = checkpoint.ep;
+					millis = checkpoint.millis;
+				} else {
+					ep = pending;
+					millis = pendingMillis;
+					pending = null;
+				}
+				writing = ep;
+				writingMillis = millis;
+			}
+			try {
+				ep.setCurTimeMillis(millis);
+			} catch (RuntimeException ex) {
+				System.err.println("Position of " + ep.getTitle() + " not saved: " + ex.getMessage());
+			}
+			synchronized (this) {
+				writing = null;
+				writeCount++;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Tells whether two Episodes are the same Episode, though one may be a
+	 * copy read back from a catalog.
+	 */
+	private static boolean same(Episode one, Episode other) {
+		return one != null && (one == other || one.getPodcast() == other.getPodcast()
+				&& one.getTitle().equals(other.getTitle()));
+	}
+
+	/**
+	 * A position waiting for an Episode no longer being played.
+	 */
+	private static final class Checkpoint {
+		final Episode ep;
+		final long millis;
+
+		Checkpoint(Episode ep, long millis) {
+			this.ep = ep;
+			this.millis = millis;
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A read-only view of RSS feed bytes as characters, one char per byte.
+ *
+ * This lets the parser run directly over a heap, direct or memory-mapped
+ *  ByteBuffer. Taking a subSequence only records an offset and length,
+ *  so item blocks are never copied. Bytes are decoded to a String only
+ *  when toString is called on a final field value. One char per byte is
+ *  the same reading the String path has always used, so both paths
+ *  produce identical text.
+ *
+ * @author Todd Noecker
+ */
+public final class ByteFeed implements CharSequence {
+
+	private final ByteBuffer buf;
+	private final int offset;
+	private final int length;
+
+	/**
+	 * Wraps the remaining bytes of a buffer. The buffer's position and limit
+	 * are not changed.
+	 *
+	 * @param buf the feed bytes.
+	 * @author Todd Noecker
+	 */
+	public ByteFeed(ByteBuffer buf) {
+		this(buf, buf.position(), buf.remaining());
+	}
+
+	private ByteFeed(ByteBuffer buf, int offset, int length) {
+		this.buf = buf;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("Index " + index + " outside feed of length " + length);
+		}
+		return (char) (buf.get(offset + index) & 0xFF);
+	}
+
+	@Override
+	public ByteFeed subSequence(int start, int end) {
+		if (start < 0 || end > length || start > end) {
+			throw new IndexOutOfBoundsException("Range " + start + "-" + end + " outside feed of length " + length);
+		}
+		return new ByteFeed(buf, offset + start, end - start);
+	}
+
+	/**
+	 * Decodes this view into a String. Bytes are read by absolute index, so
+	 * no buffer view is made for each field copied out of a feed.
+	 */
+	@Override
+	public String toString() {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = buf.get(offset + i);
+		}
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+
+	/* ------------------------------------------------------------------------
+	 * ---------------------------SEARCH METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Finds the first occurrence of an ASCII pattern at or after a position.
+	 * Strings are searched with String.indexOf. Patterns are short tags, so
+	 * the search is linear in the text scanned.
+	 *
+	 * @param text    the text to search.
+	 * @param pattern the pattern to find.
+	 * @param from    where to start searching.
+	 * @return the index of the match, or -1.
+	 * @author Todd Noecker
+	 */
+	static int indexOf(CharSequence text, String pattern, int from) {
+		if (text instanceof String) {
+			return ((String) text).indexOf(pattern, from);
+		}
+		int len = text.length();
+		int patLen = pattern.length();
+		if (patLen == 0) {
+			return Math.min(Math.max(from, 0), len);
+		}
+		char first = pattern.charAt(0);
+		for (int i = Math.max(from, 0); i <= len - patLen; i++) {
+			if (text.charAt(i) != first) {
+				continue;
+			}
+			int j = 1;
+			while (j < patLen && text.charAt(i + j) == pattern.charAt(j)) {
+				j++;
+			}
+			if (j == patLen) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the first occurrence of a character at or after a position.
+	 *
+	 * @param text the text to search.
+	 * @param ch   the character to find.
+	 * @param from where to start searching.
+	 * @return the index of the match, or -1.
+	 * @author Todd Noecker
+	 */
+	static int indexOf(CharSequence text, char ch, int from) {
+		if (text instanceof String) {
+			return ((String) text).indexOf(ch, from);
+		}
+		for (int i = Math.max(from, 0); i < text.length(); i++) {
+			if (text.charAt(i) == ch) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,147 @@
+package model;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import model.PodcastPlayerModel.Episode;
+import model.PodcastPlayerModel.Podcast;
+
+/**
+ * What changed in the library since the last batch was taken, with every
+ * change to the same Podcast or Episode folded into one entry.
+ *
+ * A Podcast or Episode is in at most one of the added, changed and removed
+ *  groups: one added and then changed is only added, and one added and
+ *  then removed is not in the batch at all.
+ *
+ * @author Todd Noecker
+ */
+public final class ChangeBatch {
+
+	private final Collection<Podcast> addedPodcasts;
+	private final Collection<Podcast> changedPodcasts;
+	private final Set<String> removedPodcasts;
+	private final List<Episode> addedEpisodes;
+	private final List<Episode> changedEpisodes;
+	private final List<Episode> removedEpisodes;
+	private final Episode nowPlaying;
+	private final int eventCount;
+
+	/**
+	 * Creates a batch. The collections are kept, not copied.
+	 *
+	 * @author Todd Noecker
+	 */
+	ChangeBatch(Collection<Podcast> addedPodcasts, Collection<Podcast> changedPodcasts, Set<String> removedPodcasts,
+			List<Episode> addedEpisodes, List<Episode> changedEpisodes, List<Episode> removedEpisodes,
+			Episode nowPlaying, int eventCount) {
+		this.addedPodcasts = Collections.unmodifiableCollection(addedPodcasts);
+		this.changedPodcasts = Collections.unmodifiableCollection(changedPodcasts);
+		this.removedPodcasts = Collections.unmodifiableSet(removedPodcasts);
+		this.addedEpisodes = Collections.unmodifiableList(addedEpisodes);
+		this.changedEpisodes = Collections.unmodifiableList(changedEpisodes);
+		this.removedEpisodes = Collections.unmodifiableList(removedEpisodes);
+		this.nowPlaying = nowPlaying;
+		this.eventCount = eventCount;
+	}
+
+	/* ------------------------------------------------------------------------
+	 * ---------------------------PUBLIC METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Fetches the Podcasts newly stored in the library.
+	 *
+	 * @return the added Podcasts, in the order they were added.
+	 * @author Todd Noecker
+	 */
+	public Collection<Podcast> getAddedPodcasts() {
+		return addedPodcasts;
+	}
+
+	/**
+	 * Fetches the Podcasts that were refreshed, or replaced by a new copy
+	 * under the same key.
+	 *
+	 * @return the changed Podcasts, as they are now.
+	 * @author Todd Noecker
+	 */
+	public Collection<Podcast> getChangedPodcasts() {
+		return changedPodcasts;
+	}
+
+	/**
+	 * Fetches the library keys of the Podcasts taken out of the library.
+	 *
+	 * @return the removed keys.
+	 * @author Todd Noecker
+	 */
+	public Set<String> getRemovedPodcasts() {
+		return removedPodcasts;
+	}
+
+	/**
+	 * Fetches the Episodes a refresh found.
+	 *
+	 * @return the added Episodes.
+	 * @author Todd Noecker
+	 */
+	public List<Episode> getAddedEpisodes() {
+		return addedEpisodes;
+	}
+
+	/**
+	 * Fetches the Episodes whose play positions were set.
+	 *
+	 * @return the changed Episodes.
+	 * @author Todd Noecker
+	 */
+	public List<Episode> getChangedEpisodes() {
+		return changedEpisodes;
+	}
+
+	/**
+	 * Fetches the Episodes a refresh replaced with a newer copy.
+	 *
+	 * @return the removed Episodes.
+	 * @author Todd Noecker
+	 */
+	public List<Episode> getRemovedEpisodes() {
+		return removedEpisodes;
+	}
+
+	/**
+	 * Fetches the Episode most recently selected to play.
+	 *
+	 * @return the Episode, or null if none was selected since the last batch.
+	 * @author Todd Noecker
+	 */
+	public Episode getNowPlaying() {
+		return nowPlaying;
+	}
+
+	/**
+	 * Counts the events folded into this batch.
+	 *
+	 * @return the event count.
+	 * @author Todd Noecker
+	 */
+	public int getEventCount() {
+		return eventCount;
+	}
+
+	/**
+	 * Reports whether anything in the library changed.
+	 *
+	 * @return true if every group is empty and nothing was selected.
+	 * @author Todd Noecker
+	 */
+	public boolean isEmpty() {
+		return addedPodcasts.isEmpty() && changedPodcasts.isEmpty() && removedPodcasts.isEmpty()
+				&& addedEpisodes.isEmpty() && changedEpisodes.isEmpty() && removedEpisodes.isEmpty()
+				&& nowPlaying == null;
+	}
+}
@@ -0,0 +1,330 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import model.PodcastPlayerModel.Episode;
+import model.PodcastPlayerModel.Podcast;
+
+/**
+ * Collects the library's changes until a reader takes them as one batch.
+ *
+ * Changes are folded as they arrive, so a refresh that finds a thousand
+ *  Episodes, or a play position saved every second, costs the reader one
+ *  batch rather than one call per change. Any thread may report changes;
+ *  a screen takes at most one batch per frame, and between batches the
+ *  only cost of a change is a map entry.
+ *
+ * Batches are only collected once a reader has asked for them with
+ *  setCollecting, so a library with no screen, as when ingesting or
+ *  serving, does not hold every Podcast and Episode it has seen.
+ *
+ * The keys of the Podcasts that changed are also kept apart, for the
+ *  segment store to take on its own schedule, and play positions are
+ *  passed straight on to a library store that indexes them and to the
+ *  continue listening shelf. These go on whether batches are collected
+ *  or not.
+ *
+ * @author Todd Noecker
+ */
+public final class ChangeBus {
+
+	private Map<String, Podcast> addedPodcasts = new LinkedHashMap<String, Podcast>();
+	private Map<String, Podcast> changedPodcasts = new LinkedHashMap<String, Podcast>();
+	private Set<String> removedPodcasts = new LinkedHashSet<String>();
+	private Set<Podcast> removedInBatch = new HashSet<Podcast>(); // whose Episode changes are dropped
+	private Set<Episode> addedEpisodes = new LinkedHashSet<Episode>();
+	private Set<Episode> changedEpisodes = new LinkedHashSet<Episode>();
+	private Set<Episode> removedEpisodes = new LinkedHashSet<Episode>();
+	private Episode nowPlaying;
+	private int eventCount;
+	private boolean collecting; // whether a reader takes batches
+	private volatile boolean pending; // read without the lock on every frame
+	private Set<String> dirty = new HashSet<String>(); // library keys not yet saved
+	private LibraryStore store; // told of play positions as they are set, if set
+	private ListeningShelf shelf; // told of play positions as they are set, if set
+
+	/* ------------------------------------------------------------------------
+	 * ---------------------------PUBLIC METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Reports whether there are changes waiting. Takes no lock, so it can be
+	 * asked on every frame.
+	 *
+	 * @return true if drain would return a batch.
+	 * @author Todd Noecker
+	 */
+	public boolean isPending() {
+		return pending;
+	}
+
+	/**
+	 * Takes every change reported since the last call.
+	 *
+	 * @return the changes, or null if there were none.
+	 * @author Todd Noecker
+	 */
+	public ChangeBatch drain() {
+		if (!pending) {
+			return null;
+		}
+		synchronized (this) {
+			List<Episode> added = live(addedEpisodes);
+			List<Episode> changed = live(changedEpisodes);
+			ChangeBatch batch = new ChangeBatch(new ArrayList<Podcast>(addedPodcasts.values()),
+					new ArrayList<Podcast>(changedPodcasts.values()), removedPodcasts, added, changed,
+					new ArrayList<Episode>(removedEpisodes), nowPlaying, eventCount);
+			clear();
+			return batch;
+		}
+	}
+
+	/**
+	 * Starts or stops collecting batches. A reader turns collecting on before
+	 * its first drain; changes made while it is off never reach a batch.
+	 * Turning it off drops the changes waiting.
+	 *
+	 * @param on true while a reader takes batches.
+	 * @author Todd Noecker
+	 */
+	public synchronized void setCollecting(boolean on) {
+		collecting = on;
+		if (!on) {
+			clear();
+		}
+	}
+
+	/**
+	 * Checks whether batches are collected.
+	 *
+	 * @return true if a reader takes batches.
+	 * @author Todd Noecker
+	 */
+	public synchronized boolean isCollecting() {
+		return collecting;
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PACKAGE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Records that a Podcast was stored under a key that was free.
+	 *
+	 * @param key     the library key.
+	 * @param podcast the Podcast.
+	 * @author Todd Noecker
+	 */
+	synchronized void podcastAdded(String key, Podcast podcast) {
+		dirty.add(key);
+		if (!collecting) {
+			return;
+		}
+		if (removedPodcasts.remove(key)) {
+			// Taken out and put back: to the reader it has only changed.
+			changedPodcasts.put(key, podcast);
+		} else {
+			addedPodcasts.put(key, podcast);
+		}
+		event();
+	}
+
+	/**
+	 * Records that a Podcast was refreshed or replaced.
+	 *
+	 * @param key     the library key.
+	 * @param podcast the Podcast now stored under it.
+	 * @author Todd Noecker
+	 */
+	synchronized void podcastChanged(String key, Podcast podcast) {
+		dirty.add(key);
+		if (!collecting) {
+			return;
+		}
+		if (addedPodcasts.containsKey(key)) {
+			addedPodcasts.put(key, podcast);
+		} else {
+			changedPodcasts.put(key, podcast);
+		}
+		event();
+	}
+
+	/**
+	 * Records that a Podcast was taken out of the library. Changes to its
+	 * Episodes still waiting are dropped.
+	 *
+	 * @param key     the library key.
+	 * @param podcast the Podcast that was stored under it.
+	 * @author Todd Noecker
+	 */
+	synchronized void podcastRemoved(String key, Podcast podcast) {
+		dirty.add(key);
+		if (!collecting) {
+			return;
+		}
+		if (addedPodcasts.remove(key) == null) {
+			changedPodcasts.remove(key);
+			removedPodcasts.add(key);
+		}
+		removedInBatch.add(podcast);
+		event();
+	}
+
+	/**
+	 * Records that a refresh found an Episode.
+	 *
+	 * @param ep the new Episode.
+	 * @author Todd Noecker
+	 */
+	synchronized void episodeAdded(Episode ep) {
+		dirty(ep);
+		if (!collecting) {
+			return;
+		}
+		changedEpisodes.remove(ep);
+		addedEpisodes.add(ep);
+		event();
+	}
+
+	/**
+	 * Records that an Episode's play position was set.
+	 *
+	 * @param ep the Episode.
+	 * @author Todd Noecker
+	 */
+	synchronized void episodeChanged(Episode ep) {
+		dirty(ep);
+		if (store != null && ep.getPodcast() != null) {
+			store.positionChanged(PodcastPlayerModel.libraryKey(ep.getPodcast()), ep);
+		}
+		if (shelf != null && ep.getPodcast() != null) {
+			shelf.played(PodcastPlayerModel.libraryKey(ep.getPodcast()), ep);
+		}
+		if (!collecting) {
+			return;
+		}
+		if (!addedEpisodes.contains(ep)) {
+			changedEpisodes.add(ep);
+		}
+		event();
+	}
+
+	/**
+	 * Records that a refresh replaced an Episode.
+	 *
+	 * @param ep the Episode that was replaced.
+	 * @author Todd Noecker
+	 */
+	synchronized void episodeRemoved(Episode ep) {
+		dirty(ep);
+		if (!collecting) {
+			return;
+		}
+		if (!addedEpisodes.remove(ep)) {
+			changedEpisodes.remove(ep);
+			removedEpisodes.add(ep);
+		}
+		event();
+	}
+
+	/**
+	 * Records that an Episode was selected to play.
+	 *
+	 * @param ep the Episode.
+	 * @author Todd Noecker
+	 */
+	synchronized void nowPlaying(Episode ep) {
+		if (!collecting) {
+			return;
+		}
+		nowPlaying = ep;
+		event();
+	}
+
+	/**
+	 * Sets the library store told of every play position set.
+	 *
+	 * @param store the store, or null for none.
+	 * @author Todd Noecker
+	 */
+	synchronized void storeTo(LibraryStore store) {
+		this.store = store;
+	}
+
+	/**
+	 * Sets the continue listening shelf told of every play position set.
+	 *
+	 * @param shelf the shelf.
+	 * @author Todd Noecker
+	 */
+	synchronized void shelveTo(ListeningShelf shelf) {
+		this.shelf = shelf;
+	}
+
+	/**
+	 * Takes the library keys of the Podcasts changed since the last call.
+	 * Kept apart from the batches, so saving and drawing do not take each
+	 * other's changes.
+	 *
+	 * @return the keys.
+	 * @author Todd Noecker
+	 */
+	synchronized Set<String> takeDirty() {
+		Set<String> taken = dirty;
+		dirty = new HashSet<String>();
+		return taken;
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PRIVATE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	private void dirty(Episode ep) {
+		if (ep.getPodcast() != null) {
+			dirty.add(PodcastPlayerModel.libraryKey(ep.getPodcast()));
+		}
+	}
+
+	/**
+	 * Empties the batch being collected.
+	 */
+	private void clear() {
+		addedPodcasts = new LinkedHashMap<String, Podcast>();
+		changedPodcasts = new LinkedHashMap<String, Podcast>();
+		removedPodcasts = new LinkedHashSet<String>();
+		removedInBatch = new HashSet<Podcast>();
+		addedEpisodes = new LinkedHashSet<Episode>();
+		changedEpisodes = new LinkedHashSet<Episode>();
+		removedEpisodes = new LinkedHashSet<Episode>();
+		nowPlaying = null;
+		eventCount = 0;
+		pending = false;
+	}
+
+	private void event() {
+		eventCount++;
+		pending = true;
+	}
+
+	/**
+	 * Lists the Episodes whose Podcast was not removed in this batch.
+	 */
+	private List<Episode> live(Set<Episode> episodes) {
+		List<Episode> live = new ArrayList<Episode>(episodes.size());
+		for (Episode ep : episodes) {
+			if (!removedInBatch.contains(ep.getPodcast())) {
+				live.add(ep);
+			}
+		}
+		return live;
+	}
+}
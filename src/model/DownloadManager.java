@@ -0,0 +1,786 @@
+package model;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads episodes for offline play, user requests first.
+ *
+ * Downloads wait in a queue ordered by priority, then by when they were
+ *  asked for. The queue is saved in the download directory on every change
+ *  and read back when the manager is opened, so downloads left unfinished
+ *  carry on in the next run. Each transfer writes a part file; a transfer
+ *  that breaks off is resumed from the end of its part file with an HTTP
+ *  Range request. The ETag, or failing that the Last-Modified date, the
+ *  part file was sent with is kept with the queue and sent as If-Range,
+ *  so a file changed on the server since is sent whole and started over
+ *  rather than spliced onto the old part. A finished file must be as long
+ *  as the server said, and match its SHA-256 digest when one was given,
+ *  before it is moved into place. The digest of every finished file is
+ *  kept with the queue.
+ *
+ * At most maxActive transfers run at once, and at most maxPerHost from one
+ *  host. Bandwidth may be capped overall and per host. The manager counts
+ *  the bytes it has received and their rate over the last few seconds.
+ *
+ * @author Todd Noecker
+ */
+public final class DownloadManager implements Closeable {
+
+	/**
+	 * Which downloads go first.
+	 */
+	public enum Priority {
+		/** Asked for by the listener. */
+		USER,
+		/** New episodes fetched without being asked for. */
+		AUTO
+	}
+
+	/**
+	 * Where a download is.
+	 */
+	public enum State {
+		QUEUED, ACTIVE, DONE, FAILED
+	}
+
+	/**
+	 * How many times a transfer is tried before its download fails.
+	 */
+	static final int MAX_ATTEMPTS = 3;
+
+	/**
+	 * How long the first retry of a broken transfer waits. Later retries wait
+	 * longer.
+	 */
+	static final long RETRY_MILLIS = 200;
+
+	/**
+	 * How many seconds the transfer rate is averaged over.
+	 */
+	static final int RATE_SECONDS = 5;
+
+	private static final String QUEUE = "queue.txt";
+	private static final String PART = ".part";
+	private static final String TEMP = ".tmp";
+	private static final int CHUNK = 16 * 1024;
+
+	private static final Comparator<Job> ORDER = Comparator.comparing((Job job) -> job.priority)
+			.thenComparingLong(job -> job.seq);
+
+	private final Path dir;
+	private final int maxPerHost;
+	private final long hostBytesPerSecond;
+	private final int timeoutMillis;
+	private final RateLimiter total;
+	private final Map<String, Job> jobs = new LinkedHashMap<String, Job>(); // by canonical link, guarded by this
+	private final Map<String, Integer> activeByHost = new HashMap<String, Integer>(); // guarded by this
+	private final Map<String, RateLimiter> hostLimits = new HashMap<String, RateLimiter>(); // guarded by this
+	private final List<Thread> workers = new ArrayList<Thread>();
+	private final long[] rateBuckets = new long[RATE_SECONDS]; // guarded by itself
+	private final long[] rateSeconds = new long[RATE_SECONDS]; // guarded by rateBuckets
+	private long nextSeq; // guarded by this
+	private long receivedBytes; // guarded by rateBuckets
+	private volatile boolean autoDownload;
+	private boolean closed; // guarded by this
+
+	private DownloadManager(Path dir, int maxPerHost, long bytesPerSecond, long hostBytesPerSecond,
+			int timeoutMillis) {
+		this.dir = dir;
+		this.maxPerHost = maxPerHost;
+		this.hostBytesPerSecond = hostBytesPerSecond;
+		this.timeoutMillis = timeoutMillis;
+		this.total = new RateLimiter(bytesPerSecond);
+	}
+
+	/* ------------------------------------------------------------------------
+	 * ---------------------------PUBLIC METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Opens a download directory, reads back its queue and starts the
+	 * transfers still to be done.
+	 *
+	 * @param dir                where downloads and the queue are kept.
+	 * @param maxActive          the most transfers at once.
+	 * @param maxPerHost         the most transfers at once from one host.
+	 * @param bytesPerSecond     the overall bandwidth cap, or 0 for none.
+	 * @param hostBytesPerSecond the bandwidth cap for each host, or 0 for none.
+	 * @param timeoutMillis      the connect and read timeout of a transfer.
+	 * @return the running manager.
+	 * @throws IOException if the directory or its queue can not be read.
+	 * @author Todd Noecker
+	 */
+	public static DownloadManager open(Path dir, int maxActive, int maxPerHost, long bytesPerSecond,
+			long hostBytesPerSecond, int timeoutMillis) throws IOException {
+		if (maxActive < 1 || maxPerHost < 1) {
+			throw new IllegalArgumentException("Transfer limits must be at least 1");
+		}
+		if (bytesPerSecond < 0 || hostBytesPerSecond < 0) {
+			throw new IllegalArgumentException("Bandwidth caps can not be negative");
+		}
+		Files.createDirectories(dir);
+		DownloadManager manager = new DownloadManager(dir, maxPerHost, bytesPerSecond, hostBytesPerSecond,
+				timeoutMillis);
+		manager.readQueue();
+		for (int i = 0; i < maxActive; i++) {
+			Thread worker = new Thread(manager::work, "download-" + i);
+			// Unfinished downloads are resumed next run; they must not keep the
+			// program running.
+			worker.setDaemon(true);
+			manager.workers.add(worker);
+			worker.start();
+		}
+		return manager;
+	}
+
+	/**
+	 * Queues an episode's enclosure for download. Asking again for a link
+	 * already queued joins that download, moving it up if the new request
+	 * has the higher priority. A failed download is tried again.
+	 *
+	 * @param link     the enclosure link.
+	 * @param priority how soon it is wanted.
+	 * @param sha256   the expected SHA-256 digest in hex, or null if unknown.
+	 * @return completes with the downloaded file, or fails if the transfer
+	 *         failed or the file did not verify.
+	 * @author Todd Noecker
+	 */
+	public synchronized CompletableFuture<Path> enqueue(URI link, Priority priority, String sha256) {
+		if (closed) {
+			throw new IllegalStateException("Download manager is closed");
+		}
+		String key = PodcastPlayerModel.canonicalLink(link);
+		Job job = jobs.get(key);
+		if (job != null && job.state == State.DONE && !Files.exists(job.file())) {
+			// The file was deleted; fetch it again.
+			job.state = State.QUEUED;
+			job.future = new CompletableFuture<Path>();
+		}
+		if (job != null) {
+			if (priority.compareTo(job.priority) < 0) {
+				job.priority = priority;
+			}
+			if (job.state == State.FAILED) {
+				job.state = State.QUEUED;
+				job.attempts = 0;
+				job.future = new CompletableFuture<Path>();
+			}
+			saveQueue();
+			notifyAll();
+			return job.future;
+		}
+		job = new Job(link, key, priority, nextSeq++, sha256);
+		jobs.put(key, job);
+		saveQueue();
+		notifyAll();
+		return job.future;
+	}
+
+	/**
+	 * Fetches the downloaded file of an enclosure.
+	 *
+	 * @param link the enclosure link.
+	 * @return the file, or null if it is not downloaded.
+	 * @author Todd Noecker
+	 */
+	public synchronized Path getFile(URI link) {
+		Job job = jobs.get(PodcastPlayerModel.canonicalLink(link));
+		return job != null && job.state == State.DONE && Files.exists(job.file()) ? job.file() : null;
+	}
+
+	/**
+	 * Fetches the SHA-256 digest of a downloaded file.
+	 *
+	 * @param link the enclosure link.
+	 * @return the digest in hex, or null if it is not downloaded.
+	 * @author Todd Noecker
+	 */
+	public synchronized String getDigest(URI link) {
+		Job job = jobs.get(PodcastPlayerModel.canonicalLink(link));
+		return job != null && job.state == State.DONE ? job.digest : null;
+	}
+
+	/**
+	 * Fetches where a download is.
+	 *
+	 * @param link the enclosure link.
+	 * @return the state, or null if the link was never queued.
+	 * @author Todd Noecker
+	 */
+	public synchronized State getState(URI link) {
+		Job job = jobs.get(PodcastPlayerModel.canonicalLink(link));
+		return job == null ? null : job.state;
+	}
+
+	/**
+	 * Lists the downloads not yet done, in the order they will run: those
+	 * running now first, then the queue.
+	 *
+	 * @return the enclosure links.
+	 * @author Todd Noecker
+	 */
+	public synchronized List<URI> getQueue() {
+		List<Job> waiting = new ArrayList<Job>();
+		for (Job job : jobs.values()) {
+			if (job.state == State.QUEUED || job.state == State.ACTIVE) {
+				waiting.add(job);
+			}
+		}
+		waiting.sort(Comparator.comparing((Job job) -> job.state != State.ACTIVE).thenComparing(ORDER));
+		List<URI> links = new ArrayList<URI>();
+		for (Job job : waiting) {
+			links.add(job.link);
+		}
+		return links;
+	}
+
+	/**
+	 * Sets whether new episodes found by a refresh are queued for download.
+	 *
+	 * @param auto true to download new episodes.
+	 * @author Todd Noecker
+	 */
+	public void setAutoDownload(boolean auto) {
+		this.autoDownload = auto;
+	}
+
+	/**
+	 * Checks whether new episodes found by a refresh are queued for download.
+	 *
+	 * @return true if they are.
+	 * @author Todd Noecker
+	 */
+	public boolean isAutoDownload() {
+		return autoDownload;
+	}
+
+	/**
+	 * Counts the bytes received by every transfer since the manager opened.
+	 *
+	 * @return the byte count.
+	 * @author Todd Noecker
+	 */
+	public long getReceivedBytes() {
+		synchronized (rateBuckets) {
+			return receivedBytes;
+		}
+	}
+
+	/**
+	 * Measures the transfer rate over the last RATE_SECONDS seconds.
+	 *
+	 * @return bytes per second.
+	 * @author Todd Noecker
+	 */
+	public long getBytesPerSecond() {
+		long now = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+		long sum = 0;
+		synchronized (rateBuckets) {
+			for (int i = 0; i < RATE_SECONDS; i++) {
+				if (now - rateSeconds[i] < RATE_SECONDS) {
+					sum += rateBuckets[i];
+				}
+			}
+		}
+		return sum / RATE_SECONDS;
+	}
+
+	/**
+	 * Counts the transfers running now.
+	 *
+	 * @return the count.
+	 * @author Todd Noecker
+	 */
+	public synchronized int getActiveCount() {
+		int active = 0;
+		for (int count : activeByHost.values()) {
+			active += count;
+		}
+		return active;
+	}
+
+	/**
+	 * Stops the transfers and saves the queue. Part files are kept, so the
+	 * next manager opened on the directory resumes them.
+	 *
+	 * @author Todd Noecker
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			notifyAll();
+		}
+		for (Thread worker : workers) {
+			worker.interrupt();
+		}
+		for (Thread worker : workers) {
+			try {
+				worker.join(timeoutMillis);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		synchronized (this) {
+			for (Job job : jobs.values()) {
+				if (job.state == State.ACTIVE) {
+					job.state = State.QUEUED;
+				}
+			}
+			saveQueue();
+		}
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PRIVATE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Runs transfers until the manager is closed.
+	 */
+	private void work() {
+		while (true) {
+			Job job;
+			try {
+				job = take();
+			} catch (InterruptedException ex) {
+				return;
+			}
+			if (job == null) {
+				return;
+			}
+			try {
+				Path file = transfer(job);
+				finished(job, file, null);
+			} catch (IOException ex) {
+				finished(job, null, ex);
+			} catch (RuntimeException ex) {
+				// Counted as a failed try, so the job and its slot are let go.
+				finished(job, null, new IOException(ex.toString(), ex));
+			} catch (InterruptedException ex) {
+				finished(job, null, null);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Waits for the first queued download, in priority order, whose host has
+	 * a transfer slot free.
+	 *
+	 * @return the download, now active, or null once the manager is closed.
+	 */
+	private synchronized Job take() throws InterruptedException {
+		while (!closed) {
+			long now = System.currentTimeMillis();
+			long wake = Long.MAX_VALUE;
+			Job next = null;
+			for (Job job : jobs.values()) {
+				if (job.state != State.QUEUED || activeByHost.getOrDefault(job.host(), 0) >= maxPerHost) {
+					continue;
+				}
+				if (job.notBefore > now) {
+					wake = Math.min(wake, job.notBefore);
+					continue;
+				}
+				if (next == null || ORDER.compare(job, next) < 0) {
+					next = job;
+				}
+			}
+			if (next != null) {
+				next.state = State.ACTIVE;
+				activeByHost.merge(next.host(), 1, Integer::sum);
+				return next;
+			}
+			wait(wake == Long.MAX_VALUE ? 0 : Math.max(1, wake - now));
+		}
+		return null;
+	}
+
+	/**
+	 * Records the end of a transfer: done, to be retried, or failed.
+	 *
+	 * @param file  the downloaded file, or null if it did not finish.
+	 * @param error why it did not finish, or null if the manager closed.
+	 */
+	private synchronized void finished(Job job, Path file, IOException error) {
+		activeByHost.merge(job.host(), -1, Integer::sum);
+		if (file != null) {
+			job.state = State.DONE;
+			job.future.complete(file);
+		} else if (error == null || closed) {
+			job.state = State.QUEUED;
+		} else if (++job.attempts < MAX_ATTEMPTS) {
+			job.state = State.QUEUED;
+			job.notBefore = System.currentTimeMillis() + RETRY_MILLIS * job.attempts;
+		} else {
+			System.out.println("Download " + job.link + " failed: " + error.getMessage());
+			job.state = State.FAILED;
+			job.future.completeExceptionally(error);
+		}
+		saveQueue();
+		notifyAll();
+	}
+
+	/**
+	 * Fetches the rest of a download into its part file, verifies it and
+	 * moves it into place.
+	 */
+	private Path transfer(Job job) throws IOException, InterruptedException {
+		Path part = dir.resolve(job.name + PART);
+		long have = Files.exists(part) ? Files.size(part) : 0;
+		URLConnection conn = job.link.toURL().openConnection();
+		conn.setConnectTimeout(timeoutMillis);
+		conn.setReadTimeout(timeoutMillis);
+		String validator;
+		synchronized (this) {
+			validator = job.validator;
+		}
+		if (have > 0) {
+			conn.setRequestProperty("Range", "bytes=" + have + "-");
+			if (validator != null) {
+				conn.setRequestProperty("If-Range", validator);
+			}
+		}
+		try {
+			int status = conn instanceof HttpURLConnection ? ((HttpURLConnection) conn).getResponseCode() : 200;
+			long length;
+			if (status == 416 && have > 0) {
+				// Nothing is left to send: the part file is whole.
+				length = have;
+			} else if (status == 206 && have > 0) {
+				try {
+					length = totalLength(conn.getHeaderField("Content-Range"), have);
+				} catch (IOException ex) {
+					// Not knowing where the range starts, the next try asks
+					// for the whole file.
+					Files.delete(part);
+					throw ex;
+				}
+			} else if (status >= 200 && status < 300) {
+				// The server sent the whole file, because it changed or does
+				// not do ranges; start the part file again.
+				have = 0;
+				length = conn.getContentLengthLong();
+			} else {
+				throw new IOException("HTTP " + status + " for " + job.link);
+			}
+			if (status != 416) {
+				validated(job, validatorOf(conn));
+			}
+			if (status != 416) {
+				StandardOpenOption mode = have > 0 ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING;
+				RateLimiter host = hostLimit(job.host());
+				try (InputStream in = conn.getInputStream();
+						OutputStream out = Files.newOutputStream(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+								mode)) {
+					byte[] buf = new byte[CHUNK];
+					int len;
+					while ((len = in.read(buf)) > 0) {
+						if (Thread.interrupted()) {
+							throw new InterruptedException();
+						}
+						total.acquire(len);
+						host.acquire(len);
+						out.write(buf, 0, len);
+						received(len);
+					}
+				}
+			}
+			return verify(job, part, length);
+		} finally {
+			if (conn instanceof HttpURLConnection) {
+				((HttpURLConnection) conn).disconnect();
+			}
+		}
+	}
+
+	/**
+	 * Checks a finished part file's length and digest and moves it into
+	 * place. A part file that is too long or has the wrong digest is
+	 * deleted, so the next try starts over. The digest is kept either way,
+	 * so copies of one file under other links can be found.
+	 */
+	private Path verify(Job job, Path part, long length) throws IOException {
+		long size = Files.size(part);
+		if (length >= 0 && size < length) {
+			throw new IOException(job.link + " ended after " + size + " of " + length + " bytes");
+		}
+		if (length >= 0 && size > length) {
+			Files.delete(part);
+			throw new IOException(job.link + " sent " + size + " bytes, not " + length);
+		}
+		String digest = sha256(part);
+		if (job.sha256 != null && !digest.equalsIgnoreCase(job.sha256)) {
+			Files.delete(part);
+			throw new IOException(job.link + " has digest " + digest + ", not " + job.sha256);
+		}
+		synchronized (this) {
+			job.digest = digest;
+		}
+		Path file = job.file();
+		Files.move(part, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return file;
+	}
+
+	/**
+	 * Keeps what identifies the version of a file being written to its part
+	 * file, saving the queue if it changed.
+	 */
+	private synchronized void validated(Job job, String validator) {
+		if (!Objects.equals(job.validator, validator)) {
+			job.validator = validator;
+			saveQueue();
+		}
+	}
+
+	/**
+	 * Picks the validator to send as If-Range with a resumed request: the
+	 * response's strong ETag, or else its Last-Modified date. A weak ETag
+	 * can not be used for ranges.
+	 */
+	private static String validatorOf(URLConnection conn) {
+		String etag = conn.getHeaderField("ETag");
+		if (etag != null && !etag.startsWith("W/") && etag.indexOf('\t') < 0) {
+			return etag.trim();
+		}
+		String modified = conn.getHeaderField("Last-Modified");
+		return modified == null || modified.indexOf('\t') >= 0 ? null : modified.trim();
+	}
+
+	private synchronized RateLimiter hostLimit(String host) {
+		return hostLimits.computeIfAbsent(host, key -> new RateLimiter(hostBytesPerSecond));
+	}
+
+	/**
+	 * Adds received bytes to the count and to this second's rate bucket.
+	 */
+	private void received(int len) {
+		long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+		int slot = (int) (second % RATE_SECONDS);
+		synchronized (rateBuckets) {
+			if (rateSeconds[slot] != second) {
+				rateSeconds[slot] = second;
+				rateBuckets[slot] = 0;
+			}
+			rateBuckets[slot] += len;
+			receivedBytes += len;
+		}
+	}
+
+	/**
+	 * Reads the queue file. Downloads that were running when it was saved are
+	 * queued again.
+	 */
+	private synchronized void readQueue() throws IOException {
+		Path file = dir.resolve(QUEUE);
+		if (!Files.exists(file)) {
+			return;
+		}
+		for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+			String[] fields = line.split("\t", 6);
+			if (fields.length < 5) {
+				continue;
+			}
+			// Queues saved before validators were kept have no field for one.
+			String validator = fields.length == 6 && !fields[4].equals("-") ? fields[4] : null;
+			URI link = URI.create(fields[fields.length - 1]);
+			Job job = new Job(link, PodcastPlayerModel.canonicalLink(link), Priority.valueOf(fields[0]),
+					Long.parseLong(fields[1]), fields[3].equals("-") ? null : fields[3]);
+			job.validator = validator;
+			job.state = State.valueOf(fields[2]);
+			if (job.state == State.ACTIVE) {
+				job.state = State.QUEUED;
+			}
+			if (job.state == State.DONE && Files.exists(job.file())) {
+				job.digest = job.sha256;
+				job.future.complete(job.file());
+			}
+			jobs.put(job.key, job);
+			nextSeq = Math.max(nextSeq, job.seq + 1);
+		}
+	}
+
+	/**
+	 * Writes the queue file, replacing the old one only once it is written.
+	 * A queue that can not be saved is reported and kept in memory.
+	 */
+	private void saveQueue() {
+		Path file = dir.resolve(QUEUE);
+		Path temp = dir.resolve(QUEUE + TEMP);
+		try {
+			try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+				for (Job job : jobs.values()) {
+					out.write(job.priority + "\t" + job.seq + "\t" + job.state + "\t" + sha(job) + "\t"
+							+ (job.validator == null ? "-" : job.validator) + "\t" + job.link + "\n");
+				}
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException ex) {
+			System.out.println("Download queue could not be saved: " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * Gives the digest saved with a download: the one measured for a
+	 * finished file, otherwise the one it is expected to have.
+	 */
+	private static String sha(Job job) {
+		String digest = job.state == State.DONE && job.digest != null ? job.digest : job.sha256;
+		return digest == null ? "-" : digest;
+	}
+
+	/**
+	 * Reads the file's length from a resumed response's Content-Range,
+	 * checking the range starts where the part file ends.
+	 *
+	 * @return the length, or -1 if the server did not say.
+	 */
+	private static long totalLength(String contentRange, long have) throws IOException {
+		String range = contentRange == null ? "" : contentRange.trim();
+		int dash = range.indexOf('-');
+		int slash = range.indexOf('/');
+		if (!range.startsWith("bytes ") || dash < 0 || slash < dash) {
+			throw new IOException("Bad Content-Range: " + contentRange);
+		}
+		try {
+			if (Long.parseLong(range.substring("bytes ".length(), dash).trim()) != have) {
+				throw new IOException("Content-Range " + contentRange + " does not start at " + have);
+			}
+			String length = range.substring(slash + 1).trim();
+			return length.equals("*") ? -1 : Long.parseLong(length);
+		} catch (NumberFormatException ex) {
+			throw new IOException("Bad Content-Range: " + contentRange);
+		}
+	}
+
+	private static String sha256(Path file) throws IOException {
+		MessageDigest digest = sha256();
+		try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+			byte[] buf = new byte[64 * 1024];
+			while (in.read(buf) > 0) {
+				// The stream feeds the digest.
+			}
+		}
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * One queued download.
+	 */
+	private final class Job {
+		private final URI link;
+		private final String key;
+		private final String name;
+		private final long seq;
+		private final String sha256;
+		private Priority priority; // guarded by the manager
+		private State state = State.QUEUED; // guarded by the manager
+		private int attempts; // guarded by the manager
+		private long notBefore; // guarded by the manager
+		private String digest; // the finished file's SHA-256 digest, guarded by the manager
+		private String validator; // the part file's ETag or Last-Modified date, guarded by the manager
+		private CompletableFuture<Path> future = new CompletableFuture<Path>(); // guarded by the manager
+
+		private Job(URI link, String key, Priority priority, long seq, String sha256) {
+			this.link = link;
+			this.key = key;
+			this.name = SegmentStore.hashName(key);
+			this.priority = priority;
+			this.seq = seq;
+			this.sha256 = sha256;
+		}
+
+		private String host() {
+			return link.getHost() == null ? "" : link.getHost().toLowerCase(Locale.ROOT);
+		}
+
+		/**
+		 * Names the downloaded file by the hash of its link, keeping the
+		 * enclosure's extension so players know its type.
+		 */
+		private Path file() {
+			String path = link.getPath() == null ? "" : link.getPath();
+			int dot = path.lastIndexOf('.');
+			String ext = dot > path.lastIndexOf('/') && path.length() - dot <= 5 ? path.substring(dot) : "";
+			return dir.resolve(name + ext.toLowerCase(Locale.ROOT));
+		}
+	}
+
+	/**
+	 * Caps a byte rate, allowing a burst of one second's worth.
+	 */
+	private static final class RateLimiter {
+		private final long bytesPerSecond;
+		private double tokens; // guarded by this
+		private long last = System.nanoTime(); // guarded by this
+
+		private RateLimiter(long bytesPerSecond) {
+			this.bytesPerSecond = bytesPerSecond;
+			this.tokens = bytesPerSecond;
+		}
+
+		/**
+		 * Takes bytes from the allowance, sleeping until they are covered.
+		 */
+		private void acquire(int bytes) throws InterruptedException {
+			if (bytesPerSecond == 0) {
+				return;
+			}
+			long waitNanos;
+			synchronized (this) {
+				long now = System.nanoTime();
+				tokens = Math.min(bytesPerSecond, tokens + (now - last) * bytesPerSecond / 1e9);
+				last = now;
+				tokens -= bytes;
+				waitNanos = tokens >= 0 ? 0 : (long) (-tokens * 1e9 / bytesPerSecond);
+			}
+			if (waitNanos > 0) {
+				TimeUnit.NANOSECONDS.sleep(waitNanos);
+			}
+		}
+	}
+}
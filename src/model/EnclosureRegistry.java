@@ -0,0 +1,346 @@
+package model;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import model.PodcastPlayerModel.Episode;
+import model.PodcastPlayerModel.Podcast;
+
+/**
+ * Finds Episodes of different Podcasts that carry the same media file, so
+ * cross-posted copies share one payload, one play position, one download
+ * and one cache entry.
+ *
+ * An enclosure's identity is its link with the measurement redirects
+ *  networks wrap around it stripped, and without its scheme, plus the
+ *  file size the feed gives. When the size is known the query is dropped
+ *  as well, since feeds add their own tracking parameters to it. Copies
+ *  found later to have the same SHA-256 digest, such as two downloads of
+ *  one file under unrelated links, are merged into one group.
+ *
+ * Each group remembers the first link it was seen under, and the library
+ *  key and title of every Episode in it. Heap Episodes added to a group
+ *  take the first copy's link, and its description when the text is the
+ *  same, instead of keeping their own. Setting the play position of one
+ *  copy sets it on the rest.
+ *
+ * @author Todd Noecker
+ */
+final class EnclosureRegistry {
+
+	/**
+	 * Measurement services that wrap an enclosure link in their own; the
+	 * real link follows the prefix, with or without its scheme.
+	 */
+	private static final Pattern REDIRECT = Pattern.compile("^(?:dts\\.podtrac\\.com/redirect\\.[a-z0-9]+/"
+			+ "|(?:www\\.)?podtrac\\.com/pts/redirect\\.[a-z0-9]+/|chtbl\\.com/track/[^/]+/|pdst\\.fm/e/"
+			+ "|op3\\.dev/e/|pfx\\.vpixl\\.com/[^/]+/|mgln\\.ai/e/[^/]+/|arttrk\\.com/p/[^/]+/"
+			+ "|verifi\\.podscribe\\.com/rss/p/|prfx\\.byspotify\\.com/e/)(?:https?:/+)?", Pattern.CASE_INSENSITIVE);
+
+	private final Function<String, Podcast> podcasts;
+	private final Map<String, Group> groups = new HashMap<String, Group>(); // by identity, guarded by this
+	private final Map<String, String> merged = new HashMap<String, String>(); // identity to the one it joined
+	private final Map<String, String> digests = new HashMap<String, String>(); // digest to identity
+
+	/**
+	 * Creates an empty registry.
+	 *
+	 * @param podcasts looks Podcasts up by library key without opening them.
+	 * @author Todd Noecker
+	 */
+	EnclosureRegistry(Function<String, Podcast> podcasts) {
+		this.podcasts = podcasts;
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PACKAGE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Reduces an enclosure to the identity its copies share.
+	 *
+	 * @param link   the enclosure link.
+	 * @param length the file size the feed gives, or 0 if unknown.
+	 * @return the identity.
+	 * @author Todd Noecker
+	 */
+	static String identity(URI link, long length) {
+		String canon = PodcastPlayerModel.canonicalLink(link);
+		int scheme = canon.indexOf("://");
+		String rest = scheme < 0 ? canon : canon.substring(scheme + 3);
+		Matcher redirect = REDIRECT.matcher(rest);
+		while (redirect.find()) {
+			// Redirects may be stacked; unwrap them all.
+			rest = rest.substring(redirect.end());
+			redirect = REDIRECT.matcher(rest);
+		}
+		int slash = rest.indexOf('/');
+		String host = (slash < 0 ? rest : rest.substring(0, slash)).toLowerCase(Locale.ROOT);
+		rest = slash < 0 ? host : host + rest.substring(slash);
+		if (length <= 0) {
+			return rest;
+		}
+		int query = rest.indexOf('?');
+		return (query < 0 ? rest : rest.substring(0, query)) + "#" + length;
+	}
+
+	/**
+	 * Adds a Podcast's Episodes, sharing the payload and play position of
+	 * any that are copies of Episodes already added. The first copy's play
+	 * position is kept unless another copy has got further.
+	 *
+	 * @param key      the Podcast's library key.
+	 * @param episodes the Episodes to add.
+	 * @author Todd Noecker
+	 */
+	void add(String key, Collection<Episode> episodes) {
+		List<Ref> firsts = new ArrayList<Ref>();
+		List<Episode> copies = new ArrayList<Episode>();
+		synchronized (this) {
+			for (Episode ep : episodes) {
+				URI link = ep.getLink();
+				if (link == null) {
+					continue;
+				}
+				String id = root(identity(link, ep.getEnclosureLength()));
+				Group group = groups.get(id);
+				if (group == null) {
+					group = new Group(link);
+					groups.put(id, group);
+				}
+				Ref ref = new Ref(key, ep.getTitle());
+				group.refs.remove(ref);
+				if (!group.refs.isEmpty()) {
+					firsts.add(group.refs.get(0));
+					copies.add(ep);
+				}
+				group.refs.add(ref);
+			}
+		}
+		// Other Podcasts are looked into only after the lock is let go.
+		for (int i = 0; i < copies.size(); i++) {
+			Episode first = episode(firsts.get(i));
+			if (first != null) {
+				copies.get(i).sharePayload(first);
+				reconcile(first, copies.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Takes a Podcast's Episodes out of their groups.
+	 *
+	 * @param key     the Podcast's library key.
+	 * @param podcast the Podcast.
+	 * @author Todd Noecker
+	 */
+	void remove(String key, Podcast podcast) {
+		List<Episode> episodes = podcast.getEpisodes();
+		synchronized (this) {
+			for (Episode ep : episodes) {
+				if (ep.getLink() == null) {
+					continue;
+				}
+				String id = root(identity(ep.getLink(), ep.getEnclosureLength()));
+				Group group = groups.get(id);
+				if (group != null && group.refs.remove(new Ref(key, ep.getTitle())) && group.refs.isEmpty()) {
+					groups.remove(id);
+					if (group.digest != null) {
+						digests.remove(group.digest);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sets an Episode's new play position on its other copies.
+	 *
+	 * @param key the library key of the Episode's Podcast.
+	 * @param ep  the Episode whose position was set.
+	 * @author Todd Noecker
+	 */
+	void positionChanged(String key, Episode ep) {
+		if (ep.getLink() == null) {
+			return;
+		}
+		List<Ref> others = new ArrayList<Ref>();
+		synchronized (this) {
+			Group group = groups.get(root(identity(ep.getLink(), ep.getEnclosureLength())));
+			if (group == null || group.refs.size() < 2) {
+				return;
+			}
+			Ref self = new Ref(key, ep.getTitle());
+			for (Ref ref : group.refs) {
+				if (!ref.equals(self)) {
+					others.add(ref);
+				}
+			}
+		}
+		long millis = ep.getCurTimeMillis();
+		for (Ref ref : others) {
+			Episode copy = episode(ref);
+			// Each copy passes the position on in turn; copies already at it
+			// end the round.
+			if (copy != null && copy.getCurTimeMillis() != millis) {
+				copy.setCurTimeMillis(millis);
+			}
+		}
+	}
+
+	/**
+	 * Fetches the link every copy of an Episode's enclosure is fetched from,
+	 * so they share one download and one cache entry.
+	 *
+	 * @param ep the Episode.
+	 * @return the shared link, or null if the Episode was never added.
+	 * @author Todd Noecker
+	 */
+	synchronized URI sharedLink(Episode ep) {
+		if (ep.getLink() == null) {
+			return null;
+		}
+		Group group = groups.get(root(identity(ep.getLink(), ep.getEnclosureLength())));
+		return group == null ? null : group.link;
+	}
+
+	/**
+	 * Records the SHA-256 digest of an Episode's media file. A group whose
+	 * digest matches another's joins it, taking the furthest play position
+	 * of the two.
+	 *
+	 * @param ep     the Episode.
+	 * @param sha256 the digest in hex.
+	 * @author Todd Noecker
+	 */
+	void recordDigest(Episode ep, String sha256) {
+		if (ep.getLink() == null || sha256 == null) {
+			return;
+		}
+		String digest = sha256.toLowerCase(Locale.ROOT);
+		Ref into;
+		List<Ref> joined;
+		synchronized (this) {
+			String id = root(identity(ep.getLink(), ep.getEnclosureLength()));
+			Group group = groups.get(id);
+			if (group == null) {
+				return;
+			}
+			String other = digests.get(digest);
+			if (other == null || root(other).equals(id) || !groups.containsKey(root(other))) {
+				group.digest = digest;
+				digests.put(digest, id);
+				return;
+			}
+			Group keep = groups.get(root(other));
+			into = keep.refs.get(0);
+			joined = new ArrayList<Ref>(group.refs);
+			keep.refs.addAll(group.refs);
+			groups.remove(id);
+			merged.put(id, root(other));
+		}
+		Episode first = episode(into);
+		for (Ref ref : joined) {
+			Episode copy = episode(ref);
+			if (first != null && copy != null) {
+				reconcile(first, copy);
+			}
+		}
+	}
+
+	/**
+	 * Counts the Episodes that share a group with an Episode added before
+	 * them, which is how many copies the library no longer keeps apart.
+	 *
+	 * @return the count.
+	 * @author Todd Noecker
+	 */
+	synchronized int sharedCount() {
+		int shared = 0;
+		for (Group group : groups.values()) {
+			shared += group.refs.size() - 1;
+		}
+		return shared;
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PRIVATE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Follows merges from an identity to the group it now belongs to.
+	 */
+	private String root(String id) {
+		String next = merged.get(id);
+		while (next != null) {
+			id = next;
+			next = merged.get(id);
+		}
+		return id;
+	}
+
+	private Episode episode(Ref ref) {
+		Podcast podcast = podcasts.apply(ref.key);
+		return podcast == null ? null : podcast.getEpisode(ref.title);
+	}
+
+	/**
+	 * Brings two copies to the furthest play position either has reached.
+	 * Setting it on one passes it on to the rest of the group.
+	 */
+	private static void reconcile(Episode first, Episode copy) {
+		long a = first.getCurTimeMillis();
+		long b = copy.getCurTimeMillis();
+		if (a > b) {
+			copy.setCurTimeMillis(a);
+		} else if (b > a) {
+			first.setCurTimeMillis(b);
+		}
+	}
+
+	/**
+	 * The copies of one enclosure.
+	 */
+	private static final class Group {
+		private final URI link;
+		private final List<Ref> refs = new ArrayList<Ref>(2);
+		private String digest;
+
+		private Group(URI link) {
+			this.link = link;
+		}
+	}
+
+	/**
+	 * One copy: an Episode title in the Podcast under a library key.
+	 */
+	private static final class Ref {
+		private final String key;
+		private final String title;
+
+		private Ref(String key, String title) {
+			this.key = key;
+			this.title = title;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Ref && ((Ref) other).key.equals(key) && ((Ref) other).title.equals(title);
+		}
+
+		@Override
+		public int hashCode() {
+			return key.hashCode() * 31 + title.hashCode();
+		}
+	}
+}
@@ -0,0 +1,502 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import model.PodcastPlayerModel.Episode;
+import model.PodcastPlayerModel.Podcast;
+
+/**
+ * An Episode store kept in a memory-mapped file instead of on the heap.
+ *
+ * The file holds a small header, one fixed-width record per Episode in
+ *  epNum order, a title hash index sorted by hash for lookups, and a
+ *  variable-length heap holding the UTF-8 text of every record. Catalogs
+ *  written before records held feed details, or when each Episode was
+ *  last played, still open, and their Episodes report those as unknown.
+ *  Episodes handed out by the catalog are flyweight views that read their
+ *  fields from the mapping when asked, so the heap only holds what is in
+ *  use.
+ *
+ * A catalog is written beside its file and moved over it, so one that is
+ *  already mapped keeps its contents until it is closed.
+ *
+ * @author Todd Noecker
+ */
+public final class EpisodeCatalog implements Closeable {
+
+	private static final int MAGIC = 0x50504543; // "PPEC"
+	private static final int VERSION = 3;
+	private static final int HEADER_SIZE = 16;
+	private static final String TEMP = ".tmp";
+
+	// Record layout: epNum, title, desc and link as (offset, length), position,
+	// then from version 2 publish date, enclosure length, duration, and guid
+	// and enclosure type as (offset, length), then from version 3 when it
+	// was last played.
+	private static final int RECORD_SIZE = 80;
+	private static final int RECORD_SIZE_V2 = 72;
+	private static final int RECORD_SIZE_V1 = 36;
+	private static final int EP_NUM = 0;
+	private static final int TITLE = 4;
+	private static final int DESC = 12;
+	private static final int LINK = 20;
+	private static final int CUR_MILLIS = 28;
+	private static final int PUBLISHED = 36;
+	private static final int LENGTH = 44;
+	private static final int DURATION = 52;
+	private static final int GUID = 56;
+	private static final int TYPE = 64;
+	private static final int LAST_PLAYED = 72;
+	private static final int STRINGS = 5;
+
+	// Hash index layout: title hash, record number.
+	private static final int HASH_ENTRY_SIZE = 8;
+
+	private final Path file;
+	private final FileChannel channel;
+	private final MappedByteBuffer map;
+	private final int count;
+	private final int recordSize;
+	private final int hashStart;
+	private final int heapStart;
+
+	private EpisodeCatalog(Path file) throws IOException {
+		this.file = file;
+		this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		if (channel.size() > Integer.MAX_VALUE) {
+			channel.close();
+			throw new IOException("Episode catalog " + file + " is too large to map");
+		}
+		this.map = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+		int version = map.getInt(4);
+		if (map.getInt(0) != MAGIC || version < 1 || version > VERSION) {
+			channel.close();
+			throw new IOException(file + " is not an episode catalog");
+		}
+		this.count = map.getInt(8);
+		this.heapStart = map.getInt(12);
+		this.recordSize = version == 1 ? RECORD_SIZE_V1 : version == 2 ? RECORD_SIZE_V2 : RECORD_SIZE;
+		this.hashStart = HEADER_SIZE + count * recordSize;
+	}
+
+	/* ------------------------------------------------------------------------
+	 * ---------------------------PUBLIC METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Writes the given Episodes into a new catalog file, replacing any file
+	 * already there, and opens it. The file is written beside the given path
+	 * and moved over it, so a catalog already open on that path keeps
+	 * reading the old file.
+	 *
+	 * @param file     where the catalog is written.
+	 * @param episodes the Episodes to store. They are written in epNum order.
+	 * @return the opened catalog.
+	 * @throws IOException if the file can not be written.
+	 * @author Todd Noecker
+	 */
+	public static EpisodeCatalog write(Path file, Collection<Episode> episodes) throws IOException {
+		List<Episode> sorted = new ArrayList<Episode>(episodes);
+		sorted.sort(null);
+		int n = sorted.size();
+		long heapStart = HEADER_SIZE + (long) n * (RECORD_SIZE + HASH_ENTRY_SIZE);
+		if (heapStart > Integer.MAX_VALUE) {
+			throw new IOException("Too many episodes for one catalog: " + n);
+		}
+		// (offset, length) for title, description, link, guid and type of each record.
+		int[] spans = new int[n * STRINGS * 2];
+
+		Path temp = file.resolveSibling(file.getFileName() + TEMP);
+		try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			// Write the string heap first so record offsets are known.
+			HeapWriter heap = new HeapWriter(out, heapStart);
+			for (int i = 0; i < n; i++) {
+				Episode ep = sorted.get(i);
+				URI link = ep.getLink();
+				int at = i * STRINGS * 2;
+				heap.add(ep.getTitle(), spans, at);
+				heap.add(ep.getDescription(), spans, at + 2);
+				heap.add(link == null ? null : link.toString(), spans, at + 4);
+				heap.add(ep.getGuid(), spans, at + 6);
+				heap.add(ep.getEnclosureType(), spans, at + 8);
+			}
+			heap.flush();
+
+			ByteBuffer index = ByteBuffer.allocate((int) heapStart);
+			index.putInt(MAGIC).putInt(VERSION).putInt(n).putInt((int) heapStart);
+			long[] hashes = new long[n];
+			for (int i = 0; i < n; i++) {
+				Episode ep = sorted.get(i);
+				int at = i * STRINGS * 2;
+				index.putInt(ep.getEpNum());
+				for (int j = 0; j < 6; j++) {
+					index.putInt(spans[at + j]);
+				}
+				index.putLong(ep.getCurTimeMillis());
+				index.putLong(ep.getPublishedMillis());
+				index.putLong(ep.getEnclosureLength());
+				index.putInt(ep.getDurationSeconds());
+				for (int j = 6; j < 10; j++) {
+					index.putInt(spans[at + j]);
+				}
+				index.putLong(ep.getLastPlayedMillis());
+				// Pack hash and record number so one sort orders the hash index.
+				hashes[i] = ((long) hashOf(ep.getTitle()) << 32) | (i & 0xFFFFFFFFL);
+			}
+			Arrays.sort(hashes);
+			for (long entry : hashes) {
+				index.putInt((int) (entry >> 32)).putInt((int) entry);
+			}
+			index.flip();
+			while (index.hasRemaining()) {
+				out.write(index, index.position());
+			}
+			out.force(true);
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return open(file);
+	}
+
+	/**
+	 * Opens an existing catalog file.
+	 *
+	 * @param file the catalog to map.
+	 * @return the opened catalog.
+	 * @throws IOException if the file is missing or is not a catalog.
+	 * @author Todd Noecker
+	 */
+	public static EpisodeCatalog open(Path file) throws IOException {
+		return new EpisodeCatalog(file);
+	}
+
+	/**
+	 * Fetches the path of the mapped file.
+	 *
+	 * @return the catalog file.
+	 * @author Todd Noecker
+	 */
+	public Path getFile() {
+		return file;
+	}
+
+	/**
+	 * Fetches the number of Episodes in the catalog.
+	 *
+	 * @return the Episode count.
+	 * @author Todd Noecker
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Returns a flyweight view of the Episode stored at a record.
+	 *
+	 * @param record the record number, in epNum order.
+	 * @param parent the Podcast the Episode belongs to.
+	 * @return a view of the stored Episode.
+	 * @author Todd Noecker
+	 */
+	public Episode get(int record, Podcast parent) {
+		if (record < 0 || record >= count) {
+			throw new IndexOutOfBoundsException("No catalog record " + record);
+		}
+		return new CatalogEpisode(this, record, parent);
+	}
+
+	/**
+	 * Returns every Episode as a list of views in epNum order. Views are made
+	 * as the list is read, so iterating it does not pull the catalog onto the
+	 * heap.
+	 *
+	 * @param parent the Podcast the Episodes belong to.
+	 * @return the Episodes in epNum order.
+	 * @author Todd Noecker
+	 */
+	public List<Episode> episodes(Podcast parent) {
+		return new AbstractList<Episode>() {
+			@Override
+			public Episode get(int index) {
+				return EpisodeCatalog.this.get(index, parent);
+			}
+
+			@Override
+			public int size() {
+				return count;
+			}
+		};
+	}
+
+	/**
+	 * Finds the first record whose epNum is greater than the given one.
+	 * Records are stored in epNum order, so this is a binary search.
+	 *
+	 * @param epNum the epNum to start after.
+	 * @return the first later record, or size() if there is none.
+	 * @author Todd Noecker
+	 */
+	public int recordAfter(int epNum) {
+		int lo = 0;
+		int hi = count;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (map.getInt(recordStart(mid) + EP_NUM) <= epNum) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Finds an Episode by its title using the hash index.
+	 *
+	 * @param title  the title to look for.
+	 * @param parent the Podcast the Episode belongs to.
+	 * @return a view of the Episode, or null if no record has that title.
+	 * @author Todd Noecker
+	 */
+	public Episode find(String title, Podcast parent) {
+		if (title == null) {
+			return null;
+		}
+		int hash = hashOf(title);
+		int lo = 0;
+		int hi = count - 1;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (map.getInt(hashStart + mid * HASH_ENTRY_SIZE) < hash) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		// Titles are unique per Podcast, but hashes may still collide.
+		Episode found = null;
+		for (int i = lo; i < count && map.getInt(hashStart + i * HASH_ENTRY_SIZE) == hash; i++) {
+			int record = map.getInt(hashStart + i * HASH_ENTRY_SIZE + 4);
+			if (title.equals(readString(record, TITLE))) {
+				found = get(record, parent);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Flushes pending position writes and closes the file channel. The
+	 * mapping itself is released once it is no longer reachable.
+	 */
+	@Override
+	public void close() throws IOException {
+		map.force();
+		channel.close();
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PRIVATE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	private int recordStart(int record) {
+		return HEADER_SIZE + record * recordSize;
+	}
+
+	private boolean hasDetails() {
+		return recordSize >= RECORD_SIZE_V2;
+	}
+
+	private boolean hasLastPlayed() {
+		return recordSize == RECORD_SIZE;
+	}
+
+	private String readString(int record, int field) {
+		if (field >= recordSize) {
+			return null;
+		}
+		int base = recordStart(record) + field;
+		int off = map.getInt(base);
+		int len = map.getInt(base + 4);
+		if (len < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[len];
+		ByteBuffer view = map.duplicate();
+		view.position(heapStart + off);
+		view.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static int hashOf(String title) {
+		return title == null ? 0 : title.hashCode();
+	}
+
+	/**
+	 * Streams strings into the heap section of the file and records where
+	 * each one landed.
+	 */
+	private static final class HeapWriter {
+		private final FileChannel out;
+		private final long start;
+		private final ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+		private long written = 0;
+
+		HeapWriter(FileChannel out, long start) {
+			this.out = out;
+			this.start = start;
+		}
+
+		void add(String text, int[] spans, int at) throws IOException {
+			if (text == null) {
+				spans[at] = 0;
+				spans[at + 1] = -1;
+				return;
+			}
+			byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+			if (start + written + bytes.length > Integer.MAX_VALUE) {
+				throw new IOException("Episode catalog text heap exceeds 2 GB");
+			}
+			spans[at] = (int) written;
+			spans[at + 1] = bytes.length;
+			int pos = 0;
+			while (pos < bytes.length) {
+				if (!buf.hasRemaining()) {
+					flush();
+				}
+				int len = Math.min(buf.remaining(), bytes.length - pos);
+				buf.put(bytes, pos, len);
+				pos += len;
+			}
+			written += bytes.length;
+		}
+
+		void flush() throws IOException {
+			buf.flip();
+			long at = start + written - buf.remaining();
+			while (buf.hasRemaining()) {
+				at += out.write(buf, at);
+			}
+			buf.clear();
+		}
+	}
+
+	/**
+	 * A lightweight Episode that reads everything but its epNum from the
+	 * mapped file. Setting the play position writes straight through to the
+	 * catalog.
+	 */
+	private static final class CatalogEpisode extends Episode {
+
+		private static final long serialVersionUID = 2907185526420950398L;
+
+		private final transient EpisodeCatalog catalog;
+		private final int record;
+
+		CatalogEpisode(EpisodeCatalog catalog, int record, Podcast parent) {
+			super(null, null, null, parent, catalog.map.getInt(catalog.recordStart(record) + EP_NUM));
+			this.catalog = catalog;
+			this.record = record;
+		}
+
+		@Override
+		public String getTitle() {
+			return catalog.readString(record, TITLE);
+		}
+
+		@Override
+		public String getDescription() {
+			return catalog.readString(record, DESC);
+		}
+
+		@Override
+		public URI getLink() {
+			String link = catalog.readString(record, LINK);
+			return link == null ? null : URI.create(link);
+		}
+
+		@Override
+		public long getPublishedMillis() {
+			if (!catalog.hasDetails()) {
+				return FeedDates.UNKNOWN;
+			}
+			return catalog.map.getLong(catalog.recordStart(record) + PUBLISHED);
+		}
+
+		@Override
+		public int getDurationSeconds() {
+			return catalog.hasDetails() ? catalog.map.getInt(catalog.recordStart(record) + DURATION) : 0;
+		}
+
+		@Override
+		public String getGuid() {
+			return catalog.readString(record, GUID);
+		}
+
+		@Override
+		public long getEnclosureLength() {
+			return catalog.hasDetails() ? catalog.map.getLong(catalog.recordStart(record) + LENGTH) : 0;
+		}
+
+		@Override
+		public String getEnclosureType() {
+			return catalog.readString(record, TYPE);
+		}
+
+		@Override
+		public void setCurTimeMillis(long curMillis) {
+			long before = getCurTimeMillis();
+			catalog.map.putLong(catalog.recordStart(record) + CUR_MILLIS, curMillis < 0 ? -1 : curMillis);
+			markPlayed();
+			if (getPodcast() != null) {
+				getPodcast().positionChanged(this, before);
+			}
+		}
+
+		@Override
+		public long getCurTimeMillis() {
+			return catalog.map.getLong(catalog.recordStart(record) + CUR_MILLIS);
+		}
+
+		@Override
+		void markPlayed() {
+			if (catalog.hasLastPlayed()) {
+				catalog.map.putLong(catalog.recordStart(record) + LAST_PLAYED, System.currentTimeMillis());
+			}
+		}
+
+		@Override
+		public long getLastPlayedMillis() {
+			return catalog.hasLastPlayed() ? catalog.map.getLong(catalog.recordStart(record) + LAST_PLAYED) : 0;
+		}
+
+		/**
+		 * Views are tied to an open mapping, so a detached copy is written in
+		 * their place when serialized.
+		 */
+		private Object writeReplace() {
+			Episode copy = new Episode(getTitle(), getDescription(), getLink(), getPodcast(), getEpNum());
+			copy.restoreCurTimeMillis(getCurTimeMillis());
+			copy.restoreLastPlayedMillis(getLastPlayedMillis());
+			copy.setFeedDetails(getPublishedMillis(), getDurationSeconds(), getGuid(), getEnclosureLength(),
+					getEnclosureType());
+			return copy;
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package model;
+
+/**
+ * Selects which Episodes a page of Episodes holds.
+ *
+ * @author Todd Noecker
+ */
+public enum EpisodeFilter {
+
+	/**
+	 * Every Episode.
+	 */
+	ALL,
+
+	/**
+	 * Episodes that have never been played.
+	 */
+	UNPLAYED,
+
+	/**
+	 * Episodes with a saved play position, short of the end.
+	 */
+	IN_PROGRESS
+}
@@ -0,0 +1,21 @@
+package model;
+
+/**
+ * Selects the order a page of Episodes is listed in.
+ *
+ * @author Todd Noecker
+ */
+public enum EpisodeOrder {
+
+	/**
+	 * By epNum, which is the order the feed lists its items in, newest
+	 * first for almost every feed.
+	 */
+	FEED,
+
+	/**
+	 * By publish date, newest first. Episodes with no date come last, in
+	 * epNum order.
+	 */
+	NEWEST
+}
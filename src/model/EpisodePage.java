@@ -0,0 +1,149 @@
+package model;
+
+import java.util.Collections;
+import java.util.List;
+
+import model.PodcastPlayerModel.Episode;
+
+/**
+ * One page of a Podcast's Episodes and the cursor for the page after it.
+ *
+ * A cursor names the last Episode of a page rather than a position, so
+ *  pages stay stable when a refresh adds Episodes ahead of them. Cursors
+ *  are opaque to callers; pass back the one a page gave out to get the
+ *  next page.
+ *
+ * @author Todd Noecker
+ */
+public final class EpisodePage {
+
+	private static final String EP_NUM_CURSOR = "n:";
+	private static final String PUBLISHED_CURSOR = "p:";
+
+	private final List<Episode> episodes;
+	private final String nextCursor;
+
+	/**
+	 * Creates a page.
+	 *
+	 * @param episodes   the Episodes on the page, in order.
+	 * @param nextCursor the cursor for the next page, or null if this is the
+	 *                   last one.
+	 * @author Todd Noecker
+	 */
+	EpisodePage(List<Episode> episodes, String nextCursor) {
+		this.episodes = Collections.unmodifiableList(episodes);
+		this.nextCursor = nextCursor;
+	}
+
+	/* ------------------------------------------------------------------------
+	 * ---------------------------PUBLIC METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Fetches the Episodes on this page.
+	 *
+	 * @return the Episodes, in order.
+	 * @author Todd Noecker
+	 */
+	public List<Episode> getEpisodes() {
+		return episodes;
+	}
+
+	/**
+	 * Fetches the cursor for the page after this one.
+	 *
+	 * @return the next cursor, or null if this is the last page.
+	 * @author Todd Noecker
+	 */
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	/**
+	 * Reports whether there is a page after this one.
+	 *
+	 * @return true if getNextCursor is not null.
+	 * @author Todd Noecker
+	 */
+	public boolean hasMore() {
+		return nextCursor != null;
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PACKAGE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Makes the cursor that continues after an Episode in epNum order.
+	 *
+	 * @param last the last Episode of a page.
+	 * @return the cursor.
+	 * @author Todd Noecker
+	 */
+	static String cursorAfter(Episode last) {
+		return EP_NUM_CURSOR + last.getEpNum();
+	}
+
+	/**
+	 * Makes the cursor that continues after an Episode in publish date
+	 * order.
+	 *
+	 * @param last the last Episode of a page.
+	 * @return the cursor.
+	 * @author Todd Noecker
+	 */
+	static String publishedCursorAfter(Episode last) {
+		return PUBLISHED_CURSOR + last.getPublishedMillis() + ":" + last.getEpNum();
+	}
+
+	/**
+	 * Reads the epNum a cursor continues after.
+	 *
+	 * @param cursor a cursor from cursorAfter, or null for the first page.
+	 * @return the epNum, or null for the first page.
+	 * @throws IllegalArgumentException if the cursor was not made here.
+	 * @author Todd Noecker
+	 */
+	static Integer epNumAfter(String cursor) {
+		if (cursor == null) {
+			return null;
+		}
+		if (cursor.startsWith(EP_NUM_CURSOR)) {
+			try {
+				return Integer.valueOf(cursor.substring(EP_NUM_CURSOR.length()));
+			} catch (NumberFormatException ex) {
+				// Falls through to the error below.
+			}
+		}
+		throw new IllegalArgumentException("Bad episode cursor " + cursor);
+	}
+
+	/**
+	 * Reads the publish date and epNum a publish date cursor continues
+	 * after.
+	 *
+	 * @param cursor a cursor from publishedCursorAfter, or null for the
+	 *               first page.
+	 * @return the date and the epNum, or null for the first page.
+	 * @throws IllegalArgumentException if the cursor was not made here.
+	 * @author Todd Noecker
+	 */
+	static long[] publishedAfter(String cursor) {
+		if (cursor == null) {
+			return null;
+		}
+		int split = cursor.indexOf(':', PUBLISHED_CURSOR.length());
+		if (cursor.startsWith(PUBLISHED_CURSOR) && split != -1) {
+			try {
+				return new long[] { Long.parseLong(cursor.substring(PUBLISHED_CURSOR.length(), split)),
+						Integer.parseInt(cursor.substring(split + 1)) };
+			} catch (NumberFormatException ex) {
+				// Falls through to the error below.
+			}
+		}
+		throw new IllegalArgumentException("Bad episode cursor " + cursor);
+	}
+}
@@ -0,0 +1,108 @@
+package model;
+
+import model.PodcastPlayerModel.Episode;
+
+/**
+ * Asks a library store for Episodes across its Podcasts, such as the
+ * unplayed Episodes published in the last week. Matches come back newest
+ * first.
+ *
+ * @author Todd Noecker
+ */
+public final class EpisodeQuery {
+
+	private final String podcastKey;
+	private final long publishedSince;
+	private final EpisodeFilter filter;
+	private final int limit;
+
+	/**
+	 * Creates a query.
+	 *
+	 * @param podcastKey     the library key of the one Podcast to search, or
+	 *                       null for every Podcast.
+	 * @param publishedSince the earliest publish date in epoch milliseconds,
+	 *                       or 0 for any date, undated Episodes included.
+	 * @param filter         which play states to include.
+	 * @param limit          the most Episodes to return.
+	 * @author Todd Noecker
+	 */
+	public EpisodeQuery(String podcastKey, long publishedSince, EpisodeFilter filter, int limit) {
+		if (filter == null) {
+			throw new IllegalArgumentException("Episode filter is required");
+		}
+		if (limit < 1) {
+			throw new IllegalArgumentException("Query limit must be at least 1");
+		}
+		this.podcastKey = podcastKey;
+		this.publishedSince = Math.max(publishedSince, 0);
+		this.filter = filter;
+		this.limit = limit;
+	}
+
+	/* ------------------------------------------------------------------------
+	 * ---------------------------PUBLIC METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Fetches the library key of the Podcast searched.
+	 *
+	 * @return the key, or null if every Podcast is searched.
+	 * @author Todd Noecker
+	 */
+	public String getPodcastKey() {
+		return podcastKey;
+	}
+
+	/**
+	 * Fetches the earliest publish date matched.
+	 *
+	 * @return the date in epoch milliseconds, or 0 for any date.
+	 * @author Todd Noecker
+	 */
+	public long getPublishedSince() {
+		return publishedSince;
+	}
+
+	/**
+	 * Fetches which play states are matched.
+	 *
+	 * @return the filter.
+	 * @author Todd Noecker
+	 */
+	public EpisodeFilter getFilter() {
+		return filter;
+	}
+
+	/**
+	 * Fetches the most Episodes returned.
+	 *
+	 * @return the limit.
+	 * @author Todd Noecker
+	 */
+	public int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Checks one Episode against the query's date and play state, for
+	 * stores that search by scanning.
+	 *
+	 * @param ep the Episode.
+	 * @return true if it matches.
+	 * @author Todd Noecker
+	 */
+	public boolean matches(Episode ep) {
+		if (publishedSince > 0 && ep.getPublishedMillis() < publishedSince) {
+			return false;
+		}
+		if (filter == EpisodeFilter.UNPLAYED) {
+			return ep.getCurTimeMillis() < 0;
+		}
+		if (filter == EpisodeFilter.IN_PROGRESS) {
+			return ep.isInProgress();
+		}
+		return true;
+	}
+}
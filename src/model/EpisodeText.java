@@ -0,0 +1,135 @@
+package model;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Packs and unpacks the text stored by compact Episodes.
+ *
+ * Long show notes are kept as deflated UTF-8 bytes and only inflated
+ *  when something actually asks for them. Short text is kept as plain
+ *  UTF-8 bytes since deflating it would only add overhead.
+ *
+ * @author Todd Noecker
+ */
+final class EpisodeText {
+
+	/**
+	 * Text shorter than this many bytes is stored without deflating.
+	 */
+	static final int DEFLATE_THRESHOLD = 256;
+
+	/**
+	 * Marks the first byte of a packed value as deflated or plain.
+	 */
+	private static final byte PLAIN = 0;
+	private static final byte DEFLATED = 1;
+
+	private EpisodeText() {
+	}
+
+	/**
+	 * Packs a String into a byte array. The first byte records whether the
+	 * remaining bytes are deflated.
+	 *
+	 * @param text the text to pack, may be null.
+	 * @return the packed bytes, or null if text was null.
+	 * @author Todd Noecker
+	 */
+	static byte[] pack(String text) {
+		if (text == null) {
+			return null;
+		}
+		byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+		if (raw.length >= DEFLATE_THRESHOLD) {
+			byte[] deflated = deflate(raw);
+			// Only keep the deflated form if it actually saved space.
+			if (deflated.length < raw.length) {
+				return tag(DEFLATED, deflated);
+			}
+		}
+		return tag(PLAIN, raw);
+	}
+
+	/**
+	 * Restores a String from bytes produced by pack.
+	 *
+	 * @param packed the packed bytes, may be null.
+	 * @return the original text, or null if packed was null.
+	 * @author Todd Noecker
+	 */
+	static String unpack(byte[] packed) {
+		if (packed == null) {
+			return null;
+		}
+		if (packed[0] == DEFLATED) {
+			return new String(inflate(packed), StandardCharsets.UTF_8);
+		}
+		return new String(packed, 1, packed.length - 1, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns the canonical copy of a String so repeated values, like the
+	 * same enclosure host or a recurring title, share one instance.
+	 *
+	 * @param text the String to intern, may be null.
+	 * @return the canonical String, or null.
+	 * @author Todd Noecker
+	 */
+	static String intern(String text) {
+		return text == null ? null : text.intern();
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PRIVATE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	private static byte[] tag(byte kind, byte[] body) {
+		byte[] out = new byte[body.length + 1];
+		out[0] = kind;
+		System.arraycopy(body, 0, out, 1, body.length);
+		return out;
+	}
+
+	private static byte[] deflate(byte[] raw) {
+		Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+		try {
+			deflater.setInput(raw);
+			deflater.finish();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2);
+			byte[] chunk = new byte[1024];
+			while (!deflater.finished()) {
+				int len = deflater.deflate(chunk);
+				out.write(chunk, 0, len);
+			}
+			return out.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private static byte[] inflate(byte[] packed) {
+		Inflater inflater = new Inflater(true);
+		try {
+			inflater.setInput(packed, 1, packed.length - 1);
+			ByteArrayOutputStream out = new ByteArrayOutputStream(packed.length * 3);
+			byte[] chunk = new byte[1024];
+			while (!inflater.finished()) {
+				int len = inflater.inflate(chunk);
+				if (len == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				out.write(chunk, 0, len);
+			}
+			return out.toByteArray();
+		} catch (DataFormatException ex) {
+			throw new IllegalStateException("Stored episode text is corrupt", ex);
+		} finally {
+			inflater.end();
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package model;
+
+import java.io.Serializable;
+
+/**
+ * Limits how much work the model will spend on a single RSS feed.
+ *
+ * A feed larger than the size limit is skipped. Parsing stops once the
+ *  item limit or the time limit is reached, keeping the Episodes found so
+ *  far. The lookahead limit bounds how far a single field value is
+ *  searched for its closing tag, so a missing terminator can not drag a
+ *  scan to the end of the document.
+ *
+ * @author Todd Noecker
+ */
+public final class FeedBudget implements Serializable {
+
+	/**
+	 * ID for serialVersionUID
+	 */
+	private static final long serialVersionUID = 6061843305227021856L;
+
+	/**
+	 * The limits used when none are given: 64 MB feeds, 100,000 items,
+	 *  30 seconds of network time, 30 seconds of parsing and 1 MB per field.
+	 */
+	public static final FeedBudget DEFAULT = new FeedBudget(64 * 1024 * 1024, 100000, 30000, 30000, 1024 * 1024);
+
+	private final int maxFeedBytes;
+	private final int maxItems;
+	private final int maxFetchMillis;
+	private final long maxParseMillis;
+	private final int maxLookahead;
+
+	/**
+	 * Creates a budget with the given limits.
+	 *
+	 * @param maxFeedBytes   the largest feed that will be read.
+	 * @param maxItems       the most items parsed from one feed.
+	 * @param maxFetchMillis the connect and read timeout for a feed.
+	 * @param maxParseMillis the most time spent parsing one feed.
+	 * @param maxLookahead   the furthest a field value is scanned for its end.
+	 * @author Todd Noecker
+	 */
+	public FeedBudget(int maxFeedBytes, int maxItems, int maxFetchMillis, long maxParseMillis, int maxLookahead) {
+		if (maxFeedBytes <= 0 || maxItems <= 0 || maxFetchMillis < 0 || maxParseMillis <= 0 || maxLookahead <= 0) {
+			throw new IllegalArgumentException("Feed budget limits must be positive");
+		}
+		this.maxFeedBytes = maxFeedBytes;
+		this.maxItems = maxItems;
+		this.maxFetchMillis = maxFetchMillis;
+		this.maxParseMillis = maxParseMillis;
+		this.maxLookahead = maxLookahead;
+	}
+
+	/**
+	 * Fetches the largest feed, in bytes, that will be read.
+	 * 
+	 * @return the largest feed, in bytes, that will be read.
+	 * @author Todd Noecker
+	 */
+	public int getMaxFeedBytes() {
+		return maxFeedBytes;
+	}
+
+	/**
+	 * Fetches the most items parsed from one feed.
+	 * 
+	 * @return the most items parsed from one feed.
+	 * @author Todd Noecker
+	 */
+	public int getMaxItems() {
+		return maxItems;
+	}
+
+	/**
+	 * Fetches the connect and read timeout for a feed in milliseconds.
+	 * 
+	 * @return the connect and read timeout for a feed in milliseconds.
+	 * @author Todd Noecker
+	 */
+	public int getMaxFetchMillis() {
+		return maxFetchMillis;
+	}
+
+	/**
+	 * Fetches the most time spent parsing one feed in milliseconds.
+	 * 
+	 * @return the most time spent parsing one feed in milliseconds.
+	 * @author Todd Noecker
+	 */
+	public long getMaxParseMillis() {
+		return maxParseMillis;
+	}
+
+	/**
+	 * Fetches the furthest a field value is scanned for its closing tag.
+	 * 
+	 * @return the furthest a field value is scanned for its closing tag.
+	 * @author Todd Noecker
+	 */
+	public int getMaxLookahead() {
+		return maxLookahead;
+	}
+}
@@ -0,0 +1,532 @@
+package model;
+
+/**
+ * Reads the publish dates and durations found in feeds, straight from the
+ * feed text and without allocating.
+ *
+ * Dates may be RFC 822, as RSS asks for, or the RFC 3339 form some feeds
+ *  use instead. The variants common in real feeds are accepted too: full,
+ *  missing or comma-less day names, full or lower-case month names, the
+ *  month before the day, dashes between the date fields, two-digit years,
+ *  missing seconds, times or zones, fractional seconds, named zones and
+ *  "+HH:MM" offsets. Anything that is not a real date reads as UNKNOWN
+ *  rather than as a guess.
+ *
+ * DateTimeFormatter does the same job for the strict forms, but it builds
+ *  several objects per date, which shows when a back catalog holds tens of
+ *  thousands of items.
+ *
+ * @author Todd Noecker
+ */
+public final class FeedDates {
+
+	/**
+	 * The value of a date or duration that is missing or can not be read.
+	 *  The epoch itself is only ever a placeholder in feeds, so it doubles
+	 *  as the marker, and undated Episodes sort after dated ones.
+	 */
+	public static final long UNKNOWN = 0L;
+
+	private static final int BAD_ZONE = Integer.MIN_VALUE;
+
+	private FeedDates() {
+	}
+
+	/* ------------------------------------------------------------------------
+	 * ---------------------------PUBLIC METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Reads a whole string as a date.
+	 *
+	 * @param text the date text.
+	 * @return the date in milliseconds since the epoch, or UNKNOWN.
+	 * @author Todd Noecker
+	 */
+	public static long parseDate(CharSequence text) {
+		return text == null ? UNKNOWN : parseDate(text, 0, text.length());
+	}
+
+	/**
+	 * Reads part of a feed as a date. Surrounding white space and a CDATA
+	 * wrapper are ignored.
+	 *
+	 * @param text the feed text.
+	 * @param from the first character of the date.
+	 * @param to   one past the last character of the date.
+	 * @return the date in milliseconds since the epoch, or UNKNOWN.
+	 * @author Todd Noecker
+	 */
+	public static long parseDate(CharSequence text, int from, int to) {
+		from = trimStart(text, from, to);
+		to = trimEnd(text, from, to);
+		if (from >= to) {
+			return UNKNOWN;
+		}
+		if (digits(text, from, to) == 4 && from + 4 < to && text.charAt(from + 4) == '-') {
+			return parseIso(text, from, to);
+		}
+		return parseRfc822(text, from, to);
+	}
+
+	/**
+	 * Reads part of a feed as an itunes:duration: plain seconds, MM:SS or
+	 * HH:MM:SS, with any fraction of a second dropped.
+	 *
+	 * @param text the feed text.
+	 * @param from the first character of the duration.
+	 * @param to   one past the last character of the duration.
+	 * @return the duration in seconds, or 0 if there is none.
+	 * @author Todd Noecker
+	 */
+	public static int parseDuration(CharSequence text, int from, int to) {
+		from = trimStart(text, from, to);
+		to = trimEnd(text, from, to);
+		long total = 0;
+		int groups = 0;
+		int pos = from;
+		while (pos < to) {
+			int n = digits(text, pos, to);
+			// More than nine digits is not a duration any feed means.
+			if (n == 0 || n > 9 || ++groups > 3) {
+				return 0;
+			}
+			int value = number(text, pos, n);
+			if (groups > 1 && value >= 60) {
+				return 0;
+			}
+			total = total * 60 + value;
+			pos += n;
+			if (pos < to && text.charAt(pos) == ':') {
+				pos++;
+			} else if (pos < to && text.charAt(pos) == '.' && digits(text, pos + 1, to) == to - pos - 1) {
+				break;
+			} else if (pos < to) {
+				return 0;
+			}
+		}
+		return total > Integer.MAX_VALUE ? 0 : (int) total;
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PRIVATE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Reads "[Day,] DD Mon YYYY [HH:MM[:SS]] [zone]" and its variants.
+	 */
+	private static long parseRfc822(CharSequence text, int pos, int to) {
+		int len = letters(text, pos, to);
+		if (len > 0 && monthOf(text, pos, len) == 0) {
+			// A day name, which says nothing the date does not.
+			pos = skipSeparators(text, pos + len, to);
+			len = letters(text, pos, to);
+		}
+		int day;
+		int month;
+		int n;
+		if (len > 0) {
+			month = monthOf(text, pos, len);
+			pos = skipSeparators(text, pos + len, to);
+			n = digits(text, pos, to);
+			if (n < 1 || n > 2) {
+				return UNKNOWN;
+			}
+			day = number(text, pos, n);
+			pos = skipSeparators(text, pos + n, to);
+		} else {
+			n = digits(text, pos, to);
+			if (n < 1 || n > 2) {
+				return UNKNOWN;
+			}
+			day = number(text, pos, n);
+			pos = skipSeparators(text, pos + n, to);
+			len = letters(text, pos, to);
+			month = monthOf(text, pos, len);
+			pos = skipSeparators(text, pos + len, to);
+		}
+		if (month == 0) {
+			return UNKNOWN;
+		}
+
+		n = digits(text, pos, to);
+		int year;
+		if (n == 4) {
+			year = number(text, pos, 4);
+		} else if (n == 2) {
+			// As RFC 2822 reads two-digit years.
+			year = number(text, pos, 2);
+			year += year < 50 ? 2000 : 1900;
+		} else {
+			return UNKNOWN;
+		}
+		pos = skipSpaces(text, pos + n, to);
+
+		int hour = 0;
+		int minute = 0;
+		int second = 0;
+		n = digits(text, pos, to);
+		if (n > 0) {
+			if (n > 2 || pos + n >= to || text.charAt(pos + n) != ':') {
+				return UNKNOWN;
+			}
+			hour = number(text, pos, n);
+			pos += n + 1;
+			if (digits(text, pos, to) != 2) {
+				return UNKNOWN;
+			}
+			minute = number(text, pos, 2);
+			pos += 2;
+			if (pos < to && text.charAt(pos) == ':') {
+				if (digits(text, pos + 1, to) != 2) {
+					return UNKNOWN;
+				}
+				second = number(text, pos + 1, 2);
+				pos += 3;
+				pos = skipFraction(text, pos, to);
+			}
+			pos = skipSpaces(text, pos, to);
+			len = letters(text, pos, to);
+			if (len == 2 && (text.charAt(pos + 1) | 0x20) == 'm') {
+				// A 12-hour clock, as in "10:00 PM".
+				char half = (char) (text.charAt(pos) | 0x20);
+				if ((half != 'a' && half != 'p') || hour < 1 || hour > 12) {
+					return UNKNOWN;
+				}
+				hour = hour % 12 + (half == 'p' ? 12 : 0);
+				pos = skipSpaces(text, pos + 2, to);
+			}
+		}
+
+		int offset = pos < to ? zone(text, pos, to) : 0;
+		if (offset == BAD_ZONE) {
+			return UNKNOWN;
+		}
+		return toMillis(year, month, day, hour, minute, second, offset);
+	}
+
+	/**
+	 * Reads "YYYY-MM-DD[(T| )HH:MM[:SS[.fff]]][Z|+HH:MM|+HHMM]".
+	 */
+	private static long parseIso(CharSequence text, int pos, int to) {
+		int year = number(text, pos, 4);
+		pos += 5;
+		if (digits(text, pos, to) != 2 || pos + 2 >= to || text.charAt(pos + 2) != '-') {
+			return UNKNOWN;
+		}
+		int month = number(text, pos, 2);
+		pos += 3;
+		if (digits(text, pos, to) != 2) {
+			return UNKNOWN;
+		}
+		int day = number(text, pos, 2);
+		pos += 2;
+
+		int hour = 0;
+		int minute = 0;
+		int second = 0;
+		if (pos < to) {
+			char sep = text.charAt(pos);
+			if (sep != 'T' && sep != 't' && sep != ' ') {
+				return UNKNOWN;
+			}
+			pos++;
+			if (digits(text, pos, to) != 2 || pos + 2 >= to || text.charAt(pos + 2) != ':'
+					|| digits(text, pos + 3, to) != 2) {
+				return UNKNOWN;
+			}
+			hour = number(text, pos, 2);
+			minute = number(text, pos + 3, 2);
+			pos += 5;
+			if (pos < to && text.charAt(pos) == ':') {
+				if (digits(text, pos + 1, to) != 2) {
+					return UNKNOWN;
+				}
+				second = number(text, pos + 1, 2);
+				pos += 3;
+				pos = skipFraction(text, pos, to);
+			}
+			pos = skipSpaces(text, pos, to);
+		}
+
+		int offset = pos < to ? zone(text, pos, to) : 0;
+		if (offset == BAD_ZONE) {
+			return UNKNOWN;
+		}
+		return toMillis(year, month, day, hour, minute, second, offset);
+	}
+
+	/**
+	 * Reads a zone as minutes east of UTC. Named zones that are not known
+	 * are taken as UTC, as RFC 2822 asks for military zones, since the date
+	 * is still right to within a day.
+	 *
+	 * @return the offset, or BAD_ZONE.
+	 */
+	private static int zone(CharSequence text, int pos, int to) {
+		int offset = 0;
+		int len = letters(text, pos, to);
+		if (len > 0) {
+			offset = namedZone(text, pos, len);
+			pos += len;
+			// As in "GMT+0200" or "UTC-5".
+			if (pos >= to || (text.charAt(pos) != '+' && text.charAt(pos) != '-')) {
+				return offset;
+			}
+		}
+		char sign = text.charAt(pos);
+		if (sign != '+' && sign != '-') {
+			// Something after the date that is not a zone, such as "(UTC)".
+			return sign == '(' ? offset : BAD_ZONE;
+		}
+		pos++;
+		int n = digits(text, pos, to);
+		int hours;
+		int minutes = 0;
+		if (n == 4) {
+			hours = number(text, pos, 2);
+			minutes = number(text, pos + 2, 2);
+		} else if (n == 1 || n == 2) {
+			hours = number(text, pos, n);
+			if (pos + n < to && text.charAt(pos + n) == ':') {
+				if (digits(text, pos + n + 1, to) != 2) {
+					return BAD_ZONE;
+				}
+				minutes = number(text, pos + n + 1, 2);
+			}
+		} else {
+			return BAD_ZONE;
+		}
+		if (hours > 18 || minutes > 59) {
+			return BAD_ZONE;
+		}
+		int minutesEast = hours * 60 + minutes;
+		return sign == '-' ? -minutesEast : minutesEast;
+	}
+
+	/**
+	 * Looks up the zone names feeds use, ignoring case.
+	 */
+	private static int namedZone(CharSequence text, int pos, int len) {
+		if (len > 4) {
+			return 0;
+		}
+		int key = 0;
+		for (int i = 0; i < len; i++) {
+			key = (key << 8) | (text.charAt(pos + i) | 0x20);
+		}
+		switch (key) {
+		case ('e' << 16) | ('s' << 8) | 't':
+			return -5 * 60;
+		case ('e' << 16) | ('d' << 8) | 't':
+			return -4 * 60;
+		case ('c' << 16) | ('s' << 8) | 't':
+			return -6 * 60;
+		case ('c' << 16) | ('d' << 8) | 't':
+			return -5 * 60;
+		case ('m' << 16) | ('s' << 8) | 't':
+			return -7 * 60;
+		case ('m' << 16) | ('d' << 8) | 't':
+			return -6 * 60;
+		case ('p' << 16) | ('s' << 8) | 't':
+			return -8 * 60;
+		case ('p' << 16) | ('d' << 8) | 't':
+			return -7 * 60;
+		case ('b' << 16) | ('s' << 8) | 't':
+		case ('c' << 16) | ('e' << 8) | 't':
+			return 60;
+		case ('c' << 24) | ('e' << 16) | ('s' << 8) | 't':
+		case ('e' << 16) | ('e' << 8) | 't':
+			return 2 * 60;
+		case ('e' << 24) | ('e' << 16) | ('s' << 8) | 't':
+			return 3 * 60;
+		case ('j' << 16) | ('s' << 8) | 't':
+			return 9 * 60;
+		case ('a' << 24) | ('e' << 16) | ('s' << 8) | 't':
+			return 10 * 60;
+		case ('a' << 24) | ('e' << 16) | ('d' << 8) | 't':
+			return 11 * 60;
+		default:
+			// UT, UTC, GMT, Z and names that are not known.
+			return 0;
+		}
+	}
+
+	/**
+	 * Reads a month from the first three letters of its name, ignoring case.
+	 *
+	 * @return the month from 1 to 12, or 0 if the word is not a month.
+	 */
+	private static int monthOf(CharSequence text, int pos, int len) {
+		if (len < 3) {
+			return 0;
+		}
+		int key = ((text.charAt(pos) | 0x20) << 16) | ((text.charAt(pos + 1) | 0x20) << 8)
+				| (text.charAt(pos + 2) | 0x20);
+		switch (key) {
+		case ('j' << 16) | ('a' << 8) | 'n':
+			return 1;
+		case ('f' << 16) | ('e' << 8) | 'b':
+			return 2;
+		case ('m' << 16) | ('a' << 8) | 'r':
+			return 3;
+		case ('a' << 16) | ('p' << 8) | 'r':
+			return 4;
+		case ('m' << 16) | ('a' << 8) | 'y':
+			return 5;
+		case ('j' << 16) | ('u' << 8) | 'n':
+			return 6;
+		case ('j' << 16) | ('u' << 8) | 'l':
+			return 7;
+		case ('a' << 16) | ('u' << 8) | 'g':
+			return 8;
+		case ('s' << 16) | ('e' << 8) | 'p':
+			return 9;
+		case ('o' << 16) | ('c' << 8) | 't':
+			return 10;
+		case ('n' << 16) | ('o' << 8) | 'v':
+			return 11;
+		case ('d' << 16) | ('e' << 8) | 'c':
+			return 12;
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * Checks the fields and turns them into milliseconds since the epoch.
+	 */
+	private static long toMillis(int year, int month, int day, int hour, int minute, int second, int offset) {
+		if (month < 1 || month > 12 || day < 1 || day > daysIn(year, month) || minute > 59 || second > 60) {
+			return UNKNOWN;
+		}
+		if (hour > 23 && !(hour == 24 && minute == 0 && second == 0)) {
+			return UNKNOWN;
+		}
+		// A leap second is kept in the minute it ends.
+		second = Math.min(second, 59);
+		long seconds = epochDay(year, month, day) * 86400L + hour * 3600L + minute * 60L + second - offset * 60L;
+		return seconds * 1000;
+	}
+
+	/**
+	 * Counts the days from 1970-01-01 to a date in the proleptic Gregorian
+	 * calendar.
+	 */
+	private static long epochDay(int year, int month, int day) {
+		long y = month <= 2 ? year - 1 : year;
+		long era = (y >= 0 ? y : y - 399) / 400;
+		long yearOfEra = y - era * 400;
+		long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+
+	private static int daysIn(int year, int month) {
+		switch (month) {
+		case 2:
+			boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+			return leap ? 29 : 28;
+		case 4:
+		case 6:
+		case 9:
+		case 11:
+			return 30;
+		default:
+			return 31;
+		}
+	}
+
+	private static int trimStart(CharSequence text, int from, int to) {
+		while (from < to && text.charAt(from) <= ' ') {
+			from++;
+		}
+		if (startsWith(text, from, to, "<![CDATA[")) {
+			from += 9;
+			while (from < to && text.charAt(from) <= ' ') {
+				from++;
+			}
+		}
+		return from;
+	}
+
+	private static int trimEnd(CharSequence text, int from, int to) {
+		while (to > from && text.charAt(to - 1) <= ' ') {
+			to--;
+		}
+		if (to - from >= 3 && text.charAt(to - 1) == '>' && text.charAt(to - 2) == ']' && text.charAt(to - 3) == ']') {
+			to -= 3;
+			while (to > from && text.charAt(to - 1) <= ' ') {
+				to--;
+			}
+		}
+		return to;
+	}
+
+	private static boolean startsWith(CharSequence text, int from, int to, String prefix) {
+		if (to - from < prefix.length()) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length(); i++) {
+			if (text.charAt(from + i) != prefix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int skipSeparators(CharSequence text, int pos, int to) {
+		while (pos < to) {
+			char c = text.charAt(pos);
+			if (c != ' ' && c != ',' && c != '.' && c != '-' && c != '/' && c != '\t') {
+				break;
+			}
+			pos++;
+		}
+		return pos;
+	}
+
+	private static int skipSpaces(CharSequence text, int pos, int to) {
+		while (pos < to && (text.charAt(pos) == ' ' || text.charAt(pos) == '\t' || text.charAt(pos) == ',')) {
+			pos++;
+		}
+		return pos;
+	}
+
+	private static int skipFraction(CharSequence text, int pos, int to) {
+		if (pos < to && (text.charAt(pos) == '.' || text.charAt(pos) == ',')) {
+			pos += 1 + digits(text, pos + 1, to);
+		}
+		return pos;
+	}
+
+	private static int digits(CharSequence text, int pos, int to) {
+		int n = 0;
+		while (pos + n < to && text.charAt(pos + n) >= '0' && text.charAt(pos + n) <= '9') {
+			n++;
+		}
+		return n;
+	}
+
+	private static int letters(CharSequence text, int pos, int to) {
+		int n = 0;
+		while (pos + n < to) {
+			char c = (char) (text.charAt(pos + n) | 0x20);
+			if (c < 'a' || c > 'z') {
+				break;
+			}
+			n++;
+		}
+		return n;
+	}
+
+	private static int number(CharSequence text, int pos, int len) {
+		int value = 0;
+		for (int i = 0; i < len; i++) {
+			value = value * 10 + (text.charAt(pos + i) - '0');
+		}
+		return value;
+	}
+}
@@ -0,0 +1,443 @@
+package model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import model.PodcastPlayerModel.Episode;
+import model.PodcastPlayerModel.Podcast;
+
+/**
+ * Keeps the library in an embedded database reached through JDBC, such as
+ * H2 or SQLite in file mode, with only the most recently used Podcasts on
+ * the heap.
+ *
+ * Each Podcast is stored whole as a serialized row, and each of its
+ *  Episodes as a small row of its own holding the publish date and play
+ *  state, indexed by Podcast, by date and by play state. Searches are
+ *  answered by the database from those rows, and only the Podcasts of the
+ *  Episodes found are read back, so a search costs about its results
+ *  rather than the library.
+ *
+ * Play positions are held in memory until the next search, flush or
+ *  close, and then written in one transaction, so saving a position never
+ *  waits on the disk.
+ *
+ * The JDBC driver for the URL must be on the class path.
+ *
+ * @author Todd Noecker
+ */
+public final class JdbcLibraryStore implements LibraryStore {
+
+	/**
+	 * How many Podcasts are kept on the heap when no number is given.
+	 */
+	public static final int DEFAULT_CACHED_PODCASTS = 64;
+
+	private static final String[] SCHEMA = {
+			"CREATE TABLE IF NOT EXISTS podcast (pkey VARCHAR(2048) PRIMARY KEY, data BLOB NOT NULL)",
+			"CREATE TABLE IF NOT EXISTS episode (pkey VARCHAR(2048) NOT NULL, ep_num INTEGER NOT NULL,"
+					+ " published BIGINT NOT NULL, started SMALLINT NOT NULL, position BIGINT NOT NULL,"
+					+ " PRIMARY KEY (pkey, ep_num))",
+			"CREATE INDEX IF NOT EXISTS episode_by_podcast ON episode (pkey, published)",
+			"CREATE INDEX IF NOT EXISTS episode_by_date ON episode (published)",
+			"CREATE INDEX IF NOT EXISTS episode_by_state ON episode (started, published)" };
+
+	private final Connection connection; // guarded by this
+	private final int cachedPodcasts;
+	private final LinkedHashMap<String, Podcast> cache; // least recently used first, guarded by this
+	private final Object pendingLock = new Object();
+	private Map<Episode, String> pendingPositions = new IdentityHashMap<Episode, String>(); // guarded by pendingLock
+	private Map<String, Podcast> pendingPodcasts = new LinkedHashMap<String, Podcast>(); // guarded by pendingLock
+
+	private JdbcLibraryStore(Connection connection, int cachedPodcasts) {
+		this.connection = connection;
+		this.cachedPodcasts = cachedPodcasts;
+		this.cache = new LinkedHashMap<String, Podcast>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Podcast> eldest) {
+				// An evicted Podcast with unsaved positions is still held by
+				// the pending map until it is written.
+				return size() > JdbcLibraryStore.this.cachedPodcasts;
+			}
+		};
+	}
+
+	/* ------------------------------------------------------------------------
+	 * ---------------------------PUBLIC METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Opens a database, creating the tables and indexes it is missing.
+	 *
+	 * @param url            the JDBC URL, such as jdbc:h2:./podcastLibrary.
+	 * @param cachedPodcasts how many Podcasts to keep on the heap.
+	 * @return the store.
+	 * @throws IOException if the database can not be opened.
+	 * @author Todd Noecker
+	 */
+	public static JdbcLibraryStore open(String url, int cachedPodcasts) throws IOException {
+		if (cachedPodcasts < 1) {
+			throw new IllegalArgumentException("Cached Podcast count must be at least 1");
+		}
+		try {
+			Connection connection = DriverManager.getConnection(url);
+			try (Statement statement = connection.createStatement()) {
+				for (String sql : SCHEMA) {
+					statement.execute(sql);
+				}
+			} catch (SQLException ex) {
+				connection.close();
+				throw ex;
+			}
+			return new JdbcLibraryStore(connection, cachedPodcasts);
+		} catch (SQLException ex) {
+			throw new IOException("Library database " + url + " could not be opened", ex);
+		}
+	}
+
+	@Override
+	public synchronized Podcast get(String key) {
+		Podcast podcast = cache.get(key);
+		if (podcast != null) {
+			return podcast;
+		}
+		boolean full;
+		synchronized (pendingLock) {
+			podcast = pendingPodcasts.get(key);
+			full = pendingPodcasts.size() > cachedPodcasts;
+		}
+		if (full) {
+			// Held back Podcasts count against the heap too.
+			flush();
+		}
+		if (podcast == null) {
+			podcast = read(key);
+		}
+		if (podcast != null) {
+			cache.put(key, podcast);
+		}
+		return podcast;
+	}
+
+	@Override
+	public synchronized Podcast put(String key, Podcast podcast) {
+		Podcast old = get(key);
+		write(key, podcast);
+		cache.put(key, podcast);
+		return old;
+	}
+
+	@Override
+	public synchronized Podcast remove(String key) {
+		Podcast old = get(key);
+		if (old == null) {
+			return null;
+		}
+		forget(key);
+		try {
+			connection.setAutoCommit(false);
+			try {
+				update("DELETE FROM episode WHERE pkey = ?", key);
+				update("DELETE FROM podcast WHERE pkey = ?", key);
+				connection.commit();
+			} catch (SQLException ex) {
+				connection.rollback();
+				throw ex;
+			} finally {
+				connection.setAutoCommit(true);
+			}
+		} catch (SQLException ex) {
+			throw failure("Podcast " + key + " could not be removed", ex);
+		}
+		cache.remove(key);
+		return old;
+	}
+
+	@Override
+	public synchronized void podcastChanged(String key, Podcast podcast) {
+		write(key, podcast);
+		cache.put(key, podcast);
+	}
+
+	@Override
+	public void positionChanged(String key, Episode ep) {
+		synchronized (pendingLock) {
+			pendingPositions.put(ep, key);
+			if (ep.getPodcast() != null) {
+				// The live copy now differs from its row.
+				pendingPodcasts.put(key, ep.getPodcast());
+			}
+		}
+	}
+
+	@Override
+	public synchronized Set<String> keys() {
+		Set<String> keys = new HashSet<String>();
+		try (Statement statement = connection.createStatement();
+				ResultSet rows = statement.executeQuery("SELECT pkey FROM podcast")) {
+			while (rows.next()) {
+				keys.add(rows.getString(1));
+			}
+		} catch (SQLException ex) {
+			throw failure("Podcast keys could not be read", ex);
+		}
+		return keys;
+	}
+
+	@Override
+	public synchronized List<Episode> findEpisodes(EpisodeQuery query) {
+		flush();
+		StringBuilder sql = new StringBuilder("SELECT pkey, ep_num FROM episode WHERE 1 = 1");
+		if (query.getPodcastKey() != null) {
+			sql.append(" AND pkey = ?");
+		}
+		if (query.getPublishedSince() > 0) {
+			sql.append(" AND published >= ?");
+		}
+		if (query.getFilter() != EpisodeFilter.ALL) {
+			sql.append(" AND started = ?");
+		}
+		sql.append(" ORDER BY published DESC, pkey, ep_num");
+
+		List<String> keys = new ArrayList<String>();
+		List<Integer> epNums = new ArrayList<Integer>();
+		try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+			int param = 1;
+			if (query.getPodcastKey() != null) {
+				statement.setString(param++, query.getPodcastKey());
+			}
+			if (query.getPublishedSince() > 0) {
+				statement.setLong(param++, query.getPublishedSince());
+			}
+			if (query.getFilter() != EpisodeFilter.ALL) {
+				statement.setInt(param++, query.getFilter() == EpisodeFilter.IN_PROGRESS ? 1 : 0);
+			}
+			statement.setMaxRows(query.getLimit());
+			try (ResultSet rows = statement.executeQuery()) {
+				while (rows.next()) {
+					keys.add(rows.getString(1));
+					epNums.add(rows.getInt(2));
+				}
+			}
+		} catch (SQLException ex) {
+			throw failure("Episodes could not be searched", ex);
+		}
+
+		List<Episode> found = new ArrayList<Episode>(keys.size());
+		for (int i = 0; i < keys.size(); i++) {
+			Podcast podcast = get(keys.get(i));
+			Episode ep = podcast == null ? null : podcast.episodeAt(epNums.get(i));
+			if (ep != null) {
+				found.add(ep);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Writes the play positions and Podcasts held back since the last
+	 * flush, in one transaction.
+	 *
+	 * @author Todd Noecker
+	 */
+	public synchronized void flush() {
+		Map<Episode, String> positions;
+		Map<String, Podcast> podcasts;
+		synchronized (pendingLock) {
+			if (pendingPositions.isEmpty() && pendingPodcasts.isEmpty()) {
+				return;
+			}
+			positions = pendingPositions;
+			podcasts = pendingPodcasts;
+			pendingPositions = new IdentityHashMap<Episode, String>();
+			pendingPodcasts = new LinkedHashMap<String, Podcast>();
+		}
+		try {
+			connection.setAutoCommit(false);
+			try (PreparedStatement statement = connection
+					.prepareStatement("UPDATE episode SET started = ?, position = ? WHERE pkey = ? AND ep_num = ?")) {
+				for (Map.Entry<Episode, String> entry : positions.entrySet()) {
+					long position = entry.getKey().getCurTimeMillis();
+					statement.setInt(1, started(position));
+					statement.setLong(2, position);
+					statement.setString(3, entry.getValue());
+					statement.setInt(4, entry.getKey().getEpNum());
+					statement.addBatch();
+				}
+				statement.executeBatch();
+				for (Map.Entry<String, Podcast> entry : podcasts.entrySet()) {
+					writePodcast(entry.getKey(), entry.getValue());
+				}
+				connection.commit();
+			} catch (SQLException | IOException ex) {
+				connection.rollback();
+				synchronized (pendingLock) {
+					// Kept for the next flush, behind anything newer.
+					positions.putAll(pendingPositions);
+					podcasts.putAll(pendingPodcasts);
+					pendingPositions = positions;
+					pendingPodcasts = podcasts;
+				}
+				throw ex;
+			} finally {
+				connection.setAutoCommit(true);
+			}
+		} catch (SQLException ex) {
+			throw failure("Play positions could not be saved", ex);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			flush();
+			connection.close();
+		} catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		} catch (SQLException ex) {
+			throw new IOException("Library database could not be closed", ex);
+		}
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PRIVATE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Encodes a play position as the play state searches select on: 0 for
+	 * unplayed, 1 for in progress and 2 for played to the end.
+	 */
+	private static int started(long position) {
+		return position < 0 ? 0 : position == Episode.FINISHED ? 2 : 1;
+	}
+
+	/**
+	 * Replaces a Podcast's row and its Episode rows in one transaction.
+	 */
+	private void write(String key, Podcast podcast) {
+		forget(key);
+		try {
+			connection.setAutoCommit(false);
+			try {
+				writePodcast(key, podcast);
+				writeEpisodes(key, podcast);
+				connection.commit();
+			} catch (SQLException | IOException ex) {
+				connection.rollback();
+				throw ex;
+			} finally {
+				connection.setAutoCommit(true);
+			}
+		} catch (SQLException ex) {
+			throw failure("Podcast " + key + " could not be saved", ex);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	/**
+	 * Replaces a Podcast's row with its serialized form. The Podcast is only
+	 * locked while it is copied into memory.
+	 */
+	private void writePodcast(String key, Podcast podcast) throws SQLException, IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		synchronized (podcast) {
+			try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+				out.writeObject(podcast);
+			}
+		}
+		update("DELETE FROM podcast WHERE pkey = ?", key);
+		try (PreparedStatement statement = connection.prepareStatement("INSERT INTO podcast VALUES (?, ?)")) {
+			statement.setString(1, key);
+			statement.setBytes(2, bytes.toByteArray());
+			statement.executeUpdate();
+		}
+	}
+
+	/**
+	 * Replaces a Podcast's Episode rows in one batch.
+	 */
+	private void writeEpisodes(String key, Podcast podcast) throws SQLException {
+		update("DELETE FROM episode WHERE pkey = ?", key);
+		try (PreparedStatement statement = connection.prepareStatement("INSERT INTO episode VALUES (?, ?, ?, ?, ?)")) {
+			for (Episode ep : podcast.getEpisodes()) {
+				long position = ep.getCurTimeMillis();
+				statement.setString(1, key);
+				statement.setInt(2, ep.getEpNum());
+				statement.setLong(3, ep.getPublishedMillis());
+				statement.setInt(4, started(position));
+				statement.setLong(5, position);
+				statement.addBatch();
+			}
+			statement.executeBatch();
+		}
+	}
+
+	/**
+	 * Reads a Podcast back from its row.
+	 *
+	 * @return the Podcast, or null if there is no row.
+	 */
+	private Podcast read(String key) {
+		try (PreparedStatement statement = connection.prepareStatement("SELECT data FROM podcast WHERE pkey = ?")) {
+			statement.setString(1, key);
+			try (ResultSet rows = statement.executeQuery()) {
+				if (!rows.next()) {
+					return null;
+				}
+				try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(rows.getBytes(1)))) {
+					return (Podcast) in.readObject();
+				}
+			}
+		} catch (SQLException ex) {
+			throw failure("Podcast " + key + " could not be read", ex);
+		} catch (IOException | ClassNotFoundException ex) {
+			throw new UncheckedIOException(new IOException("Podcast " + key + " could not be read", ex));
+		}
+	}
+
+	/**
+	 * Drops the held back changes of a Podcast about to be written whole or
+	 * removed.
+	 */
+	private void forget(String key) {
+		synchronized (pendingLock) {
+			pendingPodcasts.remove(key);
+			pendingPositions.values().removeIf(key::equals);
+		}
+	}
+
+	private void update(String sql, String key) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			statement.setString(1, key);
+			statement.executeUpdate();
+		}
+	}
+
+	private static UncheckedIOException failure(String what, SQLException ex) {
+		return new UncheckedIOException(new IOException(what, ex));
+	}
+}
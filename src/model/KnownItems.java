@@ -0,0 +1,201 @@
+package model;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A compact set of the feed items a Podcast has already seen.
+ *
+ * Each item is reduced to a 64-bit key from its GUID, or its enclosure
+ *  link when it has no GUID. The keys are kept in an open-addressing hash
+ *  table of longs, so checking or recording an item costs a probe or two
+ *  whatever the size of the set, and the whole set costs between eleven
+ *  and twenty-two bytes per item.
+ *
+ * The set is saved as a sorted array of its keys, as it always was, and
+ *  the table is built again when it is read back.
+ *
+ * @author Todd Noecker
+ */
+public final class KnownItems implements Serializable {
+
+	/**
+	 * ID for serialVersionUID
+	 */
+	private static final long serialVersionUID = -3129512734624310428L;
+
+	/**
+	 * What the set is saved as: the sorted keys, and how many of them are in
+	 * use.
+	 */
+	private static final ObjectStreamField[] serialPersistentFields = {
+			new ObjectStreamField("keys", long[].class), new ObjectStreamField("size", int.class) };
+
+	private static final int MIN_CAPACITY = 64;
+	private static final long EMPTY = 0; // marks a free slot; the key 0 is held in hasZero
+
+	private transient long[] table; // a power of two long, at most three quarters full
+	private transient boolean hasZero;
+	private transient int size;
+
+	/**
+	 * Creates an empty set.
+	 *
+	 * @author Todd Noecker
+	 */
+	public KnownItems() {
+		table = new long[MIN_CAPACITY];
+	}
+
+	/* ------------------------------------------------------------------------
+	 * ---------------------------PUBLIC METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Reduces part of an item identifier to a 64-bit key, ignoring leading
+	 * and trailing whitespace. Uses FNV-1a so no String needs to be built.
+	 *
+	 * @param id   the text holding the identifier.
+	 * @param from the first character of the identifier.
+	 * @param to   one past its last character.
+	 * @return the key for the identifier.
+	 * @author Todd Noecker
+	 */
+	public static long keyOf(CharSequence id, int from, int to) {
+		while (from < to && id.charAt(from) <= ' ') {
+			from++;
+		}
+		while (to > from && id.charAt(to - 1) <= ' ') {
+			to--;
+		}
+		long hash = 0xcbf29ce484222325L;
+		for (int i = from; i < to; i++) {
+			hash ^= id.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * Checks whether an item key has been seen before.
+	 *
+	 * @param key the item key.
+	 * @return true if the key is in the set.
+	 * @author Todd Noecker
+	 */
+	public synchronized boolean contains(long key) {
+		if (key == EMPTY) {
+			return hasZero;
+		}
+		return table[slotOf(table, key)] == key;
+	}
+
+	/**
+	 * Records an item key.
+	 *
+	 * @param key the item key.
+	 * @return true if the key was not already in the set.
+	 * @author Todd Noecker
+	 */
+	public synchronized boolean add(long key) {
+		if (key == EMPTY) {
+			if (hasZero) {
+				return false;
+			}
+			hasZero = true;
+			size++;
+			return true;
+		}
+		int slot = slotOf(table, key);
+		if (table[slot] == key) {
+			return false;
+		}
+		table[slot] = key;
+		size++;
+		if (size * 4L > table.length * 3L) {
+			grow();
+		}
+		return true;
+	}
+
+	/**
+	 * Fetches how many item keys are in the set.
+	 *
+	 * @return the number of keys.
+	 * @author Todd Noecker
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PRIVATE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Finds the slot holding a key, or the free slot where it would go.
+	 */
+	private static int slotOf(long[] table, long key) {
+		int mask = table.length - 1;
+		// Spreads the key's bits so nearby keys do not cluster.
+		int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+		while (table[slot] != EMPTY && table[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Moves every key into a table twice the size.
+	 */
+	private void grow() {
+		long[] bigger = new long[table.length * 2];
+		for (long key : table) {
+			if (key != EMPTY) {
+				bigger[slotOf(bigger, key)] = key;
+			}
+		}
+		table = bigger;
+	}
+
+	private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+		long[] keys = new long[size];
+		int at = 0;
+		if (hasZero) {
+			keys[at++] = EMPTY;
+		}
+		for (long key : table) {
+			if (key != EMPTY) {
+				keys[at++] = key;
+			}
+		}
+		Arrays.sort(keys);
+		ObjectOutputStream.PutField fields = out.putFields();
+		fields.put("keys", keys);
+		fields.put("size", size);
+		out.writeFields();
+	}
+
+	/**
+	 * Reads the saved keys back into a table. Sets saved before the table
+	 * existed also held a Bloom filter, which is skipped.
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		long[] keys = (long[]) fields.get("keys", null);
+		int saved = fields.get("size", 0);
+		if (keys == null || saved < 0 || saved > keys.length) {
+			throw new IOException("Known items are damaged");
+		}
+		table = new long[MIN_CAPACITY];
+		for (int i = 0; i < saved; i++) {
+			add(keys[i]);
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import model.PodcastPlayerModel.Episode;
+import model.PodcastPlayerModel.Podcast;
+
+/**
+ * Holds a model's Podcasts under their library keys, and answers searches
+ * for Episodes across them.
+ *
+ * The model tells its store about every change: Podcasts stored, removed
+ *  or refreshed, and play positions set. A store may keep everything on
+ *  the heap, or keep only some Podcasts there and answer searches from
+ *  indexes of its own.
+ *
+ * Stores are called from any thread.
+ *
+ * @author Todd Noecker
+ */
+public interface LibraryStore extends Closeable {
+
+	/**
+	 * Fetches the Podcast stored under a key.
+	 *
+	 * @param key the library key.
+	 * @return the Podcast, or null.
+	 * @author Todd Noecker
+	 */
+	Podcast get(String key);
+
+	/**
+	 * Stores a Podcast, replacing any under the same key.
+	 *
+	 * @param key     the library key.
+	 * @param podcast the Podcast.
+	 * @return the Podcast that was replaced, or null.
+	 * @author Todd Noecker
+	 */
+	Podcast put(String key, Podcast podcast);
+
+	/**
+	 * Takes a Podcast out of the store.
+	 *
+	 * @param key the library key.
+	 * @return the Podcast that was stored, or null.
+	 * @author Todd Noecker
+	 */
+	Podcast remove(String key);
+
+	/**
+	 * Records that a stored Podcast gained or replaced Episodes.
+	 *
+	 * @param key     the library key.
+	 * @param podcast the Podcast.
+	 * @author Todd Noecker
+	 */
+	void podcastChanged(String key, Podcast podcast);
+
+	/**
+	 * Records that an Episode's play position was set. Called on every
+	 * save of a position, so it should not wait on a disk.
+	 *
+	 * @param key the library key of the Episode's Podcast.
+	 * @param ep  the Episode.
+	 * @author Todd Noecker
+	 */
+	void positionChanged(String key, Episode ep);
+
+	/**
+	 * Lists the keys of every stored Podcast.
+	 *
+	 * @return a copy of the keys.
+	 * @author Todd Noecker
+	 */
+	Set<String> keys();
+
+	/**
+	 * Finds the Episodes a query matches, newest first. Episodes with the
+	 * same publish date are in key order, then epNum order.
+	 *
+	 * @param query the query.
+	 * @return at most the query's limit of Episodes.
+	 * @author Todd Noecker
+	 */
+	List<Episode> findEpisodes(EpisodeQuery query);
+
+	/**
+	 * Writes anything held back and lets go of the store's resources.
+	 *
+	 * @throws IOException if it can not be written.
+	 * @author Todd Noecker
+	 */
+	@Override
+	void close() throws IOException;
+}
@@ -0,0 +1,128 @@
+package model;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import model.PodcastPlayerModel.Episode;
+
+/**
+ * The library's started Episodes, most recently played first, for a
+ * "continue listening" shelf.
+ *
+ * Each Episode is held as a slot naming its library key and title, in a
+ *  skip list ordered by when it was last played. Setting a play position
+ *  moves the Episode's slot to the front in O(log n), so the shelf is read
+ *  from the head of the list without looking at any other Episode. Slots
+ *  are named rather than holding Episodes, so they stay valid while the
+ *  Episodes move between the heap and a catalog or are read back from a
+ *  library store; slots whose Episode has gone or was replaced are dropped
+ *  when the shelf is read.
+ *
+ * @author Todd Noecker
+ */
+final class ListeningShelf {
+
+	/**
+	 * Most recently played first; ties by key, then title.
+	 */
+	private static final Comparator<Slot> ORDER = Comparator.comparingLong((Slot slot) -> -slot.lastPlayed)
+			.thenComparing((Slot slot) -> slot.key).thenComparing((Slot slot) -> slot.title);
+
+	private final ConcurrentSkipListSet<Slot> slots = new ConcurrentSkipListSet<Slot>(ORDER);
+	private final Map<String, Map<String, Slot>> byKey = new HashMap<String, Map<String, Slot>>(); // guarded by this
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PACKAGE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Puts an Episode on the shelf at the place its last play gives it, or
+	 * takes it off if its position was cleared or it was played to the end.
+	 *
+	 * @param key the library key of the Episode's Podcast.
+	 * @param ep  the Episode whose position was set.
+	 * @author Todd Noecker
+	 */
+	synchronized void played(String key, Episode ep) {
+		Map<String, Slot> shelved = byKey.get(key);
+		Slot old = shelved == null ? null : shelved.remove(ep.getTitle());
+		if (old != null) {
+			slots.remove(old);
+		}
+		if (!ep.isInProgress()) {
+			if (shelved != null && shelved.isEmpty()) {
+				byKey.remove(key);
+			}
+			return;
+		}
+		Slot slot = new Slot(key, ep.getTitle(), ep.getLastPlayedMillis());
+		byKey.computeIfAbsent(key, k -> new HashMap<String, Slot>()).put(slot.title, slot);
+		slots.add(slot);
+	}
+
+	/**
+	 * Puts the started Episodes of a Podcast being added to the library on
+	 * the shelf.
+	 *
+	 * @param key      the library key of their Podcast.
+	 * @param episodes the Podcast's Episodes.
+	 * @author Todd Noecker
+	 */
+	void addAll(String key, Collection<Episode> episodes) {
+		for (Episode ep : episodes) {
+			if (ep.isInProgress()) {
+				played(key, ep);
+			}
+		}
+	}
+
+	/**
+	 * Walks the slots most recently played first, from the head of the skip
+	 * list, so taking a few costs no more than a few. Slots may be dropped
+	 * while the walk goes on.
+	 *
+	 * @return the walk.
+	 * @author Todd Noecker
+	 */
+	Iterator<Slot> newestFirst() {
+		return slots.iterator();
+	}
+
+	/**
+	 * Takes a slot off the shelf whose Episode has gone or moved on.
+	 *
+	 * @param slot the slot.
+	 * @author Todd Noecker
+	 */
+	synchronized void drop(Slot slot) {
+		Map<String, Slot> shelved = byKey.get(slot.key);
+		if (shelved != null && shelved.get(slot.title) == slot) {
+			shelved.remove(slot.title);
+			if (shelved.isEmpty()) {
+				byKey.remove(slot.key);
+			}
+		}
+		slots.remove(slot);
+	}
+
+	/**
+	 * One shelved Episode: a title in the Podcast under a library key, and
+	 * when it was last played.
+	 */
+	static final class Slot {
+		final String key;
+		final String title;
+		final long lastPlayed;
+
+		private Slot(String key, String title, long lastPlayed) {
+			this.key = key;
+			this.title = title;
+			this.lastPlayed = lastPlayed;
+		}
+	}
+}
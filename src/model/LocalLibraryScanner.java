@@ -0,0 +1,571 @@
+package model;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import model.PodcastPlayerModel.Episode;
+import model.PodcastPlayerModel.Podcast;
+
+/**
+ * Keeps a directory tree of local audio files in the library. Every folder
+ * holding audio files becomes a local Podcast, and each file one of its
+ * Episodes.
+ *
+ * A scan walks the tree on a pool, one task per folder, reading the tags
+ *  of up to FILES_PER_TASK files per task. Tags are kept with the size and
+ *  modified time of their file, so a later scan reads only files that
+ *  changed and republishes only folders that changed. Once watching, the
+ *  scanner rescans just the folders a WatchService reports changes in,
+ *  after they have been quiet for SETTLE_MILLIS.
+ *
+ * @author Todd Noecker
+ */
+public final class LocalLibraryScanner implements Closeable {
+
+	/**
+	 * The file name extensions scanned, in lower case.
+	 */
+	public static final List<String> EXTENSIONS = List.of(".mp3", ".m4a", ".m4b", ".mp4");
+
+	/**
+	 * How long a changed folder must be quiet before it is rescanned, so a
+	 * file being copied in is read once it is whole.
+	 */
+	static final long SETTLE_MILLIS = 250;
+
+	/**
+	 * The most files one scan task reads the tags of before splitting.
+	 */
+	static final int FILES_PER_TASK = 32;
+
+	private static final Map<String, String> TYPES = Map.of("mp3", "audio/mpeg", "mp4", "audio/mp4");
+
+	private final PodcastPlayerModel model;
+	private final Path root;
+	private final ForkJoinPool pool;
+	private final Map<Path, Track> tracks = new ConcurrentHashMap<Path, Track>(); // by file
+	private final Map<Path, List<Track>> folders = new HashMap<Path, List<Track>>(); // guarded by this
+	private final Map<Path, String> keys = new HashMap<Path, String>(); // library keys by folder, guarded by this
+	private final Map<WatchKey, Path> watched = new ConcurrentHashMap<WatchKey, Path>();
+	private final AtomicLong tagReads = new AtomicLong();
+	private volatile WatchService watcher;
+	private Thread watchThread; // guarded by this
+	private boolean scanned; // guarded by this
+
+	/**
+	 * Creates a scanner for a directory tree. Nothing is read until scan or
+	 * watch is called.
+	 *
+	 * @param model   the library local folders are added to.
+	 * @param root    the top of the tree.
+	 * @param threads how many folders and files may be read at once. Reads
+	 *                wait on the disk, so more threads than cores helps.
+	 * @author Todd Noecker
+	 */
+	public LocalLibraryScanner(PodcastPlayerModel model, Path root, int threads) {
+		this.model = model;
+		this.root = root.toAbsolutePath().normalize();
+		this.pool = new ForkJoinPool(threads);
+	}
+
+	/* ------------------------------------------------------------------------
+	 * ---------------------------PUBLIC METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Walks the whole tree, adding folders that gained audio files, updating
+	 * those whose files changed and removing those left with none. The
+	 * first scan also removes local folders under the root kept from an
+	 * earlier run that are gone now.
+	 *
+	 * @return how many audio files the tree holds.
+	 * @author Todd Noecker
+	 */
+	public synchronized int scan() {
+		Map<Path, List<Track>> found = walk(root, true);
+		for (Path dir : new ArrayList<Path>(folders.keySet())) {
+			if (!found.containsKey(dir)) {
+				drop(dir);
+			}
+		}
+		if (!scanned) {
+			scanned = true;
+			dropStale(found.keySet());
+		}
+		int count = 0;
+		for (Map.Entry<Path, List<Track>> folder : found.entrySet()) {
+			publish(folder.getKey(), folder.getValue());
+			count += folder.getValue().size();
+		}
+		return count;
+	}
+
+	/**
+	 * Starts watching the tree for changes, scanning it first so none are
+	 * missed. Changed folders are rescanned on a background thread.
+	 *
+	 * @throws IOException if the tree can not be watched.
+	 * @author Todd Noecker
+	 */
+	public void watch() throws IOException {
+		synchronized (this) {
+			if (watcher != null) {
+				return;
+			}
+			watcher = root.getFileSystem().newWatchService();
+		}
+		scan();
+		synchronized (this) {
+			watchThread = new Thread(this::watchChanges, "local-library-watch");
+			watchThread.setDaemon(true);
+			watchThread.start();
+		}
+	}
+
+	/**
+	 * Fetches the top of the tree.
+	 *
+	 * @return the absolute root directory.
+	 * @author Todd Noecker
+	 */
+	public Path getRoot() {
+		return root;
+	}
+
+	/**
+	 * Counts the audio files found so far.
+	 *
+	 * @return the count.
+	 * @author Todd Noecker
+	 */
+	public int getTrackCount() {
+		return tracks.size();
+	}
+
+	/**
+	 * Counts the files whose tags have been read. Files unchanged since the
+	 * last scan are not read again.
+	 *
+	 * @return the count.
+	 * @author Todd Noecker
+	 */
+	public long getTagReads() {
+		return tagReads.get();
+	}
+
+	/**
+	 * Stops watching and stops the pool. The local folders stay in the
+	 * library.
+	 *
+	 * @author Todd Noecker
+	 */
+	@Override
+	public void close() {
+		Thread thread;
+		synchronized (this) {
+			thread = watchThread;
+			watchThread = null;
+		}
+		if (thread != null) {
+			thread.interrupt();
+		}
+		WatchService service = watcher;
+		if (service != null) {
+			try {
+				service.close();
+			} catch (IOException ex) {
+				// Closing is best effort.
+			}
+		}
+		pool.shutdownNow();
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PRIVATE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Lists the audio files of a folder, and of every folder under it if
+	 * asked, reading the tags of new and changed files.
+	 *
+	 * @return the files of each folder holding any.
+	 */
+	private Map<Path, List<Track>> walk(Path dir, boolean recursive) {
+		if (!Files.isDirectory(dir)) {
+			return Collections.emptyMap();
+		}
+		return pool.invoke(new FolderTask(dir, recursive));
+	}
+
+	/**
+	 * Turns a folder's files into a local Podcast in the library, unless they
+	 * are the same files as last published. A folder with no files left is
+	 * removed.
+	 */
+	private void publish(Path dir, List<Track> found) {
+		if (found.isEmpty()) {
+			drop(dir);
+			return;
+		}
+		if (found.equals(folders.get(dir))) {
+			return;
+		}
+		folders.put(dir, found);
+		URI link = dir.toUri();
+		String title = mostCommon(found, true);
+		if (title == null) {
+			title = dir.getFileName() == null ? dir.toString() : dir.getFileName().toString();
+		}
+		Podcast holder = model.podcastAt(title);
+		if (holder != null && !(holder.isLocal() && link.equals(holder.getLink()))) {
+			// Another feed or folder already has the title.
+			title = title + " (" + dir + ")";
+		}
+		String artist = mostCommon(found, false);
+		Podcast podcast = new Podcast(link, title, artist != null ? artist : "Local files in " + dir);
+
+		String oldKey = keys.get(dir);
+		Podcast old = model.podcastAt(oldKey != null ? oldKey : title);
+		if (old != null && !(old.isLocal() && link.equals(old.getLink()))) {
+			old = null;
+		}
+		try {
+			podcast.putEpisodes(episodes(podcast, found, old));
+		} catch (IOException ex) {
+			// An on-heap Podcast has no catalog to write.
+			throw new IllegalStateException(ex);
+		}
+		if (oldKey != null && !oldKey.equals(title)) {
+			model.removePodcast(oldKey);
+		}
+		keys.put(dir, title);
+		model.putPodcast(podcast);
+	}
+
+	/**
+	 * Builds a folder's Episodes in track order, then file name order. Play
+	 * positions are carried over from the Podcast the folder was last
+	 * published as.
+	 */
+	private static List<Episode> episodes(Podcast podcast, List<Track> found, Podcast old) {
+		List<Track> sorted = new ArrayList<Track>(found);
+		sorted.sort(Comparator.comparingInt((Track track) -> {
+			int number = track.tags == null ? 0 : track.tags.getTrack();
+			return number == 0 ? Integer.MAX_VALUE : number;
+		}).thenComparing(track -> track.file.getFileName().toString()));
+		Set<String> titles = new HashSet<String>();
+		List<Episode> built = new ArrayList<Episode>();
+		for (Track track : sorted) {
+			TrackTags tags = track.tags;
+			String name = track.file.getFileName().toString();
+			String title = tags != null && tags.getTitle() != null ? tags.getTitle() : stripExtension(name);
+			if (!titles.add(title)) {
+				title = title + " (" + name + ")";
+				titles.add(title);
+			}
+			String desc = tags == null ? null : tags.getComment() != null ? tags.getComment() : tags.getArtist();
+			Episode ep = new Episode(title, desc, track.file.toUri(), podcast, built.size());
+			ep.setFeedDetails(track.modified, tags == null ? 0 : (int) (tags.getDurationMillis() / 1000), null,
+					track.size, tags == null ? null : TYPES.get(tags.getFormat()));
+			Episode before = old == null ? null : old.getEpisode(title);
+			if (before != null) {
+				ep.restoreCurTimeMillis(before.getCurTimeMillis());
+				ep.restoreLastPlayedMillis(before.getLastPlayedMillis());
+			}
+			built.add(ep);
+		}
+		return built;
+	}
+
+	/**
+	 * Finds the album, or artist, most of a folder's files are tagged with.
+	 *
+	 * @return the name, or null if none are tagged.
+	 */
+	private static String mostCommon(List<Track> found, boolean album) {
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		String best = null;
+		for (Track track : found) {
+			String name = track.tags == null ? null : album ? track.tags.getAlbum() : track.tags.getArtist();
+			if (name != null) {
+				int count = counts.merge(name, 1, Integer::sum);
+				if (best == null || count > counts.get(best)) {
+					best = name;
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Removes a folder's Podcast from the library and forgets its files.
+	 */
+	private void drop(Path dir) {
+		folders.remove(dir);
+		String key = keys.remove(dir);
+		if (key != null) {
+			model.removePodcast(key);
+		}
+		tracks.keySet().removeIf(file -> dir.equals(file.getParent()));
+	}
+
+	/**
+	 * Removes local Podcasts under the root, kept from an earlier run, whose
+	 * folders are gone.
+	 */
+	private void dropStale(Set<Path> found) {
+		for (String key : model.libraryKeys()) {
+			Podcast podcast = model.podcastAt(key);
+			if (podcast == null || !podcast.isLocal() || !"file".equals(podcast.getLink().getScheme())) {
+				continue;
+			}
+			Path dir = Path.of(podcast.getLink()).toAbsolutePath().normalize();
+			if (dir.startsWith(root) && !found.contains(dir)) {
+				model.removePodcast(key);
+			}
+		}
+	}
+
+	/**
+	 * Collects watch events until the changed folders have been quiet for
+	 * SETTLE_MILLIS, then rescans them.
+	 */
+	private void watchChanges() {
+		Set<Path> changed = new HashSet<Path>();
+		Set<Path> created = new HashSet<Path>();
+		boolean overflow = false;
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				WatchKey key = changed.isEmpty() && !overflow ? watcher.take()
+						: watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+				if (key == null) {
+					rescan(changed, created, overflow);
+					changed.clear();
+					created.clear();
+					overflow = false;
+					continue;
+				}
+				Path dir = watched.get(key);
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == OVERFLOW || dir == null) {
+						overflow = true;
+						continue;
+					}
+					Path child = dir.resolve((Path) event.context());
+					changed.add(dir);
+					if (event.kind() == ENTRY_CREATE && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+						created.add(child);
+					} else if (event.kind() == ENTRY_DELETE) {
+						// It may have been a folder.
+						changed.add(child);
+					}
+				}
+				if (!key.reset()) {
+					watched.remove(key);
+					if (dir != null) {
+						changed.add(dir);
+					}
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException ex) {
+			// Closed.
+		}
+	}
+
+	/**
+	 * Rescans folders a watch reported changes in. New folders are walked
+	 * whole; folders that are gone are dropped with everything under them.
+	 */
+	private synchronized void rescan(Set<Path> changed, Set<Path> created, boolean overflow) {
+		if (overflow) {
+			// Events were lost, so any folder may have changed.
+			scan();
+			return;
+		}
+		for (Path dir : created) {
+			for (Map.Entry<Path, List<Track>> folder : walk(dir, true).entrySet()) {
+				publish(folder.getKey(), folder.getValue());
+			}
+		}
+		for (Path dir : changed) {
+			if (created.contains(dir)) {
+				continue;
+			}
+			if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) {
+				for (Path gone : new ArrayList<Path>(folders.keySet())) {
+					if (gone.startsWith(dir)) {
+						drop(gone);
+					}
+				}
+				continue;
+			}
+			publish(dir, walk(dir, false).getOrDefault(dir, Collections.emptyList()));
+		}
+	}
+
+	/**
+	 * Fetches a file's tags, reading them only if the file is new or its size
+	 * or modified time changed.
+	 */
+	private Track track(Path file, long size, long modified) {
+		Track known = tracks.get(file);
+		if (known != null && known.size == size && known.modified == modified) {
+			return known;
+		}
+		TrackTags tags;
+		try {
+			tags = TagReader.read(file);
+		} catch (IOException | RuntimeException ex) {
+			// Listed by its file name alone; one bad file must not stop a scan.
+			System.out.println("Tags of " + file + " could not be read: " + ex);
+			tags = null;
+		}
+		tagReads.incrementAndGet();
+		Track track = new Track(file, size, modified, tags);
+		tracks.put(file, track);
+		return track;
+	}
+
+	private void register(Path dir) {
+		WatchService service = watcher;
+		if (service == null) {
+			return;
+		}
+		try {
+			watched.put(dir.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+		} catch (IOException | ClosedWatchServiceException ex) {
+			// The folder went away or the scanner closed; nothing to watch.
+		}
+	}
+
+	private static boolean isAudio(Path file) {
+		String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+		for (String ext : EXTENSIONS) {
+			if (name.endsWith(ext)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String stripExtension(String name) {
+		int dot = name.lastIndexOf('.');
+		return dot > 0 ? name.substring(0, dot) : name;
+	}
+
+	/**
+	 * One audio file and its tags, as of its size and modified time.
+	 */
+	private static final class Track {
+		private final Path file;
+		private final long size;
+		private final long modified;
+		private final TrackTags tags; // null if they could not be read
+
+		private Track(Path file, long size, long modified, TrackTags tags) {
+			this.file = file;
+			this.size = size;
+			this.modified = modified;
+			this.tags = tags;
+		}
+	}
+
+	/**
+	 * Lists one folder, forking a task for each folder under it and for each
+	 * FILES_PER_TASK of its files.
+	 */
+	private final class FolderTask extends RecursiveTask<Map<Path, List<Track>>> {
+		private static final long serialVersionUID = 1L;
+		private final Path dir;
+		private final boolean recursive;
+
+		private FolderTask(Path dir, boolean recursive) {
+			this.dir = dir;
+			this.recursive = recursive;
+		}
+
+		@Override
+		protected Map<Path, List<Track>> compute() {
+			register(dir);
+			List<FolderTask> subfolders = new ArrayList<FolderTask>();
+			List<Path> files = new ArrayList<Path>();
+			List<BasicFileAttributes> attrs = new ArrayList<BasicFileAttributes>();
+			try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+				for (Path entry : entries) {
+					BasicFileAttributes attr = Files.readAttributes(entry, BasicFileAttributes.class,
+							LinkOption.NOFOLLOW_LINKS);
+					if (attr.isDirectory() && recursive) {
+						subfolders.add(new FolderTask(entry, true));
+					} else if (attr.isRegularFile() && isAudio(entry)) {
+						files.add(entry);
+						attrs.add(attr);
+					}
+				}
+			} catch (IOException ex) {
+				System.out.println("Folder " + dir + " could not be read: " + ex.getMessage());
+			}
+			for (FolderTask subfolder : subfolders) {
+				subfolder.fork();
+			}
+			List<ForkJoinTask<List<Track>>> reads = new ArrayList<ForkJoinTask<List<Track>>>();
+			for (int from = 0; from < files.size(); from += FILES_PER_TASK) {
+				int start = from;
+				int end = Math.min(files.size(), from + FILES_PER_TASK);
+				reads.add(ForkJoinTask.adapt(() -> {
+					List<Track> read = new ArrayList<Track>();
+					for (int i = start; i < end; i++) {
+						BasicFileAttributes attr = attrs.get(i);
+						read.add(track(files.get(i), attr.size(), attr.lastModifiedTime().toMillis()));
+					}
+					return read;
+				}).fork());
+			}
+			Map<Path, List<Track>> found = new HashMap<Path, List<Track>>();
+			List<Track> mine = new ArrayList<Track>();
+			for (ForkJoinTask<List<Track>> read : reads) {
+				mine.addAll(read.join());
+			}
+			if (!mine.isEmpty()) {
+				// Listed in a fixed order, so an unchanged folder lists the same.
+				mine.sort(Comparator.comparing(track -> track.file));
+				found.put(dir, mine);
+			}
+			for (FolderTask subfolder : subfolders) {
+				found.putAll(subfolder.join());
+			}
+			return found;
+		}
+	}
+}
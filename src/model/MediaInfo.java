@@ -0,0 +1,185 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * What a MediaProbe learned about an enclosure from its headers: how long
+ * it plays, its average bitrate, and where to find a given time in it.
+ *
+ * Seek points pair a play time with the byte offset it starts at, in time
+ *  order. Offsets between them are found by interpolation. Without seek
+ *  points the bitrate is taken as constant.
+ *
+ * @author Todd Noecker
+ */
+public final class MediaInfo {
+
+	private final String format;
+	private final long durationMillis;
+	private final int bitrate;
+	private final long audioStart;
+	private final long mediaBytes;
+	private final long[] seekMillis;
+	private final long[] seekOffsets;
+	private final boolean constantBitrate;
+
+	/**
+	 * Creates a probe result.
+	 *
+	 * @param format          "mp3" or "mp4".
+	 * @param durationMillis  the play time, or 0 if unknown.
+	 * @param bitrate         the average bits per second, or 0 if unknown.
+	 * @param audioStart      the offset of the first audio byte.
+	 * @param mediaBytes      the size of the whole file, or -1 if unknown.
+	 * @param seekMillis      the times of the seek points, or null.
+	 * @param seekOffsets     the offsets of the seek points, or null.
+	 * @param constantBitrate true if the headers say every frame has the
+	 *                        same bitrate.
+	 * @author Todd Noecker
+	 */
+	MediaInfo(String format, long durationMillis, int bitrate, long audioStart, long mediaBytes, long[] seekMillis,
+			long[] seekOffsets, boolean constantBitrate) {
+		this.format = format;
+		this.durationMillis = durationMillis;
+		this.bitrate = bitrate;
+		this.audioStart = audioStart;
+		this.mediaBytes = mediaBytes;
+		this.seekMillis = seekMillis == null ? new long[0] : seekMillis;
+		this.seekOffsets = seekOffsets == null ? new long[0] : seekOffsets;
+		this.constantBitrate = constantBitrate;
+	}
+
+	/* ------------------------------------------------------------------------
+	 * ---------------------------PUBLIC METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Fetches the container format.
+	 *
+	 * @return "mp3" or "mp4".
+	 * @author Todd Noecker
+	 */
+	public String getFormat() {
+		return format;
+	}
+
+	/**
+	 * Fetches the play time.
+	 *
+	 * @return the play time in milliseconds, or 0 if unknown.
+	 * @author Todd Noecker
+	 */
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	/**
+	 * Fetches the average bitrate.
+	 *
+	 * @return bits per second, or 0 if unknown.
+	 * @author Todd Noecker
+	 */
+	public int getBitrate() {
+		return bitrate;
+	}
+
+	/**
+	 * Fetches where the audio starts, after any tags.
+	 *
+	 * @return the byte offset.
+	 * @author Todd Noecker
+	 */
+	public long getAudioStart() {
+		return audioStart;
+	}
+
+	/**
+	 * Fetches the size of the whole file.
+	 *
+	 * @return the size in bytes, or -1 if the server did not say.
+	 * @author Todd Noecker
+	 */
+	public long getMediaBytes() {
+		return mediaBytes;
+	}
+
+	/**
+	 * Checks whether the headers held a seek table, so byteOffsetAt is
+	 * accurate for variable bitrate files.
+	 *
+	 * @return true if there are seek points.
+	 * @author Todd Noecker
+	 */
+	public boolean hasSeekTable() {
+		return seekMillis.length > 0;
+	}
+
+	/**
+	 * Checks whether the headers say the bitrate is constant, so byteOffsetAt
+	 * is accurate without a seek table.
+	 *
+	 * @return true if every frame has the same bitrate.
+	 * @author Todd Noecker
+	 */
+	public boolean isConstantBitrate() {
+		return constantBitrate;
+	}
+
+	/**
+	 * Fetches the times of the seek points.
+	 *
+	 * @return a copy of the times in milliseconds, empty if there is no table.
+	 * @author Todd Noecker
+	 */
+	public long[] getSeekMillis() {
+		return Arrays.copyOf(seekMillis, seekMillis.length);
+	}
+
+	/**
+	 * Fetches the offsets of the seek points.
+	 *
+	 * @return a copy of the byte offsets, empty if there is no table.
+	 * @author Todd Noecker
+	 */
+	public long[] getSeekOffsets() {
+		return Arrays.copyOf(seekOffsets, seekOffsets.length);
+	}
+
+	/**
+	 * Estimates the byte offset a play time starts at, from the seek table
+	 * if there is one and from the bitrate if not.
+	 *
+	 * @param millis the play time.
+	 * @return the byte offset, never before the audio start.
+	 * @author Todd Noecker
+	 */
+	public long byteOffsetAt(long millis) {
+		long time = Math.max(0, durationMillis > 0 ? Math.min(millis, durationMillis) : millis);
+		if (seekMillis.length == 0) {
+			return audioStart + time * bitrate / 8000;
+		}
+		int point = Arrays.binarySearch(seekMillis, time);
+		if (point >= 0) {
+			return seekOffsets[point];
+		}
+		int after = -point - 1;
+		if (after == 0) {
+			return audioStart;
+		}
+		long fromMillis = seekMillis[after - 1];
+		long fromOffset = seekOffsets[after - 1];
+		long toMillis = after < seekMillis.length ? seekMillis[after] : durationMillis;
+		long toOffset = after < seekOffsets.length ? seekOffsets[after]
+				: mediaBytes > 0 ? mediaBytes : fromOffset;
+		if (toMillis <= fromMillis) {
+			return fromOffset;
+		}
+		return fromOffset + (toOffset - fromOffset) * (time - fromMillis) / (toMillis - fromMillis);
+	}
+
+	@Override
+	public String toString() {
+		return format + " " + durationMillis + " ms at " + bitrate + " bps";
+	}
+}
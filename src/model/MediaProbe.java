@@ -0,0 +1,569 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Learns an enclosure's play time, bitrate and seek table from the first
+ * few KB of the file, without building a Media for it.
+ *
+ * Remote files are read with HTTP Range requests and local files through
+ *  a file channel. MP3 files are read past any ID3v2 tags to the first
+ *  frame, whose Xing, Info or VBRI header gives the frame count and seek
+ *  table, and whose LAME header gives the encoder delay and padding. An
+ *  Info header marks a constant bitrate file. Files with none of these are
+ *  taken as constant bitrate too. MP4 and M4A
+ *  files are walked box by box to the moov box, whose mvhd box gives the
+ *  play time; a moov box after the media data costs one more request.
+ *
+ * Probes run on a fixed pool, so a long episode list never opens more
+ *  than a few connections at once. Results are kept per canonical
+ *  enclosure link. Failures are not kept, so the next probe tries again.
+ *
+ * @author Todd Noecker
+ */
+public final class MediaProbe implements Closeable {
+
+	/**
+	 * How many bytes are read at the start of a file, and after each tag.
+	 */
+	public static final int HEAD_BYTES = 16 * 1024;
+
+	/**
+	 * How far into a file a server that ignores ranges is read before the
+	 * probe gives up.
+	 */
+	static final int MAX_SKIP_BYTES = 1024 * 1024;
+
+	/**
+	 * How many bytes of a moov box are read looking for its mvhd box.
+	 */
+	private static final int MOOV_BYTES = 64 * 1024;
+
+	private static final int[][] BITRATES = {
+			// MPEG 1 layer I, II, III
+			{ 0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448 },
+			{ 0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384 },
+			{ 0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320 },
+			// MPEG 2 and 2.5 layer I, then II and III
+			{ 0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256 },
+			{ 0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160 } };
+
+	private static final int[] SAMPLE_RATES = { 44100, 48000, 32000 };
+
+	private final ExecutorService pool;
+	private final int timeoutMillis;
+	private final ConcurrentHashMap<String, CompletableFuture<MediaInfo>> probes =
+			new ConcurrentHashMap<String, CompletableFuture<MediaInfo>>();
+
+	/**
+	 * Creates a probe.
+	 *
+	 * @param threads       how many files may be probed at once.
+	 * @param timeoutMillis the connect and read timeout for remote files.
+	 * @author Todd Noecker
+	 */
+	public MediaProbe(int threads, int timeoutMillis) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Thread count must be at least 1");
+		}
+		this.timeoutMillis = timeoutMillis;
+		this.pool = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "media-probe");
+			// Probes only fill in screens; they must not keep the program running.
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/* ------------------------------------------------------------------------
+	 * ---------------------------PUBLIC METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Probes an enclosure, or joins the probe of it already running or done.
+	 *
+	 * @param link the enclosure link, http(s) or file.
+	 * @return the future result, which fails with an IOException if the
+	 *         file can not be read or is not MP3 or MP4.
+	 * @author Todd Noecker
+	 */
+	public CompletableFuture<MediaInfo> probe(URI link) {
+		String key = PodcastPlayerModel.canonicalLink(link);
+		CompletableFuture<MediaInfo> mine = new CompletableFuture<MediaInfo>();
+		CompletableFuture<MediaInfo> current = probes.putIfAbsent(key, mine);
+		if (current != null) {
+			return current;
+		}
+		pool.execute(() -> {
+			try {
+				mine.complete(probeNow(link, timeoutMillis));
+			} catch (Exception ex) {
+				probes.remove(key, mine);
+				mine.completeExceptionally(ex);
+			}
+		});
+		return mine;
+	}
+
+	/**
+	 * Fetches a finished probe result without starting a probe.
+	 *
+	 * @param link the enclosure link.
+	 * @return the result, or null if the enclosure was not probed yet or
+	 *         its probe is still running.
+	 * @author Todd Noecker
+	 */
+	public MediaInfo getCached(URI link) {
+		CompletableFuture<MediaInfo> done = probes.get(PodcastPlayerModel.canonicalLink(link));
+		return done != null && done.isDone() && !done.isCompletedExceptionally() ? done.join() : null;
+	}
+
+	/**
+	 * Probes an enclosure on the calling thread, without the cache.
+	 *
+	 * @param link the enclosure link, http(s) or file.
+	 * @param timeoutMillis the connect and read timeout for remote files.
+	 * @return what the headers say.
+	 * @throws IOException if the file can not be read or is not MP3 or MP4.
+	 * @author Todd Noecker
+	 */
+	public static MediaInfo probeNow(URI link, int timeoutMillis) throws IOException {
+		Source source = "file".equals(link.getScheme()) ? new FileSource(link) : new RangeSource(link, timeoutMillis);
+		return read(source);
+	}
+
+	/**
+	 * Stops the pool. Probes already queued are dropped.
+	 *
+	 * @author Todd Noecker
+	 */
+	@Override
+	public void close() {
+		pool.shutdownNow();
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PACKAGE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Measures the MPEG audio frame a header starts.
+	 *
+	 * @param header the four header bytes, big-endian.
+	 * @return the frame size in bytes, or 0 if this is not a frame header.
+	 * @author Todd Noecker
+	 */
+	static int frameBytes(int header) {
+		int version = header >>> 19 & 3;
+		int layerBits = header >>> 17 & 3;
+		int bitrateIndex = header >>> 12 & 15;
+		if ((header & 0xFFE00000) != 0xFFE00000 || version == 1 || layerBits == 0 || bitrateIndex == 0
+				|| bitrateIndex == 15 || (header >>> 10 & 3) == 3) {
+			return 0;
+		}
+		int layer = 4 - layerBits;
+		int bitrate = BITRATES[version == 3 ? layer - 1 : layer == 1 ? 3 : 4][bitrateIndex] * 1000;
+		int padding = header >>> 9 & 1;
+		if (layer == 1) {
+			return (12 * bitrate / sampleRate(header) + padding) * 4;
+		}
+		return frameSamples(header) / 8 * bitrate / sampleRate(header) + padding;
+	}
+
+	/**
+	 * Counts the samples in the frame a valid header starts.
+	 *
+	 * @param header the four header bytes, big-endian.
+	 * @return 384, 576 or 1152.
+	 * @author Todd Noecker
+	 */
+	static int frameSamples(int header) {
+		int layer = 4 - (header >>> 17 & 3);
+		return layer == 1 ? 384 : layer == 3 && (header >>> 19 & 3) != 3 ? 576 : 1152;
+	}
+
+	/**
+	 * Reads the sample rate of a valid frame header.
+	 *
+	 * @param header the four header bytes, big-endian.
+	 * @return samples per second.
+	 * @author Todd Noecker
+	 */
+	static int sampleRate(int header) {
+		int version = header >>> 19 & 3;
+		int rate = SAMPLE_RATES[header >>> 10 & 3];
+		return version == 3 ? rate : version == 2 ? rate / 2 : rate / 4;
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PRIVATE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	private static MediaInfo read(Source source) throws IOException {
+		ByteBuffer head = source.read(0, HEAD_BYTES);
+		if (head.remaining() >= 8 && isBox(head, 0)) {
+			return readMp4(source, head);
+		}
+		// Skip the ID3v2 tags, which may hold artwork far larger than the head.
+		long start = 0;
+		while (head.remaining() >= 10 && head.get(0) == 'I' && head.get(1) == 'D' && head.get(2) == '3') {
+			long tag = 10 + syncSafe(head, 6) + ((head.get(5) & 0x10) != 0 ? 10 : 0);
+			start += tag;
+			// Read again past a large tag, so the frame headers after it are whole.
+			head = tag + HEAD_BYTES / 4 <= head.remaining() ? slice(head, (int) tag) : source.read(start, HEAD_BYTES);
+		}
+		return readMp3(source, head, start);
+	}
+
+	/**
+	 * Reads an MP3 from its first frame. The head starts at the given offset.
+	 */
+	private static MediaInfo readMp3(Source source, ByteBuffer head, long start) throws IOException {
+		int at = findFrame(head);
+		if (at < 0) {
+			throw new IOException(source + " is not MP3 or MP4");
+		}
+		long audioStart = start + at;
+		int header = head.getInt(at);
+		boolean mpeg1 = (header >>> 19 & 3) == 3;
+		int layer = 4 - (header >>> 17 & 3);
+		int sampleRate = sampleRate(header);
+		int samples = frameSamples(header);
+		boolean mono = (header >>> 6 & 3) == 3;
+		long length = source.length();
+
+		int xing = at + 4 + (mpeg1 ? mono ? 17 : 32 : mono ? 9 : 17);
+		// Encoders write Info in place of Xing when every frame has the same
+		// bitrate.
+		boolean info = tagAt(head, xing, "Info");
+		if (tagAt(head, xing, "Xing") || info) {
+			int flags = head.getInt(xing + 4);
+			int field = xing + 8;
+			long frames = 0;
+			long bytes = length > 0 ? length - audioStart : 0;
+			byte[] toc = null;
+			if ((flags & 1) != 0) {
+				frames = head.getInt(field) & 0xFFFFFFFFL;
+				field += 4;
+			}
+			if ((flags & 2) != 0) {
+				bytes = head.getInt(field) & 0xFFFFFFFFL;
+				field += 4;
+			}
+			if ((flags & 4) != 0 && field + 100 <= head.limit()) {
+				toc = new byte[100];
+				slice(head, field).get(toc);
+				field += 100;
+			}
+			if ((flags & 8) != 0) {
+				field += 4;
+			}
+			long sampleCount = frames * samples;
+			if (field + 24 <= head.limit() && (tagAt(head, field, "LAME") || tagAt(head, field, "Lavc")
+					|| tagAt(head, field, "Lavf"))) {
+				// The encoder delay and padding are 12 bits each, 21 bytes in.
+				int delay = (head.get(field + 21) & 0xFF) << 4 | (head.get(field + 22) & 0xF0) >> 4;
+				int padding = (head.get(field + 22) & 0x0F) << 8 | head.get(field + 23) & 0xFF;
+				sampleCount = Math.max(0, sampleCount - delay - padding);
+			}
+			if (frames > 0) {
+				long millis = sampleCount * 1000 / sampleRate;
+				long[] seekMillis = null;
+				long[] seekOffsets = null;
+				if (toc != null && bytes > 0) {
+					// Entry i is where i percent of the play time starts, in
+					// 256ths of the audio bytes.
+					seekMillis = new long[100];
+					seekOffsets = new long[100];
+					for (int i = 0; i < 100; i++) {
+						seekMillis[i] = millis * i / 100;
+						seekOffsets[i] = audioStart + (toc[i] & 0xFF) * bytes / 256;
+					}
+				}
+				return new MediaInfo("mp3", millis, bitrate(bytes, millis), audioStart, length, seekMillis, seekOffsets,
+						info);
+			}
+		}
+
+		int vbri = at + 4 + 32;
+		if (tagAt(head, vbri, "VBRI") && vbri + 26 <= head.limit()) {
+			long bytes = head.getInt(vbri + 10) & 0xFFFFFFFFL;
+			long frames = head.getInt(vbri + 14) & 0xFFFFFFFFL;
+			int entries = head.getShort(vbri + 18) & 0xFFFF;
+			int scale = head.getShort(vbri + 20) & 0xFFFF;
+			int entrySize = head.getShort(vbri + 22) & 0xFFFF;
+			int framesPerEntry = head.getShort(vbri + 24) & 0xFFFF;
+			long millis = frames * samples * 1000 / sampleRate;
+			long[] seekMillis = null;
+			long[] seekOffsets = null;
+			if (entrySize >= 1 && entrySize <= 4 && vbri + 26 + entries * entrySize <= head.limit()) {
+				// Each entry is the size of the next framesPerEntry frames.
+				seekMillis = new long[entries + 1];
+				seekOffsets = new long[entries + 1];
+				seekOffsets[0] = audioStart;
+				for (int i = 0; i < entries; i++) {
+					long size = 0;
+					for (int b = 0; b < entrySize; b++) {
+						size = size << 8 | head.get(vbri + 26 + i * entrySize + b) & 0xFF;
+					}
+					seekMillis[i + 1] = Math.min(millis, (long) (i + 1) * framesPerEntry * samples * 1000 / sampleRate);
+					seekOffsets[i + 1] = seekOffsets[i] + size * scale;
+				}
+			}
+			return new MediaInfo("mp3", millis, bitrate(bytes, millis), audioStart, length, seekMillis, seekOffsets,
+					false);
+		}
+
+		// No frame count: take the first frame's bitrate as the file's.
+		int bitrate = BITRATES[mpeg1 ? layer - 1 : layer == 1 ? 3 : 4][header >>> 12 & 15] * 1000;
+		long millis = length > 0 ? (length - audioStart) * 8000 / bitrate : 0;
+		return new MediaInfo("mp3", millis, bitrate, audioStart, length, null, null, false);
+	}
+
+	/**
+	 * Walks an MP4's top level boxes to the moov box and reads its mvhd box.
+	 */
+	private static MediaInfo readMp4(Source source, ByteBuffer head) throws IOException {
+		long length = source.length();
+		long offset = 0;
+		while (true) {
+			ByteBuffer box = offset + 16 <= head.limit() ? slice(head, (int) offset) : source.read(offset, 16);
+			if (box.remaining() < 8 || !isBox(box, 0)) {
+				throw new IOException(source + " has no moov box");
+			}
+			long size = box.getInt(0) & 0xFFFFFFFFL;
+			int headerSize = 8;
+			if (size == 1 && box.remaining() >= 16) {
+				size = box.getLong(8);
+				headerSize = 16;
+			}
+			if (tagAt(box, 4, "moov")) {
+				int want = (int) Math.min(MOOV_BYTES, size == 0 ? MOOV_BYTES : size);
+				ByteBuffer moov = offset + want <= head.limit() ? slice(head, (int) offset) : source.read(offset, want);
+				long millis = movieMillis(moov, headerSize);
+				if (millis < 0) {
+					throw new IOException(source + " has no mvhd box");
+				}
+				return new MediaInfo("mp4", millis, length > 0 ? bitrate(length, millis) : 0, 0, length, null, null,
+						false);
+			}
+			if (size < headerSize) {
+				// Size 0 runs to the end of the file, so there is nothing after it.
+				throw new IOException(source + " has no moov box");
+			}
+			offset += size;
+		}
+	}
+
+	/**
+	 * Finds the mvhd box among a moov box's children and converts its
+	 * duration to milliseconds.
+	 *
+	 * @return the duration, or -1 if there is no mvhd box in range.
+	 */
+	private static long movieMillis(ByteBuffer moov, int headerSize) {
+		int at = headerSize;
+		while (at + 8 <= moov.limit()) {
+			long size = moov.getInt(at) & 0xFFFFFFFFL;
+			if (tagAt(moov, at + 4, "mvhd")) {
+				int body = at + 8;
+				if (body + 32 > moov.limit()) {
+					return -1;
+				}
+				long timescale;
+				long duration;
+				if (moov.get(body) == 1) {
+					timescale = moov.getInt(body + 20) & 0xFFFFFFFFL;
+					duration = moov.getLong(body + 24);
+				} else {
+					timescale = moov.getInt(body + 12) & 0xFFFFFFFFL;
+					duration = moov.getInt(body + 16) & 0xFFFFFFFFL;
+				}
+				return timescale == 0 ? 0 : duration * 1000 / timescale;
+			}
+			if (size < 8) {
+				return -1;
+			}
+			at += size;
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the first frame header followed by another frame header, or by
+	 * the end of the head.
+	 */
+	private static int findFrame(ByteBuffer head) {
+		for (int at = 0; at + 4 <= head.limit(); at++) {
+			int header = head.getInt(at);
+			int frame = frameBytes(header);
+			if (frame > 0 && (at + frame + 4 > head.limit() || frameBytes(head.getInt(at + frame)) > 0)) {
+				return at;
+			}
+		}
+		return -1;
+	}
+
+	private static int bitrate(long bytes, long millis) {
+		return millis > 0 ? (int) (bytes * 8000 / millis) : 0;
+	}
+
+	/**
+	 * Reads a 28 bit ID3v2 size, stored 7 bits to a byte.
+	 */
+	private static int syncSafe(ByteBuffer head, int at) {
+		return (head.get(at) & 0x7F) << 21 | (head.get(at + 1) & 0x7F) << 14 | (head.get(at + 2) & 0x7F) << 7
+				| head.get(at + 3) & 0x7F;
+	}
+
+	/**
+	 * Checks whether a box header starts here: a size and four letters.
+	 */
+	private static boolean isBox(ByteBuffer buf, int at) {
+		for (int i = at + 4; i < at + 8; i++) {
+			byte b = buf.get(i);
+			if (!(b >= 'a' && b <= 'z' || b >= 'A' && b <= 'Z' || b >= '0' && b <= '9' || b == ' ')) {
+				return false;
+			}
+		}
+		return tagAt(buf, at + 4, "ftyp") || tagAt(buf, at + 4, "moov") || tagAt(buf, at + 4, "free")
+				|| tagAt(buf, at + 4, "mdat") || tagAt(buf, at + 4, "skip") || tagAt(buf, at + 4, "wide")
+				|| tagAt(buf, at + 4, "uuid") || tagAt(buf, at + 4, "pdin") || tagAt(buf, at + 4, "moof");
+	}
+
+	private static boolean tagAt(ByteBuffer buf, int at, String tag) {
+		if (at < 0 || at + tag.length() > buf.limit()) {
+			return false;
+		}
+		for (int i = 0; i < tag.length(); i++) {
+			if (buf.get(at + i) != tag.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static ByteBuffer slice(ByteBuffer buf, int from) {
+		return buf.duplicate().position(from).slice();
+	}
+
+	/**
+	 * Where a probe reads bytes from.
+	 */
+	private interface Source {
+		/**
+		 * Reads up to length bytes at an offset; fewer at the end of the file.
+		 */
+		ByteBuffer read(long offset, int length) throws IOException;
+
+		/**
+		 * The file size, or -1 if unknown. Known after the first read.
+		 */
+		long length();
+	}
+
+	private static final class FileSource implements Source {
+		private final URI link;
+
+		private FileSource(URI link) {
+			this.link = link;
+		}
+
+		@Override
+		public ByteBuffer read(long offset, int length) throws IOException {
+			try (FileChannel channel = FileChannel.open(Paths.get(link), StandardOpenOption.READ)) {
+				ByteBuffer buf = ByteBuffer.allocate(length);
+				while (buf.hasRemaining() && channel.read(buf, offset + buf.position()) > 0) {
+					// Keep reading until full or at the end of the file.
+				}
+				return buf.flip();
+			}
+		}
+
+		@Override
+		public long length() {
+			return Paths.get(link).toFile().length();
+		}
+
+		@Override
+		public String toString() {
+			return link.toString();
+		}
+	}
+
+	/**
+	 * Reads with a Range request per read. A server that ignores the range
+	 * sends the whole file, which is read only as far as needed.
+	 */
+	private static final class RangeSource implements Source {
+		private final URI link;
+		private final int timeoutMillis;
+		private long length = -1;
+
+		private RangeSource(URI link, int timeoutMillis) {
+			this.link = link;
+			this.timeoutMillis = timeoutMillis;
+		}
+
+		@Override
+		public ByteBuffer read(long offset, int length) throws IOException {
+			URLConnection conn = link.toURL().openConnection();
+			conn.setConnectTimeout(timeoutMillis);
+			conn.setReadTimeout(timeoutMillis);
+			conn.setRequestProperty("Range", "bytes=" + offset + "-" + (offset + length - 1));
+			try (InputStream in = conn.getInputStream()) {
+				String range = conn.getHeaderField("Content-Range");
+				long skip = 0;
+				if (range != null && range.lastIndexOf('/') > 0 && !range.endsWith("*")) {
+					this.length = Long.parseLong(range.substring(range.lastIndexOf('/') + 1).trim());
+				} else if (range == null) {
+					this.length = conn.getContentLengthLong();
+					skip = offset;
+				}
+				if (skip > MAX_SKIP_BYTES) {
+					throw new IOException(link + " does not accept range requests");
+				}
+				while (skip > 0) {
+					long skipped = in.skip(skip);
+					if (skipped <= 0) {
+						return ByteBuffer.allocate(0);
+					}
+					skip -= skipped;
+				}
+				byte[] buf = in.readNBytes(length);
+				return ByteBuffer.wrap(buf);
+			} finally {
+				if (conn instanceof HttpURLConnection) {
+					// A server ignoring the range is still sending the rest.
+					((HttpURLConnection) conn).disconnect();
+				}
+			}
+		}
+
+		@Override
+		public long length() {
+			return length;
+		}
+
+		@Override
+		public String toString() {
+			return link.toString();
+		}
+	}
+}
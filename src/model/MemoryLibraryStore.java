@@ -0,0 +1,154 @@
+package model;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import model.PodcastPlayerModel.Episode;
+import model.PodcastPlayerModel.Podcast;
+
+/**
+ * Keeps every Podcast on the heap, in a map. This is the store a model
+ * starts with, and the one saved with it.
+ *
+ * Searches scan each Podcast's publish date index from the newest Episode
+ *  down to the query's date, so they cost about the Episodes in range.
+ *
+ * @author Todd Noecker
+ */
+public final class MemoryLibraryStore implements LibraryStore {
+
+	private static final Comparator<Map.Entry<String, Episode>> NEWEST = Comparator
+			.comparing((Map.Entry<String, Episode> match) -> match.getValue().getPublishedMillis()).reversed()
+			.thenComparing(Map.Entry::getKey)
+			.thenComparingInt(match -> match.getValue().getEpNum());
+
+	private final Map<String, Podcast> library;
+
+	/**
+	 * Creates an empty store.
+	 *
+	 * @author Todd Noecker
+	 */
+	public MemoryLibraryStore() {
+		this(new ConcurrentHashMap<String, Podcast>());
+	}
+
+	/**
+	 * Creates a store over a model's own map, which it keeps using.
+	 *
+	 * @param library the map.
+	 * @author Todd Noecker
+	 */
+	MemoryLibraryStore(Map<String, Podcast> library) {
+		this.library = library;
+	}
+
+	/* ------------------------------------------------------------------------
+	 * ---------------------------PUBLIC METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	@Override
+	public Podcast get(String key) {
+		return library.get(key);
+	}
+
+	@Override
+	public Podcast put(String key, Podcast podcast) {
+		return library.put(key, podcast);
+	}
+
+	@Override
+	public Podcast remove(String key) {
+		return library.remove(key);
+	}
+
+	@Override
+	public void podcastChanged(String key, Podcast podcast) {
+		// The Podcast is its own index.
+	}
+
+	@Override
+	public void positionChanged(String key, Episode ep) {
+		// The Episode already holds its position.
+	}
+
+	@Override
+	public Set<String> keys() {
+		return new HashSet<String>(library.keySet());
+	}
+
+	@Override
+	public List<Episode> findEpisodes(EpisodeQuery query) {
+		List<Map.Entry<String, Episode>> matches = new ArrayList<Map.Entry<String, Episode>>();
+		if (query.getPodcastKey() != null) {
+			Podcast podcast = library.get(query.getPodcastKey());
+			if (podcast != null) {
+				collect(query.getPodcastKey(), podcast, query, matches);
+			}
+		} else {
+			for (Map.Entry<String, Podcast> entry : library.entrySet()) {
+				collect(entry.getKey(), entry.getValue(), query, matches);
+			}
+		}
+		matches.sort(NEWEST);
+		List<Episode> found = new ArrayList<Episode>(Math.min(matches.size(), query.getLimit()));
+		for (Map.Entry<String, Episode> match : matches) {
+			if (found.size() == query.getLimit()) {
+				break;
+			}
+			found.add(match.getValue());
+		}
+		return found;
+	}
+
+	@Override
+	public void close() {
+		// Nothing is held back.
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PACKAGE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Fetches the map the Podcasts are kept in, which a model saves as its
+	 * library.
+	 *
+	 * @return the map.
+	 * @author Todd Noecker
+	 */
+	Map<String, Podcast> map() {
+		return library;
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PRIVATE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Adds up to the query's limit of one Podcast's matches, newest first.
+	 * No later match of the Podcast can come before them.
+	 */
+	private static void collect(String key, Podcast podcast, EpisodeQuery query,
+			List<Map.Entry<String, Episode>> matches) {
+		PublishedIndex index = podcast.publishedIndex();
+		int end = query.getPublishedSince() > 0 ? index.countFrom(query.getPublishedSince()) : index.size();
+		int taken = 0;
+		for (int rank = 0; rank < end && taken < query.getLimit(); rank++) {
+			Episode ep = index.get(rank);
+			if (query.matches(ep)) {
+				matches.add(new SimpleImmutableEntry<String, Episode>(key, ep));
+				taken++;
+			}
+		}
+	}
+}
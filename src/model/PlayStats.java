@@ -0,0 +1,116 @@
+package model;
+
+/**
+ * How far through its Episodes a Podcast, or the whole library, is: how
+ * many have not been started, how many are part way through, how many were
+ * played to the end, and how much play time is left. Read from counters kept current as Episodes are added
+ * and played, so asking costs nothing however many Episodes there are.
+ *
+ * @author Todd Noecker
+ */
+public final class PlayStats {
+
+	private final int episodeCount;
+	private final int unplayedCount;
+	private final int inProgressCount;
+	private final int finishedCount;
+	private final long remainingMillis;
+
+	/**
+	 * Creates a snapshot of the counters.
+	 *
+	 * @param episodeCount    how many Episodes there are.
+	 * @param unplayedCount   how many have no play position.
+	 * @param inProgressCount how many have one short of the end.
+	 * @param finishedCount   how many were played to the end.
+	 * @param remainingMillis the play time left in the Episodes whose length
+	 *                        is known.
+	 * @author Todd Noecker
+	 */
+	PlayStats(int episodeCount, int unplayedCount, int inProgressCount, int finishedCount, long remainingMillis) {
+		this.episodeCount = episodeCount;
+		this.unplayedCount = unplayedCount;
+		this.inProgressCount = inProgressCount;
+		this.finishedCount = finishedCount;
+		this.remainingMillis = remainingMillis;
+	}
+
+	/* ------------------------------------------------------------------------
+	 * ---------------------------PUBLIC METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Fetches how many Episodes there are.
+	 *
+	 * @return the count.
+	 * @author Todd Noecker
+	 */
+	public int getEpisodeCount() {
+		return episodeCount;
+	}
+
+	/**
+	 * Fetches how many Episodes have never been played.
+	 *
+	 * @return the count.
+	 * @author Todd Noecker
+	 */
+	public int getUnplayedCount() {
+		return unplayedCount;
+	}
+
+	/**
+	 * Fetches how many Episodes have a play position short of the end.
+	 *
+	 * @return the count.
+	 * @author Todd Noecker
+	 */
+	public int getInProgressCount() {
+		return inProgressCount;
+	}
+
+	/**
+	 * Fetches how many Episodes were played to the end.
+	 *
+	 * @return the count.
+	 * @author Todd Noecker
+	 */
+	public int getFinishedCount() {
+		return finishedCount;
+	}
+
+	/**
+	 * Fetches the play time left, from each Episode's position to its end.
+	 * Episodes whose feeds do not give their length count for nothing.
+	 *
+	 * @return the time left in milliseconds.
+	 * @author Todd Noecker
+	 */
+	public long getRemainingMillis() {
+		return remainingMillis;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof PlayStats)) {
+			return false;
+		}
+		PlayStats stats = (PlayStats) other;
+		return stats.episodeCount == episodeCount && stats.unplayedCount == unplayedCount
+				&& stats.inProgressCount == inProgressCount && stats.finishedCount == finishedCount
+				&& stats.remainingMillis == remainingMillis;
+	}
+
+	@Override
+	public int hashCode() {
+		return (((episodeCount * 31 + unplayedCount) * 31 + inProgressCount) * 31 + finishedCount) * 31
+				+ Long.hashCode(remainingMillis);
+	}
+
+	@Override
+	public String toString() {
+		return episodeCount + " episodes, " + unplayedCount + " unplayed, " + inProgressCount + " in progress, "
+				+ finishedCount + " finished, " + remainingMillis + " ms left";
+	}
+}
@@ -1,25 +1,48 @@
 package model;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.UnsupportedEncodingException;
+import java.io.UncheckedIOException;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Observable;
-import javafx.scene.media.Media;
-import javafx.scene.media.MediaPlayer;
-import javafx.util.Duration;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 
 /**
  * Acts as the model for the PodcastPlayer program.
@@ -29,6 +52,10 @@ import javafx.util.Duration;
  *  hard drive. Organizes all of the metadata
  *  associated with all of the podcasts and episodes.
  * 
+ * The model does not use JavaFX, so it can fetch,
+ *  parse and store a library on a machine with no
+ *  display. Playback is left to the controller.
+ * 
  * @author seanomeara02, Todd Noecker, Garrett Scott
  * @version 2.0
  *
@@ -43,6 +70,22 @@ public class PodcastPlayerModel extends Observable implements Serializable {
 	
 	private static final String LOCAL_FILE = "./localFiles/Ep1_Jefe.mp3";
 	private static final String TEST_MP3 = "https://feeds.npr.org/510289/podcast.xml";
+	
+	/**
+	 * Matches every character outside the normal ASCII range.
+	 */
+	private static final Pattern NON_ASCII = Pattern.compile("[^\u0000-\u007F]");
+	
+	/**
+	 * The enclosure types nearly every feed uses.
+	 */
+	private static final String[] COMMON_TYPES = { "audio/mpeg", "audio/x-m4a", "audio/mp4", "video/mp4" };
+	
+	private static final long FEED_MEMO_MILLIS = 30 * 1000;
+	private static final long ARTWORK_MEMO_MILLIS = 10 * 60 * 1000;
+	private static final int MAX_ARTWORK_BYTES = 16 * 1024 * 1024;
+	private static final int DEFAULT_KNOWN_RUN = 5;
+	private static final int PROBE_THREADS = 4;
 	private Episode curEp;
 	
 	/**
@@ -50,17 +93,134 @@ public class PodcastPlayerModel extends Observable implements Serializable {
 	 *  Although the Podcasts have their titles
 	 *  already associated with them, this mapping
 	 *  makes it easier to fetch an individual Podcast.
+	 *  Concurrent so many feeds can be added at once.
+	 *  Null while the library is kept in another store.
 	 */
 	private Map<String, Podcast> library;
 	
 	/**
-	 * Initializes the library as an empty HashMap.
+	 * Where the Podcasts are kept. Starts as a store over the library map.
+	 */
+	private transient LibraryStore libraryStore;
+	
+	/**
+	 * When set, the Episodes of newly added Podcasts are moved into
+	 *  memory-mapped catalog files in this directory instead of
+	 *  staying on the heap.
+	 */
+	private String catalogDir;
+	
+	/**
+	 * The size, item and time limits applied to every feed this model
+	 *  fetches and parses.
+	 */
+	private FeedBudget feedBudget = FeedBudget.DEFAULT;
+	
+	/**
+	 * When set, the Episodes of newly added Podcasts are kept in compact
+	 *  storage, with packed descriptions and interned text.
+	 */
+	private boolean compactStorage;
+	
+	/**
+	 * The pool large feeds are parsed on. Null means the common pool.
+	 */
+	private transient ForkJoinPool parsePool;
+	
+	/**
+	 * When set, fetched feeds are streamed into files in this directory
+	 *  and parsed from a memory mapping instead of from the heap.
+	 */
+	private String feedCacheDir;
+	
+	/**
+	 * When set, the Episodes of Podcasts not opened lately are moved into
+	 *  catalog files in this directory, and back when next opened.
+	 */
+	private String residencyDir;
+	
+	/**
+	 * The most heap the Episodes of opened Podcasts may hold before the
+	 *  coldest are moved out, or 0 to move them only when the heap is
+	 *  nearly full.
+	 */
+	private long heapBudget;
+	
+	/**
+	 * Tracks which Podcasts were opened most recently. Created when first
+	 *  needed after the model is loaded.
+	 */
+	private transient ResidencyManager residency;
+	
+	/**
+	 * Shares one fetch and parse between requests for the same feed that
+	 *  arrive together or within FEED_MEMO_MILLIS of each other.
+	 */
+	private transient SingleFlight<String, Podcast> feedFlights;
+	
+	/**
+	 * Shares one download between requests for the same artwork, and keeps
+	 *  it for ARTWORK_MEMO_MILLIS.
+	 */
+	private transient SingleFlight<String, byte[]> artworkFlights;
+	
+	/**
+	 * Reads enclosure headers for play times the feeds leave out. Created
+	 *  when first asked for.
+	 */
+	private transient MediaProbe mediaProbe;
+	
+	/**
+	 * Downloads episodes for offline play, or null if there is none.
+	 */
+	private transient DownloadManager downloads;
+	
+	/**
+	 * Finds Episodes of different Podcasts that carry the same media file.
+	 */
+	private transient EnclosureRegistry enclosures = new EnclosureRegistry(this::lookup);
+	
+	/**
+	 * Play counts over every Podcast in the library, kept current as
+	 *  Episodes are added and played.
+	 */
+	private transient StatsCounter totals = new StatsCounter();
+	
+	/**
+	 * The library's started Episodes, most recently played first.
+	 */
+	private transient ListeningShelf shelf = new ListeningShelf();
+	
+	/**
+	 * Every Podcast's Episodes merged newest first. Built when first read.
+	 */
+	private transient Timeline timeline;
+	
+	/**
+	 * Collects changes to the library for screens to take once a frame.
+	 */
+	private transient ChangeBus changes = new ChangeBus();
+	
+	/**
+	 * How many already known items in a row end a refresh scan.
+	 */
+	private int knownRun = DEFAULT_KNOWN_RUN;
+	
+	/**
+	 * Counts changes to the library's Podcasts and Episodes, so readers can
+	 *  tell whether what they last read is still current.
+	 */
+	private AtomicLong version = new AtomicLong();
+	
+	/**
+	 * Initializes the library as an empty ConcurrentHashMap.
 	 * 
 	 * @author seanomeara02
 	 */
 	public PodcastPlayerModel() {
-		this.library = new HashMap<String, Podcast>();
-		
+		this.library = new ConcurrentHashMap<String, Podcast>();
+		this.libraryStore = new MemoryLibraryStore(library);
+		changes.shelveTo(shelf);
 	}
 	
 	/* ------------------------------------------------------------------------ 
@@ -68,6 +228,66 @@ public class PodcastPlayerModel extends Observable implements Serializable {
 	 * ------------------------------------------------------------------------
 	 */
 	
+	/**
+	 * Fetches one loaded Podcast by its title.
+	 * 
+	 * @param podcastName is the title of the Podcast.
+	 * @return the Podcast, or null if it is not loaded.
+	 * @author Todd Noecker
+	 */
+	public Podcast getPodcast(String podcastName) {
+		return podcastName == null ? null : open(podcastName);
+	}
+	
+	/**
+	 * Fetches the library version. It goes up whenever a Podcast is added
+	 *  or gains Episodes, so anything built from the library at one
+	 *  version can be reused until the version changes. Play positions do
+	 *  not change it.
+	 * 
+	 * @return the current library version.
+	 * @author Todd Noecker
+	 */
+	public long getVersion() {
+		return version.get();
+	}
+	
+	/**
+	 * Fetches the bus that collects this library's changes. A screen turns
+	 *  collecting on, then takes one batch from it per frame instead of
+	 *  being called for each change.
+	 * 
+	 * @return the change bus.
+	 * @author Todd Noecker
+	 */
+	public ChangeBus getChanges() {
+		return changes;
+	}
+	
+	/**
+	 * Takes a Podcast out of the library.
+	 * 
+	 * @param podcastName is the library key of the Podcast.
+	 * @return true if there was such a Podcast.
+	 * @author Todd Noecker
+	 */
+	public boolean removePodcast(String podcastName) {
+		Podcast podcast = libraryStore.remove(podcastName);
+		if (podcast == null) {
+			return false;
+		}
+		ResidencyManager manager = residency();
+		if (manager != null) {
+			manager.forget(podcastName);
+		}
+		uncount(podcast);
+		enclosures.remove(podcastName, podcast);
+		changes.podcastRemoved(podcastName, podcast);
+		timelineChanged(podcastName);
+		version.incrementAndGet();
+		return true;
+	}
+	
 	/**
 	 * Returns a List of all of the currently loaded
 	 *  Podcasts in alphabetical order by title.
@@ -76,7 +296,13 @@ public class PodcastPlayerModel extends Observable implements Serializable {
 	 * @author seanomeara02
 	 */
 	public List<Podcast> getLibrary() {
-		List<Podcast> list = new ArrayList<Podcast>(library.values());
+		List<Podcast> list = new ArrayList<Podcast>();
+		for (String key : libraryStore.keys()) {
+			Podcast podcast = lookup(key);
+			if (podcast != null) {
+				list.add(podcast);
+			}
+		}
 		Collections.sort(list);
 		return list;
 	}
@@ -94,11 +320,11 @@ public class PodcastPlayerModel extends Observable implements Serializable {
 	public void addPodcast(String filePath) throws IOException, URISyntaxException {
 		try {
 			URI check = new URI(filePath);
-			String HTML = getSiteContent(check);
-			if(HTML != null) {
-			Podcast podcast = new Podcast(filePath, HTML);
-			library.put(podcast.getTitle(), podcast);
-			}
+			// Requests for the same feed share one fetch and parse. A fetch
+			// that fails throws, so it is not kept for the next request.
+			Podcast podcast = feedFlights().get(canonicalLink(check),
+					() -> parsePodcast(filePath, getSiteContent(check)));
+			store(podcast);
 		} catch (Exception ex) {
 			System.out.println("Site " + ex.getMessage() + " did not contain an RSS feed or did not exist. Skipping\n");
 		}
@@ -106,312 +332,2309 @@ public class PodcastPlayerModel extends Observable implements Serializable {
 	}
 	
 	/**
-	 * Loads a local audio file into a Media object.
+	 * Parses a Podcast straight from the raw bytes of its RSS feed and
+	 *  stores it in the library. The bytes are scanned in place, so the
+	 *  buffer may be a heap, direct or memory-mapped one.
 	 * 
-	 * Neither the file path or the Media object is
-	 *  stored by the model.
-	 * 
-	 * @return a Media object representing the
-	 *  audio file in a playable format.
-	 * @author Garrett Scott
+	 * @param filePath is the link the feed was fetched from.
+	 * @param content is the feed's bytes, from position to limit.
 	 * @throws IOException 
-	 * @throws MalformedURLException 
 	 * @throws URISyntaxException 
+	 * @author Todd Noecker
 	 */
-	public Media getLocalFile() throws MalformedURLException, IOException, URISyntaxException {
-		
-		return new Media(new File(LOCAL_FILE).toURI().toString());
+	public void addPodcast(String filePath, ByteBuffer content) throws IOException, URISyntaxException {
+		store(parsePodcast(filePath, content));
 	}
 	
 	/**
-	 * Loads a set of podcasts into the podcast Player. An RSS feed is passed to the
-	 * podcast constructor to be parsed into a podcasts Object with episodes.
+	 * Loads many Podcasts at once. Feeds are fetched and parsed on a pool of
+	 *  the given size; feeds that fail are skipped as in addPodcast.
 	 * 
-	 * @author Garrett Scott, Todd Noecker, Sara Grimes, seanomeara02
-	 * @throws IOException
-	 * @throws URISyntaxException
+	 * @param filePaths the links of the feeds to load.
+	 * @param threads how many feeds may be fetched and parsed at once.
+	 * @throws InterruptedException if interrupted while waiting for the feeds.
+	 * @author Todd Noecker
 	 */
-	public void getPodcastRSSContent() throws IOException, URISyntaxException {
-		// Planet Money
-		this.addPodcast(TEST_MP3);
-		// Planet Money
-		this.addPodcast("https://feeds.npr.org/510289/podcast.xml");
-		// No Such Thing as a Fish
-		this.addPodcast("https://audioboom.com/channels/2399216.rss");
-		// Lex Friedman
-		this.addPodcast("https://lexfridman.com/feed/podcast/");
-		// 99% PI
-		this.addPodcast("https://feeds.simplecast.com/BqbsxVfO");
-		// DateLine Podcast.
-		this.addPodcast("https://podcastfeeds.nbcnews.com/HL4TzgYC");
-		// Ted Daily Podcast.
-		this.addPodcast("http://feeds.feedburner.com/TEDTalks_audio");
+	public void addPodcasts(Collection<String> filePaths, int threads) throws InterruptedException {
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (String filePath : filePaths) {
+			tasks.add(() -> {
+				addPodcast(filePath);
+				return null;
+			});
+		}
+		runAll(tasks, threads);
 	}
 	
 	/**
-	 * Returns a MediaPlayer created from one of the loaded
-	 *  Podcast Episodes.
+	 * Refreshes every Podcast in the library at once on a pool of the given
+	 *  size. A Podcast whose feed can not be fetched is left as it is.
 	 * 
-	 * The Episode is specified by the name of the
-	 *  Podcast which contains it and the episode
-	 *  name.
+	 * @param threads how many feeds may be refreshed at once.
+	 * @return how many new Episodes were found in total.
+	 * @throws InterruptedException if interrupted while waiting for the feeds.
+	 * @author Todd Noecker
+	 */
+	public int refreshLibrary(int threads) throws InterruptedException {
+		AtomicInteger found = new AtomicInteger();
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (String name : libraryStore.keys()) {
+			tasks.add(() -> {
+				try {
+					found.addAndGet(refreshPodcast(name).size());
+				} catch (IOException ex) {
+					System.out.println("Podcast " + name + " could not be refreshed: " + ex.getMessage());
+				}
+				return null;
+			});
+		}
+		runAll(tasks, threads);
+		return found.get();
+	}
+	
+	/**
+	 * Fetches a loaded Podcast's feed again and adds any Episodes published
+	 *  since it was last read. Only the items ahead of the first run of
+	 *  already known items are parsed.
 	 * 
-	 * @param podcastName is the title of the Podcast
-	 *  of which this Episode is a part.
-	 * @param episodeTitle is the name of the specified Episode.
-	 * @return a MediaPlayer which plays the specified Episode.
-	 * @author seanomeara02, Garrett Scott
+	 * @param podcastName is the title of the Podcast to refresh.
+	 * @return the new Episodes, newest first. Empty if the feed could not
+	 *  be fetched or had nothing new.
+	 * @throws IOException if a catalog-backed Podcast can not rewrite its
+	 *  catalog.
+	 * @author Todd Noecker
 	 */
-	public MediaPlayer getEpisode(String podcastName, String episodeTitle) {
-		// get podcast from library
-		Podcast podcast = library.get(podcastName);
-		
-		// if it returns null throw exception
+	public List<Episode> refreshPodcast(String podcastName) throws IOException {
+		Podcast podcast = lookup(podcastName);
 		if (podcast == null)
 			throw new IllegalArgumentException("Podcast "+podcastName+" not found");
-		
-		// get the episode from the podcast
-		this.curEp = podcast.getEpisode(episodeTitle);
-		
-		// if episode isn't there throw exception
-		if (this.curEp == null)
-			throw new IllegalArgumentException("Podcast "+podcastName+" has no episode "+episodeTitle);
-		
-		// Get startTime
-		Duration startTime = this.curEp.getCurTime();
-		
-		Media newM = new Media(this.curEp.getLink().toString());
-		MediaPlayer newMP = new MediaPlayer(newM);
-		if (startTime != null) {
-			newMP.setStartTime(startTime);
+		if (podcast.isLocal()) {
+			// Local folders are kept current by their scanner.
+			return Collections.emptyList();
 		}
 		
-		setChanged();
-		notifyObservers(this.curEp);
-		return newMP;
+		ByteBuffer HTML;
+		try {
+			HTML = getSiteContent(podcast.getLink());
+		} catch (IOException ex) {
+			System.out.println("Site " + ex.getMessage() + " could not be fetched. Skipping\n");
+			return Collections.emptyList();
+		}
+		List<Episode> fresh = podcast.refresh(new ByteFeed(HTML), getKnownRun());
+		if (!fresh.isEmpty()) {
+			ResidencyManager manager = residency();
+			if (manager != null) {
+				manager.changed(podcastName, podcast);
+			}
+			libraryStore.podcastChanged(podcastName, podcast);
+			share(podcastName, fresh);
+			changes.podcastChanged(podcastName, podcast);
+			timelineChanged(podcastName);
+			version.incrementAndGet();
+			DownloadManager downloader = downloads;
+			if (downloader != null && downloader.isAutoDownload()) {
+				for (Episode ep : fresh) {
+					// A copy already downloaded under another feed is found by
+					// its shared link and not fetched again.
+					fetched(ep, downloader.enqueue(getEnclosureLink(ep), DownloadManager.Priority.AUTO, null));
+				}
+			}
+		}
+		return fresh;
 	}
 	
 	/**
-	 * This saves the Episodes current play position for future reference.
+	 * Sets how many already known items in a row end a refresh scan. A
+	 *  longer run tolerates feeds that reorder a few old items near the top.
 	 * 
-	 * @param curTime Duration object.
-	 * @author Garrett Scott
+	 * @param run the number of known items, at least 1.
+	 * @author Todd Noecker
 	 */
-	public void savePlayPos(Duration curTime) {
-		this.curEp.setCurTime(curTime);
+	public void setKnownRun(int run) {
+		if (run < 1) {
+			throw new IllegalArgumentException("Known run must be at least 1");
+		}
+		this.knownRun = run;
 	}
 	
 	/**
-	 * This method writes its self to file to file. 
+	 * Fetches how many already known items in a row end a refresh scan.
 	 * 
-	 * @param out output stream associated with a file file to write to. 
-	 * @throws IOException
-	 * @author Garrett Scott
+	 * @return the known run length.
+	 * @author Todd Noecker
 	 */
-	public void storeModel (ObjectOutputStream out) throws IOException {
-		out.writeObject(this);
-		out.close();
+	public int getKnownRun() {
+		// Save files written before refresh existed load with 0.
+		return knownRun < 1 ? DEFAULT_KNOWN_RUN : knownRun;
 	}
 	
 	/**
-	 * This will load a model from the save file.
+	 * Returns the bytes of a Podcast's artwork. Requests for the same image
+	 *  share one download, and the bytes are kept for a while so clicking
+	 *  the same podcast again does not fetch it again.
 	 * 
-	 * @param fileName is the name of the file in which the serialized model is stored.
-	 * @return Model derived from the save file.
-	 * @throws IOException caused by file not existing. 
-	 * @throws ClassNotFoundException thrown if the input object isn't a PodcastPlayerModel
+	 * @param image the link to the artwork.
+	 * @return the image bytes, or null if it could not be loaded.
+	 * @author Todd Noecker
 	 */
-	public PodcastPlayerModel loadModel(String fileName) throws IOException, ClassNotFoundException {
-		// Create the file input stream
-		FileInputStream fis = new FileInputStream(fileName);
-		// Create the input stream from the file
-		ObjectInputStream ois = new ObjectInputStream(fis);
-		// read in the saved model
-		PodcastPlayerModel outputModel = (PodcastPlayerModel) ois.readObject();
-		ois.close();
-		
-		return outputModel;
+	public byte[] getArtwork(URI image) {
+		if (image == null) {
+			return null;
+		}
+		try {
+			return artworkFlights().get(canonicalLink(image), () -> readArtwork(image));
+		} catch (Exception ex) {
+			System.out.println("Artwork " + image + " could not be loaded: " + ex.getMessage());
+			return null;
+		}
 	}
 	
-	/* ------------------------------------------------------------------------ 
-	 * --------------------------PRIVATE METHODS-------------------------------
-	 * ------------------------------------------------------------------------
+	/**
+	 * Fetches the probe that reads play times and seek tables from the
+	 *  first few KB of enclosures, for lists that show lengths of Episodes
+	 *  whose feeds leave them out. Remote probes use the feed fetch time
+	 *  limit.
+	 * 
+	 * @return the shared probe.
+	 * @author Todd Noecker
 	 */
+	public synchronized MediaProbe getMediaProbe() {
+		if (mediaProbe == null) {
+			mediaProbe = new MediaProbe(PROBE_THREADS, getFeedBudget().getMaxFetchMillis());
+		}
+		return mediaProbe;
+	}
 	
 	/**
-	 * This method will scrape a passed RSS site's content and store it into a
-	 * String to be parsed.
+	 * Reduces a link to a canonical form so the same resource written in
+	 *  different ways maps to one key. The scheme and host are lower-cased,
+	 *  default ports, fragments and dot segments are dropped, and an empty
+	 *  path becomes "/".
 	 * 
+	 * @param link the link to reduce.
+	 * @return the canonical form of the link.
+	 * @author Todd Noecker
+	 */
+	public static String canonicalLink(URI link) {
+		URI norm = link.normalize();
+		if (norm.getHost() == null) {
+			// Relative or opaque links have nothing more to normalize.
+			return norm.toString();
+		}
+		String scheme = norm.getScheme() == null ? "" : norm.getScheme().toLowerCase(Locale.ROOT);
+		int port = norm.getPort();
+		if ((scheme.equals("http") && port == 80) || (scheme.equals("https") && port == 443)) {
+			port = -1;
+		}
+		StringBuilder build = new StringBuilder(scheme).append("://");
+		if (norm.getRawUserInfo() != null) {
+			build.append(norm.getRawUserInfo()).append('@');
+		}
+		build.append(norm.getHost().toLowerCase(Locale.ROOT));
+		if (port != -1) {
+			build.append(':').append(port);
+		}
+		String path = norm.getRawPath();
+		build.append(path == null || path.isEmpty() ? "/" : path);
+		if (norm.getRawQuery() != null) {
+			build.append('?').append(norm.getRawQuery());
+		}
+		return build.toString();
+	}
+	
+	/**
+	 * Sets the directory used for memory-mapped Episode catalogs. Podcasts
+	 *  added after this call keep their Episodes in a catalog file there.
 	 * 
+	 * @param dirPath the directory for catalog files, or null to keep
+	 *  Episodes on the heap.
+	 * @throws IOException if the directory can not be created.
 	 * @author Todd Noecker
+	 */
+	public void setCatalogDirectory(String dirPath) throws IOException {
+		if (dirPath != null) {
+			Files.createDirectories(Paths.get(dirPath));
+		}
+		this.catalogDir = dirPath;
+	}
+	
+	/**
+	 * Sets the limits applied to feeds fetched and parsed from now on.
 	 * 
-	 * @param url the passed url
+	 * @param budget the new limits, or null for the defaults.
+	 * @author Todd Noecker
+	 */
+	public void setFeedBudget(FeedBudget budget) {
+		this.feedBudget = budget;
+	}
+	
+	/**
+	 * Fetches the limits applied to feeds fetched and parsed by this model.
+	 * 
+	 * @return the current feed budget.
+	 * @author Todd Noecker
+	 */
+	public FeedBudget getFeedBudget() {
+		// Save files written before budgets existed load with no budget.
+		return feedBudget == null ? FeedBudget.DEFAULT : feedBudget;
+	}
+	
+	/**
+	 * Turns compact storage on or off for Podcasts added from now on. Their
+	 *  Episodes, and any a refresh adds later, keep their descriptions
+	 *  packed and their text interned. Podcasts already added keep the
+	 *  storage they were added with.
+	 * 
+	 * @param compact true to pack descriptions and intern text.
+	 * @author Todd Noecker
+	 */
+	public void setCompactStorage(boolean compact) {
+		this.compactStorage = compact;
+	}
+	
+	/**
+	 * Reports whether Podcasts added from now on keep their Episodes in
+	 *  compact storage.
+	 * 
+	 * @return true if compact storage is on.
+	 * @author Todd Noecker
+	 */
+	public boolean isCompactStorage() {
+		return compactStorage;
+	}
+	
+	/**
+	 * Sets the directory fetched feeds are cached in. Feeds fetched after
+	 *  this call are written there and parsed from a memory mapping, so a
+	 *  large feed never has to fit on the heap.
+	 * 
+	 * @param dirPath the directory for cached feeds, or null to read feeds
+	 *  into memory.
+	 * @throws IOException if the directory can not be created.
+	 * @author Todd Noecker
+	 */
+	public void setFeedCacheDirectory(String dirPath) throws IOException {
+		if (dirPath != null) {
+			Files.createDirectories(Paths.get(dirPath));
+		}
+		this.feedCacheDir = dirPath;
+	}
+	
+	/**
+	 * Keeps only the Episodes of recently opened Podcasts on the heap. The
+	 *  Episodes of the others are moved into catalog files in the given
+	 *  directory when the opened Podcasts' Episodes exceed the budget, or
+	 *  when the collector reports the heap nearly full, and are moved back
+	 *  when their Podcast is next opened. Until then they are read from
+	 *  the file. Episodes are moved by a background thread, so opening a
+	 *  Podcast never waits for a file to be written.
 	 * 
-	 * @return the full parsed text of the RSS feed site.
+	 * @param dirPath the directory for released Episodes, or null to keep
+	 *  every Podcast's Episodes where they are.
+	 * @param heapBudgetBytes the most heap opened Podcasts' Episodes may
+	 *  hold, or 0 to release only when the heap is nearly full.
+	 * @throws IOException if the directory can not be created.
+	 * @author Todd Noecker
 	 */
-	private String getSiteContent(URI url) {
-		StringBuffer buff = null;
+	public void setResidency(String dirPath, long heapBudgetBytes) throws IOException {
+		if (heapBudgetBytes < 0) {
+			throw new IllegalArgumentException("Heap budget can not be negative");
+		}
+		if (dirPath != null) {
+			Files.createDirectories(Paths.get(dirPath));
+		}
+		synchronized (this) {
+			if (residency != null) {
+				residency.close();
+				residency = null;
+			}
+			this.residencyDir = dirPath;
+			this.heapBudget = heapBudgetBytes;
+		}
+	}
+	
+	/**
+	 * Moves the Episodes of every Podcast but the most recently opened few
+	 *  out of the heap now, as a nearly full heap does.
+	 * 
+	 * @param keep how many recently opened Podcasts to keep on the heap.
+	 * @return how many Podcasts were released.
+	 * @author Todd Noecker
+	 */
+	public int releaseColdPodcasts(int keep) {
+		ResidencyManager manager = residency();
+		return manager == null ? 0 : manager.releaseCold(keep);
+	}
+	
+	/**
+	 * Estimates the heap held by the Episodes of the Podcasts opened since
+	 *  residency was set and not released since.
+	 * 
+	 * @return the estimate in bytes, 0 if residency is not set.
+	 * @author Todd Noecker
+	 */
+	public long getResidentBytes() {
+		ResidencyManager manager = residency();
+		return manager == null ? 0 : manager.getResidentBytes();
+	}
+	
+	/**
+	 * Sets how many threads may parse the items of one large feed at once.
+	 * 
+	 * @param threads the parse parallelism, or 0 to use the common pool.
+	 * @author Todd Noecker
+	 */
+	public void setParseParallelism(int threads) {
+		if (threads < 0) {
+			throw new IllegalArgumentException("Parse parallelism can not be negative");
+		}
+		if (this.parsePool != null) {
+			this.parsePool.shutdown();
+		}
+		this.parsePool = threads == 0 ? null : new ForkJoinPool(threads);
+	}
+	
+	/**
+	 * Fetches the pool used to parse large feeds.
+	 * 
+	 * @return the parse pool.
+	 * @author Todd Noecker
+	 */
+	public ForkJoinPool getParsePool() {
+		return parsePool == null ? ForkJoinPool.commonPool() : parsePool;
+	}
+	
+	/**
+	 * Returns the location of the local audio file.
+	 * 
+	 * The file path is not stored by the model.
+	 * 
+	 * @return a URI the audio file can be played from.
+	 * @author Garrett Scott
+	 * @throws IOException 
+	 * @throws MalformedURLException 
+	 * @throws URISyntaxException 
+	 */
+	public URI getLocalFile() throws MalformedURLException, IOException, URISyntaxException {
+		
+		return new File(LOCAL_FILE).toURI();
+	}
+	
+	/**
+	 * Returns the downloaded copy of an Episode, or the file itself for an
+	 *  Episode of a local folder.
+	 * 
+	 * @param episode the Episode.
+	 * @return a URI the local file can be played from, or null if the
+	 *  Episode is not downloaded.
+	 * @author Todd Noecker
+	 */
+	public URI getLocalFile(Episode episode) {
+		URI link = getEnclosureLink(episode);
+		if (link != null && "file".equals(link.getScheme())) {
+			return link;
+		}
+		DownloadManager manager = downloads;
+		Path file = manager == null || link == null ? null : manager.getFile(link);
+		return file == null ? null : file.toUri();
+	}
+	
+	/**
+	 * Fetches the link an Episode's media is played and downloaded from.
+	 *  Copies of one media file posted to several feeds all use the link
+	 *  the first copy was found under, so they share one download and one
+	 *  cache entry.
+	 * 
+	 * @param episode the Episode.
+	 * @return the link, or null if the Episode has none.
+	 * @author Todd Noecker
+	 */
+	public URI getEnclosureLink(Episode episode) {
+		URI shared = enclosures.sharedLink(episode);
+		return shared != null ? shared : episode.getLink();
+	}
+	
+	/**
+	 * Records the SHA-256 digest of an Episode's media file. Episodes whose
+	 *  links differ but whose files have the same digest are treated as
+	 *  copies from then on. Downloads record their digests themselves.
+	 * 
+	 * @param episode the Episode.
+	 * @param sha256 the digest in hex.
+	 * @author Todd Noecker
+	 */
+	public void recordEnclosureDigest(Episode episode, String sha256) {
+		enclosures.recordDigest(episode, sha256);
+	}
+	
+	/**
+	 * Counts the Episodes that are copies of an Episode in another, or the
+	 *  same, Podcast and share its payload and play position.
+	 * 
+	 * @return the number of copies.
+	 * @author Todd Noecker
+	 */
+	public int getSharedEnclosureCount() {
+		return enclosures.sharedCount();
+	}
+	
+	/**
+	 * Fetches how far through its Episodes the whole library is. The
+	 *  counts are kept current as Episodes are added, removed and played,
+	 *  so reading them walks no Episodes.
+	 * 
+	 * @return the counts.
+	 * @author Todd Noecker
+	 */
+	public PlayStats getPlayStats() {
+		return totals.snapshot();
+	}
+	
+	/**
+	 * Fetches how far through its Episodes one Podcast is.
+	 * 
+	 * @param podcastName the library key of the Podcast.
+	 * @return the counts.
+	 * @throws IllegalArgumentException if there is no such Podcast.
+	 * @author Todd Noecker
+	 */
+	public PlayStats getPlayStats(String podcastName) {
+		Podcast podcast = podcastName == null ? null : lookup(podcastName);
+		if (podcast == null) {
+			throw new IllegalArgumentException("Podcast " + podcastName + " not found");
+		}
+		return podcast.getPlayStats();
+	}
+	
+	/**
+	 * Sets the manager Episodes are downloaded with for offline play.
+	 *  Refreshes queue the new Episodes they find when the manager's
+	 *  auto-download is on.
+	 * 
+	 * @param manager the download manager, or null to stop downloading.
+	 * @author Todd Noecker
+	 */
+	public void setDownloadManager(DownloadManager manager) {
+		this.downloads = manager;
+	}
+	
+	/**
+	 * Fetches the manager Episodes are downloaded with.
+	 * 
+	 * @return the download manager, or null if none is set.
+	 * @author Todd Noecker
+	 */
+	public DownloadManager getDownloadManager() {
+		return downloads;
+	}
+	
+	/**
+	 * Queues an Episode for download ahead of automatic downloads. A copy
+	 *  of the Episode in another feed that is already downloaded is not
+	 *  fetched again.
+	 * 
+	 * @param podcastName is the title of the Podcast.
+	 * @param episodeTitle is the name of the Episode.
+	 * @return completes with the downloaded file.
+	 * @throws IllegalArgumentException if the Episode is not found.
+	 * @throws IllegalStateException if no download manager is set.
+	 * @author Todd Noecker
+	 */
+	public CompletableFuture<Path> downloadEpisode(String podcastName, String episodeTitle) {
+		DownloadManager manager = downloads;
+		if (manager == null) {
+			throw new IllegalStateException("No download manager is set");
+		}
+		Podcast podcast = podcastName == null ? null : lookup(podcastName);
+		Episode episode = podcast == null ? null : podcast.getEpisode(episodeTitle);
+		if (episode == null) {
+			throw new IllegalArgumentException("Podcast " + podcastName + " has no episode " + episodeTitle);
+		}
+		return fetched(episode, manager.enqueue(getEnclosureLink(episode), DownloadManager.Priority.USER, null));
+	}
+	
+	/**
+	 * Loads a set of podcasts into the podcast Player. An RSS feed is passed to the
+	 * podcast constructor to be parsed into a podcasts Object with episodes.
+	 * 
+	 * @author Garrett Scott, Todd Noecker, Sara Grimes, seanomeara02
+	 * @throws IOException
+	 * @throws URISyntaxException
+	 */
+	public void getPodcastRSSContent() throws IOException, URISyntaxException {
+		// Planet Money
+		this.addPodcast(TEST_MP3);
+		// Planet Money
+		this.addPodcast("https://feeds.npr.org/510289/podcast.xml");
+		// No Such Thing as a Fish
+		this.addPodcast("https://audioboom.com/channels/2399216.rss");
+		// Lex Friedman
+		this.addPodcast("https://lexfridman.com/feed/podcast/");
+		// 99% PI
+		this.addPodcast("https://feeds.simplecast.com/BqbsxVfO");
+		// DateLine Podcast.
+		this.addPodcast("https://podcastfeeds.nbcnews.com/HL4TzgYC");
+		// Ted Daily Podcast.
+		this.addPodcast("http://feeds.feedburner.com/TEDTalks_audio");
+	}
+	
+	/**
+	 * Selects one of the loaded Podcast Episodes as the
+	 *  current Episode and returns it.
+	 * 
+	 * The Episode is specified by the name of the
+	 *  Podcast which contains it and the episode
+	 *  name.
+	 * 
+	 * @param podcastName is the title of the Podcast
+	 *  of which this Episode is a part.
+	 * @param episodeTitle is the name of the specified Episode.
+	 * @return the specified Episode.
+	 * @author seanomeara02, Garrett Scott
+	 */
+	public Episode getEpisode(String podcastName, String episodeTitle) {
+		// get podcast from library
+		Podcast podcast = podcastName == null ? null : open(podcastName);
+		
+		// if it returns null throw exception
+		if (podcast == null)
+			throw new IllegalArgumentException("Podcast "+podcastName+" not found");
+		
+		// get the episode from the podcast
+		this.curEp = podcast.getEpisode(episodeTitle);
+		
+		// if episode isn't there throw exception
+		if (this.curEp == null)
+			throw new IllegalArgumentException("Podcast "+podcastName+" has no episode "+episodeTitle);
+		
+		if (this.curEp.isInProgress()) {
+			// Picking a started Episode again brings it to the front of the
+			// continue listening shelf.
+			this.curEp.markPlayed();
+			shelf.played(podcastName, this.curEp);
+		}
+		
+		setChanged();
+		notifyObservers(this.curEp);
+		changes.nowPlaying(this.curEp);
+		return this.curEp;
+	}
+
+	/**
+	 * Returns one page of a Podcast's Episodes, for list screens and
+	 *  services that show a few at a time.
+	 *
+	 * @param podcastName is the title of the Podcast.
+	 * @param cursor the cursor from the previous page, or null for the first.
+	 * @param limit the most Episodes to return.
+	 * @param filter which Episodes to include.
+	 * @return the page.
+	 * @throws IllegalArgumentException if the Podcast is not found or the
+	 *  cursor or limit is not valid.
+	 * @author Todd Noecker
+	 */
+	public EpisodePage getEpisodes(String podcastName, String cursor, int limit, EpisodeFilter filter) {
+		return getEpisodes(podcastName, cursor, limit, filter, EpisodeOrder.FEED);
+	}
+
+	/**
+	 * Returns one page of a Podcast's Episodes in the given order.
+	 *
+	 * @param podcastName is the title of the Podcast.
+	 * @param cursor the cursor from the previous page, or null for the first.
+	 * @param limit the most Episodes to return.
+	 * @param filter which Episodes to include.
+	 * @param order the order to list them in.
+	 * @return the page.
+	 * @throws IllegalArgumentException if the Podcast is not found or the
+	 *  cursor or limit is not valid.
+	 * @author Todd Noecker
+	 */
+	public EpisodePage getEpisodes(String podcastName, String cursor, int limit, EpisodeFilter filter,
+			EpisodeOrder order) {
+		Podcast podcast = getPodcast(podcastName);
+		if (podcast == null)
+			throw new IllegalArgumentException("Podcast "+podcastName+" not found");
+		return podcast.getEpisodes(cursor, limit, filter, order);
+	}
+
+	/**
+	 * Returns one page of the latest Episodes across every Podcast, newest
+	 *  first. Pages are merged from each Podcast's own date order, so the
+	 *  first page costs about one heap step per Episode on it rather than
+	 *  a sort of the whole library.
+	 *
+	 * @param cursor the cursor from the previous page, or null for the first.
+	 * @param limit the most Episodes to return.
+	 * @return the page. Each Episode's getPodcast names its Podcast.
+	 * @throws IllegalArgumentException if the cursor or limit is not valid.
+	 * @author Todd Noecker
+	 */
+	public EpisodePage getLatestEpisodes(String cursor, int limit) {
+		return timeline().page(cursor, limit);
+	}
+
+	/**
+	 * Lists the started Episodes across every Podcast, most recently played
+	 *  first, for a "continue listening" shelf. The list is read from an
+	 *  index kept in order as positions are saved, so it costs about one
+	 *  lookup per Episode on it. Copies of one enclosure in several feeds
+	 *  are listed once.
+	 *
+	 * @param limit the most Episodes to return.
+	 * @return the Episodes. Each Episode's getPodcast names its Podcast.
+	 * @throws IllegalArgumentException if the limit is not positive.
+	 * @author Todd Noecker
+	 */
+	public List<Episode> getContinueListening(int limit) {
+		if (limit < 1) {
+			throw new IllegalArgumentException("Limit must be at least 1: " + limit);
+		}
+		List<Episode> started = new ArrayList<Episode>();
+		Set<URI> seen = new HashSet<URI>();
+		Iterator<ListeningShelf.Slot> walk = shelf.newestFirst();
+		while (started.size() < limit && walk.hasNext()) {
+			ListeningShelf.Slot slot = walk.next();
+			Podcast podcast = lookup(slot.key);
+			Episode ep = podcast == null ? null : podcast.getEpisode(slot.title);
+			if (ep == null || !ep.isInProgress() || ep.getLastPlayedMillis() != slot.lastPlayed) {
+				// Removed, replaced by a refresh, or stored again since.
+				shelf.drop(slot);
+				continue;
+			}
+			URI link = getEnclosureLink(ep);
+			if (link == null || seen.add(link)) {
+				started.add(ep);
+			}
+		}
+		return started;
+	}
+
+	/**
+	 * Finds Episodes across the library, such as the unplayed Episodes
+	 *  published in the last week. The search is left to the library
+	 *  store, which may answer it from indexes of its own.
+	 *
+	 * @param query what to find.
+	 * @return the matches, newest first.
+	 * @author Todd Noecker
+	 */
+	public List<Episode> findEpisodes(EpisodeQuery query) {
+		List<Episode> found = libraryStore.findEpisodes(query);
+		for (Episode ep : found) {
+			if (ep.getPodcast() != null) {
+				ep.getPodcast().publishTo(changes, enclosures);
+				ep.getPodcast().reportTo(totals);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Moves the library into another store, such as a database, and keeps
+	 *  it there. Podcasts already in the new store are kept unless the old
+	 *  store has one under the same key. The old store is closed.
+	 *
+	 * @param next the store to use from now on.
+	 * @throws IOException if the old store can not be closed.
+	 * @author Todd Noecker
+	 */
+	public void setLibraryStore(LibraryStore next) throws IOException {
+		LibraryStore old;
+		synchronized (this) {
+			old = libraryStore;
+			if (next == old) {
+				return;
+			}
+			Set<String> moved = new HashSet<String>();
+			for (String key : old.keys()) {
+				Podcast podcast = old.get(key);
+				if (podcast != null) {
+					next.put(key, podcast);
+					moved.add(key);
+				}
+			}
+			for (String key : next.keys()) {
+				Podcast podcast = moved.contains(key) ? null : next.get(key);
+				if (podcast != null) {
+					// Read once here, so the play counts and the shelf cover
+					// the Podcasts the new store already held.
+					podcast.countIn(totals);
+					shelf.addAll(key, podcast.getEpisodes());
+				}
+			}
+			libraryStore = next;
+			library = next instanceof MemoryLibraryStore ? ((MemoryLibraryStore) next).map() : null;
+			changes.storeTo(next);
+			timeline = null;
+		}
+		version.incrementAndGet();
+		old.close();
+	}
+
+	/**
+	 * Fetches the store the library is kept in.
+	 *
+	 * @return the store.
+	 * @author Todd Noecker
+	 */
+	public LibraryStore getLibraryStore() {
+		return libraryStore;
+	}
+
+	/**
+	 * This saves the Episodes current play position for future reference.
+	 * 
+	 * @param curMillis the play position in milliseconds.
+	 * @author Garrett Scott
+	 */
+	public void savePlayPos(long curMillis) {
+		this.curEp.setCurTimeMillis(curMillis);
+	}
+	
+	/**
+	 * Saves the play position of any Episode without selecting it, for
+	 *  players other than this one's controller.
+	 * 
+	 * @param podcastName is the title of the Podcast of which the Episode
+	 *  is a part.
+	 * @param episodeTitle is the name of the Episode.
+	 * @param curMillis the play position in milliseconds.
+	 * @author Todd Noecker
+	 */
+	public void savePlayPos(String podcastName, String episodeTitle, long curMillis) {
+		Podcast podcast = getPodcast(podcastName);
+		if (podcast == null)
+			throw new IllegalArgumentException("Podcast "+podcastName+" not found");
+		Episode episode = podcast.getEpisode(episodeTitle);
+		if (episode == null)
+			throw new IllegalArgumentException("Podcast "+podcastName+" has no episode "+episodeTitle);
+		episode.setCurTimeMillis(curMillis);
+	}
+	
+	/**
+	 * This method writes its self to file to file. 
+	 * 
+	 * @param out output stream associated with a file file to write to. 
+	 * @throws IOException
+	 * @author Garrett Scott
+	 */
+	public void storeModel (ObjectOutputStream out) throws IOException {
+		out.writeObject(this);
+		out.close();
+	}
+	
+	/**
+	 * This will load a model from the save file.
+	 * 
+	 * @param fileName is the name of the file in which the serialized model is stored.
+	 * @return Model derived from the save file.
+	 * @throws IOException caused by file not existing. 
+	 * @throws ClassNotFoundException thrown if the input object isn't a PodcastPlayerModel
+	 */
+	public PodcastPlayerModel loadModel(String fileName) throws IOException, ClassNotFoundException {
+		// Create the file input stream
+		FileInputStream fis = new FileInputStream(fileName);
+		// Create the input stream from the file
+		ObjectInputStream ois = new ObjectInputStream(fis);
+		// read in the saved model
+		PodcastPlayerModel outputModel = (PodcastPlayerModel) ois.readObject();
+		ois.close();
+		
+		return outputModel;
+	}
+	
+	/* ------------------------------------------------------------------------ 
+	 * --------------------------PACKAGE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+	
+	/**
+	 * Fetches the key a Podcast is stored under in the library. A feed with
+	 * no title is stored under its link.
+	 * 
+	 * @param podcast the Podcast to store.
+	 * @return the library key.
+	 * @author Todd Noecker
+	 */
+	static String libraryKey(Podcast podcast) {
+		return podcast.getTitle() != null ? podcast.getTitle() : String.valueOf(podcast.getLink());
+	}
+	
+	/**
+	 * Puts a Podcast read back from a segment file into the library. Nothing
+	 *  is reported, since the Podcast is already saved as it is.
+	 * 
+	 * @param key the library key it was saved under.
+	 * @param podcast the Podcast.
+	 * @author Todd Noecker
+	 */
+	void restorePodcast(String key, Podcast podcast) {
+		podcast.publishTo(changes, enclosures);
+		Podcast old = libraryStore.put(key, podcast);
+		if (old != null) {
+			uncount(old);
+		}
+		podcast.countIn(totals);
+		List<Episode> episodes = podcast.getEpisodes();
+		shelf.addAll(key, episodes);
+		share(key, episodes);
+		timelineChanged(key);
+		version.incrementAndGet();
+		ResidencyManager manager = residency();
+		if (manager != null) {
+			manager.loaded(key, podcast);
+		}
+	}
+	
+	/**
+	 * Fetches the Podcast stored under a library key.
+	 * 
+	 * @param key the library key.
+	 * @return the Podcast, or null.
+	 * @author Todd Noecker
+	 */
+	Podcast podcastAt(String key) {
+		return lookup(key);
+	}
+	
+	/**
+	 * Stores a Podcast built outside a feed, such as a local folder, in the
+	 *  library and reports it.
+	 * 
+	 * @param podcast the Podcast.
+	 * @author Todd Noecker
+	 */
+	void putPodcast(Podcast podcast) {
+		store(podcast);
+	}
+	
+	/**
+	 * Lists the keys of every Podcast in the library.
+	 * 
+	 * @return the keys.
+	 * @author Todd Noecker
+	 */
+	Set<String> libraryKeys() {
+		return libraryStore.keys();
+	}
+	
+	/* ------------------------------------------------------------------------ 
+	 * --------------------------PRIVATE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+	
+	/**
+	 * Saves the model. A library kept in another store is written as a map
+	 * of every Podcast, so the save file holds the whole library either way.
+	 * 
+	 * @param out the stream the model is written to.
+	 * @throws IOException
+	 * @author Todd Noecker
+	 */
+	private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+		if (library != null) {
+			out.defaultWriteObject();
+			return;
+		}
+		library = new ConcurrentHashMap<String, Podcast>();
+		try {
+			for (String key : libraryStore.keys()) {
+				Podcast podcast = libraryStore.get(key);
+				if (podcast != null) {
+					library.put(key, podcast);
+				}
+			}
+			out.defaultWriteObject();
+		} finally {
+			library = null;
+		}
+	}
+	
+	/**
+	 * Restores a saved model, moving a library saved as a HashMap into a
+	 * ConcurrentHashMap and starting a version count for older saves.
+	 * 
+	 * @param in the stream the model is read from.
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 * @author Todd Noecker
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if (!(library instanceof ConcurrentHashMap)) {
+			library = new ConcurrentHashMap<String, Podcast>(library);
+		}
+		if (version == null) {
+			version = new AtomicLong();
+		}
+		changes = new ChangeBus();
+		libraryStore = new MemoryLibraryStore(library);
+		enclosures = new EnclosureRegistry(this::lookup);
+		totals = new StatsCounter();
+		shelf = new ListeningShelf();
+		changes.shelveTo(shelf);
+		for (Map.Entry<String, Podcast> entry : library.entrySet()) {
+			List<Episode> episodes = entry.getValue().getEpisodes();
+			entry.getValue().publishTo(changes, enclosures);
+			entry.getValue().countIn(totals);
+			enclosures.add(entry.getKey(), episodes);
+			shelf.addAll(entry.getKey(), episodes);
+		}
+	}
+	
+	/**
+	 * Runs a batch of tasks on a fixed pool and waits for all of them.
+	 * 
+	 * @param tasks the tasks to run.
+	 * @param threads the pool size.
+	 * @throws InterruptedException if interrupted while waiting.
+	 * @author Todd Noecker
+	 */
+	private static void runAll(List<Callable<Void>> tasks, int threads) throws InterruptedException {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Thread count must be at least 1");
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			pool.invokeAll(tasks);
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * This method will scrape a passed RSS site's content and store it into a
+	 * buffer to be parsed. With a feed cache directory set, the content is
+	 * streamed to a file there and the mapped file is returned instead.
+	 * 
+	 * 
+	 * @author Todd Noecker
+	 * 
+	 * @param url the passed url
+	 * 
+	 * @return the full text of the RSS feed site.
+	 * @throws IOException if the site can not be fetched or is too large.
+	 */
+	private ByteBuffer getSiteContent(URI url) throws IOException {
+		FeedBudget budget = getFeedBudget();
+
+		URLConnection conn;
+		try {
+			conn = url.toURL().openConnection();
+		} catch (IllegalArgumentException ex) {
+			throw new IOException(url + " is not a link that can be fetched", ex);
+		}
+		conn.setConnectTimeout(budget.getMaxFetchMillis());
+		conn.setReadTimeout(budget.getMaxFetchMillis());
+		// Basic input stream from passed URI.
+		try (InputStream content = conn.getInputStream()) {
+			if (feedCacheDir != null) {
+				// Named by a hash of the whole link, so feeds do not share a file.
+				String name = SegmentStore.hashName(canonicalLink(url)) + ".xml";
+				return cacheAndMap(content, Paths.get(feedCacheDir, name), budget);
+			}
+			byte[] buff = new byte[8192];
+			int size = 0;
+			int len = 0;
+			while ((len = content.read(buff, size, buff.length - size)) != -1) {
+				size += len;
+				if (size > budget.getMaxFeedBytes()) {
+					throw new IOException(url + " is larger than " + budget.getMaxFeedBytes() + " bytes;");
+				}
+				if (size == buff.length) {
+					buff = Arrays.copyOf(buff, (int) Math.min(buff.length * 2L, budget.getMaxFeedBytes() + 1L));
+				}
+			}
+			return ByteBuffer.wrap(buff, 0, size);
+		}
+	}
+	
+	/**
+	 * Parses a Podcast from feed bytes, moving its Episodes into a catalog
+	 * file if a catalog directory is set.
+	 * 
+	 * @param filePath is the link the feed was fetched from.
+	 * @param content  is the feed's bytes.
+	 * @return the parsed Podcast.
+	 * @throws IOException
+	 * @throws URISyntaxException
+	 * @author Todd Noecker
+	 */
+	private Podcast parsePodcast(String filePath, ByteBuffer content) throws IOException, URISyntaxException {
+		Podcast podcast = new Podcast(filePath, new ByteFeed(content), getFeedBudget(), getParsePool(),
+				isCompactStorage());
+		if (catalogDir != null) {
+			String name = SegmentStore.hashName(filePath) + ".cat";
+			podcast.moveToCatalog(Paths.get(catalogDir, name));
+		}
+		return podcast;
+	}
+	
+	/**
+	 * Downloads an artwork image in full.
+	 * 
+	 * @param image the link to the artwork.
+	 * @return the image bytes.
+	 * @throws IOException if the image can not be read or is too large.
+	 * @author Todd Noecker
+	 */
+	private byte[] readArtwork(URI image) throws IOException {
+		URLConnection conn = image.toURL().openConnection();
+		conn.setConnectTimeout(getFeedBudget().getMaxFetchMillis());
+		conn.setReadTimeout(getFeedBudget().getMaxFetchMillis());
+		try (InputStream content = conn.getInputStream()) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] chunk = new byte[8192];
+			int len = 0;
+			while ((len = content.read(chunk)) != -1) {
+				if (out.size() + len > MAX_ARTWORK_BYTES) {
+					throw new IOException(image + " is larger than " + MAX_ARTWORK_BYTES + " bytes");
+				}
+				out.write(chunk, 0, len);
+			}
+			return out.toByteArray();
+		}
+	}
+	
+	/**
+	 * Fetches the single-flight group for feeds, creating it after the model
+	 * is loaded from a save file.
+	 * 
+	 * @return the feed single-flight group.
+	 * @author Todd Noecker
+	 */
+	private synchronized SingleFlight<String, Podcast> feedFlights() {
+		if (feedFlights == null) {
+			feedFlights = new SingleFlight<String, Podcast>(FEED_MEMO_MILLIS);
+		}
+		return feedFlights;
+	}
+	
+	/**
+	 * Fetches the timeline, building it from the whole library the first
+	 * time it is read.
+	 * 
+	 * @return the timeline.
+	 * @author Todd Noecker
+	 */
+	private synchronized Timeline timeline() {
+		if (timeline == null) {
+			// Podcasts are looked up as they are placed, and not kept.
+			timeline = new Timeline(this::lookup);
+			for (String key : libraryStore.keys()) {
+				timeline.changed(key);
+			}
+		}
+		return timeline;
+	}
+	
+	/**
+	 * Stores a parsed Podcast in the library, replacing any under the same
+	 * key, and reports it.
+	 * 
+	 * @param podcast the Podcast.
+	 * @author Todd Noecker
+	 */
+	private void store(Podcast podcast) {
+		String key = libraryKey(podcast);
+		podcast.publishTo(changes, enclosures);
+		Podcast old = libraryStore.put(key, podcast);
+		if (old == null) {
+			changes.podcastAdded(key, podcast);
+		} else {
+			uncount(old);
+			enclosures.remove(key, old);
+			changes.podcastChanged(key, podcast);
+		}
+		podcast.countIn(totals);
+		List<Episode> episodes = podcast.getEpisodes();
+		shelf.addAll(key, episodes);
+		share(key, episodes);
+		timelineChanged(key);
+		version.incrementAndGet();
+		opened(key, podcast);
+	}
+	
+	/**
+	 * Records the digest of a downloaded Episode once its download is done.
+	 * 
+	 * @param ep the Episode.
+	 * @param download the download.
+	 * @return completes with the downloaded file once the digest is recorded.
+	 * @author Todd Noecker
+	 */
+	private CompletableFuture<Path> fetched(Episode ep, CompletableFuture<Path> download) {
+		DownloadManager manager = downloads;
+		return download.thenApply(file -> {
+			String digest = manager == null ? null : manager.getDigest(getEnclosureLink(ep));
+			if (digest != null) {
+				enclosures.recordDigest(ep, digest);
+			}
+			return file;
+		});
+	}
+	
+	/**
+	 * Adds Episodes to the enclosure registry, along with the digests of
+	 * any already downloaded.
+	 * 
+	 * @param key the library key of their Podcast.
+	 * @param episodes the Episodes.
+	 * @author Todd Noecker
+	 */
+	private void share(String key, Collection<Episode> episodes) {
+		EnclosureRegistry registry = enclosures;
+		registry.add(key, episodes);
+		DownloadManager manager = downloads;
+		if (manager == null) {
+			return;
+		}
+		for (Episode ep : episodes) {
+			String digest = ep.getLink() == null ? null : manager.getDigest(getEnclosureLink(ep));
+			if (digest != null) {
+				registry.recordDigest(ep, digest);
+			}
+		}
+	}
+	
+	/**
+	 * Takes a Podcast that is leaving the library out of its play counts.
+	 * 
+	 * @param podcast the Podcast.
+	 * @author Todd Noecker
+	 */
+	private void uncount(Podcast podcast) {
+		podcast.reportTo(totals);
+		podcast.countIn(null);
+	}
+	
+	
+	/**
+	 * Fetches a Podcast from the library store. One the store read back
+	 * from disk is told where to report its changes.
+	 * 
+	 * @param key the library key.
+	 * @return the Podcast, or null.
+	 * @author Todd Noecker
+	 */
+	private Podcast lookup(String key) {
+		Podcast podcast = libraryStore.get(key);
+		if (podcast != null) {
+			podcast.publishTo(changes, enclosures);
+			podcast.reportTo(totals);
+		}
+		return podcast;
+	}
+	
+	/**
+	 * Fetches a Podcast to be looked into, making it the most recently
+	 * opened. If its Episodes were released they are moved back onto the
+	 * heap in the background, and are read from their catalog until then.
+	 * 
+	 * @param key the library key.
+	 * @return the Podcast, or null.
+	 * @author Todd Noecker
+	 */
+	private Podcast open(String key) {
+		Podcast podcast = lookup(key);
+		if (podcast != null) {
+			opened(key, podcast);
+		}
+		return podcast;
+	}
+	
+	/**
+	 * Tells the residency manager, if there is one, that a Podcast was
+	 * opened.
+	 * 
+	 * @param key the library key.
+	 * @param podcast the Podcast.
+	 * @author Todd Noecker
+	 */
+	private void opened(String key, Podcast podcast) {
+		ResidencyManager manager = residency();
+		if (manager == null) {
+			return;
+		}
+		manager.opened(key, podcast);
+	}
+	
+	/**
+	 * Fetches the residency manager, creating it after the model is loaded
+	 * from a save file.
+	 * 
+	 * @return the manager, or null if residency is not set.
+	 * @author Todd Noecker
+	 */
+	private synchronized ResidencyManager residency() {
+		if (residency == null && residencyDir != null) {
+			residency = new ResidencyManager(Paths.get(residencyDir), heapBudget);
+			residency.watchHeap();
+		}
+		return residency;
+	}
+	
+	/**
+	 * Tells the timeline, if it has been built, that a Podcast was stored,
+	 * gained Episodes or was removed.
+	 * 
+	 * @param key the Podcast's library key.
+	 * @author Todd Noecker
+	 */
+	private void timelineChanged(String key) {
+		Timeline built;
+		synchronized (this) {
+			built = timeline;
+		}
+		if (built != null) {
+			built.changed(key);
+		}
+	}
+	
+	/**
+	 * Fetches the single-flight group for artwork, creating it after the
+	 * model is loaded from a save file.
+	 * 
+	 * @return the artwork single-flight group.
+	 * @author Todd Noecker
+	 */
+	private synchronized SingleFlight<String, byte[]> artworkFlights() {
+		if (artworkFlights == null) {
+			artworkFlights = new SingleFlight<String, byte[]>(ARTWORK_MEMO_MILLIS);
+		}
+		return artworkFlights;
+	}
+	
+	/**
+	 * Streams a feed into a cache file, replacing the previous copy only once
+	 * the whole feed has arrived, and maps the file for parsing. The bytes
+	 * are mapped from the file written, not reopened by name, so a fetch of
+	 * the same feed replacing it meanwhile can not change what is parsed.
+	 * 
+	 * @param content the feed stream.
+	 * @param file    the cache file for this feed.
+	 * @param budget  the size limit for the feed.
+	 * @return the mapped feed.
+	 * @throws IOException if the feed is too large or can not be written.
+	 * @author Todd Noecker
+	 */
+	private ByteBuffer cacheAndMap(InputStream content, Path file, FeedBudget budget) throws IOException {
+		Path temp = Files.createTempFile(file.getParent(), "feed", ".part");
+		try {
+			ByteBuffer mapped;
+			try (FileChannel out = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				byte[] chunk = new byte[64 * 1024];
+				long size = 0;
+				int len = 0;
+				while ((len = content.read(chunk)) != -1) {
+					size += len;
+					if (size > budget.getMaxFeedBytes()) {
+						throw new IOException(file + " is larger than " + budget.getMaxFeedBytes() + " bytes;");
+					}
+					ByteBuffer buf = ByteBuffer.wrap(chunk, 0, len);
+					while (buf.hasRemaining()) {
+						out.write(buf);
+					}
+				}
+				// The mapping stays valid after the channel is closed and the
+				// file is moved.
+				mapped = out.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			return mapped;
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+	
+	/* ------------------------------------------------------------------------
+	 * --------------------------PUBLIC INNERCLASSES---------------------------
+	 * ------------------------------------------------------------------------
+	 */
+	
+	/**
+	 * Stores all of the metadata for a specific podcast, including a list of
+	 * Episodes in the podcast.
+	 * 
+	 * @author seanomeara02, Todd Noecker
+	 */
+	public static class Podcast implements Comparable<Podcast>, Serializable {
+		
+		/**
+		 * ID for serialVersionUID
+		 */
+		private static final long serialVersionUID = -5190644900968741510L;
+		
+		/**
+		 * Feeds with at least this many items are parsed in parallel.
+		 */
+		private static final int PARALLEL_ITEMS = 256;
+		
+		/**
+		 * The most items one parallel parse task handles before splitting.
+		 */
+		private static final int ITEMS_PER_TASK = 64;
+		
+		/**
+		 * The rough heap cost of one entry in the Episode map.
+		 */
+		private static final int MAP_ENTRY_BYTES = 48;
+		
+		private String title; // the title of the podcast
+		private String description; // a description of the podcast
+		private URI link; // a link to the podcast
+		private URI image; // a link to the podcast's artwork
+		private Map<String,Episode> episodes; // the list of episodes in the podcast
+		private String catalogFile; // the catalog holding the episodes, if moved off-heap
+		private KnownItems known; // every item seen in the feed, null in older save files
+		private int firstEpNum; // the lowest epNum given out so far
+		private boolean local; // whether this is a folder of local files rather than a feed
+		private boolean compact; // whether new Episodes are kept in compact storage
+		private transient FeedBudget budget; // the limits used while parsing the feed
+		private transient ForkJoinPool pool; // the pool large feeds are parsed on
+		private transient EpisodeCatalog catalog; // the opened catalog file
+		private transient TreeMap<Integer, Episode> byEpNum; // on-heap episodes by epNum, built for paging
+		private transient TreeMap<Integer, Episode> inProgress; // started episodes by epNum, built for paging
+		private transient PublishedIndex byDate; // episodes newest first, built for paging by date
+		private transient ChangeBus changes; // where Episode changes are reported, if anywhere
+		private transient volatile EnclosureRegistry enclosures; // where play positions are shared, if anywhere
+		private transient StatsCounter stats; // play counts, built when first read
+		private transient StatsCounter totals; // the library's play counts, if counted in them
+		private transient int generation; // bumped each time the Episodes move between the heap and a catalog, or the catalog is rewritten
+		private transient int version; // bumped each time an Episode is added, replaced or dropped, or the Episodes move
+
+		/**
+		 * Will parse the data of a given XML file to fill all of the above fields.
+		 * 
+		 * @param filePath is the path to an XML file representing the podcast.
+		 * @param HTML is the content of the podcast's RSS feed.
+		 * @author seanomeara02, Todd Noecker
+		 * @throws IOException
+		 * @throws URISyntaxException
+		 */
+		public Podcast(String filePath, String HTML) throws IOException, URISyntaxException {
+			this(filePath, HTML, FeedBudget.DEFAULT);
+		}
+		
+		/**
+		 * Will parse the data of a given XML file to fill all of the above fields,
+		 * stopping early if the feed runs past the limits of the given budget.
+		 * 
+		 * @param filePath is the path to an XML file representing the podcast.
+		 * @param HTML is the content of the podcast's RSS feed.
+		 * @param budget the item, time and lookahead limits for this feed.
+		 * @author Todd Noecker
+		 * @throws IOException
+		 * @throws URISyntaxException
+		 */
+		public Podcast(String filePath, String HTML, FeedBudget budget) throws IOException, URISyntaxException {
+			this(filePath, HTML, budget, ForkJoinPool.commonPool());
+		}
+		
+		/**
+		 * Will parse the data of a given XML file to fill all of the above fields.
+		 * Feeds with many items have their items parsed in parallel on the given
+		 * pool.
+		 * 
+		 * @param filePath is the path to an XML file representing the podcast.
+		 * @param HTML is the content of the podcast's RSS feed, either as a String
+		 *  or as a ByteFeed over the raw bytes.
+		 * @param budget the item, time and lookahead limits for this feed.
+		 * @param pool the pool used to parse the items of large feeds.
+		 * @author Todd Noecker
+		 * @throws IOException
+		 * @throws URISyntaxException
+		 */
+		public Podcast(String filePath, CharSequence HTML, FeedBudget budget, ForkJoinPool pool)
+				throws IOException, URISyntaxException {
+			this(filePath, HTML, budget, pool, false);
+		}
+		
+		/**
+		 * Will parse the data of a given XML file to fill all of the above fields,
+		 * keeping the Episodes in compact storage if asked. Episodes a refresh
+		 * adds later are kept the same way.
+		 * 
+		 * @param filePath is the path to an XML file representing the podcast.
+		 * @param HTML is the content of the podcast's RSS feed, either as a String
+		 *  or as a ByteFeed over the raw bytes.
+		 * @param budget the item, time and lookahead limits for this feed.
+		 * @param pool the pool used to parse the items of large feeds.
+		 * @param compact true to pack descriptions and intern text.
+		 * @author Todd Noecker
+		 * @throws IOException
+		 * @throws URISyntaxException
+		 */
+		public Podcast(String filePath, CharSequence HTML, FeedBudget budget, ForkJoinPool pool, boolean compact)
+				throws IOException, URISyntaxException {
+			this.budget = budget;
+			this.pool = pool;
+			this.compact = compact;
+			// Convert String address to URI.
+			URI myURI = new URI(filePath);
+
+			if (HTML != null) {
+				// Parse all needed fields for a podcast object.
+				this.title = parseTitle(HTML);
+				this.title = convertSpecialChars(this.title);
+				this.link = myURI;
+				String image = parseImageLoc(HTML);
+				if (image != null) {
+					this.image = new URI(image);
+				} else {
+					// Default Image inbound...
+				}
+				this.description = parseDescription(HTML);
+				this.description = convertSpecialChars(this.description);
+
+				// Called to parse all available episodes of a podcast.
+				this.parseEpisodes(this, HTML);
+			} else {
+				return;
+			}
+		}
+		
+		/**
+		 * Makes an empty Podcast standing for a folder of local audio files.
+		 *  Its Episodes are added by the LocalLibraryScanner that found them,
+		 *  and it is never refreshed from a feed.
+		 * 
+		 * @param link the folder.
+		 * @param title the title shown for the folder.
+		 * @param description a description of the folder.
+		 * @author Todd Noecker
+		 */
+		Podcast(URI link, String title, String description) {
+			this.link = link;
+			this.title = title;
+			this.description = description;
+			this.episodes = new HashMap<String, Episode>();
+			this.known = new KnownItems();
+			this.local = true;
+		}
+		
+		/* ------------------------------------------------------------------------ 
+		 * ---------------------------PUBLIC METHODS-------------------------------
+		 * ------------------------------------------------------------------------
+		 */
+
+		/**
+		 * Fetches the title of the Podcast.
+		 * 
+		 * @return the title of the Podcast.
+		 * @author seanomeara02
+		 */
+		public String getTitle() {
+			return title;
+		}
+
+		/**
+		 * Fetches the description of the Podcast.
+		 * 
+		 * @return the description of the Podcast.
+		 * @author seanomeara02
+		 */
+		public String getDescription() {
+			return description;
+		}
+
+		/**
+		 * Fetches the link to the Podcast.
+		 * 
+		 * @return the link to the Podcast.
+		 * @author seanomeara02
+		 */
+		public URI getLink() {
+			return link;
+		}
+
+		/**
+		 * Fetches the link to the artwork for the Podcast.
+		 * 
+		 * @return the link to the artwork of the Podcast.
+		 * @author seanomeara02
+		 */
+		public URI getImage() {
+			return image;
+		}
+
+		/**
+		 * Checks whether this Podcast is a folder of local files rather than
+		 *  a feed.
+		 * 
+		 * @return true for a local folder.
+		 * @author Todd Noecker
+		 */
+		public boolean isLocal() {
+			return local;
+		}
+
+		/**
+		 * Checks whether this Podcast keeps its Episodes in compact storage.
+		 * 
+		 * @return true if descriptions are packed and text interned.
+		 * @author Todd Noecker
+		 */
+		public boolean isCompactStorage() {
+			return compact;
+		}
+
+		/**
+		 * Fetches this Podcast's version. It goes up whenever an Episode is
+		 *  added, replaced or dropped, or the Episodes move between the heap
+		 *  and a catalog, so a copy of the Episode list taken at one version
+		 *  can be reused until the version changes. Play positions do not
+		 *  change it.
+		 * 
+		 * @return the current version.
+		 * @author Todd Noecker
+		 */
+		public synchronized int getVersion() {
+			return version;
+		}
+
+		/**
+		 * Fetches how far through its Episodes this Podcast is. The counts
+		 *  are built on first read and kept current from then on, so a list
+		 *  of Podcasts can show them on every frame.
+		 * 
+		 * @return the counts.
+		 * @author Todd Noecker
+		 */
+		public synchronized PlayStats getPlayStats() {
+			if (stats == null) {
+				stats = new StatsCounter();
+				for (Episode ep : getEpisodes()) {
+					stats.count(ep, ep.getCurTimeMillis(), 1);
+				}
+			}
+			return stats.snapshot();
+		}
+
+		/**
+		 * Fetches the List of Episodes in the Podcast.
+		 * 
+		 * @return the Episodes of the Podcast.
+		 * @author seanomeara02
+		 */
+		public synchronized List<Episode> getEpisodes() {
+			if (catalogFile != null) {
+				return catalog().episodes(this);
+			}
+			List<Episode> list = new ArrayList<Episode>(episodes.values());
+			Collections.sort(list);
+			return list;
+		}
+		
+		/**
+		 * Counts this Podcast's Episodes without listing them.
+		 * 
+		 * @return the number of Episodes.
+		 * @author Todd Noecker
+		 */
+		public synchronized int getEpisodeCount() {
+			return catalogFile == null ? episodes.size() : catalog().size();
+		}
+		
+		/**
+		 * Returns one page of this Podcast's Episodes in epNum order.
+		 * 
+		 * @param cursor the cursor from the previous page, or null for the first.
+		 * @param limit the most Episodes to return.
+		 * @return the page.
+		 * @author Todd Noecker
+		 */
+		public EpisodePage getEpisodes(String cursor, int limit) {
+			return getEpisodes(cursor, limit, EpisodeFilter.ALL);
+		}
+		
+		/**
+		 * Returns one page of this Podcast's Episodes in epNum order, holding
+		 *  only those the filter selects. Pages come from sorted indexes, so
+		 *  a page costs a lookup plus the Episodes on it, however far into
+		 *  the list it is. Unplayed pages also step over any started
+		 *  Episodes in their range.
+		 * 
+		 * @param cursor the cursor from the previous page, or null for the first.
+		 * @param limit the most Episodes to return.
+		 * @param filter which Episodes to include.
+		 * @return the page.
+		 * @throws IllegalArgumentException if the cursor or limit is not valid.
+		 * @author Todd Noecker
+		 */
+		public EpisodePage getEpisodes(String cursor, int limit, EpisodeFilter filter) {
+			return getEpisodes(cursor, limit, filter, EpisodeOrder.FEED);
+		}
+		
+		/**
+		 * Returns one page of this Podcast's Episodes in the given order,
+		 *  holding only those the filter selects. A cursor only continues the
+		 *  order it was made for.
+		 * 
+		 * @param cursor the cursor from the previous page, or null for the first.
+		 * @param limit the most Episodes to return.
+		 * @param filter which Episodes to include.
+		 * @param order the order to list them in.
+		 * @return the page.
+		 * @throws IllegalArgumentException if the cursor or limit is not valid.
+		 * @author Todd Noecker
+		 */
+		public synchronized EpisodePage getEpisodes(String cursor, int limit, EpisodeFilter filter,
+				EpisodeOrder order) {
+			if (limit < 1) {
+				throw new IllegalArgumentException("Page limit must be at least 1");
+			}
+			if (order == EpisodeOrder.NEWEST) {
+				long[] after = EpisodePage.publishedAfter(cursor);
+				PublishedIndex index = dateIndex();
+				return page(index.from(after == null ? 0 : index.rankAfter(after[0], (int) after[1])), limit,
+						filter, order);
+			}
+			Integer after = EpisodePage.epNumAfter(cursor);
+			buildIndex();
+			
+			Iterator<Episode> source;
+			if (filter == EpisodeFilter.IN_PROGRESS) {
+				source = (after == null ? inProgress : inProgress.tailMap(after, false)).values().iterator();
+			} else if (catalogFile == null) {
+				source = (after == null ? byEpNum : byEpNum.tailMap(after, false)).values().iterator();
+			} else {
+				List<Episode> all = catalog().episodes(this);
+				int from = after == null ? 0 : catalog().recordAfter(after);
+				source = all.subList(from, all.size()).iterator();
+			}
+			return page(source, limit, filter, order);
+		}
+		
+		/**
+		 * Returns the Episodes published after a time, newest first, such as
+		 *  those that are new since the listener last looked.
+		 * 
+		 * @param millis the time in milliseconds since the epoch.
+		 * @return the newer Episodes.
+		 * @author Todd Noecker
+		 */
+		public synchronized List<Episode> getEpisodesSince(long millis) {
+			PublishedIndex index = dateIndex();
+			int count = index.countAfter(millis);
+			List<Episode> newer = new ArrayList<Episode>(count);
+			for (int rank = 0; rank < count; rank++) {
+				newer.add(index.get(rank));
+			}
+			return newer;
+		}
+		
+		/**
+		 * Returns the Episode object that has the title matching the parameter title.
+		 * 
+		 * @param title to search for
+		 * @return Episode object with title
+		 * @author Garrett Scott
+		 */
+		public synchronized Episode getEpisode(String title) {
+			if (catalogFile != null) {
+				return catalog().find(title, this);
+			}
+			return episodes.get(title);
+		}
+		
+		/**
+		 * Moves this Podcast's Episodes into a memory-mapped catalog file.
+		 *  Afterwards Episodes are served as views over the file and the
+		 *  on-heap map is released.
+		 * 
+		 * @param file where the catalog is written.
+		 * @throws IOException if the catalog can not be written.
+		 * @author Todd Noecker
+		 */
+		public synchronized void moveToCatalog(Path file) throws IOException {
+			EpisodeCatalog old = catalog;
+			this.catalog = EpisodeCatalog.write(file, getEpisodes());
+			generation++;
+			version++;
+			if (old != null) {
+				old.close();
+			}
+			this.catalogFile = file.toString();
+			this.episodes = null;
+			dropIndex();
+		}
+
+		/**
+		 * Moves this Podcast's Episodes out of their catalog file back onto
+		 *  the heap, with their play positions. The file is left where it
+		 *  is, since a save may still name it.
+		 * 
+		 * @throws IOException if the catalog can not be closed.
+		 * @author Todd Noecker
+		 */
+		public synchronized void moveToHeap() throws IOException {
+			if (catalogFile == null) {
+				return;
+			}
+			generation++;
+			version++;
+			Map<String, Episode> heap = new HashMap<String, Episode>();
+			for (Episode view : catalog().episodes(this)) {
+				Episode ep = new Episode(view.getTitle(), view.getDescription(), view.getLink(), this,
+						view.getEpNum());
+				ep.setFeedDetails(view.getPublishedMillis(), view.getDurationSeconds(), view.getGuid(),
+						view.getEnclosureLength(), view.getEnclosureType());
+				ep.restoreCurTimeMillis(view.getCurTimeMillis());
+				ep.restoreLastPlayedMillis(view.getLastPlayedMillis());
+				heap.put(ep.getTitle(), ep);
+			}
+			catalog.close();
+			this.catalog = null;
+			this.catalogFile = null;
+			this.episodes = heap;
+			dropIndex();
+		}
+
+		/**
+		 * Updates this Podcast from a new copy of its feed without parsing the
+		 *  whole feed again. Feeds list their newest items first, so items are
+		 *  read from the top only until a run of already known items is found.
+		 *  Known items only cost a GUID lookup. New Episodes are numbered
+		 *  before the existing ones.
+		 *
+		 * @param HTML is the new content of the podcast's RSS feed.
+		 * @param knownRun how many known items in a row end the scan.
+		 * @return the new Episodes, newest first.
+		 * @throws IOException if a catalog-backed Podcast can not rewrite its
+		 *  catalog.
+		 * @author Todd Noecker
+		 */
+		public synchronized List<Episode> refresh(CharSequence HTML, int knownRun) throws IOException {
+			if (HTML == null || HTML.length() == 0) {
+				return Collections.emptyList();
+			}
+			if (known == null) {
+				// Saved before item keys were kept, so there is nothing to stop on.
+				return reparse(HTML);
+			}
+			String triggerStr = "<item>";
+			String endStr = "</item>";
+			int maxItems = budget().getMaxItems();
+			List<CharSequence> items = new ArrayList<CharSequence>();
+			int run = 0;
+			int scanned = 0;
+			int index = 0;
+			while (run < knownRun && scanned < maxItems) {
+				int foundIndex = ByteFeed.indexOf(HTML, triggerStr, index);
+				if (foundIndex == -1) {
+					break;
+				}
+				int endIndex = ByteFeed.indexOf(HTML, endStr, foundIndex);
+				if (endIndex == -1) {
+					break;
+				}
+				CharSequence item = HTML.subSequence(foundIndex, endIndex + 1);
+				index = endIndex + endStr.length();
+				scanned++;
+				if (known.add(itemKey(item))) {
+					items.add(item);
+					run = 0;
+				} else {
+					run++;
+				}
+			}
+
+			// Only the new items are parsed.
+			int epNum = firstEpNum - items.size();
+			firstEpNum = epNum;
+			List<Episode> fresh = new ArrayList<Episode>();
+			for (CharSequence item : items) {
+				Episode ep = parseItem(item, epNum++);
+				if (ep != null) {
+					fresh.add(ep);
+				}
+			}
+			addEpisodes(fresh);
+			return fresh;
+		}
+
+		/**
+		 * Specifies how Podcasts should be sorted.
+		 * 
+		 * Used when returning the model's library to sort the Podcasts by their titles.
+		 * 
+		 * @author seanomeara02
+		 */
+		@Override
+		public int compareTo(Podcast that) {
+			return this.title.compareTo(that.title);
+		}
+		
+		/* ------------------------------------------------------------------------ 
+		 * --------------------------PRIVATE METHODS-------------------------------
+		 * ------------------------------------------------------------------------
+		 */
+
+		/**
+		 * Returns the open catalog, reopening the file after the Podcast has
+		 *  been loaded from a save file.
+		 * 
+		 * @return the catalog holding this Podcast's Episodes.
+		 * @author Todd Noecker
+		 */
+		private synchronized EpisodeCatalog catalog() {
+			if (catalog == null) {
+				try {
+					catalog = EpisodeCatalog.open(Paths.get(catalogFile));
+				} catch (IOException ex) {
+					throw new UncheckedIOException("Episode catalog " + catalogFile + " could not be opened", ex);
+				}
+			}
+			return catalog;
+		}
+
+		/**
+		 * Fetches the publish date index for the library timeline. The index
+		 *  is not changed once built, so it may be read after the lock is let
+		 *  go.
+		 * 
+		 * @return the index, newest first.
+		 * @author Todd Noecker
+		 */
+		synchronized PublishedIndex publishedIndex() {
+			return dateIndex();
+		}
+
+		/**
+		 * Estimates the heap held by this Podcast's Episodes.
+		 *
+		 * @return the estimate in bytes, 0 when they are in a catalog.
+		 * @author Todd Noecker
+		 */
+		synchronized long residentBytes() {
+			if (catalogFile != null) {
+				return 0;
+			}
+			long bytes = 0;
+			for (Episode ep : episodes.values()) {
+				bytes += MAP_ENTRY_BYTES + ep.heapBytes();
+			}
+			return bytes;
+		}
 
-		try {
-			// Basic input stream from passed URI.
-			InputStream content = url.toURL().openStream();
-			int len = 0;
-			buff = new StringBuffer();
-			while ((len = content.read()) != -1) {
-				buff.append((char) len);
+		/**
+		 * Fetches the catalog file holding the Episodes.
+		 *
+		 * @return the file name, or null when they are on the heap.
+		 * @author Todd Noecker
+		 */
+		synchronized String catalogPath() {
+			return catalogFile;
+		}
+
+		/**
+		 * Fetches an Episode by its epNum, for stores that index Episodes by
+		 *  Podcast and epNum.
+		 *
+		 * @param epNum the epNum.
+		 * @return the Episode, or null if there is none.
+		 * @author Todd Noecker
+		 */
+		synchronized Episode episodeAt(int epNum) {
+			if (catalogFile == null) {
+				buildIndex();
+				return byEpNum.get(epNum);
 			}
-		} catch (Exception ex) {
-			// Seemed useful for now, might be best to remove the print or adapt it
-			// for the final build.
-			System.out.println(
-					"Site " + ex.getMessage() + " did not contain an RSS feed or did not exist. Skipping\n");
-			return null;
+			int record = catalog().recordAfter(epNum - 1);
+			if (record == catalog().size()) {
+				return null;
+			}
+			Episode ep = catalog().get(record, this);
+			return ep.getEpNum() == epNum ? ep : null;
+		}
+
+		/**
+		 * Adds Episodes built from local files, replacing any with the same
+		 *  title.
+		 * 
+		 * @param fresh the Episodes.
+		 * @throws IOException if a catalog-backed Podcast can not rewrite its
+		 *  catalog.
+		 * @author Todd Noecker
+		 */
+		synchronized void putEpisodes(List<Episode> fresh) throws IOException {
+			addEpisodes(fresh);
 		}
-		return buff.toString();
-	}
-	
-	/* ------------------------------------------------------------------------
-	 * --------------------------PUBLIC INNERCLASSES---------------------------
-	 * ------------------------------------------------------------------------
-	 */
-	
-	/**
-	 * Stores all of the metadata for a specific podcast, including a list of
-	 * Episodes in the podcast.
-	 * 
-	 * @author seanomeara02, Todd Noecker
-	 */
-	public class Podcast implements Comparable<Podcast>, Serializable {
 		
 		/**
-		 * ID for serialVersionUID
+		 * Sets where this Podcast reports Episodes that are found, replaced
+		 *  or played, and where it shares play positions with copies of its
+		 *  Episodes in other Podcasts.
+		 * 
+		 * @param changes the library's change bus.
+		 * @param enclosures the library's enclosure registry.
+		 * @author Todd Noecker
 		 */
-		private static final long serialVersionUID = -5190644900968741510L;
+		synchronized void publishTo(ChangeBus changes, EnclosureRegistry enclosures) {
+			this.changes = changes;
+			this.enclosures = enclosures;
+		}
 		
-		private String title; // the title of the podcast
-		private String description; // a description of the podcast
-		private URI link; // a link to the podcast
-		private URI image; // a link to the podcast's artwork
-		private Map<String,Episode> episodes; // the list of episodes in the podcast
-
 		/**
-		 * Will parse the data of a given XML file to fill all of the above fields.
+		 * Moves this Podcast's play counts into the library's counts, out of
+		 *  any it was counted in before. Its changes are counted there from
+		 *  then on.
 		 * 
-		 * @param filePath is the path to an XML file representing the podcast.
-		 * @param HTML is the content of the podcast's RSS feed.
-		 * @author seanomeara02, Todd Noecker
-		 * @throws IOException
-		 * @throws URISyntaxException
+		 * @param totals the library's counts, or null once it is taken out
+		 *  of the library.
+		 * @author Todd Noecker
 		 */
-		public Podcast(String filePath, String HTML) throws IOException, URISyntaxException {
-			// Convert String address to URI.
-			URI myURI = new URI(filePath);
-
-			if (HTML != null) {
-				// Parse all needed fields for a podcast object.
-				this.title = parseTitle(HTML);
-				this.title = convertSpecialChars(this.title);
-				this.link = myURI;
-				String image = parseImageLoc(HTML);
-				if (image != null) {
-					this.image = new URI(image);
-				} else {
-					// Default Image inbound...
-				}
-				this.description = parseDescription(HTML);
-				this.description = convertSpecialChars(this.description);
-
-				// Called to parse all available episodes of a podcast.
-				this.parseEpisodes(this, HTML);
-			} else {
+		synchronized void countIn(StatsCounter totals) {
+			if (this.totals == totals) {
 				return;
 			}
+			if (this.totals != null) {
+				this.totals.add(getPlayStats(), -1);
+			}
+			this.totals = totals;
+			if (totals != null) {
+				totals.add(getPlayStats(), 1);
+			}
 		}
 		
-		/* ------------------------------------------------------------------------ 
-		 * ---------------------------PUBLIC METHODS-------------------------------
-		 * ------------------------------------------------------------------------
-		 */
-
 		/**
-		 * Fetches the title of the Podcast.
+		 * Sets the library play counts this Podcast's changes are counted in,
+		 *  for a copy read back from the library store whose counts are
+		 *  already part of them.
 		 * 
-		 * @return the title of the Podcast.
-		 * @author seanomeara02
+		 * @param totals the library's counts.
+		 * @author Todd Noecker
 		 */
-		public String getTitle() {
-			return title;
+		synchronized void reportTo(StatsCounter totals) {
+			if (this.totals == null) {
+				this.totals = totals;
+			}
 		}
-
+		
 		/**
-		 * Fetches the description of the Podcast.
+		 * Records that an Episode's play position changed, so the paging index
+		 *  knows whether it is in progress, and sets it on the Episode's
+		 *  copies in other Podcasts.
 		 * 
-		 * @return the description of the Podcast.
-		 * @author seanomeara02
+		 * @param ep the Episode whose position was set.
+		 * @param before the position it had, or -1.
+		 * @author Todd Noecker
 		 */
-		public String getDescription() {
-			return description;
+		void positionChanged(Episode ep, long before) {
+			if (!indexPosition(ep, before)) {
+				// Handed out before the Episodes last moved between the heap
+				// and a catalog; the copy held now takes the position.
+				Episode current = getEpisode(ep.getTitle());
+				if (current != null && current != ep) {
+					current.setCurTimeMillis(ep.getCurTimeMillis());
+				}
+				return;
+			}
+			EnclosureRegistry registry = enclosures;
+			if (registry != null) {
+				// Outside this Podcast's lock, since the copies take their
+				// own Podcasts' locks.
+				registry.positionChanged(libraryKey(this), ep);
+			}
 		}
-
+		
 		/**
-		 * Fetches the link to the Podcast.
+		 * Reports an Episode's new play position and keeps the in progress
+		 *  index and the play counts current.
 		 * 
-		 * @return the link to the Podcast.
-		 * @author seanomeara02
+		 * @param ep the Episode whose position was set.
+		 * @param before the position it had, or -1.
+		 * @return false if the Episode is a copy from before the Episodes last
+		 *  moved, which was left alone.
 		 */
-		public URI getLink() {
-			return link;
+		private synchronized boolean indexPosition(Episode ep, long before) {
+			if (ep.generation != generation) {
+				return false;
+			}
+			if (changes != null) {
+				changes.episodeChanged(ep);
+			}
+			if (catalogFile == null && episodes.get(ep.getTitle()) != ep) {
+				// Replaced by a newer copy from the feed.
+				return true;
+			}
+			if (stats != null) {
+				stats.moved(ep, before, ep.getCurTimeMillis());
+			}
+			if (totals != null) {
+				totals.moved(ep, before, ep.getCurTimeMillis());
+			}
+			if (inProgress == null) {
+				return true;
+			}
+			if (ep.isInProgress()) {
+				inProgress.put(ep.getEpNum(), ep);
+			} else {
+				inProgress.remove(ep.getEpNum());
+			}
+			return true;
 		}
-
+		
 		/**
-		 * Fetches the link to the artwork for the Podcast.
+		 * Builds the paging indexes if they have not been built since the
+		 *  Episodes last changed. Costs one pass over the Episodes.
 		 * 
-		 * @return the link to the artwork of the Podcast.
-		 * @author seanomeara02
+		 * @author Todd Noecker
 		 */
-		public URI getImage() {
-			return image;
+		private void buildIndex() {
+			if (inProgress != null) {
+				return;
+			}
+			TreeMap<Integer, Episode> started = new TreeMap<Integer, Episode>();
+			if (catalogFile == null) {
+				byEpNum = new TreeMap<Integer, Episode>();
+				for (Episode ep : episodes.values()) {
+					byEpNum.put(ep.getEpNum(), ep);
+				}
+			}
+			for (Episode ep : catalogFile == null ? byEpNum.values() : catalog().episodes(this)) {
+				if (ep.isInProgress()) {
+					started.put(ep.getEpNum(), ep);
+				}
+			}
+			inProgress = started;
 		}
-
+		
 		/**
-		 * Fetches the List of Episodes in the Podcast.
+		 * Fetches the publish date index, building it if the Episodes have
+		 *  changed since it was last built.
 		 * 
-		 * @return the Episodes of the Podcast.
-		 * @author seanomeara02
+		 * @return the index.
+		 * @author Todd Noecker
 		 */
-		public List<Episode> getEpisodes() {
-			List<Episode> list = new ArrayList<Episode>(episodes.values());
-			Collections.sort(list);
-			return list;
+		private PublishedIndex dateIndex() {
+			if (byDate == null) {
+				byDate = new PublishedIndex(catalogFile == null ? getEpisodes() : catalog().episodes(this));
+			}
+			return byDate;
 		}
 		
 		/**
-		 * Returns the Episode object that has the title matching the parameter title.
+		 * Fills a page from Episodes in order, skipping those the filter does
+		 *  not select. One Episode past the page is read to learn whether
+		 *  there is a next page.
 		 * 
-		 * @param title to search for
-		 * @return Episode object with title
-		 * @author Garrett Scott
+		 * @param source the Episodes from the start of the page on.
+		 * @param limit the most Episodes to return.
+		 * @param filter which Episodes to include.
+		 * @param order the order the source is in.
+		 * @return the page.
+		 * @author Todd Noecker
 		 */
-		public Episode getEpisode(String title) {
-			return episodes.get(title);
+		private EpisodePage page(Iterator<Episode> source, int limit, EpisodeFilter filter, EpisodeOrder order) {
+			List<Episode> page = new ArrayList<Episode>(Math.min(limit, 64));
+			boolean more = false;
+			while (source.hasNext()) {
+				Episode ep = source.next();
+				if ((filter == EpisodeFilter.UNPLAYED && ep.getCurTimeMillis() >= 0)
+						|| (filter == EpisodeFilter.IN_PROGRESS && !ep.isInProgress())) {
+					continue;
+				}
+				if (page.size() == limit) {
+					more = true;
+					break;
+				}
+				page.add(ep);
+			}
+			if (!more) {
+				return new EpisodePage(page, null);
+			}
+			Episode last = page.get(page.size() - 1);
+			return new EpisodePage(page, order == EpisodeOrder.NEWEST ? EpisodePage.publishedCursorAfter(last)
+					: EpisodePage.cursorAfter(last));
 		}
-
+		
 		/**
-		 * Specifies how Podcasts should be sorted.
+		 * Reports an Episode a refresh found, replaced or dropped, and counts
+		 *  it in or out of the play counts.
 		 * 
-		 * Used when returning the model's library to sort the Podcasts by their titles.
+		 * @param old the Episode that was there, or null.
+		 * @param ep the Episode there now, or null.
+		 * @author Todd Noecker
+		 */
+		private void published(Episode old, Episode ep) {
+			version++;
+			if (old != null) {
+				count(old, -1);
+			}
+			if (ep != null) {
+				count(ep, 1);
+			}
+			if (changes == null) {
+				return;
+			}
+			if (old != null) {
+				changes.episodeRemoved(old);
+			}
+			if (ep != null) {
+				changes.episodeAdded(ep);
+			}
+		}
+		
+		/**
+		 * Counts an Episode in or out of this Podcast's play counts, if they
+		 *  have been built, and the library's.
 		 * 
-		 * @author seanomeara02
+		 * @param ep the Episode.
+		 * @param sign 1 to count it in, -1 to count it out.
+		 * @author Todd Noecker
 		 */
-		@Override
-		public int compareTo(Podcast that) {
-			return this.title.compareTo(that.title);
+		private void count(Episode ep, int sign) {
+			if (stats != null) {
+				stats.count(ep, ep.getCurTimeMillis(), sign);
+			}
+			if (totals != null) {
+				totals.count(ep, ep.getCurTimeMillis(), sign);
+			}
 		}
 		
-		/* ------------------------------------------------------------------------ 
-		 * --------------------------PRIVATE METHODS-------------------------------
-		 * ------------------------------------------------------------------------
+		/**
+		 * Forgets the paging indexes after the Episodes change wholesale.
+		 * 
+		 * @author Todd Noecker
+		 */
+		private void dropIndex() {
+			byEpNum = null;
+			inProgress = null;
+			byDate = null;
+		}
+
+		/**
+		 * Adds newly found Episodes, rewriting the catalog for a catalog-backed
+		 *  Podcast. A new Episode replaces an older one with the same title.
+		 *
+		 * @param fresh the new Episodes.
+		 * @throws IOException if the catalog can not be rewritten.
+		 * @author Todd Noecker
+		 */
+		private void addEpisodes(List<Episode> fresh) throws IOException {
+			if (fresh.isEmpty()) {
+				return;
+			}
+			if (catalogFile == null) {
+				boolean replaced = false;
+				for (Episode ep : fresh) {
+					Episode old = episodes.put(ep.getTitle(), ep);
+					published(old, ep);
+					replaced |= old != null;
+					if (byEpNum != null) {
+						if (old != null) {
+							byEpNum.remove(old.getEpNum());
+							inProgress.remove(old.getEpNum());
+						}
+						byEpNum.put(ep.getEpNum(), ep);
+					}
+				}
+				// New Episodes are merged into the date index; one that
+				// replaces an old Episode means it is sorted again.
+				byDate = replaced || byDate == null ? null : byDate.withAdded(fresh);
+				return;
+			}
+			Map<String, Episode> all = new HashMap<String, Episode>();
+			for (Episode ep : getEpisodes()) {
+				all.put(ep.getTitle(), ep);
+			}
+			for (Episode ep : fresh) {
+				published(all.put(ep.getTitle(), ep), ep);
+			}
+			rewriteCatalog(all.values());
+		}
+
+		/**
+		 * Replaces the catalog file with one holding the given Episodes. The new
+		 *  file is written beside the old one and moved over it, so Episodes
+		 *  already handed out keep reading the old mapping. Positions set on
+		 *  them afterwards are passed on to the new catalog.
+		 *
+		 * @param all every Episode the Podcast should now hold.
+		 * @throws IOException if the catalog can not be written.
+		 * @author Todd Noecker
+		 */
+		private void rewriteCatalog(Collection<Episode> all) throws IOException {
+			EpisodeCatalog old = catalog;
+			catalog = EpisodeCatalog.write(Paths.get(catalogFile), all);
+			generation++;
+			version++;
+			if (old != null) {
+				old.close();
+			}
+			dropIndex();
+		}
+
+		/**
+		 * Parses a whole feed again for a Podcast loaded from a save file that
+		 *  has no item keys, keeping the play position of every Episode that
+		 *  is still in the feed.
+		 *
+		 * @param HTML is the new content of the podcast's RSS feed.
+		 * @return the Episodes whose titles were not there before.
+		 * @throws IOException if the catalog can not be rewritten.
+		 * @author Todd Noecker
+		 */
+		private List<Episode> reparse(CharSequence HTML) throws IOException {
+			Map<String, Episode> before = new HashMap<String, Episode>();
+			for (Episode ep : getEpisodes()) {
+				before.put(ep.getTitle(), ep);
+			}
+			parseEpisodes(this, HTML);
+			List<Episode> fresh = new ArrayList<Episode>();
+			List<Episode> parsed = new ArrayList<Episode>(episodes.values());
+			Collections.sort(parsed);
+			for (Episode ep : parsed) {
+				Episode was = before.get(ep.getTitle());
+				if (was == null) {
+					fresh.add(ep);
+				} else {
+					// Counted and reported below as a replacement.
+					ep.restoreCurTimeMillis(was.getCurTimeMillis());
+					ep.restoreLastPlayedMillis(was.getLastPlayedMillis());
+				}
+				published(was, ep);
+				before.remove(ep.getTitle());
+			}
+			for (Episode gone : before.values()) {
+				published(gone, null);
+			}
+			if (catalogFile != null) {
+				rewriteCatalog(parsed);
+				episodes = null;
+			}
+			return fresh;
+		}
+
+		/**
+		 * Reduces an item to the key it is remembered by: its GUID, or its
+		 *  enclosure link when it has no GUID.
+		 *
+		 * @param item the item block.
+		 * @return the item's key.
+		 * @author Todd Noecker
 		 */
+		private long itemKey(CharSequence item) {
+			long guid = elementSpan(item, "<guid", "</guid>");
+			if (guid != -1) {
+				return KnownItems.keyOf(item, (int) (guid >>> 32), (int) guid);
+			}
+			// Hash the enclosure link where it lies, as getLink would find it.
+			int enclose = ByteFeed.indexOf(item, "<enclosure", 0);
+			int start = enclose == -1 ? -1 : ByteFeed.indexOf(item, "url=\"", enclose);
+			int end = start == -1 ? -1 : ByteFeed.indexOf(item, '"', start + 5);
+			if (end != -1) {
+				return KnownItems.keyOf(item, start + 5, end);
+			}
+			String link = getLinkAlt(item);
+			if (link != null) {
+				return KnownItems.keyOf(link, 0, link.length());
+			}
+			return KnownItems.keyOf(item, 0, item.length());
+		}
 
 		/**
 		 * This method will compare segments of characters for matches to trigger words
@@ -424,69 +2647,45 @@ public class PodcastPlayerModel extends Observable implements Serializable {
 		 * @param seachFor the passed search word.
 		 * @return the parsed String with extraneous chars removed.
 		 */
-		private String parseXML(String HTML, String searchFor) {
-			String triggerStr = searchFor;
-			String endStr = searchFor.substring(0, 1) + '/' + searchFor.substring(1);
-			int triggerLen = triggerStr.length();
-			String searchStr = "";
+		private String parseXML(CharSequence HTML, String searchFor) {
+			int triggerLen = searchFor.length();
 
-			if (HTML == "") {
+			if (HTML == null || HTML.length() == 0) {
 				System.out.println("No Site Content");
 				return null;
 			}
 
-			for (int index = 0; index < HTML.length() - triggerLen; index++) {
-
-				searchStr = HTML.substring(index, index + triggerLen);
-
-				if (searchStr.equals(triggerStr)) {
-					return (terminatorSearch(HTML, index, searchStr, triggerLen, triggerStr, endStr));
-				}
+			// The trigger must leave room for at least one character after it.
+			int index = ByteFeed.indexOf(HTML, searchFor, 0);
+			if (index == -1 || index >= HTML.length() - triggerLen) {
+				return null;
 			}
-			return null;
+			return terminatorSearch(HTML, index, triggerLen);
 		}
 
 		/**
 		 * This method will compare segments of characters for matches to triggers like
-		 * </ or />. The content iss then stripped of extraneous characters and passed
-		 * to the clean method.
+		 * </ or />. The content is then stripped of extraneous characters and passed
+		 * to the clean method. The scan stops after the budget's lookahead so a
+		 * missing terminator can not run it to the end of the document.
 		 * 
 		 * @author Todd Noecker
-		 * @param HTML     the parsed RSS feed taken as an HTML
-		 * @param index    the passed state of the index and thus position in the file.
-		 * @param seachStr the passed String to use as a comparison.
-		 * @param the      passed length of the trigger String.
-		 * @param endStr   the modified start String passed to indicate end of the
-		 *                 desired text.
+		 * @param HTML       the parsed RSS feed taken as an HTML
+		 * @param index      the passed state of the index and thus position in the file.
+		 * @param triggerLen the passed length of the trigger String.
 		 * @return the parsed String with extraneous chars removed. null is returned if
 		 *         no match is found.
 		 */
-		private String terminatorSearch(String HTML, int index, String searchStr, int triggerLen, String triggerStr,
-				String endStr) {
-
-			int countIndex = index + triggerLen + 1;
-			searchStr = HTML.substring(index, countIndex);
-			String compStr = HTML.substring(index, countIndex);
-			int compIndex = index;
-
-			// Find the terminator '</'
-			while (!compStr.equals(endStr) && countIndex - 1 <= HTML.length()) {
-				if (compStr.charAt(compStr.length() - 2) == '<' && compStr.charAt(compStr.length() - 1) == '/') {
-					String addStr = searchStr.substring(triggerLen, searchStr.length() - 1);
-					return cleanString(addStr);
-				}
-				// Find the terminator '/>'
-				if (compStr.charAt(compStr.length() - 2) == '/' && compStr.charAt(compStr.length() - 1) == '>') {
-					String addStr = searchStr.substring(triggerLen, searchStr.length() - 1);
-					return cleanString(addStr);
-				}
-				// Update the searched String by moving one character.
-				searchStr = HTML.substring(index, countIndex);
-				countIndex++;
-				compIndex++;
-				// Updates compStr i.e. moves it a char down the line
-				if (countIndex < HTML.length() - triggerStr.length()) {
-					compStr = HTML.substring(compIndex, countIndex);
+		private String terminatorSearch(CharSequence HTML, int index, int triggerLen) {
+			int start = index + triggerLen;
+			int limit = (int) Math.min(HTML.length(), (long) start + budget().getMaxLookahead());
+
+			// Find the terminator '</' or '/>'
+			for (int pos = start; pos < limit - 1; pos++) {
+				char cur = HTML.charAt(pos);
+				char next = HTML.charAt(pos + 1);
+				if ((cur == '<' && next == '/') || (cur == '/' && next == '>')) {
+					return cleanString(HTML.subSequence(start, pos).toString());
 				}
 			}
 			return null;
@@ -502,7 +2701,7 @@ public class PodcastPlayerModel extends Observable implements Serializable {
 		 * 
 		 * @return the full parsed text of the RSS feed site.
 		 */
-		private String parseImageLoc(String HTML) {
+		private String parseImageLoc(CharSequence HTML) {
 			String retString = null;
 			retString = parseXML(HTML, "<image><url>");
 
@@ -511,7 +2710,10 @@ public class PodcastPlayerModel extends Observable implements Serializable {
 			}
 			if (retString == null) {
 				retString = parseXML(HTML, "<image>");
-				retString = retString.substring(4, retString.length());
+				// Skip the leading "url>" left behind by the nested tag.
+				if (retString != null) {
+					retString = retString.length() > 4 ? retString.substring(4) : null;
+				}
 			}
 
 			return retString;
@@ -527,7 +2729,7 @@ public class PodcastPlayerModel extends Observable implements Serializable {
 		 * 
 		 * @return the found title or null;
 		 */
-		private String parseTitle(String HTML) {
+		private String parseTitle(CharSequence HTML) {
 			String retString = null;
 			retString = parseXML(HTML, "<title>");
 
@@ -547,7 +2749,7 @@ public class PodcastPlayerModel extends Observable implements Serializable {
 		 * 
 		 * @return the found author or null;
 		 */
-		private String parseDescription(String HTML) {
+		private String parseDescription(CharSequence HTML) {
 			String retString = null;
 			retString = parseXML(HTML, "<itunes:summary>");
 
@@ -572,38 +2774,23 @@ public class PodcastPlayerModel extends Observable implements Serializable {
 		 * 
 		 * @return retString the parsed link.
 		 */
-		private String getLink(String linkHTML) {
-			String enclose = "<enclosure";
+		private String getLink(CharSequence linkHTML) {
 			String url = "url=" + '"';
-			int index = 0;
-
-			// identify "<enclosure"
-			if (linkHTML.indexOf(enclose) != -1) {
-				while (!linkHTML.substring(index, index + enclose.length()).equals(enclose)
-						&& index < linkHTML.length() - 1) {
-					index++;
-				}
-				linkHTML = linkHTML.substring(index, linkHTML.length());
-				index = 0;
 
-				// identify "url="""
-				while (!linkHTML.substring(index, index + url.length()).equals(url) && index < linkHTML.length() - 1) {
-					index++;
-				}
-				linkHTML = linkHTML.substring(index, linkHTML.length());
-
-				index = url.length();
-				// identify the end '"' "
-				while (linkHTML.charAt(index) != '"' && index < linkHTML.length() - 1) {
-					index++;
+			// identify "<enclosure", then "url="" and the end '"' after it.
+			int enclose = ByteFeed.indexOf(linkHTML, "<enclosure", 0);
+			if (enclose != -1) {
+				int start = ByteFeed.indexOf(linkHTML, url, enclose);
+				if (start != -1) {
+					start += url.length();
+					int end = ByteFeed.indexOf(linkHTML, '"', start);
+					// Return everything found between url="-start and "-end after
+					if (end != -1) {
+						return linkHTML.subSequence(start, end).toString();
+					}
 				}
 			}
-			// Return everything found between url="-start and "-end after
-			if (index != 0) {
-				return linkHTML.substring(url.length(), index);
-			} else {
-				return getLinkAlt(linkHTML);
-			}
+			return getLinkAlt(linkHTML);
 		}
 
 		/**
@@ -615,31 +2802,23 @@ public class PodcastPlayerModel extends Observable implements Serializable {
 		 * 
 		 * @param linkHTML The passed HTML used for parsing from <link> to </link>
 		 * 
-		 * @return retString the parsed link.
+		 * @return retString the parsed link, or null if the item has no link.
 		 */
-		private String getLinkAlt(String linkHTML) {
+		private String getLinkAlt(CharSequence linkHTML) {
 			String link = "<link>";
-			String endLink = "</link>";
-			int index = 0;
-
-			// identify "<link>"
-			if (linkHTML.indexOf(link) != -1) {
-				while (!linkHTML.substring(index, index + link.length()).equals(link)
-						&& index < linkHTML.length() - 1) {
-					index++;
-				}
-				linkHTML = linkHTML.substring(index, linkHTML.length());
-				index = 0;
 
-				// identify the end '</link>' "
-				while (!linkHTML.substring(index, index + endLink.length()).equals(endLink)
-						&& index < linkHTML.length() - 1) {
-					index++;
-				}
+			// identify "<link>" and the end '</link>'
+			int start = ByteFeed.indexOf(linkHTML, link, 0);
+			if (start == -1) {
+				return null;
+			}
+			start += link.length();
+			int end = ByteFeed.indexOf(linkHTML, "</link>", start);
+			if (end == -1) {
+				return null;
 			}
 			// Return the contents between <link></link>
-			return linkHTML.substring(link.length(), index);
-
+			return linkHTML.subSequence(start, end).toString();
 		}
 
 		/**
@@ -657,25 +2836,25 @@ public class PodcastPlayerModel extends Observable implements Serializable {
 				return retString;
 			}
 			retString = retString.trim();
+			int begin = 0;
+			int end = retString.length();
 
-			// Guards empty file.
-			if (retString.length() > 0) {
-
-				// Checks for junk chars at the end of the String.
-				while (retString.charAt(retString.length() - 1) == ' '
-						|| retString.charAt(retString.length() - 1) == '/'
-						|| retString.charAt(retString.length() - 1) == '<'
-						|| retString.charAt(retString.length() - 1) == '"') {
-					retString = retString.substring(0, retString.length() - 1);
-
-				}
+			// Checks for junk chars at the end of the String.
+			while (end > begin && (retString.charAt(end - 1) == ' ' || retString.charAt(end - 1) == '/'
+					|| retString.charAt(end - 1) == '<' || retString.charAt(end - 1) == '"')) {
+				end--;
+			}
 
-				// Checks for junk chars at the beginning of the String.
-				while (retString.charAt(0) == '<' || retString.charAt(0) == '/' || retString.charAt(0) == '>'
-						|| retString.charAt(0) == ' ' || retString.charAt(0) == '"') {
-					retString = retString.substring(1, retString.length());
+			// Checks for junk chars at the beginning of the String.
+			while (begin < end && (retString.charAt(begin) == '<' || retString.charAt(begin) == '/'
+					|| retString.charAt(begin) == '>' || retString.charAt(begin) == ' '
+					|| retString.charAt(begin) == '"')) {
+				begin++;
+			}
+			retString = retString.substring(begin, end);
 
-				}
+			// Guards empty file.
+			if (retString.length() > 0) {
 				// Checks for the specific case of a dangling href=
 				if (retString.length() > 5) {
 					if (retString.substring(0, 5).equals("href=")) {
@@ -710,33 +2889,53 @@ public class PodcastPlayerModel extends Observable implements Serializable {
 		 * 
 		 * @author Todd Noecker
 		 */
-		private String convertSpecialChars(String baseStr) throws UnsupportedEncodingException {
+		private String convertSpecialChars(String baseStr) {
 
 			if (baseStr != null) {
-				baseStr = baseStr.replaceAll("©", "");
-				baseStr = baseStr.replaceAll("&amp;", "&");
-				baseStr = baseStr.replaceAll("&#8211;", "--");
-				baseStr = baseStr.replaceAll("&#", "#");
-				baseStr = baseStr.replaceAll("³", "");
-				baseStr = baseStr.replaceAll("&apos;", "'");
-				baseStr = baseStr.replaceAll("#039;", "'");
-				baseStr = baseStr.replaceAll("&quot;", "'");
+				// These are all plain text, so replace() gives the same result as
+				// replaceAll() without compiling a regex for every field.
+				baseStr = baseStr.replace("©", "");
+				baseStr = baseStr.replace("&amp;", "&");
+				baseStr = baseStr.replace("&#8211;", "--");
+				baseStr = baseStr.replace("&#", "#");
+				baseStr = baseStr.replace("³", "");
+				baseStr = baseStr.replace("&apos;", "'");
+				baseStr = baseStr.replace("#039;", "'");
+				baseStr = baseStr.replace("&quot;", "'");
 				// This regex sequence replaces all special chars outside the normal ASCII
 				// range with "".
-				baseStr = baseStr.replaceAll("[^\u0000-\u007F]", "");
-				baseStr = baseStr.replaceAll("<br>", "");
-				baseStr = baseStr.replaceAll("<em>", "");
-				baseStr = baseStr.replaceAll("<p>", "");
-				baseStr = baseStr.replaceAll("<div>", "");
-				baseStr = baseStr.replaceAll("]]>", "");
-				baseStr = baseStr.replaceAll("div>", "");
+				if (!isAscii(baseStr)) {
+					baseStr = NON_ASCII.matcher(baseStr).replaceAll("");
+				}
+				baseStr = baseStr.replace("<br>", "");
+				baseStr = baseStr.replace("<em>", "");
+				baseStr = baseStr.replace("<p>", "");
+				baseStr = baseStr.replace("<div>", "");
+				baseStr = baseStr.replace("]]>", "");
+				baseStr = baseStr.replace("div>", "");
 
 				String compStr = "<a href=" + '"';
 				if (baseStr.contains(compStr)) {
 					baseStr = removeHTMLLinks(baseStr);
 				}
 			}
-			return baseStr;
+			return baseStr;
+		}
+
+		/**
+		 * Checks whether a String only holds characters in the normal ASCII range.
+		 * 
+		 * @param baseStr the String to check.
+		 * @return true if no character is above 0x7F.
+		 * @author Todd Noecker
+		 */
+		private boolean isAscii(String baseStr) {
+			for (int i = 0; i < baseStr.length(); i++) {
+				if (baseStr.charAt(i) > 0x7F) {
+					return false;
+				}
+			}
+			return true;
 		}
 
 		/**
@@ -752,28 +2951,18 @@ public class PodcastPlayerModel extends Observable implements Serializable {
 		private String removeHTMLLinks(String baseStr) {
 			String link = "<a href=" + '"';
 			String endLink = '"' + ">";
-			int index = 0;
-			int index2 = 0;
 
-			// identify "<a href=""
-			if (baseStr.indexOf(link) != -1) {
-				while (!baseStr.substring(index, index + link.length()).equals(link) && index < baseStr.length() - 1) {
-					index++;
-				}
-				index2 = index;
-
-				// identify the end "">"
-				while (!baseStr.substring(index2, index2 + endLink.length()).equals(endLink)
-						&& index2 < baseStr.length() - 1) {
-					index2++;
-				}
+			// identify "<a href="" and the end "">"
+			int index = baseStr.indexOf(link);
+			if (index == -1) {
+				return baseStr;
 			}
-			// Return the contents between <link></link>
-			if (index2 < baseStr.length()) {
-				return baseStr.substring(0, index) + baseStr.substring(index2 + 2, baseStr.length());
+			int index2 = baseStr.indexOf(endLink, index);
+			if (index2 == -1) {
+				return baseStr;
 			}
-			return baseStr;
-
+			// Return everything around the opening tag.
+			return baseStr.substring(0, index) + baseStr.substring(index2 + endLink.length());
 		}
 
 		/**
@@ -782,6 +2971,10 @@ public class PodcastPlayerModel extends Observable implements Serializable {
 		 * found that just the item tag text is passed to the XML parser to remove just
 		 * the episode description.
 		 * 
+		 * Item boundaries are found first in one quick pass. Feeds with at least
+		 * PARALLEL_ITEMS items then have their items parsed on the pool, and the
+		 * Episodes are put back together in epNum order.
+		 * 
 		 * @param HTML    the passed HTML
 		 * 
 		 * @param thisPod The self instance of the current podcast to have episodes
@@ -789,58 +2982,353 @@ public class PodcastPlayerModel extends Observable implements Serializable {
 		 * 
 		 * @author Todd Noecker
 		 */
-		private void parseEpisodes(Podcast thisPod, String HTML)
-				throws MalformedURLException, URISyntaxException, UnsupportedEncodingException {
-
-			String triggerStr = "<item>";
-			String endStr = "</item>";
-			int triggerLen = triggerStr.length();
+		private void parseEpisodes(Podcast thisPod, CharSequence HTML) {
 			episodes = new HashMap<String, Episode>();
-			String searchStr = "";
-			int podIndex = 0;
+			known = new KnownItems();
+			firstEpNum = 0;
+			dropIndex();
 
-			if (HTML == "") {
+			if (HTML == null || HTML.length() == 0) {
 				return;
 			}
 
-			// Loop to visit each char in the HTML String.
-			for (int index = 0; index < HTML.length() - triggerLen; index++) {
+			int[] bounds = findItems(HTML);
+			int count = bounds.length / 2;
+			Episode[] parsed = new Episode[count];
+			long[] keys = new long[count];
+			boolean[] attempted = new boolean[count];
+			long deadline = System.currentTimeMillis() + budget().getMaxParseMillis();
+
+			ForkJoinPool parsePool = pool == null ? ForkJoinPool.commonPool() : pool;
+			if (count >= PARALLEL_ITEMS && parsePool.getParallelism() > 1) {
+				parsePool.invoke(new ItemRangeTask(HTML, bounds, parsed, keys, attempted, 0, count, deadline));
+			} else {
+				parseItems(HTML, bounds, parsed, keys, attempted, 0, count, deadline);
+			}
+
+			// Keep the run of items parsed before any deadline, in feed order so
+			// later duplicates replace earlier ones as they always have.
+			int done = 0;
+			while (done < count && attempted[done]) {
+				known.add(keys[done]);
+				if (parsed[done] != null) {
+					this.episodes.put(parsed[done].getTitle(), parsed[done]);
+				}
+				done++;
+			}
+			if (done < count) {
+				System.out.println("Feed " + link + " took too long to parse. Keeping " + episodes.size()
+						+ " episodes\n");
+			}
+		}
 
-				searchStr = HTML.substring(index, index + triggerLen);
+		/**
+		 * Finds where every item block starts and ends without parsing them.
+		 * 
+		 * @param HTML the passed HTML
+		 * @return pairs of item start and end offsets, at most the budget's item
+		 *         limit of them.
+		 * @author Todd Noecker
+		 */
+		private int[] findItems(CharSequence HTML) {
+			String triggerStr = "<item>";
+			String endStr = "</item>";
+			int maxItems = budget().getMaxItems();
+			int[] bounds = new int[32];
+			int count = 0;
 
+			int index = 0;
+			while (count < maxItems) {
 				// Find the start of the episode block
-				if (searchStr.equals(triggerStr)) {
-					int foundIndex = index;
-					int endIndex = index;
-					// Find the end of the episode block.
-					while (!searchStr.equals(endStr)) {
-						searchStr = HTML.substring(endIndex, endIndex + triggerLen + 1);
-						endIndex++;
+				int foundIndex = ByteFeed.indexOf(HTML, triggerStr, index);
+				if (foundIndex == -1 || foundIndex >= HTML.length() - triggerStr.length()) {
+					break;
+				}
+				// Find the end of the episode block.
+				int endIndex = ByteFeed.indexOf(HTML, endStr, foundIndex);
+				if (endIndex == -1) {
+					System.out.println("Feed " + link + " ends inside an episode. Skipping the rest\n");
+					break;
+				}
+				if (count * 2 == bounds.length) {
+					bounds = Arrays.copyOf(bounds, bounds.length * 2);
+				}
+				bounds[count * 2] = foundIndex;
+				bounds[count * 2 + 1] = endIndex + 1;
+				count++;
+				index = endIndex + endStr.length();
+			}
+			return Arrays.copyOf(bounds, count * 2);
+		}
+
+		/**
+		 * Parses a range of item blocks into Episodes. Each Episode's epNum is its
+		 * item's position in the feed. Items with no usable link are left null.
+		 * Parsing stops once the deadline passes.
+		 * 
+		 * @param HTML      the passed HTML
+		 * @param bounds    the item offsets found by findItems.
+		 * @param parsed    where each parsed Episode is stored.
+		 * @param keys      where each item's key is stored.
+		 * @param attempted marks each item that was parsed, usable or not.
+		 * @param from      the first item to parse.
+		 * @param to        one past the last item to parse.
+		 * @param deadline  the time parsing must stop by.
+		 * @author Todd Noecker
+		 */
+		private void parseItems(CharSequence HTML, int[] bounds, Episode[] parsed, long[] keys, boolean[] attempted,
+				int from, int to, long deadline) {
+			for (int i = from; i < to; i++) {
+				if (System.currentTimeMillis() > deadline) {
+					return;
+				}
+				// Break off just the item block. Over a ByteFeed this is a view, not a copy.
+				CharSequence searchStr = HTML.subSequence(bounds[i * 2], bounds[i * 2 + 1]);
+				keys[i] = itemKey(searchStr);
+				parsed[i] = parseItem(searchStr, i);
+				attempted[i] = true;
+			}
+		}
+
+		/**
+		 * Parses one item block into an Episode.
+		 * 
+		 * @param searchStr the item block.
+		 * @param epNum     the number to give the Episode.
+		 * @return the Episode, or null if the item has no usable link.
+		 * @author Todd Noecker
+		 */
+		private Episode parseItem(CharSequence searchStr, int epNum) {
+			// Generate each field value.
+			URI linkURL = toURI(getLink(searchStr));
+
+			// An item with no usable link can not be played, so it is skipped.
+			if (linkURL == null) {
+				return null;
+			}
+			// Replace char identifiers with correct characters.
+			String title = convertSpecialChars(parseTitle(searchStr));
+			String epDescription = convertSpecialChars(parseDescription(searchStr));
+			Episode episode = new Episode(title, epDescription, linkURL, this, epNum);
+			parseDetails(searchStr, episode);
+			return episode;
+		}
+
+		/**
+		 * Reads an item's publish date, duration, GUID and enclosure size and
+		 *  type into its Episode. Dates and numbers are read in place, so only
+		 *  the GUID and type become Strings.
+		 * 
+		 * @param item the item block.
+		 * @param episode the Episode parsed from it.
+		 * @author Todd Noecker
+		 */
+		private void parseDetails(CharSequence item, Episode episode) {
+			long span = elementSpan(item, "<pubDate", "</pubDate>");
+			if (span == -1) {
+				span = elementSpan(item, "<dc:date", "</dc:date>");
+			}
+			long published = span == -1 ? FeedDates.UNKNOWN
+					: FeedDates.parseDate(item, (int) (span >>> 32), (int) span);
+
+			span = elementSpan(item, "<itunes:duration", "</itunes:duration>");
+			int duration = span == -1 ? 0 : FeedDates.parseDuration(item, (int) (span >>> 32), (int) span);
+
+			span = elementSpan(item, "<guid", "</guid>");
+			String guid = span == -1 ? null : cleanString(item.subSequence((int) (span >>> 32), (int) span).toString());
+			if (guid != null && guid.endsWith("]]>")) {
+				guid = guid.substring(0, guid.length() - 3);
+			}
+			if (guid != null && guid.isEmpty()) {
+				guid = null;
+			}
+
+			long length = 0;
+			String type = null;
+			int enclose = ByteFeed.indexOf(item, "<enclosure", 0);
+			int tagEnd = enclose == -1 ? -1 : ByteFeed.indexOf(item, '>', enclose);
+			if (tagEnd != -1) {
+				span = attributeSpan(item, enclose, tagEnd, "length=");
+				for (int i = span == -1 ? 0 : (int) (span >>> 32); span != -1 && i < (int) span; i++) {
+					char c = item.charAt(i);
+					if (c < '0' || c > '9' || length > Long.MAX_VALUE / 10 - 1) {
+						length = 0;
+						break;
 					}
+					length = length * 10 + (c - '0');
+				}
+				span = attributeSpan(item, enclose, tagEnd, "type=");
+				if (span != -1 && (int) span > (int) (span >>> 32)) {
+					type = mediaType(item, (int) (span >>> 32), (int) span);
+				}
+			}
+			episode.setFeedDetails(published, duration, guid, length, type);
+		}
+
+		/**
+		 * Reads an enclosure's MIME type. The few types nearly every feed uses
+		 *  are matched in place, so they cost no String per item.
+		 * 
+		 * @param item the item block.
+		 * @param from the start of the type.
+		 * @param to the end of the type.
+		 * @return the shared type String.
+		 * @author Todd Noecker
+		 */
+		private String mediaType(CharSequence item, int from, int to) {
+			for (String common : COMMON_TYPES) {
+				if (common.length() == to - from && matches(item, from, common)) {
+					return common;
+				}
+			}
+			return EpisodeText.intern(item.subSequence(from, to).toString());
+		}
 
-					// Break off just the item block.
-					searchStr = HTML.substring(foundIndex, endIndex);
+		private boolean matches(CharSequence text, int at, String pattern) {
+			for (int i = 0; i < pattern.length(); i++) {
+				if (text.charAt(at + i) != pattern.charAt(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
 
-					// Generate each field value.
-					String title = parseTitle(searchStr);
-					String epDescription = parseDescription(searchStr);
-					String link = getLink(searchStr);
-					URI linkURL = new URI(link);
+		/**
+		 * Finds the text inside the first element of an item with the given
+		 *  tag, without copying it.
+		 * 
+		 * @param item the item block.
+		 * @param open the start of the opening tag, such as "<guid".
+		 * @param close the closing tag, such as "</guid>".
+		 * @return the start of the text in the high 32 bits and its end in the
+		 *  low 32 bits, or -1 if the item has no such element.
+		 * @author Todd Noecker
+		 */
+		private long elementSpan(CharSequence item, String open, String close) {
+			int start = ByteFeed.indexOf(item, open, 0);
+			while (start != -1 && start + open.length() < item.length()) {
+				// Skip longer tag names that begin the same way.
+				char next = item.charAt(start + open.length());
+				if (next == '>' || next <= ' ') {
+					break;
+				}
+				start = ByteFeed.indexOf(item, open, start + open.length());
+			}
+			if (start == -1 || start + open.length() >= item.length()) {
+				return -1;
+			}
+			int textStart = ByteFeed.indexOf(item, '>', start);
+			if (textStart == -1 || item.charAt(textStart - 1) == '/') {
+				return -1;
+			}
+			int end = ByteFeed.indexOf(item, close, textStart);
+			if (end == -1) {
+				return -1;
+			}
+			return ((long) (textStart + 1) << 32) | end;
+		}
 
-					// Replace char identifiers with correct characters.
-					title = convertSpecialChars(title);
-					epDescription = convertSpecialChars(epDescription);
+		/**
+		 * Finds the quoted value of an attribute within a tag.
+		 * 
+		 * @param item the item block.
+		 * @param from the start of the tag.
+		 * @param to the end of the tag.
+		 * @param name the attribute name with its equals sign, such as "type=".
+		 * @return the start of the value in the high 32 bits and its end in the
+		 *  low 32 bits, or -1 if the tag has no such attribute.
+		 * @author Todd Noecker
+		 */
+		private long attributeSpan(CharSequence item, int from, int to, String name) {
+			int at = ByteFeed.indexOf(item, name, from);
+			// The name must start an attribute, not end a longer one or sit in a link.
+			while (at != -1 && at < to && item.charAt(at - 1) > ' ') {
+				at = ByteFeed.indexOf(item, name, at + name.length());
+			}
+			int quote = at + name.length();
+			if (at == -1 || quote >= to) {
+				return -1;
+			}
+			char mark = item.charAt(quote);
+			if (mark != '"' && mark != '\'') {
+				return -1;
+			}
+			int end = ByteFeed.indexOf(item, mark, quote + 1);
+			if (end == -1 || end > to) {
+				return -1;
+			}
+			return ((long) (quote + 1) << 32) | end;
+		}
 
-					// We are currently not using author in for specific podcast episodes.
-					// author = convertSpecialChars(author);
+		/**
+		 * Splits a range of items in half until it is small enough to parse on
+		 * one thread.
+		 */
+		private class ItemRangeTask extends RecursiveAction {
+
+			private static final long serialVersionUID = -2361862393718386235L;
+
+			private final CharSequence HTML;
+			private final int[] bounds;
+			private final Episode[] parsed;
+			private final long[] keys;
+			private final boolean[] attempted;
+			private final int from;
+			private final int to;
+			private final long deadline;
+
+			ItemRangeTask(CharSequence HTML, int[] bounds, Episode[] parsed, long[] keys, boolean[] attempted,
+					int from, int to, long deadline) {
+				this.HTML = HTML;
+				this.bounds = bounds;
+				this.parsed = parsed;
+				this.keys = keys;
+				this.attempted = attempted;
+				this.from = from;
+				this.to = to;
+				this.deadline = deadline;
+			}
 
-					// Add episode to podcast.
-					Episode addEp = new Episode(title, epDescription, linkURL, this, podIndex);
-					this.episodes.put(title, addEp);
-					podIndex++;
+			@Override
+			protected void compute() {
+				if (to - from <= ITEMS_PER_TASK) {
+					parseItems(HTML, bounds, parsed, keys, attempted, from, to, deadline);
+					return;
 				}
+				int mid = (from + to) >>> 1;
+				invokeAll(new ItemRangeTask(HTML, bounds, parsed, keys, attempted, from, mid, deadline),
+						new ItemRangeTask(HTML, bounds, parsed, keys, attempted, mid, to, deadline));
+			}
+		}
+
+		/**
+		 * Turns a parsed link into a URI.
+		 * 
+		 * @param link the parsed link, may be null.
+		 * @return the URI, or null if the link is missing or malformed.
+		 * @author Todd Noecker
+		 */
+		private URI toURI(String link) {
+			if (link == null) {
+				return null;
+			}
+			try {
+				return new URI(link.trim());
+			} catch (URISyntaxException ex) {
+				return null;
 			}
 		}
+
+		/**
+		 * Fetches the budget used while parsing, falling back to the defaults
+		 *  for Podcasts loaded from a save file.
+		 * 
+		 * @return the feed budget.
+		 * @author Todd Noecker
+		 */
+		private FeedBudget budget() {
+			return budget == null ? FeedBudget.DEFAULT : budget;
+		}
 	}
 
 	/**
@@ -855,12 +3343,28 @@ public class PodcastPlayerModel extends Observable implements Serializable {
 		 */
 		private static final long serialVersionUID = -8761764102871496427L;
 		
+		/**
+		 * The play position of an Episode played to the end. It is kept and
+		 *  saved like any position, but counts neither as unplayed nor as in
+		 *  progress.
+		 */
+		public static final long FINISHED = Long.MAX_VALUE;
+		
 		private String title; // the title of the episode
-		private String desc; // a description of the episode
-		private URI link; // a link to the episode
+		private String desc; // a description of the episode, null when packed
+		private byte[] packedDesc; // the packed description in compact storage
+		private URI link; // a link to the episode, null when compact
+		private String linkText; // the interned link in compact storage
 		private Podcast parent; // the podcast of which this podcast is a part
 		private int epNum; // the index of this episode in its parent's episode list
-		private Duration currTime; // the current time in the podcast
+		private long currMillis; // the current time in the podcast, -1 if never played
+		private long lastPlayed; // when the position was last set, in epoch milliseconds, 0 if never
+		private long published; // the publish date in epoch milliseconds, 0 if unknown
+		private int duration; // the length in seconds the feed gives, 0 if unknown
+		private String guid; // the item's GUID, null if it has none
+		private long enclosureLength; // the enclosure size in bytes, 0 if unknown
+		private String enclosureType; // the enclosure MIME type, null if unknown
+		private transient int generation; // the parent's generation when this copy was made
 		
 		/**
 		 * Initializes all of the metadata for the
@@ -878,12 +3382,37 @@ public class PodcastPlayerModel extends Observable implements Serializable {
 		 * @author seanomeara02, Todd Noecker
 		 */
 		public Episode(String title, String desc, URI link, Podcast parent, int epNum) {
-			this.title = title;
-			this.desc = desc;
-			this.link = link;
+			this(title, desc, link, parent, epNum, parent != null && parent.isCompactStorage());
+		}
+		
+		/**
+		 * Initializes all of the metadata for the Episode, in compact storage
+		 *  if asked. A compact Episode keeps its description as packed (and
+		 *  for long text, deflated) UTF-8 bytes and its link as an interned
+		 *  String. Both are decoded only when asked for.
+		 * 
+		 * @param title is the name of the Episode.
+		 * @param desc is a description of the Episode.
+		 * @param link is a link to the Episode.
+		 * @param parent is the Podcast in which this Episode is contained.
+		 * @param epNum is the number of the Episode in its parent Podcast.
+		 * @param compact true to pack the description and intern the text.
+		 * @author Todd Noecker
+		 */
+		public Episode(String title, String desc, URI link, Podcast parent, int epNum, boolean compact) {
+			if (compact) {
+				this.title = EpisodeText.intern(title);
+				this.packedDesc = EpisodeText.pack(desc);
+				this.linkText = link == null ? null : EpisodeText.intern(link.toString());
+			} else {
+				this.title = title;
+				this.desc = desc;
+				this.link = link;
+			}
 			this.parent = parent;
 			this.epNum = epNum;
-			this.currTime = null;
+			this.currMillis = -1;
+			this.generation = parent == null ? 0 : parent.generation;
 		}
 		
 		/* ------------------------------------------------------------------------ 
@@ -908,6 +3437,9 @@ public class PodcastPlayerModel extends Observable implements Serializable {
 		 * @author seanomeara02
 		 */
 		public String getDescription() {
+			if (packedDesc != null) {
+				return EpisodeText.unpack(packedDesc);
+			}
 			return desc;
 		}
 		
@@ -918,9 +3450,73 @@ public class PodcastPlayerModel extends Observable implements Serializable {
 		 * @author seanomeara02
 		 */
 		public URI getLink() {
+			if (linkText != null) {
+				return URI.create(linkText);
+			}
 			return link;
 		}
 
+		/**
+		 * Fetches the number of this Episode in its parent Podcast.
+		 * 
+		 * @return this Episode's position in its feed.
+		 * @author Todd Noecker
+		 */
+		public int getEpNum() {
+			return epNum;
+		}
+
+		/**
+		 * Fetches when this Episode was published.
+		 * 
+		 * @return the publish date in milliseconds since the epoch, or
+		 *  FeedDates.UNKNOWN if the feed gives none that can be read.
+		 * @author Todd Noecker
+		 */
+		public long getPublishedMillis() {
+			return published;
+		}
+
+		/**
+		 * Fetches the length of this Episode as the feed gives it.
+		 * 
+		 * @return the length in seconds, or 0 if unknown.
+		 * @author Todd Noecker
+		 */
+		public int getDurationSeconds() {
+			return duration;
+		}
+
+		/**
+		 * Fetches the GUID of this Episode's feed item.
+		 * 
+		 * @return the GUID, or null if the item has none.
+		 * @author Todd Noecker
+		 */
+		public String getGuid() {
+			return guid;
+		}
+
+		/**
+		 * Fetches the size of this Episode's media file as the feed gives it.
+		 * 
+		 * @return the size in bytes, or 0 if unknown.
+		 * @author Todd Noecker
+		 */
+		public long getEnclosureLength() {
+			return enclosureLength;
+		}
+
+		/**
+		 * Fetches the MIME type of this Episode's media file.
+		 * 
+		 * @return the type, such as audio/mpeg, or null if unknown.
+		 * @author Todd Noecker
+		 */
+		public String getEnclosureType() {
+			return enclosureType;
+		}
+
 		/**
 		 * Fetches the parent Podcast of this
 		 *  Episode.
@@ -936,21 +3532,146 @@ public class PodcastPlayerModel extends Observable implements Serializable {
 		 * Sets the current time the podcast is at. Used for reference when restarting 
 		 * the episode. 
 		 * 
-		 * @param curTime Duration object used to seek to the last point the podcast was played.
-		 * @author Garrett Scott
+		 * @param curMillis the last point the podcast was played in milliseconds,
+		 *  FINISHED once it was played to the end, or -1 to clear it. Either way
+		 *  the Episode counts as played now.
+		 * @author Garrett Scott, Todd Noecker
+		 */
+		public void setCurTimeMillis(long curMillis) {
+			long before = currMillis;
+			restoreCurTimeMillis(curMillis);
+			markPlayed();
+			if (parent != null) {
+				parent.positionChanged(this, before);
+			}
+		}
+		
+		/**
+		 * Sets the current time without telling the parent Podcast, for copies
+		 *  that are not part of any Podcast's index.
+		 * 
+		 * @param curMillis the play position in milliseconds, or -1.
+		 * @author Todd Noecker
+		 */
+		void restoreCurTimeMillis(long curMillis) {
+			this.currMillis = curMillis < 0 ? -1 : curMillis;
+		}
+
+		/**
+		 * Takes another copy's link, and its description when the text is
+		 *  the same, so the two hold one payload between them. Catalog views
+		 *  are read from disk and keep their own.
+		 *
+		 * @param first the copy found first.
+		 * @author Todd Noecker
+		 */
+		void sharePayload(Episode first) {
+			if (getClass() != Episode.class || first.getClass() != Episode.class || first == this) {
+				return;
+			}
+			if (link != null && first.link != null) {
+				link = first.link;
+			} else if (linkText != null && first.linkText != null) {
+				linkText = first.linkText;
+			}
+			if (desc != null && desc.equals(first.desc)) {
+				desc = first.desc;
+			} else if (packedDesc != null && Arrays.equals(packedDesc, first.packedDesc)) {
+				packedDesc = first.packedDesc;
+			}
+		}
+
+		/**
+		 * Sets the details read from the feed item besides the title,
+		 *  description and link.
+		 * 
+		 * @param published the publish date in epoch milliseconds, or 0.
+		 * @param duration the length in seconds, or 0.
+		 * @param guid the item's GUID, or null.
+		 * @param enclosureLength the media file size in bytes, or 0.
+		 * @param enclosureType the media file MIME type, or null.
+		 * @author Todd Noecker
 		 */
-		public void setCurTime(Duration curTime) {
-			this.currTime = curTime;
+		void setFeedDetails(long published, int duration, String guid, long enclosureLength, String enclosureType) {
+			this.published = published;
+			this.duration = duration;
+			this.guid = guid;
+			this.enclosureLength = enclosureLength;
+			this.enclosureType = enclosureType;
 		}
 		
 		/**
 		 * This returns the current time stamp the episode is at.
 		 * 
-		 * @return Duration object representing the current time in the podcast.
+		 * @return the current time in milliseconds, FINISHED if it was played
+		 *  to the end, or -1 if never played.
 		 * @author Garrett Scott
 		 */
-		public Duration getCurTime() {
-			return this.currTime;
+		public long getCurTimeMillis() {
+			return this.currMillis;
+		}
+		
+		/**
+		 * Reports whether this Episode was started and not played to the end.
+		 * 
+		 * @return true if it is in progress.
+		 * @author Todd Noecker
+		 */
+		public boolean isInProgress() {
+			long position = getCurTimeMillis();
+			return position >= 0 && position != FINISHED;
+		}
+		
+		/**
+		 * Reports whether this Episode was played to the end.
+		 * 
+		 * @return true if it is finished.
+		 * @author Todd Noecker
+		 */
+		public boolean isFinished() {
+			return getCurTimeMillis() == FINISHED;
+		}
+		
+		/**
+		 * Fetches when this Episode's play position was last set.
+		 * 
+		 * @return the time in milliseconds since the epoch, or 0 if never.
+		 * @author Todd Noecker
+		 */
+		public long getLastPlayedMillis() {
+			return lastPlayed;
+		}
+		
+		/**
+		 * Records that this Episode was played just now.
+		 * 
+		 * @author Todd Noecker
+		 */
+		void markPlayed() {
+			this.lastPlayed = System.currentTimeMillis();
+		}
+		
+		/**
+		 * Sets when this Episode was last played, for copies made of it.
+		 * 
+		 * @param millis the time in milliseconds since the epoch, or 0.
+		 * @author Todd Noecker
+		 */
+		void restoreLastPlayedMillis(long millis) {
+			this.lastPlayed = millis;
+		}
+		
+		/**
+		 * Estimates the heap this Episode holds: the object, its strings and
+		 *  its link. Shared interned strings are counted as its own.
+		 * 
+		 * @return the estimate in bytes.
+		 * @author Todd Noecker
+		 */
+		long heapBytes() {
+			return 96 + textBytes(title) + textBytes(desc) + (packedDesc == null ? 0 : 16 + packedDesc.length)
+					+ (link == null ? 0 : 64 + 2L * textBytes(link.toString())) + textBytes(linkText)
+					+ textBytes(guid) + textBytes(enclosureType);
 		}
 		
 		/**
@@ -970,6 +3691,57 @@ public class PodcastPlayerModel extends Observable implements Serializable {
 				return 0;
 			}
 		}
+		
+		/**
+		 * Estimates the heap a String holds, at one byte a character.
+		 */
+		private static long textBytes(String text) {
+			return text == null ? 0 : 40 + text.length();
+		}
+		
+		/**
+		 * Reads an Episode back from a save file. Save files from before play
+		 *  positions were kept in milliseconds hold them as a Duration named
+		 *  currTime, null if never played, which is carried over.
+		 */
+		private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+			ObjectInputStream.GetField fields = in.readFields();
+			title = (String) fields.get("title", null);
+			desc = (String) fields.get("desc", null);
+			packedDesc = (byte[]) fields.get("packedDesc", null);
+			link = (URI) fields.get("link", null);
+			linkText = (String) fields.get("linkText", null);
+			parent = (Podcast) fields.get("parent", null);
+			epNum = fields.get("epNum", 0);
+			lastPlayed = fields.get("lastPlayed", 0L);
+			published = fields.get("published", 0L);
+			duration = fields.get("duration", 0);
+			guid = (String) fields.get("guid", null);
+			enclosureLength = fields.get("enclosureLength", 0L);
+			enclosureType = (String) fields.get("enclosureType", null);
+			if (fields.defaulted("currMillis")) {
+				currMillis = millisOf(fields.get("currTime", null));
+			} else {
+				currMillis = fields.get("currMillis", -1L);
+			}
+		}
+		
+		/**
+		 * Reads the milliseconds of a position saved as a JavaFX Duration.
+		 *  The model is built without JavaFX, so the Duration is asked for
+		 *  its milliseconds by name.
+		 */
+		private static long millisOf(Object currTime) throws IOException {
+			if (currTime == null) {
+				return -1;
+			}
+			try {
+				double millis = (Double) currTime.getClass().getMethod("toMillis").invoke(currTime);
+				return millis < 0 ? -1 : (long) millis;
+			} catch (ReflectiveOperationException | ClassCastException ex) {
+				throw new IOException("Play position of an old save file can not be read", ex);
+			}
+		}
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,236 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import model.PodcastPlayerModel.Episode;
+
+/**
+ * A Podcast's Episodes sorted by publish date, newest first, with ties and
+ * undated Episodes in epNum order.
+ *
+ * The Episodes themselves stay where they are, in a list; the index holds
+ *  only their positions in that list, with the date and epNum of each
+ *  beside it so finding a place in the order reads no Episode.
+ *  Catalog-backed Podcasts can so be indexed without pulling the catalog
+ *  onto the heap. An index is never changed once built, so it can be read
+ *  without holding the Podcast's lock.
+ *
+ * @author Todd Noecker
+ */
+final class PublishedIndex {
+
+	private final List<Episode> episodes; // every Episode
+	private final int[] order; // positions in episodes, newest first
+	private final long[] published; // the publish date at each rank
+	private final int[] epNums; // the epNum at each rank
+
+	/**
+	 * Sorts a list of Episodes by publish date. Costs one read of each
+	 * Episode and a sort.
+	 *
+	 * @param episodes every Episode, in epNum order.
+	 * @author Todd Noecker
+	 */
+	PublishedIndex(List<Episode> episodes) {
+		int n = episodes.size();
+		long[] dates = new long[n];
+		Integer[] positions = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			dates[i] = episodes.get(i).getPublishedMillis();
+			positions[i] = i;
+		}
+		// The sort is stable and positions are in epNum order, so equal
+		// dates stay in epNum order.
+		Arrays.sort(positions, (a, b) -> Long.compare(dates[b], dates[a]));
+
+		this.episodes = episodes;
+		this.order = new int[n];
+		this.published = new long[n];
+		this.epNums = new int[n];
+		for (int rank = 0; rank < n; rank++) {
+			int pos = positions[rank];
+			order[rank] = pos;
+			published[rank] = dates[pos];
+			epNums[rank] = episodes.get(pos).getEpNum();
+		}
+	}
+
+	/**
+	 * Creates an index from arrays already in order.
+	 *
+	 * @author Todd Noecker
+	 */
+	private PublishedIndex(List<Episode> episodes, int[] order, long[] published, int[] epNums) {
+		this.episodes = episodes;
+		this.order = order;
+		this.published = published;
+		this.epNums = epNums;
+	}
+
+	/**
+	 * Makes the index that also holds newly found Episodes. Only the new
+	 * Episodes are sorted; they are then merged into this order, so a
+	 * refresh costs a pass over the index rather than a sort of it.
+	 *
+	 * @param fresh the new Episodes, none of which replace one in this index.
+	 * @return the new index. This one is left as it is.
+	 * @author Todd Noecker
+	 */
+	PublishedIndex withAdded(List<Episode> fresh) {
+		PublishedIndex added = new PublishedIndex(fresh);
+		int n = order.length;
+		int m = added.order.length;
+		List<Episode> all = new ArrayList<Episode>(n + m);
+		all.addAll(episodes);
+		all.addAll(fresh);
+
+		int[] mergedOrder = new int[n + m];
+		long[] mergedPublished = new long[n + m];
+		int[] mergedEpNums = new int[n + m];
+		int i = 0;
+		int j = 0;
+		for (int rank = 0; rank < n + m; rank++) {
+			boolean takeOld = j == m || (i < n && (published[i] > added.published[j]
+					|| (published[i] == added.published[j] && epNums[i] <= added.epNums[j])));
+			if (takeOld) {
+				mergedOrder[rank] = order[i];
+				mergedPublished[rank] = published[i];
+				mergedEpNums[rank] = epNums[i++];
+			} else {
+				mergedOrder[rank] = n + added.order[j];
+				mergedPublished[rank] = added.published[j];
+				mergedEpNums[rank] = added.epNums[j++];
+			}
+		}
+		return new PublishedIndex(all, mergedOrder, mergedPublished, mergedEpNums);
+	}
+
+	/**
+	 * Counts the Episodes in the index.
+	 *
+	 * @return the Episode count.
+	 * @author Todd Noecker
+	 */
+	int size() {
+		return order.length;
+	}
+
+	/**
+	 * Fetches the publish date at a rank without reading the Episode.
+	 *
+	 * @param rank the place in the order.
+	 * @return the date, or FeedDates.UNKNOWN.
+	 * @author Todd Noecker
+	 */
+	long publishedAt(int rank) {
+		return published[rank];
+	}
+
+	/**
+	 * Fetches the epNum at a rank without reading the Episode.
+	 *
+	 * @param rank the place in the order.
+	 * @return the epNum.
+	 * @author Todd Noecker
+	 */
+	int epNumAt(int rank) {
+		return epNums[rank];
+	}
+
+	/**
+	 * Finds the first rank that comes after an Episode with the given date
+	 * and epNum.
+	 *
+	 * @param date  the publish date to start after.
+	 * @param epNum the epNum to start after among Episodes of that date.
+	 * @return the rank, or the Episode count if there is none.
+	 * @author Todd Noecker
+	 */
+	int rankAfter(long date, int epNum) {
+		int lo = 0;
+		int hi = order.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (published[mid] > date || (published[mid] == date && epNums[mid] <= epNum)) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Counts the Episodes published after a time. They are the first ones
+	 * in the order.
+	 *
+	 * @param date the time in milliseconds since the epoch.
+	 * @return how many Episodes are newer.
+	 * @author Todd Noecker
+	 */
+	int countAfter(long date) {
+		int lo = 0;
+		int hi = order.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (published[mid] > date) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Counts the Episodes published at or after a time.
+	 *
+	 * @param date the time in milliseconds since the epoch.
+	 * @return how many Episodes are that new or newer.
+	 * @author Todd Noecker
+	 */
+	int countFrom(long date) {
+		return date == Long.MIN_VALUE ? order.length : countAfter(date - 1);
+	}
+
+	/**
+	 * Fetches the Episode at a rank.
+	 *
+	 * @param rank the place in the order.
+	 * @return the Episode.
+	 * @author Todd Noecker
+	 */
+	Episode get(int rank) {
+		return episodes.get(order[rank]);
+	}
+
+	/**
+	 * Walks the Episodes in order from a rank.
+	 *
+	 * @param rank the first place to return.
+	 * @return the Episodes from that rank on.
+	 * @author Todd Noecker
+	 */
+	Iterator<Episode> from(int rank) {
+		return new Iterator<Episode>() {
+			private int next = rank;
+
+			@Override
+			public boolean hasNext() {
+				return next < order.length;
+			}
+
+			@Override
+			public Episode next() {
+				if (next >= order.length) {
+					throw new NoSuchElementException();
+				}
+				return get(next++);
+			}
+		};
+	}
+}
@@ -0,0 +1,430 @@
+package model;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+import model.PodcastPlayerModel.Podcast;
+
+/**
+ * Keeps the Episodes of only the most recently used Podcasts on the heap.
+ *
+ * Each time a Podcast is opened it becomes the most recently used. When
+ *  the Episodes of the Podcasts on the heap add up to more than the heap
+ *  budget, or the collector reports that the heap is nearly full after a
+ *  collection, the least recently used Podcasts have their Episodes moved
+ *  into catalog files in the residency directory. Their Episodes are then
+ *  read from the file while they stay cold, and moved back onto the heap
+ *  the next time the Podcast is opened.
+ *
+ * Episodes are moved by a thread of the manager's own, one Podcast at a
+ *  time, so opening a Podcast only decides what moves and never waits for
+ *  a file. A Podcast opened while its Episodes are moving out is moved
+ *  back in after them, and one opened before its turn to move out comes is
+ *  not moved at all. Until its Episodes are back on the heap a Podcast
+ *  still serves them from its catalog.
+ *
+ * Podcasts that keep their Episodes in a catalog of their own are left
+ *  alone.
+ *
+ * @author Todd Noecker
+ */
+final class ResidencyManager {
+
+	/**
+	 * How full a heap pool may be after a collection before cold Podcasts
+	 * are released.
+	 */
+	static final double PRESSURE_FRACTION = 0.8;
+
+	/**
+	 * How many of the most recently used Podcasts stay on the heap when the
+	 * collector reports pressure.
+	 */
+	static final int HOT_PODCASTS = 4;
+
+	private static final String CATALOG = ".cat";
+
+	private final Path dir;
+	private final long budgetBytes;
+	private final LinkedHashMap<String, Resident> resident; // least recently used first, guarded by this
+	private long residentBytes; // guarded by this
+	private final Map<String, Podcast> releasing = new HashMap<String, Podcast>(); // guarded by this
+	private final ExecutorService mover;
+	private int moving; // moves handed to the mover and not yet done, guarded by this
+	private NotificationListener listener;
+
+	/**
+	 * Creates a manager. Nothing is tracked until Podcasts are opened.
+	 *
+	 * @param dir         where released Episodes are written.
+	 * @param budgetBytes the most Episode heap to keep, or 0 to release only
+	 *                    under pressure.
+	 * @author Todd Noecker
+	 */
+	ResidencyManager(Path dir, long budgetBytes) {
+		this.dir = dir.toAbsolutePath();
+		this.budgetBytes = budgetBytes;
+		this.resident = new LinkedHashMap<String, Resident>(16, 0.75f, true);
+		this.mover = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "podcast-residency");
+			// Episodes still waiting to move stay where they are, which is
+			// never wrong.
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PACKAGE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Starts listening for the collector to report a nearly full heap.
+	 * Sets the collection usage threshold of every heap pool that has one.
+	 *
+	 * @author Todd Noecker
+	 */
+	synchronized void watchHeap() {
+		if (listener != null) {
+			return;
+		}
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			long max = pool.getUsage().getMax();
+			if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() && max > 0) {
+				pool.setCollectionUsageThreshold((long) (max * PRESSURE_FRACTION));
+			}
+		}
+		listener = (notification, handback) -> {
+			if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+				chooseCold(HOT_PODCASTS);
+			}
+		};
+		((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(listener, null, null);
+	}
+
+	/**
+	 * Stops listening to the collector. Episodes already asked to move still
+	 * do.
+	 *
+	 * @author Todd Noecker
+	 */
+	synchronized void close() {
+		mover.shutdown();
+		if (listener == null) {
+			return;
+		}
+		try {
+			((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(listener);
+		} catch (ListenerNotFoundException ex) {
+			// Already gone.
+		}
+		listener = null;
+	}
+
+	/**
+	 * Records that a Podcast was opened. If its Episodes were released they
+	 * are moved back onto the heap, and if the budget is now exceeded the
+	 * coldest Podcasts are released, both in the background.
+	 *
+	 * @param key     the library key.
+	 * @param podcast the Podcast.
+	 * @author Todd Noecker
+	 */
+	synchronized void opened(String key, Podcast podcast) {
+		Resident entry = resident.get(key);
+		if (entry != null && entry.podcast == podcast) {
+			return;
+		}
+		if (entry != null) {
+			// Replaced by a new copy under the same key.
+			forget(key);
+		}
+		if (releasing.get(key) == podcast || isReleased(podcast)) {
+			// Measured once its Episodes are back.
+			resident.put(key, new Resident(podcast, 0));
+			move(() -> restore(key, podcast));
+			return;
+		}
+		if (podcast.catalogPath() != null) {
+			return;
+		}
+		track(key, podcast);
+		if (budgetBytes > 0 && residentBytes > budgetBytes) {
+			trim();
+		}
+	}
+
+	/**
+	 * Records a Podcast read back from a save. One whose Episodes are on the
+	 * heap is tracked as the most recently used; one saved while released
+	 * stays released until it is opened.
+	 *
+	 * @param key     the library key.
+	 * @param podcast the Podcast.
+	 * @author Todd Noecker
+	 */
+	synchronized void loaded(String key, Podcast podcast) {
+		forget(key);
+		if (podcast.catalogPath() != null) {
+			return;
+		}
+		track(key, podcast);
+		if (budgetBytes > 0 && residentBytes > budgetBytes) {
+			trim();
+		}
+	}
+
+	/**
+	 * Records that a tracked Podcast gained Episodes.
+	 *
+	 * @param key     the library key.
+	 * @param podcast the Podcast.
+	 * @author Todd Noecker
+	 */
+	synchronized void changed(String key, Podcast podcast) {
+		Resident entry = resident.get(key);
+		if (entry == null || entry.podcast != podcast) {
+			return;
+		}
+		residentBytes -= entry.bytes;
+		entry.bytes = podcast.residentBytes();
+		residentBytes += entry.bytes;
+	}
+
+	/**
+	 * Stops tracking a Podcast taken out of the library.
+	 *
+	 * @param key the library key.
+	 * @author Todd Noecker
+	 */
+	synchronized void forget(String key) {
+		Resident entry = resident.remove(key);
+		if (entry != null) {
+			residentBytes -= entry.bytes;
+		}
+	}
+
+	/**
+	 * Releases the least recently used Podcasts until only the given number
+	 * stay on the heap, and waits for them and every move asked for before
+	 * to be done.
+	 *
+	 * @param keep how many of the most recently used Podcasts to keep.
+	 * @return how many were released.
+	 * @author Todd Noecker
+	 */
+	int releaseCold(int keep) {
+		int released = chooseCold(keep);
+		settle();
+		return released;
+	}
+
+	/**
+	 * Sums the estimated heap held by the tracked Podcasts' Episodes, once
+	 * the moves already asked for are done.
+	 *
+	 * @return the estimate in bytes.
+	 * @author Todd Noecker
+	 */
+	long getResidentBytes() {
+		settle();
+		synchronized (this) {
+			return residentBytes;
+		}
+	}
+
+	/**
+	 * Counts the Podcasts whose Episodes are on the heap.
+	 *
+	 * @return the count.
+	 * @author Todd Noecker
+	 */
+	synchronized int getResidentCount() {
+		return resident.size();
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PRIVATE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Picks the least recently used Podcasts to release until only the given
+	 * number stay on the heap.
+	 */
+	private synchronized int chooseCold(int keep) {
+		int released = 0;
+		while (resident.size() > keep) {
+			release(resident.keySet().iterator().next());
+			released++;
+		}
+		return released;
+	}
+
+	/**
+	 * Waits until no moves are left, including any the moves waited for
+	 * asked for themselves.
+	 */
+	private synchronized void settle() {
+		try {
+			while (moving > 0) {
+				wait();
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Hands a move to the mover. A closed manager moves nothing more.
+	 */
+	private void move(Runnable task) {
+		moving++;
+		try {
+			mover.execute(() -> {
+				try {
+					task.run();
+				} finally {
+					synchronized (this) {
+						moving--;
+						notifyAll();
+					}
+				}
+			});
+		} catch (RejectedExecutionException ex) {
+			moving--;
+		}
+	}
+
+	private void track(String key, Podcast podcast) {
+		Resident entry = new Resident(podcast, podcast.residentBytes());
+		resident.put(key, entry);
+		residentBytes += entry.bytes;
+	}
+
+	/**
+	 * Releases the least recently used Podcasts until the rest fit in the
+	 * budget. The Podcast just opened is always kept.
+	 */
+	private void trim() {
+		List<String> cold = new ArrayList<String>();
+		long bytes = residentBytes;
+		Iterator<Map.Entry<String, Resident>> coldest = resident.entrySet().iterator();
+		while (bytes > budgetBytes && resident.size() - cold.size() > 1 && coldest.hasNext()) {
+			Map.Entry<String, Resident> entry = coldest.next();
+			cold.add(entry.getKey());
+			bytes -= entry.getValue().bytes;
+		}
+		for (String key : cold) {
+			release(key);
+		}
+	}
+
+	/**
+	 * Stops tracking one Podcast and has its Episodes moved into its catalog
+	 * file.
+	 */
+	private void release(String key) {
+		Resident entry = resident.remove(key);
+		residentBytes -= entry.bytes;
+		releasing.put(key, entry.podcast);
+		move(() -> moveOut(key, entry.podcast));
+	}
+
+	/**
+	 * Runs on the mover: writes a Podcast's Episodes into its catalog file,
+	 * unless it was opened again since it was picked. A Podcast that can not
+	 * be written stays on the heap and is no longer tracked.
+	 */
+	private void moveOut(String key, Podcast podcast) {
+		synchronized (this) {
+			Resident entry = resident.get(key);
+			if (entry != null && entry.podcast == podcast) {
+				releasing.remove(key, podcast);
+				return;
+			}
+		}
+		try {
+			Files.createDirectories(dir);
+			podcast.moveToCatalog(dir.resolve(SegmentStore.hashName(key) + CATALOG));
+		} catch (IOException ex) {
+			System.out.println("Podcast " + key + " could not be released: " + ex.getMessage());
+		} finally {
+			synchronized (this) {
+				releasing.remove(key, podcast);
+			}
+		}
+	}
+
+	/**
+	 * Runs on the mover: moves a reopened Podcast's Episodes back onto the
+	 * heap, measures them, and releases the coldest Podcasts if the budget
+	 * is now exceeded.
+	 */
+	private void restore(String key, Podcast podcast) {
+		try {
+			if (isReleased(podcast)) {
+				podcast.moveToHeap();
+			}
+		} catch (IOException ex) {
+			System.out.println("Podcast " + key + " could not be moved back onto the heap: " + ex.getMessage());
+			synchronized (this) {
+				Resident entry = resident.get(key);
+				if (entry != null && entry.podcast == podcast) {
+					forget(key);
+				}
+			}
+			return;
+		}
+		synchronized (this) {
+			changed(key, podcast);
+			if (budgetBytes > 0 && residentBytes > budgetBytes) {
+				trim();
+			}
+		}
+	}
+
+	/**
+	 * Checks whether a Podcast's Episodes are in a catalog this manager
+	 * wrote.
+	 */
+	private boolean isReleased(Podcast podcast) {
+		String catalog = podcast.catalogPath();
+		return catalog != null && Paths.get(catalog).getParent() != null
+				&& Paths.get(catalog).getParent().equals(dir);
+	}
+
+	/**
+	 * A Podcast on the heap and the estimate of its Episodes' size when last
+	 * measured.
+	 */
+	private static final class Resident {
+		private final Podcast podcast;
+		private long bytes;
+
+		private Resident(Podcast podcast, long bytes) {
+			this.podcast = podcast;
+			this.bytes = bytes;
+		}
+	}
+}
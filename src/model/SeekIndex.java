@@ -0,0 +1,265 @@
+package model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Maps play times of one enclosure to the byte offsets they start at, so
+ * a seek can fetch only the bytes near its target.
+ *
+ * An index is built from the seek table a MediaProbe read from the file's
+ *  headers, or, for an MP3 whose headers have none, by reading every frame
+ *  header and noting where each stretch of play time starts. Indexes are
+ *  saved next to the cached media they describe.
+ *
+ * @author Todd Noecker
+ */
+public final class SeekIndex {
+
+	/**
+	 * How much play time apart the points of a scanned index are.
+	 */
+	public static final long SCAN_STEP_MILLIS = 5000;
+
+	private static final int MAGIC = 0x53454B31; // "SEK1"
+
+	private final long durationMillis;
+	private final long mediaBytes;
+	private final long[] millis;
+	private final long[] offsets;
+
+	private SeekIndex(long durationMillis, long mediaBytes, long[] millis, long[] offsets) {
+		this.durationMillis = durationMillis;
+		this.mediaBytes = mediaBytes;
+		this.millis = millis;
+		this.offsets = offsets;
+	}
+
+	/* ------------------------------------------------------------------------
+	 * ---------------------------PUBLIC METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Builds an index from probed headers. Without a seek table in them the
+	 * index runs straight from the audio start to the end of the file, as a
+	 * constant bitrate file would.
+	 *
+	 * @param info what the probe read.
+	 * @return the index.
+	 * @author Todd Noecker
+	 */
+	public static SeekIndex fromProbe(MediaInfo info) {
+		if (info.hasSeekTable()) {
+			return new SeekIndex(info.getDurationMillis(), info.getMediaBytes(), info.getSeekMillis(),
+					info.getSeekOffsets());
+		}
+		return new SeekIndex(info.getDurationMillis(), info.getMediaBytes(), new long[] { 0 },
+				new long[] { info.getAudioStart() });
+	}
+
+	/**
+	 * Builds an index by reading every MP3 frame header, noting where each
+	 * SCAN_STEP_MILLIS of play time starts. Bytes that are not a frame, such
+	 * as a trailing tag, are stepped over one at a time.
+	 *
+	 * @param audio      the file from its first frame on.
+	 * @param audioStart where the stream starts in the file.
+	 * @param mediaBytes the size of the whole file, or -1 if unknown.
+	 * @return the index.
+	 * @throws IOException if the stream can not be read or holds no frames.
+	 * @author Todd Noecker
+	 */
+	public static SeekIndex scan(InputStream audio, long audioStart, long mediaBytes) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(audio, 64 * 1024));
+		long[] millis = new long[64];
+		long[] offsets = new long[64];
+		int points = 0;
+		long offset = audioStart;
+		long samples = 0;
+		int sampleRate = 0;
+		long nextPoint = 0;
+		byte[] window = new byte[4];
+		int have = 0;
+		while (true) {
+			int read = in.read(window, have, 4 - have);
+			if (read < 0) {
+				break;
+			}
+			have += read;
+			if (have < 4) {
+				continue;
+			}
+			int header = (window[0] & 0xFF) << 24 | (window[1] & 0xFF) << 16 | (window[2] & 0xFF) << 8
+					| window[3] & 0xFF;
+			int frame = MediaProbe.frameBytes(header);
+			if (frame == 0) {
+				// Not in step with the frames; slide one byte.
+				System.arraycopy(window, 1, window, 0, 3);
+				have = 3;
+				offset++;
+				continue;
+			}
+			sampleRate = MediaProbe.sampleRate(header);
+			long time = samples * 1000 / sampleRate;
+			if (time >= nextPoint) {
+				if (points == millis.length) {
+					millis = Arrays.copyOf(millis, points * 2);
+					offsets = Arrays.copyOf(offsets, points * 2);
+				}
+				millis[points] = time;
+				offsets[points] = offset;
+				points++;
+				nextPoint = time + SCAN_STEP_MILLIS;
+			}
+			samples += MediaProbe.frameSamples(header);
+			long skipped = skipFully(in, frame - 4);
+			offset += 4 + skipped;
+			have = 0;
+			if (skipped < frame - 4) {
+				break;
+			}
+		}
+		if (points == 0) {
+			throw new IOException("No MP3 frames found");
+		}
+		return new SeekIndex(samples * 1000 / sampleRate, mediaBytes, Arrays.copyOf(millis, points),
+				Arrays.copyOf(offsets, points));
+	}
+
+	/**
+	 * Reads an index saved by save.
+	 *
+	 * @param file the index file.
+	 * @return the index.
+	 * @throws IOException if the file can not be read or is not an index.
+	 * @author Todd Noecker
+	 */
+	public static SeekIndex load(Path file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException(file + " is not a seek index");
+			}
+			long durationMillis = in.readLong();
+			long mediaBytes = in.readLong();
+			int points = in.readInt();
+			long[] millis = new long[points];
+			long[] offsets = new long[points];
+			for (int i = 0; i < points; i++) {
+				millis[i] = in.readLong();
+				offsets[i] = in.readLong();
+			}
+			return new SeekIndex(durationMillis, mediaBytes, millis, offsets);
+		}
+	}
+
+	/**
+	 * Saves the index, replacing the file only once it is written whole.
+	 *
+	 * @param file the index file.
+	 * @throws IOException if the file can not be written.
+	 * @author Todd Noecker
+	 */
+	public void save(Path file) throws IOException {
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (OutputStream raw = Files.newOutputStream(temp);
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(raw))) {
+			out.writeInt(MAGIC);
+			out.writeLong(durationMillis);
+			out.writeLong(mediaBytes);
+			out.writeInt(millis.length);
+			for (int i = 0; i < millis.length; i++) {
+				out.writeLong(millis[i]);
+				out.writeLong(offsets[i]);
+			}
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Finds the byte offset a play time starts at, interpolating between
+	 * the points around it.
+	 *
+	 * @param time the play time in milliseconds.
+	 * @return the byte offset.
+	 * @author Todd Noecker
+	 */
+	public long offsetAt(long time) {
+		int point = Arrays.binarySearch(millis, Math.max(0, time));
+		if (point >= 0) {
+			return offsets[point];
+		}
+		int after = -point - 1;
+		if (after == 0) {
+			return offsets[0];
+		}
+		long fromMillis = millis[after - 1];
+		long fromOffset = offsets[after - 1];
+		long toMillis = after < millis.length ? millis[after] : durationMillis;
+		long toOffset = after < offsets.length ? offsets[after] : mediaBytes > 0 ? mediaBytes : fromOffset;
+		if (toMillis <= fromMillis || time >= toMillis) {
+			return toMillis <= fromMillis ? fromOffset : toOffset;
+		}
+		return fromOffset + (toOffset - fromOffset) * (time - fromMillis) / (toMillis - fromMillis);
+	}
+
+	/**
+	 * Checks whether the index has points through the file, rather than
+	 * only its start.
+	 *
+	 * @return true if more than one point is known.
+	 * @author Todd Noecker
+	 */
+	public boolean isDetailed() {
+		return millis.length > 1;
+	}
+
+	/**
+	 * Fetches the play time of the file.
+	 *
+	 * @return the play time in milliseconds, or 0 if unknown.
+	 * @author Todd Noecker
+	 */
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	/**
+	 * Fetches the size of the file.
+	 *
+	 * @return the size in bytes, or -1 if unknown.
+	 * @author Todd Noecker
+	 */
+	public long getMediaBytes() {
+		return mediaBytes;
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PRIVATE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	private static long skipFully(InputStream in, long count) throws IOException {
+		long skipped = 0;
+		while (skipped < count) {
+			long step = in.skip(count - skipped);
+			if (step <= 0) {
+				if (in.read() < 0) {
+					break;
+				}
+				step = 1;
+			}
+			skipped += step;
+		}
+		return skipped;
+	}
+}
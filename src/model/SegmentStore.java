@@ -0,0 +1,312 @@
+package model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import model.PodcastPlayerModel.Podcast;
+
+/**
+ * Saves a model's library as one segment file per Podcast.
+ *
+ * Only Podcasts that changed since the last save are written, on a
+ *  background thread, so saving costs about the Podcasts that changed
+ *  rather than the whole library, and never holds up the caller. Each
+ *  segment is written to a temporary file and moved over the old one, so a
+ *  crash mid-write leaves the last good copy. At startup the segments are
+ *  read in parallel.
+ *
+ * Segment files are named by a hash of the Podcast's library key, which is
+ *  also stored inside the file.
+ *
+ * @author Todd Noecker
+ */
+public final class SegmentStore implements Closeable {
+
+	/**
+	 * How long changes wait to be saved, so a burst of them is one write.
+	 */
+	public static final long DEFAULT_SAVE_MILLIS = 2000;
+
+	private static final String SEGMENT = ".seg";
+	private static final String TEMP = ".tmp";
+
+	private final PodcastPlayerModel model;
+	private final Path dir;
+	private final ScheduledExecutorService saver;
+	private final Set<String> pending = new HashSet<String>(); // keys to save, guarded by this
+	private final AtomicReference<CompletableFuture<Void>> finalSave = new AtomicReference<CompletableFuture<Void>>();
+
+	private SegmentStore(PodcastPlayerModel model, Path dir, long saveMillis) {
+		this.model = model;
+		this.dir = dir;
+		this.saver = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "segment-saver");
+			// Periodic saves must not keep the program running; close hands
+			// the last one to a thread that does.
+			thread.setDaemon(true);
+			return thread;
+		});
+		saver.scheduleWithFixedDelay(this::saveQuietly, saveMillis, saveMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/* ------------------------------------------------------------------------
+	 * ---------------------------PUBLIC METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Loads every segment in a directory into a model and starts saving the
+	 * model's changes back to it. Podcasts already in the model that have
+	 * no segment, such as ones read from an old single-file save, are
+	 * written on the first save.
+	 *
+	 * @param model      the model to load into and save from.
+	 * @param dir        the segment directory, created if missing.
+	 * @param saveMillis how long changes wait to be saved.
+	 * @param threads    how many segments may be read at once.
+	 * @return the store.
+	 * @throws IOException if the directory can not be read.
+	 * @author Todd Noecker
+	 */
+	public static SegmentStore open(PodcastPlayerModel model, Path dir, long saveMillis, int threads)
+			throws IOException {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Thread count must be at least 1");
+		}
+		Files.createDirectories(dir);
+		List<Path> segments = new ArrayList<Path>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				if (name.endsWith(SEGMENT)) {
+					segments.add(file);
+				} else if (name.endsWith(TEMP)) {
+					// Left by a save that did not finish; the segment it was
+					// replacing is still whole.
+					Files.deleteIfExists(file);
+				}
+			}
+		}
+
+		ExecutorService readers = Executors.newFixedThreadPool(Math.min(threads, Math.max(segments.size(), 1)));
+		try {
+			List<Future<Void>> reads = new ArrayList<Future<Void>>();
+			for (Path file : segments) {
+				reads.add(readers.submit(() -> {
+					load(model, file);
+					return null;
+				}));
+			}
+			for (Future<Void> read : reads) {
+				read.get();
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading " + dir, ex);
+		} catch (ExecutionException ex) {
+			throw new IOException("Could not load " + dir, ex.getCause());
+		} finally {
+			readers.shutdown();
+		}
+
+		SegmentStore store = new SegmentStore(model, dir, saveMillis);
+		synchronized (store) {
+			store.pending.addAll(model.getChanges().takeDirty());
+			for (String key : model.libraryKeys()) {
+				if (!Files.exists(store.segmentFile(key))) {
+					store.pending.add(key);
+				}
+			}
+		}
+		return store;
+	}
+
+	/**
+	 * Saves every Podcast that changed since the last save, now, on the
+	 * calling thread.
+	 *
+	 * @return how many segments were written or deleted.
+	 * @throws IOException if a segment can not be written. The Podcasts not
+	 *                     yet saved are tried again on the next save.
+	 * @author Todd Noecker
+	 */
+	public synchronized int saveDirty() throws IOException {
+		pending.addAll(model.getChanges().takeDirty());
+		int saved = 0;
+		for (String key : new ArrayList<String>(pending)) {
+			Podcast podcast = model.podcastAt(key);
+			if (podcast == null) {
+				Files.deleteIfExists(segmentFile(key));
+			} else {
+				write(key, podcast);
+			}
+			pending.remove(key);
+			saved++;
+		}
+		return saved;
+	}
+
+	/**
+	 * Saves the changed Podcasts soon on the background thread.
+	 *
+	 * @return completes when they are saved.
+	 * @author Todd Noecker
+	 */
+	public Future<Integer> flush() {
+		return saver.submit(this::saveDirty);
+	}
+
+	/**
+	 * Stops saving in the background and hands the last save to a thread of
+	 * its own. Returns at once, without waiting for the save.
+	 *
+	 * @author Todd Noecker
+	 */
+	@Override
+	public void close() {
+		closeAsync();
+	}
+
+	/**
+	 * Stops saving in the background and hands the last save to a thread of
+	 * its own. Returns at once; the program does not end until that save is
+	 * done.
+	 *
+	 * @return completes when the last save is done.
+	 * @author Todd Noecker
+	 */
+	public CompletableFuture<Void> closeAsync() {
+		CompletableFuture<Void> done = new CompletableFuture<Void>();
+		if (!finalSave.compareAndSet(null, done)) {
+			return finalSave.get();
+		}
+		// Not locked: a save in progress must not hold up the caller.
+		saver.shutdown();
+		Thread last = new Thread(() -> {
+			try {
+				saver.awaitTermination(1, TimeUnit.MINUTES);
+				saveDirty();
+				done.complete(null);
+			} catch (IOException | InterruptedException | RuntimeException ex) {
+				done.completeExceptionally(ex);
+			}
+		}, "segment-final-save");
+		last.setDaemon(false);
+		last.start();
+		return done;
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PACKAGE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Turns a library key into a short name that is safe in any file
+	 * system: the first 16 bytes of its SHA-256 hash, in hex.
+	 *
+	 * @param key the library key.
+	 * @return the name.
+	 * @author Todd Noecker
+	 */
+	static String hashName(String key) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+			StringBuilder name = new StringBuilder();
+			for (int i = 0; i < 16; i++) {
+				name.append(Character.forDigit((hash[i] >> 4) & 0xF, 16)).append(Character.forDigit(hash[i] & 0xF, 16));
+			}
+			return name.toString();
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException("SHA-256 is missing", ex);
+		}
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PRIVATE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Saves from the background thread, where a failure can only be
+	 * reported.
+	 */
+	private void saveQuietly() {
+		try {
+			saveDirty();
+		} catch (IOException | RuntimeException ex) {
+			System.out.println("Library could not be saved: " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * Writes one Podcast beside its segment and moves it over the segment.
+	 * The Podcast is only locked while it is copied into memory.
+	 */
+	private void write(String key, Podcast podcast) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		synchronized (podcast) {
+			try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+				out.writeUTF(key);
+				out.writeObject(podcast);
+			}
+		}
+		Path file = segmentFile(key);
+		Path temp = file.resolveSibling(file.getFileName() + TEMP);
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(true);
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads one segment into the model. A segment that can not be read is
+	 * skipped, so one bad file does not cost the rest of the library.
+	 */
+	private static void load(PodcastPlayerModel model, Path file) throws IOException {
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(Files.readAllBytes(file)))) {
+			String key = in.readUTF();
+			model.restorePodcast(key, (Podcast) in.readObject());
+		} catch (ClassNotFoundException | ClassCastException | IOException ex) {
+			System.out.println("Segment " + file.getFileName() + " could not be read. Skipping: " + ex);
+		}
+	}
+
+	/**
+	 * Names the segment file of a library key.
+	 */
+	private Path segmentFile(String key) {
+		return dir.resolve(hashName(key) + SEGMENT);
+	}
+}
@@ -0,0 +1,168 @@
+package model;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Makes concurrent or back-to-back requests for the same resource share
+ * one piece of work.
+ *
+ * The first caller for a key runs the loader. Callers that arrive while
+ *  it is running wait on the same future instead of starting their own.
+ *  A successful result is kept for a short time so repeated requests
+ *  right after it also reuse it. Failures are never kept, so the next
+ *  caller tries again. Results whose time is up are dropped by the next
+ *  request for any key, so a busy group holds only recent results.
+ *
+ * @param <K> the key type, normally a canonical URI.
+ * @param <V> the result type.
+ * @author Todd Noecker
+ */
+public final class SingleFlight<K, V> {
+
+	/**
+	 * Loads the value for a key. May throw to report a failed load.
+	 *
+	 * @param <V> the result type.
+	 */
+	public interface Loader<V> {
+		V load() throws Exception;
+	}
+
+	private final ConcurrentHashMap<K, Flight<V>> flights = new ConcurrentHashMap<K, Flight<V>>();
+	private final long memoMillis;
+
+	/**
+	 * Creates a single-flight group.
+	 *
+	 * @param memoMillis how long a finished result is reused, 0 to only share
+	 *                   loads that are still running.
+	 * @author Todd Noecker
+	 */
+	public SingleFlight(long memoMillis) {
+		if (memoMillis < 0) {
+			throw new IllegalArgumentException("Memo time can not be negative");
+		}
+		this.memoMillis = memoMillis;
+	}
+
+	/* ------------------------------------------------------------------------
+	 * ---------------------------PUBLIC METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Returns the value for a key, running the loader only if no load for the
+	 * key is in flight or recently finished.
+	 *
+	 * @param key    identifies the resource.
+	 * @param loader loads the resource if needed.
+	 * @return the loaded value.
+	 * @throws Exception whatever the loader threw, whether this caller ran it
+	 *                   or waited on it.
+	 * @author Todd Noecker
+	 */
+	public V get(K key, Loader<V> loader) throws Exception {
+		purge();
+		while (true) {
+			Flight<V> mine = new Flight<V>();
+			Flight<V> current = flights.putIfAbsent(key, mine);
+			if (current == null) {
+				return run(key, mine, loader);
+			}
+			if (current.isStale(memoMillis)) {
+				// Swap out the expired result; if another caller beat us to it,
+				// go round again and join theirs.
+				if (flights.replace(key, current, mine)) {
+					return run(key, mine, loader);
+				}
+				continue;
+			}
+			return await(current);
+		}
+	}
+
+	/**
+	 * Drops any kept result for a key, so the next request loads it again.
+	 * A load already in flight is not interrupted.
+	 *
+	 * @param key identifies the resource.
+	 * @author Todd Noecker
+	 */
+	public void forget(K key) {
+		Flight<V> current = flights.get(key);
+		if (current != null && current.future.isDone()) {
+			flights.remove(key, current);
+		}
+	}
+
+	/**
+	 * Drops every finished result whose memo time has run out.
+	 *
+	 * @author Todd Noecker
+	 */
+	public void purge() {
+		flights.entrySet().removeIf(e -> e.getValue().isStale(memoMillis));
+	}
+
+	/**
+	 * Counts the keys with a load in flight or a result kept.
+	 *
+	 * @return the number of keys.
+	 * @author Todd Noecker
+	 */
+	public int size() {
+		return flights.size();
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PRIVATE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	private V run(K key, Flight<V> flight, Loader<V> loader) throws Exception {
+		try {
+			V value = loader.load();
+			flight.finishedAt = System.currentTimeMillis();
+			flight.future.complete(value);
+			if (memoMillis == 0) {
+				flights.remove(key, flight);
+			}
+			return value;
+		} catch (Exception | Error ex) {
+			// Failures are not kept; the next caller tries again.
+			flights.remove(key, flight);
+			flight.future.completeExceptionally(ex);
+			throw ex;
+		}
+	}
+
+	private V await(Flight<V> flight) throws Exception {
+		try {
+			return flight.future.get();
+		} catch (ExecutionException | CompletionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw ex;
+		}
+	}
+
+	/**
+	 * One load of one key and when it finished.
+	 */
+	private static final class Flight<V> {
+		final CompletableFuture<V> future = new CompletableFuture<V>();
+		volatile long finishedAt;
+
+		boolean isStale(long memoMillis) {
+			return future.isDone() && System.currentTimeMillis() - finishedAt > memoMillis;
+		}
+	}
+}
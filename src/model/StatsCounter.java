@@ -0,0 +1,97 @@
+package model;
+
+import model.PodcastPlayerModel.Episode;
+
+/**
+ * Keeps the counts behind a PlayStats current, one Episode at a time.
+ * A Podcast keeps one for its own Episodes and the model one for the whole
+ * library; each change is counted in both, so neither is ever found by
+ * walking Episodes again.
+ *
+ * @author Todd Noecker
+ */
+final class StatsCounter {
+
+	private int episodeCount; // guarded by this
+	private int unplayedCount; // guarded by this
+	private int inProgressCount; // guarded by this
+	private int finishedCount; // guarded by this
+	private long remainingMillis; // guarded by this
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PACKAGE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Counts an Episode in, or out.
+	 *
+	 * @param ep       the Episode.
+	 * @param position its play position, Episode.FINISHED, or -1 if it has
+	 *                 none.
+	 * @param sign     1 to count it in, -1 to count it out.
+	 * @author Todd Noecker
+	 */
+	synchronized void count(Episode ep, long position, int sign) {
+		episodeCount += sign;
+		if (position < 0) {
+			unplayedCount += sign;
+		} else if (position == Episode.FINISHED) {
+			finishedCount += sign;
+		} else {
+			inProgressCount += sign;
+		}
+		remainingMillis += sign * remaining(ep, position);
+	}
+
+	/**
+	 * Moves an Episode from one play position to another.
+	 *
+	 * @param ep     the Episode.
+	 * @param before the position it had, or -1.
+	 * @param after  the position it has now, or -1.
+	 * @author Todd Noecker
+	 */
+	synchronized void moved(Episode ep, long before, long after) {
+		count(ep, before, -1);
+		count(ep, after, 1);
+	}
+
+	/**
+	 * Adds, or takes away, the counts of a whole Podcast.
+	 *
+	 * @param stats the Podcast's counts.
+	 * @param sign  1 to add them, -1 to take them away.
+	 * @author Todd Noecker
+	 */
+	synchronized void add(PlayStats stats, int sign) {
+		episodeCount += sign * stats.getEpisodeCount();
+		unplayedCount += sign * stats.getUnplayedCount();
+		inProgressCount += sign * stats.getInProgressCount();
+		finishedCount += sign * stats.getFinishedCount();
+		remainingMillis += sign * stats.getRemainingMillis();
+	}
+
+	/**
+	 * Takes a snapshot of the counts.
+	 *
+	 * @return the counts now.
+	 * @author Todd Noecker
+	 */
+	synchronized PlayStats snapshot() {
+		return new PlayStats(episodeCount, unplayedCount, inProgressCount, finishedCount, remainingMillis);
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PRIVATE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Measures the play time left in an Episode from a position.
+	 */
+	private static long remaining(Episode ep, long position) {
+		long length = ep.getDurationSeconds() * 1000L;
+		return Math.max(0, length - Math.max(0, position));
+	}
+}
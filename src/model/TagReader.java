@@ -0,0 +1,475 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the title, artist, album, track number and play time from the tags
+ * of a local MP3 or MP4 file.
+ *
+ * Only tag bytes are read. ID3v2 frames are walked one header at a time
+ *  and only the few text frames wanted are read, so a tag holding large
+ *  artwork costs no more than one without. MP4 boxes are walked the same
+ *  way, down through moov to the mvhd box and the iTunes item list. An MP3
+ *  whose tags give no play time is handed to MediaProbe, which reads its
+ *  first frames.
+ *
+ * @author Todd Noecker
+ */
+public final class TagReader {
+
+	/**
+	 * How much of the start of a file is read at once. Tags that fit are
+	 * parsed from it without further reads.
+	 */
+	public static final int HEAD_BYTES = 16 * 1024;
+
+	/**
+	 * The largest tag frame or item that is read. Larger ones, such as
+	 * artwork, are stepped over.
+	 */
+	static final int MAX_FIELD_BYTES = 64 * 1024;
+
+	private static final int ID3V1_BYTES = 128;
+	private static final Charset UTF_16 = StandardCharsets.UTF_16;
+	private static final Charset UTF_16BE = StandardCharsets.UTF_16BE;
+
+	private static final int TITLE = 0;
+	private static final int ARTIST = 1;
+	private static final int ALBUM = 2;
+	private static final int COMMENT = 3;
+	private static final int TRACK = 4;
+	private static final int LENGTH = 5;
+
+	private TagReader() {
+	}
+
+	/* ------------------------------------------------------------------------
+	 * ---------------------------PUBLIC METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Reads a file's tags.
+	 *
+	 * @param file the audio file.
+	 * @return what the tags say.
+	 * @throws IOException if the file can not be read, or a tag header is
+	 *                     cut short.
+	 * @author Todd Noecker
+	 */
+	public static TrackTags read(Path file) throws IOException {
+		TrackTags tags;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			Window in = new Window(channel);
+			ByteBuffer head = in.read(0, 8);
+			if (head.remaining() == 8 && latin1(head, 4, 4).equals("ftyp")) {
+				return readMp4(in);
+			}
+			tags = readMp3(in);
+		}
+		if (tags.getDurationMillis() == 0) {
+			try {
+				tags = tags.withDuration(MediaProbe.probeNow(file.toUri(), 0).getDurationMillis());
+			} catch (IOException ex) {
+				// No frames found; the play time stays unknown.
+			}
+		}
+		return tags;
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PRIVATE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Reads the ID3v2 tags at the start of an MP3, then the ID3v1 tag at its
+	 * end if they gave no title.
+	 */
+	private static TrackTags readMp3(Window in) throws IOException {
+		String[] fields = new String[LENGTH + 1];
+		long at = 0;
+		while (true) {
+			ByteBuffer header = in.read(at, 10);
+			if (header.remaining() < 10 || !latin1(header, 0, 3).equals("ID3")) {
+				break;
+			}
+			int version = header.get(3);
+			int flags = header.get(5);
+			long end = at + 10 + syncSafe(header, 6);
+			readFrames(in, version, flags, at + 10, end, fields);
+			at = end + ((flags & 0x10) != 0 ? 10 : 0);
+		}
+		if (fields[TITLE] == null && in.size() >= ID3V1_BYTES) {
+			readId3v1(in.read(in.size() - ID3V1_BYTES, ID3V1_BYTES), fields);
+		}
+		return tags("mp3", fields);
+	}
+
+	/**
+	 * Reads the wanted text frames of one ID3v2 tag, stepping over the rest.
+	 */
+	private static void readFrames(Window in, int version, int flags, long at, long end, String[] fields)
+			throws IOException {
+		if (version < 2 || version > 4) {
+			return;
+		}
+		if ((flags & 0x40) != 0 && version > 2) {
+			// Step over the extended header.
+			ByteBuffer size = in.readFully(at, 4);
+			at += version == 4 ? syncSafe(size, 0) : 4 + (size.getInt(0) & 0xFFFFFFFFL);
+		}
+		int headerBytes = version == 2 ? 6 : 10;
+		while (at + headerBytes <= end) {
+			ByteBuffer header = in.read(at, headerBytes);
+			if (header.remaining() < headerBytes || header.get(0) == 0) {
+				// Padding runs to the end of the tag.
+				return;
+			}
+			String id;
+			long size;
+			if (version == 2) {
+				id = latin1(header, 0, 3);
+				size = (header.get(3) & 0xFF) << 16 | (header.get(4) & 0xFF) << 8 | header.get(5) & 0xFF;
+			} else {
+				id = latin1(header, 0, 4);
+				size = version == 4 ? syncSafe(header, 4) : header.getInt(4) & 0xFFFFFFFFL;
+			}
+			if (size <= 0 || at + headerBytes + size > end) {
+				return;
+			}
+			int field = frameField(id);
+			if (field >= 0 && fields[field] == null && size <= MAX_FIELD_BYTES) {
+				ByteBuffer body = in.read(at + headerBytes, (int) size);
+				String text = field == COMMENT ? comment(body) : text(body);
+				if (text != null && !text.isEmpty()) {
+					fields[field] = text;
+				}
+			}
+			at += headerBytes + size;
+		}
+	}
+
+	/**
+	 * Maps an ID3v2.2, 2.3 or 2.4 frame id to the field it holds.
+	 *
+	 * @return the field, or -1 if it is not wanted.
+	 */
+	private static int frameField(String id) {
+		switch (id) {
+		case "TIT2":
+		case "TT2":
+			return TITLE;
+		case "TPE1":
+		case "TP1":
+			return ARTIST;
+		case "TALB":
+		case "TAL":
+			return ALBUM;
+		case "COMM":
+		case "COM":
+			return COMMENT;
+		case "TRCK":
+		case "TRK":
+			return TRACK;
+		case "TLEN":
+		case "TLE":
+			return LENGTH;
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * Decodes a text frame: an encoding byte, then the text.
+	 */
+	private static String text(ByteBuffer body) {
+		if (body.remaining() == 0) {
+			return null;
+		}
+		int encoding = body.get(0);
+		byte[] bytes = new byte[body.remaining() - 1];
+		body.duplicate().position(1).get(bytes);
+		return trim(new String(bytes, charset(encoding)));
+	}
+
+	/**
+	 * Decodes a comment frame: an encoding byte, a language, a short
+	 * description ended by a null, then the text.
+	 */
+	private static String comment(ByteBuffer body) {
+		int encoding = body.remaining() > 0 ? body.get(0) : 0;
+		boolean wide = encoding == 1 || encoding == 2;
+		int at = 4;
+		while (at + (wide ? 1 : 0) < body.remaining()) {
+			boolean end = wide ? body.get(at) == 0 && body.get(at + 1) == 0 : body.get(at) == 0;
+			at += wide ? 2 : 1;
+			if (end) {
+				ByteBuffer rest = ByteBuffer.allocate(body.remaining() - at + 1);
+				rest.put((byte) encoding).put(body.duplicate().position(at)).flip();
+				return text(rest);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the fixed fields of an ID3v1 tag.
+	 */
+	private static void readId3v1(ByteBuffer tag, String[] fields) {
+		if (tag.remaining() < ID3V1_BYTES || !latin1(tag, 0, 3).equals("TAG")) {
+			return;
+		}
+		// Fields the ID3v2 tags did give are kept.
+		fill(fields, TITLE, latin1(tag, 3, 30));
+		fill(fields, ARTIST, latin1(tag, 33, 30));
+		fill(fields, ALBUM, latin1(tag, 63, 30));
+		if (tag.get(125) == 0 && tag.get(126) != 0) {
+			// ID3v1.1 keeps the track number in the last comment byte.
+			fill(fields, COMMENT, latin1(tag, 97, 28));
+			fill(fields, TRACK, Integer.toString(tag.get(126) & 0xFF));
+		} else {
+			fill(fields, COMMENT, latin1(tag, 97, 30));
+		}
+	}
+
+	private static void fill(String[] fields, int field, String text) {
+		if (fields[field] == null) {
+			fields[field] = empty(trim(text));
+		}
+	}
+
+	/**
+	 * Walks an MP4's boxes to the movie header and the iTunes item list.
+	 */
+	private static TrackTags readMp4(Window in) throws IOException {
+		String[] fields = new String[LENGTH + 1];
+		long[] moov = child(in, 0, in.size(), "moov");
+		if (moov != null) {
+			long[] mvhd = child(in, moov[0], moov[1], "mvhd");
+			if (mvhd != null) {
+				ByteBuffer body = in.read(mvhd[0], 32);
+				if (body.remaining() == 32) {
+					boolean wide = body.get(0) == 1;
+					long timescale = body.getInt(wide ? 20 : 12) & 0xFFFFFFFFL;
+					long duration = wide ? body.getLong(24) : body.getInt(16) & 0xFFFFFFFFL;
+					fields[LENGTH] = timescale == 0 ? null : Long.toString(duration * 1000 / timescale);
+				}
+			}
+			long[] udta = child(in, moov[0], moov[1], "udta");
+			long[] meta = udta == null ? null : child(in, udta[0], udta[1], "meta");
+			if (meta != null) {
+				// The iTunes meta box is a full box, with four bytes of version and
+				// flags; QuickTime's starts straight with its children.
+				long from = latin1(in.read(meta[0] + 4, 4), 0, 4).equals("hdlr") ? meta[0] : meta[0] + 4;
+				long[] ilst = child(in, from, meta[1], "ilst");
+				if (ilst != null) {
+					readItems(in, ilst[0], ilst[1], fields);
+				}
+			}
+		}
+		return tags("mp4", fields);
+	}
+
+	/**
+	 * Reads the wanted items of an iTunes item list. Each holds a data box:
+	 * a type, a locale, then the value.
+	 */
+	private static void readItems(Window in, long at, long end, String[] fields) throws IOException {
+		while (at + 8 <= end) {
+			ByteBuffer header = in.read(at, 8);
+			if (header.remaining() < 8) {
+				return;
+			}
+			long size = header.getInt(0) & 0xFFFFFFFFL;
+			if (size < 8 || at + size > end) {
+				return;
+			}
+			int field = itemField(latin1(header, 4, 4));
+			if (field >= 0 && size <= MAX_FIELD_BYTES) {
+				ByteBuffer item = in.read(at + 8, (int) size - 8);
+				if (item.remaining() >= 16 && latin1(item, 4, 4).equals("data")) {
+					int dataEnd = Math.min(item.remaining(), item.getInt(0));
+					if (field == TRACK) {
+						fields[TRACK] = dataEnd >= 20 ? Integer.toString(item.getShort(18) & 0xFFFF) : null;
+					} else {
+						byte[] value = new byte[Math.max(0, dataEnd - 16)];
+						item.duplicate().position(16).get(value);
+						fields[field] = empty(trim(new String(value, StandardCharsets.UTF_8)));
+					}
+				}
+			}
+			at += size;
+		}
+	}
+
+	private static int itemField(String type) {
+		switch (type) {
+		case "\u00A9nam":
+			return TITLE;
+		case "\u00A9ART":
+			return ARTIST;
+		case "\u00A9alb":
+			return ALBUM;
+		case "\u00A9cmt":
+		case "desc":
+			return COMMENT;
+		case "trkn":
+			return TRACK;
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * Finds a box among the children in a range.
+	 *
+	 * @return the start of its body and its end, or null if there is none.
+	 */
+	private static long[] child(Window in, long at, long end, String type) throws IOException {
+		while (at + 8 <= end) {
+			ByteBuffer header = in.read(at, 16);
+			if (header.remaining() < 8) {
+				return null;
+			}
+			long size = header.getInt(0) & 0xFFFFFFFFL;
+			int headerBytes = 8;
+			if (size == 1 && header.remaining() >= 16) {
+				size = header.getLong(8);
+				headerBytes = 16;
+			} else if (size == 0) {
+				// Runs to the end of its parent.
+				size = end - at;
+			}
+			if (size < headerBytes) {
+				return null;
+			}
+			if (latin1(header, 4, 4).equals(type)) {
+				return new long[] { at + headerBytes, Math.min(end, at + size) };
+			}
+			at += size;
+		}
+		return null;
+	}
+
+	private static TrackTags tags(String format, String[] fields) {
+		return new TrackTags(format, fields[TITLE], fields[ARTIST], fields[ALBUM], fields[COMMENT],
+				leadingNumber(fields[TRACK]), leadingNumber(fields[LENGTH]));
+	}
+
+	/**
+	 * Reads the number a field starts with, as in a track number of "3/12".
+	 */
+	private static int leadingNumber(String field) {
+		if (field == null) {
+			return 0;
+		}
+		long value = 0;
+		for (int i = 0; i < field.length() && field.charAt(i) >= '0' && field.charAt(i) <= '9'; i++) {
+			value = value * 10 + field.charAt(i) - '0';
+			if (value > Integer.MAX_VALUE) {
+				return 0;
+			}
+		}
+		return (int) value;
+	}
+
+	private static Charset charset(int encoding) {
+		switch (encoding) {
+		case 1:
+			return UTF_16;
+		case 2:
+			return UTF_16BE;
+		case 3:
+			return StandardCharsets.UTF_8;
+		default:
+			return StandardCharsets.ISO_8859_1;
+		}
+	}
+
+	/**
+	 * Cuts a tag string at its first null and strips the spaces around it.
+	 */
+	private static String trim(String text) {
+		int end = text.indexOf('\0');
+		return (end < 0 ? text : text.substring(0, end)).trim();
+	}
+
+	private static String empty(String text) {
+		return text == null || text.isEmpty() ? null : text;
+	}
+
+	private static String latin1(ByteBuffer buf, int at, int length) {
+		if (at + length > buf.remaining()) {
+			return "";
+		}
+		byte[] bytes = new byte[length];
+		buf.duplicate().position(at).get(bytes);
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Reads a 28 bit ID3v2 size, stored 7 bits to a byte.
+	 */
+	private static int syncSafe(ByteBuffer buf, int at) {
+		return (buf.get(at) & 0x7F) << 21 | (buf.get(at + 1) & 0x7F) << 14 | (buf.get(at + 2) & 0x7F) << 7
+				| buf.get(at + 3) & 0x7F;
+	}
+
+	/**
+	 * Reads ranges of a file, serving those within its first HEAD_BYTES from
+	 * one read.
+	 */
+	private static final class Window {
+		private final FileChannel channel;
+		private final long size;
+		private ByteBuffer head;
+
+		private Window(FileChannel channel) throws IOException {
+			this.channel = channel;
+			this.size = channel.size();
+		}
+
+		/**
+		 * Reads length bytes at an offset, for a header that must be whole.
+		 */
+		private ByteBuffer readFully(long offset, int length) throws IOException {
+			ByteBuffer buf = read(offset, length);
+			if (buf.remaining() < length) {
+				throw new IOException("Tag header at " + offset + " is cut short");
+			}
+			return buf;
+		}
+
+		/**
+		 * Reads up to length bytes at an offset; fewer at the end of the file.
+		 */
+		private ByteBuffer read(long offset, int length) throws IOException {
+			if (head == null) {
+				head = fill(0, (int) Math.min(HEAD_BYTES, size));
+			}
+			if (offset + length <= head.limit()) {
+				return head.duplicate().position((int) offset).limit((int) offset + length).slice();
+			}
+			return fill(offset, (int) Math.max(0, Math.min(length, size - offset)));
+		}
+
+		private ByteBuffer fill(long offset, int length) throws IOException {
+			ByteBuffer buf = ByteBuffer.allocate(length);
+			while (buf.hasRemaining() && channel.read(buf, offset + buf.position()) > 0) {
+				// Keep reading until full or at the end of the file.
+			}
+			return buf.flip();
+		}
+
+		private long size() {
+			return size;
+		}
+	}
+}
@@ -0,0 +1,277 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+import model.PodcastPlayerModel.Episode;
+import model.PodcastPlayerModel.Podcast;
+
+/**
+ * The latest Episodes of every Podcast in the library, merged into one list
+ * newest first.
+ *
+ * Nothing is sorted per request. Each Podcast already keeps its Episodes in
+ *  publish date order, so a page is a k-way merge of those orders on a
+ *  heap. The Podcasts themselves are kept sorted by their newest Episode,
+ *  and one only joins the merge once its newest Episode could be next, so
+ *  the first page reads only the few Podcasts it shows. When a refresh
+ *  finds Episodes, only that Podcast is placed again.
+ *
+ * Only each Podcast's library key and newest publish date are kept. A
+ *  Podcast is looked up in the library when it is placed or joins a
+ *  merge, so a library store that keeps most Podcasts off the heap is not
+ *  undone by the timeline.
+ *
+ * Episodes published at the same time are listed by library key and then
+ *  in epNum order; undated Episodes come last.
+ *
+ * @author Todd Noecker
+ */
+final class Timeline {
+
+	private static final String TIMELINE_CURSOR = "t:";
+
+	/**
+	 * Orders Podcasts by their newest Episode, newest first.
+	 */
+	private static final Comparator<Head> HEAD_ORDER = (a, b) -> a.newest != b.newest
+			? Long.compare(b.newest, a.newest)
+			: a.key.compareTo(b.key);
+
+	/**
+	 * Orders the merge by the Episode each Podcast would give next.
+	 */
+	private static final Comparator<Stream> STREAM_ORDER = (a, b) -> a.date() != b.date()
+			? Long.compare(b.date(), a.date())
+			: a.key.compareTo(b.key);
+
+	private final TreeSet<Head> heads = new TreeSet<Head>(HEAD_ORDER); // Podcasts with Episodes, newest first
+	private final Map<String, Head> byKey = new HashMap<String, Head>(); // the same, by library key
+	private final Set<String> changed = new LinkedHashSet<String>(); // keys to be placed again
+	private final Function<String, Podcast> library;
+
+	/**
+	 * Creates an empty timeline over a library.
+	 *
+	 * @param library looks up the Podcast stored under a key, or null.
+	 * @author Todd Noecker
+	 */
+	Timeline(Function<String, Podcast> library) {
+		this.library = library;
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PACKAGE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Records that a Podcast was added, gained Episodes or was removed. It
+	 * is placed again when the next page is read, so a batch of refreshes
+	 * costs one placing each.
+	 *
+	 * @param key the Podcast's library key.
+	 * @author Todd Noecker
+	 */
+	synchronized void changed(String key) {
+		changed.add(key);
+	}
+
+	/**
+	 * Returns one page of the merged Episodes.
+	 *
+	 * @param cursor the cursor from the previous page, or null for the first.
+	 * @param limit  the most Episodes to return.
+	 * @return the page.
+	 * @throws IllegalArgumentException if the cursor or limit is not valid.
+	 * @author Todd Noecker
+	 */
+	synchronized EpisodePage page(String cursor, int limit) {
+		if (limit < 1) {
+			throw new IllegalArgumentException("Page limit must be at least 1");
+		}
+		Position after = positionAfter(cursor);
+		placeChanged();
+
+		PriorityQueue<Stream> merge = new PriorityQueue<Stream>(STREAM_ORDER);
+		Iterator<Head> waiting = heads.iterator();
+		Head next = waiting.hasNext() ? waiting.next() : null;
+		List<Episode> page = new ArrayList<Episode>(Math.min(limit, 64));
+		Position last = null;
+		boolean more = false;
+		while (true) {
+			// A Podcast joins once its newest Episode could come before the
+			// best one already in the merge.
+			while (next != null && (merge.isEmpty() || before(next, merge.peek()))) {
+				Stream stream = open(next, after);
+				if (stream != null) {
+					merge.add(stream);
+				}
+				next = waiting.hasNext() ? waiting.next() : null;
+			}
+			Stream top = merge.poll();
+			if (top == null) {
+				break;
+			}
+			if (page.size() == limit) {
+				more = true;
+				break;
+			}
+			page.add(top.index.get(top.rank));
+			last = new Position(top.date(), top.index.epNumAt(top.rank), top.key);
+			if (++top.rank < top.index.size()) {
+				merge.add(top);
+			}
+		}
+		return new EpisodePage(page, more ? TIMELINE_CURSOR + last.date + ":" + last.epNum + ":" + last.key : null);
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PRIVATE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Places every changed Podcast again by its newest Episode.
+	 *
+	 * @author Todd Noecker
+	 */
+	private void placeChanged() {
+		for (String key : changed) {
+			Head old = byKey.remove(key);
+			if (old != null) {
+				heads.remove(old);
+			}
+			Podcast podcast = library.apply(key);
+			if (podcast == null) {
+				continue;
+			}
+			PublishedIndex index = podcast.publishedIndex();
+			if (index.size() > 0) {
+				Head head = new Head(key, index.publishedAt(0));
+				heads.add(head);
+				byKey.put(head.key, head);
+			}
+		}
+		changed.clear();
+	}
+
+	/**
+	 * Reports whether a Podcast's newest Episode would come before the
+	 * Episode a stream in the merge gives next.
+	 *
+	 * @author Todd Noecker
+	 */
+	private static boolean before(Head head, Stream stream) {
+		return head.newest != stream.date() ? head.newest > stream.date() : head.key.compareTo(stream.key) < 0;
+	}
+
+	/**
+	 * Starts reading a Podcast's Episodes from just after the cursor.
+	 *
+	 * @return the stream, or null if none of its Episodes come after it.
+	 * @author Todd Noecker
+	 */
+	private Stream open(Head head, Position after) {
+		Podcast podcast = library.apply(head.key);
+		if (podcast == null) {
+			// Removed since it was placed; the next page places it again.
+			changed.add(head.key);
+			return null;
+		}
+		PublishedIndex index = podcast.publishedIndex();
+		int rank = 0;
+		if (after != null) {
+			int byKey = head.key.compareTo(after.key);
+			if (byKey == 0) {
+				rank = index.rankAfter(after.date, after.epNum);
+			} else if (byKey < 0) {
+				// Its Episodes from the cursor's time were on earlier pages.
+				rank = index.countFrom(after.date);
+			} else {
+				rank = index.countAfter(after.date);
+			}
+		}
+		return rank < index.size() ? new Stream(head.key, index, rank) : null;
+	}
+
+	/**
+	 * Reads the place a timeline cursor continues after.
+	 *
+	 * @return the place, or null for the first page.
+	 * @throws IllegalArgumentException if the cursor was not made here.
+	 * @author Todd Noecker
+	 */
+	private static Position positionAfter(String cursor) {
+		if (cursor == null) {
+			return null;
+		}
+		if (cursor.startsWith(TIMELINE_CURSOR)) {
+			String[] parts = cursor.substring(TIMELINE_CURSOR.length()).split(":", 3);
+			if (parts.length == 3) {
+				try {
+					return new Position(Long.parseLong(parts[0]), Integer.parseInt(parts[1]), parts[2]);
+				} catch (NumberFormatException ex) {
+					// Falls through to the error below.
+				}
+			}
+		}
+		throw new IllegalArgumentException("Bad episode cursor " + cursor);
+	}
+
+	/**
+	 * A Podcast's library key, placed by its newest Episode.
+	 */
+	private static final class Head {
+		private final String key;
+		private final long newest;
+
+		private Head(String key, long newest) {
+			this.key = key;
+			this.newest = newest;
+		}
+	}
+
+	/**
+	 * One Podcast's place in the merge.
+	 */
+	private static final class Stream {
+		private final String key;
+		private final PublishedIndex index;
+		private int rank;
+
+		private Stream(String key, PublishedIndex index, int rank) {
+			this.key = key;
+			this.index = index;
+			this.rank = rank;
+		}
+
+		private long date() {
+			return index.publishedAt(rank);
+		}
+	}
+
+	/**
+	 * The last Episode of a page.
+	 */
+	private static final class Position {
+		private final long date;
+		private final int epNum;
+		private final String key;
+
+		private Position(long date, int epNum, String key) {
+			this.date = date;
+			this.epNum = epNum;
+			this.key = key;
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package model;
+
+/**
+ * What a TagReader read from the tags of one local audio file. Any field
+ * the file's tags leave out is null, or 0 for numbers.
+ *
+ * @author Todd Noecker
+ */
+public final class TrackTags {
+
+	private final String format;
+	private final String title;
+	private final String artist;
+	private final String album;
+	private final String comment;
+	private final int track;
+	private final long durationMillis;
+
+	/**
+	 * Creates a tag result.
+	 *
+	 * @param format         "mp3" or "mp4".
+	 * @param title          the track title.
+	 * @param artist         the artist.
+	 * @param album          the album, or show, the track belongs to.
+	 * @param comment        a comment or description.
+	 * @param track          the track number.
+	 * @param durationMillis the play time.
+	 * @author Todd Noecker
+	 */
+	TrackTags(String format, String title, String artist, String album, String comment, int track,
+			long durationMillis) {
+		this.format = format;
+		this.title = title;
+		this.artist = artist;
+		this.album = album;
+		this.comment = comment;
+		this.track = track;
+		this.durationMillis = durationMillis;
+	}
+
+	/* ------------------------------------------------------------------------
+	 * ---------------------------PUBLIC METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Fetches the container format.
+	 *
+	 * @return "mp3" or "mp4".
+	 * @author Todd Noecker
+	 */
+	public String getFormat() {
+		return format;
+	}
+
+	/**
+	 * Fetches the track title.
+	 *
+	 * @return the title, or null.
+	 * @author Todd Noecker
+	 */
+	public String getTitle() {
+		return title;
+	}
+
+	/**
+	 * Fetches the artist.
+	 *
+	 * @return the artist, or null.
+	 * @author Todd Noecker
+	 */
+	public String getArtist() {
+		return artist;
+	}
+
+	/**
+	 * Fetches the album, or show, the track belongs to.
+	 *
+	 * @return the album, or null.
+	 * @author Todd Noecker
+	 */
+	public String getAlbum() {
+		return album;
+	}
+
+	/**
+	 * Fetches the comment or description.
+	 *
+	 * @return the comment, or null.
+	 * @author Todd Noecker
+	 */
+	public String getComment() {
+		return comment;
+	}
+
+	/**
+	 * Fetches the track number.
+	 *
+	 * @return the number, or 0 if unknown.
+	 * @author Todd Noecker
+	 */
+	public int getTrack() {
+		return track;
+	}
+
+	/**
+	 * Fetches the play time.
+	 *
+	 * @return the play time in milliseconds, or 0 if unknown.
+	 * @author Todd Noecker
+	 */
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	@Override
+	public String toString() {
+		return format + " \"" + title + "\" by " + artist + " on " + album + " #" + track + ", " + durationMillis
+				+ " ms";
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PACKAGE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Replaces the play time, for files whose tags do not give it.
+	 *
+	 * @param millis the play time in milliseconds.
+	 * @return a copy with the new play time.
+	 * @author Todd Noecker
+	 */
+	TrackTags withDuration(long millis) {
+		return new TrackTags(format, title, artist, album, comment, track, millis);
+	}
+}
@@ -0,0 +1,211 @@
+package server;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Writes JSON straight to a stream as it is produced, so a response never
+ * has to be built in memory first.
+ *
+ * Commas are placed automatically. Callers are trusted to nest objects,
+ *  arrays and names correctly.
+ *
+ * @author Todd Noecker
+ */
+public final class JsonWriter {
+
+	private final Writer out;
+	private boolean[] first = new boolean[16]; // per open level, whether nothing is written yet
+	private int depth = 0;
+	private boolean afterName = false;
+
+	/**
+	 * Creates a writer over a character stream.
+	 *
+	 * @param out where the JSON is written.
+	 * @author Todd Noecker
+	 */
+	public JsonWriter(Writer out) {
+		this.out = out;
+	}
+
+	/* ------------------------------------------------------------------------
+	 * ---------------------------PUBLIC METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Starts an object.
+	 *
+	 * @return this writer.
+	 * @throws IOException if the stream fails.
+	 * @author Todd Noecker
+	 */
+	public JsonWriter beginObject() throws IOException {
+		return open('{');
+	}
+
+	/**
+	 * Ends the innermost object.
+	 *
+	 * @return this writer.
+	 * @throws IOException if the stream fails.
+	 * @author Todd Noecker
+	 */
+	public JsonWriter endObject() throws IOException {
+		return close('}');
+	}
+
+	/**
+	 * Starts an array.
+	 *
+	 * @return this writer.
+	 * @throws IOException if the stream fails.
+	 * @author Todd Noecker
+	 */
+	public JsonWriter beginArray() throws IOException {
+		return open('[');
+	}
+
+	/**
+	 * Ends the innermost array.
+	 *
+	 * @return this writer.
+	 * @throws IOException if the stream fails.
+	 * @author Todd Noecker
+	 */
+	public JsonWriter endArray() throws IOException {
+		return close(']');
+	}
+
+	/**
+	 * Writes the name of the next member of an object.
+	 *
+	 * @param name the member name.
+	 * @return this writer.
+	 * @throws IOException if the stream fails.
+	 * @author Todd Noecker
+	 */
+	public JsonWriter name(String name) throws IOException {
+		separate();
+		string(name);
+		out.write(':');
+		afterName = true;
+		return this;
+	}
+
+	/**
+	 * Writes a string value, or null.
+	 *
+	 * @param value the value.
+	 * @return this writer.
+	 * @throws IOException if the stream fails.
+	 * @author Todd Noecker
+	 */
+	public JsonWriter value(String value) throws IOException {
+		separate();
+		if (value == null) {
+			out.write("null");
+		} else {
+			string(value);
+		}
+		return this;
+	}
+
+	/**
+	 * Writes a number value.
+	 *
+	 * @param value the value.
+	 * @return this writer.
+	 * @throws IOException if the stream fails.
+	 * @author Todd Noecker
+	 */
+	public JsonWriter value(long value) throws IOException {
+		separate();
+		out.write(Long.toString(value));
+		return this;
+	}
+
+	/**
+	 * Flushes everything written so far to the stream.
+	 *
+	 * @throws IOException if the stream fails.
+	 * @author Todd Noecker
+	 */
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PRIVATE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	private JsonWriter open(char bracket) throws IOException {
+		separate();
+		out.write(bracket);
+		if (depth == first.length) {
+			first = Arrays.copyOf(first, depth * 2);
+		}
+		first[depth++] = true;
+		return this;
+	}
+
+	private JsonWriter close(char bracket) throws IOException {
+		depth--;
+		out.write(bracket);
+		return this;
+	}
+
+	/**
+	 * Writes the comma before a value or name when one is needed.
+	 */
+	private void separate() throws IOException {
+		if (afterName) {
+			afterName = false;
+			return;
+		}
+		if (depth > 0) {
+			if (first[depth - 1]) {
+				first[depth - 1] = false;
+			} else {
+				out.write(',');
+			}
+		}
+	}
+
+	private void string(String value) throws IOException {
+		out.write('"');
+		int start = 0;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c >= 0x20 && c != '"' && c != '\\') {
+				continue;
+			}
+			out.write(value, start, i - start);
+			switch (c) {
+			case '"':
+				out.write("\\\"");
+				break;
+			case '\\':
+				out.write("\\\\");
+				break;
+			case '\n':
+				out.write("\\n");
+				break;
+			case '\r':
+				out.write("\\r");
+				break;
+			case '\t':
+				out.write("\\t");
+				break;
+			default:
+				out.write(String.format("\\u%04x", (int) c));
+			}
+			start = i + 1;
+		}
+		out.write(value, start, value.length() - start);
+		out.write('"');
+	}
+}
@@ -0,0 +1,628 @@
+package server;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import model.EpisodeFilter;
+import model.EpisodeOrder;
+import model.EpisodePage;
+import model.FeedDates;
+import model.PodcastPlayerModel;
+import model.PodcastPlayerModel.Episode;
+import model.PodcastPlayerModel.Podcast;
+
+/**
+ * Serves a PodcastPlayerModel's library as JSON over HTTP, so one ingesting
+ * process can feed many players and dashboards.
+ *
+ * Endpoints:
+ *  GET  /podcasts                                    every Podcast
+ *  GET  /episodes?podcast=T&amp;offset=O&amp;limit=L         a page of a Podcast's Episodes
+ *  GET  /episodes?podcast=T&amp;cursor=C&amp;filter=F&amp;order=R&amp;limit=L
+ *                                                    the page after cursor C, where F is
+ *                                                    all, unplayed or in_progress and R
+ *                                                    is feed or newest
+ *  GET  /latest?cursor=C&amp;limit=L                     the newest Episodes of every Podcast
+ *  GET  /search?q=S&amp;limit=L                          Episodes whose title holds S
+ *  GET  /positions?podcast=T                         saved play positions
+ *  POST /positions?podcast=T&amp;episode=E&amp;millis=M     saves a play position
+ *
+ * Library responses are built from an immutable snapshot of the library
+ *  taken at one library version, and carry that version as their ETag, so
+ *  a client that already has it gets a 304 with no body. Responses are
+ *  written as they are produced. Requests run on virtual threads where the
+ *  runtime has them, and on a pool of ordinary threads otherwise.
+ *
+ * @author Todd Noecker
+ */
+public final class LibraryServer {
+
+	private static final int DEFAULT_LIMIT = 50;
+	private static final int MAX_LIMIT = 500;
+
+	private final PodcastPlayerModel model;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final AtomicReference<Snapshot> snapshot = new AtomicReference<Snapshot>();
+
+	/**
+	 * Tells this server's ETags apart from those of an earlier run, whose
+	 * library versions started from the same numbers.
+	 */
+	private final String instance = Long.toHexString(System.nanoTime());
+
+	/**
+	 * A request handler that may fail.
+	 */
+	private interface Handler {
+		void handle(HttpExchange exchange) throws IOException;
+	}
+
+	/**
+	 * Creates a server for a model. It does not accept requests until
+	 * started.
+	 *
+	 * @param model the model whose library is served.
+	 * @param port  the port to listen on, or 0 for any free port.
+	 * @throws IOException if the port can not be bound.
+	 * @author Todd Noecker
+	 */
+	public LibraryServer(PodcastPlayerModel model, int port) throws IOException {
+		this.model = model;
+		this.server = HttpServer.create(new InetSocketAddress(port), 0);
+		this.executor = requestExecutor();
+		server.setExecutor(executor);
+		server.createContext("/podcasts", exchange -> serve(exchange, this::podcasts));
+		server.createContext("/episodes", exchange -> serve(exchange, this::episodes));
+		server.createContext("/latest", exchange -> serve(exchange, this::latest));
+		server.createContext("/search", exchange -> serve(exchange, this::search));
+		server.createContext("/positions", exchange -> serve(exchange, this::positions));
+	}
+
+	/* ------------------------------------------------------------------------
+	 * ---------------------------PUBLIC METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Starts accepting requests.
+	 *
+	 * @author Todd Noecker
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stops accepting requests and shuts the request threads down.
+	 *
+	 * @author Todd Noecker
+	 */
+	public void stop() {
+		server.stop(0);
+		executor.shutdown();
+	}
+
+	/**
+	 * Fetches the port the server listens on.
+	 *
+	 * @return the bound port.
+	 * @author Todd Noecker
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PRIVATE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Lists every Podcast.
+	 */
+	private void podcasts(HttpExchange exchange) throws IOException {
+		requireMethod(exchange, "GET");
+		Snapshot snap = snapshot();
+		if (notModified(exchange, snap)) {
+			return;
+		}
+		JsonWriter json = beginJson(exchange, 200, snap.etag);
+		json.beginArray();
+		for (Podcast podcast : snap.podcasts()) {
+			json.beginObject();
+			json.name("title").value(podcast.getTitle());
+			json.name("description").value(podcast.getDescription());
+			json.name("link").value(text(podcast.getLink()));
+			json.name("image").value(text(podcast.getImage()));
+			json.name("episodes").value(podcast.getEpisodeCount());
+			json.endObject();
+		}
+		json.endArray();
+		json.flush();
+	}
+
+	/**
+	 * Lists one page of a Podcast's Episodes in epNum order. Without an
+	 * offset, pages are walked by cursor and may be filtered; the response
+	 * holds the cursor of the next page, if there is one.
+	 */
+	private void episodes(HttpExchange exchange) throws IOException {
+		requireMethod(exchange, "GET");
+		Map<String, String> query = query(exchange);
+		Snapshot snap = snapshot();
+		Podcast podcast = snap.podcast(query.get("podcast"));
+		if (!query.containsKey("offset")) {
+			episodePage(exchange, query, snap, podcast);
+			return;
+		}
+		int offset = intParam(query, "offset", 0, Integer.MAX_VALUE);
+		int limit = intParam(query, "limit", DEFAULT_LIMIT, MAX_LIMIT);
+		if (notModified(exchange, snap)) {
+			return;
+		}
+		List<Episode> episodes = snap.episodes(podcast);
+		int end = (int) Math.min(episodes.size(), (long) offset + limit);
+		JsonWriter json = beginJson(exchange, 200, snap.etag);
+		json.beginObject();
+		json.name("podcast").value(podcast.getTitle());
+		json.name("total").value(episodes.size());
+		json.name("offset").value(offset);
+		json.name("episodes").beginArray();
+		for (int i = offset; i < end; i++) {
+			writeEpisode(json, episodes.get(i));
+		}
+		json.endArray();
+		json.endObject();
+		json.flush();
+	}
+
+	/**
+	 * Lists the page of Episodes after a cursor, touching only the Episodes
+	 * on it. Filtered pages depend on play positions, which do not change
+	 * the library version, so only unfiltered pages carry an ETag.
+	 */
+	private void episodePage(HttpExchange exchange, Map<String, String> query, Snapshot snap, Podcast podcast)
+			throws IOException {
+		int limit = intParam(query, "limit", DEFAULT_LIMIT, MAX_LIMIT);
+		EpisodeFilter filter = enumParam(query, "filter", EpisodeFilter.class, EpisodeFilter.ALL);
+		EpisodeOrder order = enumParam(query, "order", EpisodeOrder.class, EpisodeOrder.FEED);
+		String etag = filter == EpisodeFilter.ALL ? snap.etag : null;
+		if (etag != null && notModified(exchange, snap)) {
+			return;
+		}
+		EpisodePage page = podcast.getEpisodes(query.get("cursor"), Math.max(limit, 1), filter, order);
+		JsonWriter json = beginJson(exchange, 200, etag);
+		json.beginObject();
+		json.name("podcast").value(podcast.getTitle());
+		json.name("episodes").beginArray();
+		for (Episode ep : page.getEpisodes()) {
+			writeEpisode(json, ep);
+		}
+		json.endArray();
+		json.name("next").value(page.getNextCursor());
+		json.endObject();
+		json.flush();
+	}
+
+	/**
+	 * Lists the page of the newest Episodes across the library after a
+	 * cursor, each naming its Podcast.
+	 */
+	private void latest(HttpExchange exchange) throws IOException {
+		requireMethod(exchange, "GET");
+		Map<String, String> query = query(exchange);
+		int limit = intParam(query, "limit", DEFAULT_LIMIT, MAX_LIMIT);
+		Snapshot snap = snapshot();
+		if (notModified(exchange, snap)) {
+			return;
+		}
+		EpisodePage page = model.getLatestEpisodes(query.get("cursor"), Math.max(limit, 1));
+		JsonWriter json = beginJson(exchange, 200, snap.etag);
+		json.beginObject();
+		json.name("episodes").beginArray();
+		for (Episode ep : page.getEpisodes()) {
+			writeEpisode(json, ep, ep.getPodcast().getTitle());
+		}
+		json.endArray();
+		json.name("next").value(page.getNextCursor());
+		json.endObject();
+		json.flush();
+	}
+
+	/**
+	 * Finds Episodes across the library whose titles contain the query,
+	 * ignoring case.
+	 */
+	private void search(HttpExchange exchange) throws IOException {
+		requireMethod(exchange, "GET");
+		Map<String, String> query = query(exchange);
+		String q = query.get("q");
+		if (q == null || q.isEmpty()) {
+			throw new IllegalArgumentException("Missing q");
+		}
+		int limit = intParam(query, "limit", DEFAULT_LIMIT, MAX_LIMIT);
+		Snapshot snap = snapshot();
+		if (notModified(exchange, snap)) {
+			return;
+		}
+		String needle = q.toLowerCase(Locale.ROOT);
+		JsonWriter json = beginJson(exchange, 200, snap.etag);
+		json.beginArray();
+		int found = 0;
+		scan: for (Podcast podcast : snap.podcasts()) {
+			String[] titles = snap.lowerTitles(podcast);
+			for (int i = 0; i < titles.length; i++) {
+				if (found == limit) {
+					break scan;
+				}
+				if (titles[i] != null && titles[i].contains(needle)) {
+					Episode ep = snap.episodes(podcast).get(i);
+					json.beginObject();
+					json.name("podcast").value(podcast.getTitle());
+					json.name("title").value(ep.getTitle());
+					json.name("link").value(text(ep.getLink()));
+					json.endObject();
+					found++;
+				}
+			}
+		}
+		json.endArray();
+		json.flush();
+	}
+
+	/**
+	 * Lists or saves play positions. Positions change too often to be part
+	 * of the library version, so they are never cached.
+	 */
+	private void positions(HttpExchange exchange) throws IOException {
+		Map<String, String> query = query(exchange);
+		if (exchange.getRequestMethod().equals("POST")) {
+			if (!query.containsKey("millis")) {
+				throw new IllegalArgumentException("Missing millis");
+			}
+			int millis = intParam(query, "millis", 0, Integer.MAX_VALUE);
+			String podcast = query.get("podcast");
+			String episode = query.get("episode");
+			if (model.getPodcast(podcast) == null || model.getPodcast(podcast).getEpisode(episode) == null) {
+				throw new NotFound("No episode " + episode + " in " + podcast);
+			}
+			model.savePlayPos(podcast, episode, millis);
+			exchange.sendResponseHeaders(204, -1);
+			return;
+		}
+		requireMethod(exchange, "GET");
+		// The snapshot holds the same Episodes, whose positions are live.
+		Snapshot snap = snapshot();
+		Podcast podcast = snap.podcast(query.get("podcast"));
+		JsonWriter json = beginJson(exchange, 200, null);
+		json.beginArray();
+		for (Episode ep : snap.episodes(podcast)) {
+			long millis = ep.getCurTimeMillis();
+			if (millis >= 0) {
+				json.beginObject();
+				json.name("title").value(ep.getTitle());
+				json.name("millis").value(millis);
+				json.endObject();
+			}
+		}
+		json.endArray();
+		json.flush();
+	}
+
+	/**
+	 * Runs a handler, turning its failures into error responses, and always
+	 * closes the exchange.
+	 */
+	private void serve(HttpExchange exchange, Handler handler) {
+		try {
+			handler.handle(exchange);
+		} catch (NotFound ex) {
+			error(exchange, 404, ex.getMessage());
+		} catch (MethodNotAllowed ex) {
+			error(exchange, 405, ex.getMessage());
+		} catch (IllegalArgumentException ex) {
+			error(exchange, 400, ex.getMessage());
+		} catch (IOException | RuntimeException ex) {
+			error(exchange, 500, ex.toString());
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Sends an error as a small JSON object, if the response has not begun.
+	 */
+	private void error(HttpExchange exchange, int status, String message) {
+		if (exchange.getResponseCode() != -1) {
+			// Headers are already out; all that can be done is to cut the body.
+			return;
+		}
+		try {
+			JsonWriter json = beginJson(exchange, status, null);
+			json.beginObject().name("error").value(message).endObject();
+			json.flush();
+		} catch (IOException ex) {
+			// The client has gone.
+		}
+	}
+
+	/**
+	 * Sends the headers of a JSON response with a streamed body and returns
+	 * a writer for the body.
+	 */
+	private JsonWriter beginJson(HttpExchange exchange, int status, String etag) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		if (etag != null) {
+			exchange.getResponseHeaders().set("ETag", etag);
+			exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+		}
+		exchange.sendResponseHeaders(status, 0);
+		return new JsonWriter(new BufferedWriter(
+				new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 16 * 1024));
+	}
+
+	/**
+	 * Answers with 304 if the client already holds this snapshot.
+	 */
+	private boolean notModified(HttpExchange exchange, Snapshot snap) throws IOException {
+		if (!snap.etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+			return false;
+		}
+		exchange.getResponseHeaders().set("ETag", snap.etag);
+		exchange.sendResponseHeaders(304, -1);
+		return true;
+	}
+
+	/**
+	 * Fetches the snapshot for the current library version, taking a new one
+	 * only when the library has changed. The version is read before the
+	 * library, so a snapshot is never older than its tag.
+	 */
+	private Snapshot snapshot() {
+		long version = model.getVersion();
+		Snapshot current = snapshot.get();
+		if (current != null && current.version == version) {
+			return current;
+		}
+		Snapshot next = new Snapshot(version, instance, model, current);
+		snapshot.compareAndSet(current, next);
+		return next;
+	}
+
+	private void writeEpisode(JsonWriter json, Episode ep) throws IOException {
+		writeEpisode(json, ep, null);
+	}
+
+	private void writeEpisode(JsonWriter json, Episode ep, String podcast) throws IOException {
+		json.beginObject();
+		if (podcast != null) {
+			json.name("podcast").value(podcast);
+		}
+		json.name("title").value(ep.getTitle());
+		json.name("description").value(ep.getDescription());
+		json.name("link").value(text(ep.getLink()));
+		json.name("epNum").value(ep.getEpNum());
+		if (ep.getPublishedMillis() != FeedDates.UNKNOWN) {
+			json.name("published").value(Instant.ofEpochMilli(ep.getPublishedMillis()).toString());
+		}
+		if (ep.getDurationSeconds() > 0) {
+			json.name("duration").value(ep.getDurationSeconds());
+		}
+		json.endObject();
+	}
+
+	private static void requireMethod(HttpExchange exchange, String method) {
+		if (!exchange.getRequestMethod().equals(method)) {
+			throw new MethodNotAllowed(exchange.getRequestMethod() + " is not allowed here");
+		}
+	}
+
+	private static Map<String, String> query(HttpExchange exchange) {
+		Map<String, String> params = new HashMap<String, String>();
+		String raw = exchange.getRequestURI().getRawQuery();
+		if (raw == null) {
+			return params;
+		}
+		for (String pair : raw.split("&")) {
+			int eq = pair.indexOf('=');
+			String key = eq == -1 ? pair : pair.substring(0, eq);
+			String value = eq == -1 ? "" : pair.substring(eq + 1);
+			params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+		}
+		return params;
+	}
+
+	private static int intParam(Map<String, String> query, String name, int def, int max) {
+		String value = query.get(name);
+		if (value == null) {
+			return def;
+		}
+		try {
+			int parsed = Integer.parseInt(value);
+			if (parsed < 0) {
+				throw new IllegalArgumentException(name + " can not be negative");
+			}
+			return Math.min(parsed, max);
+		} catch (NumberFormatException ex) {
+			throw new IllegalArgumentException(name + " is not a number");
+		}
+	}
+
+	private static <E extends Enum<E>> E enumParam(Map<String, String> query, String name, Class<E> type, E def) {
+		String value = query.get(name);
+		if (value == null) {
+			return def;
+		}
+		try {
+			return Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException ex) {
+			throw new IllegalArgumentException("Unknown " + name + " " + value);
+		}
+	}
+
+	private static String text(URI uri) {
+		return uri == null ? null : uri.toString();
+	}
+
+	/**
+	 * Runs each request on its own virtual thread where the runtime has them
+	 * (Java 21 and later), and on a growing pool of daemon threads before
+	 * that.
+	 */
+	private static ExecutorService requestExecutor() {
+		try {
+			Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) virtual.invoke(null);
+		} catch (ReflectiveOperationException ex) {
+			return Executors.newCachedThreadPool(task -> {
+				Thread thread = new Thread(task, "library-server");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * The library as it stood at one version. Nothing is read when the
+	 * snapshot is taken: the list of Podcasts is fetched the first time a
+	 * request needs all of them, and a Podcast's Episode list is copied the
+	 * first time a request reads it and held from then on, so a catalog
+	 * rewritten or a Podcast changed afterwards does not show through. Copies
+	 * are handed on to the next snapshot, which reuses those whose Podcast
+	 * version has not moved, so a new library version costs only the
+	 * Podcasts that changed and are read again.
+	 */
+	private static final class Snapshot {
+		final long version;
+		final String etag;
+		private final PodcastPlayerModel model;
+		private final Map<Podcast, Copy> earlier;
+		private final Map<Podcast, Copy> copies = new ConcurrentHashMap<Podcast, Copy>();
+		private volatile List<Podcast> podcasts;
+
+		Snapshot(long version, String instance, PodcastPlayerModel model, Snapshot previous) {
+			this.version = version;
+			this.etag = "\"" + instance + "-" + version + "\"";
+			this.model = model;
+			// Only the last snapshot's copies are kept, so a Podcast nobody
+			// reads for a whole version is let go.
+			this.earlier = previous == null ? Collections.<Podcast, Copy>emptyMap() : previous.copies;
+		}
+
+		List<Podcast> podcasts() {
+			List<Podcast> list = podcasts;
+			if (list == null) {
+				list = model.getLibrary();
+				podcasts = list;
+			}
+			return list;
+		}
+
+		Podcast podcast(String title) {
+			if (title == null) {
+				throw new IllegalArgumentException("Missing podcast");
+			}
+			Podcast podcast = model.getPodcast(title);
+			if (podcast == null) {
+				throw new NotFound("No podcast " + title);
+			}
+			return podcast;
+		}
+
+		List<Episode> episodes(Podcast podcast) {
+			return copy(podcast).episodes;
+		}
+
+		String[] lowerTitles(Podcast podcast) {
+			return copy(podcast).lowerTitles();
+		}
+
+		/**
+		 * Fetches the copy of a Podcast's Episodes this snapshot holds, taking
+		 * it now if no request has read them yet. The version is read before
+		 * the Episodes, so a copy is never older than its version.
+		 */
+		private Copy copy(Podcast podcast) {
+			return copies.computeIfAbsent(podcast, p -> {
+				int current = p.getVersion();
+				Copy old = earlier.get(p);
+				if (old != null && old.version == current) {
+					return old;
+				}
+				return new Copy(current, new ArrayList<Episode>(p.getEpisodes()));
+			});
+		}
+	}
+
+	/**
+	 * One Podcast's Episode list as it stood at one version of that Podcast.
+	 * The lower-case titles search runs over are built the first time they
+	 * are asked for and then reused.
+	 */
+	private static final class Copy {
+		final int version;
+		final List<Episode> episodes;
+		private volatile String[] lowerTitles;
+
+		Copy(int version, List<Episode> episodes) {
+			this.version = version;
+			this.episodes = episodes;
+		}
+
+		String[] lowerTitles() {
+			String[] titles = lowerTitles;
+			if (titles == null) {
+				titles = new String[episodes.size()];
+				for (int i = 0; i < titles.length; i++) {
+					String title = episodes.get(i).getTitle();
+					titles[i] = title == null ? null : title.toLowerCase(Locale.ROOT);
+				}
+				lowerTitles = titles;
+			}
+			return titles;
+		}
+	}
+
+	/**
+	 * Thrown when a request names something that is not in the library.
+	 */
+	private static final class NotFound extends RuntimeException {
+		private static final long serialVersionUID = 6306713520414245061L;
+
+		NotFound(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * Thrown when a request uses a method the endpoint does not take.
+	 */
+	private static final class MethodNotAllowed extends RuntimeException {
+		private static final long serialVersionUID = -3563306279862460536L;
+
+		MethodNotAllowed(String message) {
+			super(message);
+		}
+	}
+}
@@ -0,0 +1,625 @@
+package server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.BitSet;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import model.MediaInfo;
+import model.MediaProbe;
+import model.PodcastPlayerModel;
+import model.SeekIndex;
+
+/**
+ * Serves remote enclosures to the player from a local cache, fetching only
+ * the blocks a request or a seek needs.
+ *
+ * The player is handed a link to this proxy in place of the enclosure.
+ *  Each enclosure is cached in a sparse file of BLOCK_BYTES blocks, with a
+ *  map of the blocks it holds. A request for a byte range fetches the
+ *  missing blocks in it with one HTTP Range request per run, a few blocks
+ *  ahead of what has been sent, so a player that stops reading stops the
+ *  fetching too. Fetches run without holding the cache's lock: a request
+ *  needing a block another request is fetching waits for that block
+ *  alone, and requests for other blocks carry on.
+ *
+ * Each enclosure gets a SeekIndex, built from the seek table in its
+ *  headers, or from its bitrate when the headers say it is constant, or by
+ *  a background scan of its MP3 frames through the cache otherwise. Before
+ *  the player seeks, prefetch fetches the blocks at the index's offset for
+ *  the target time, so the player's request for them is served from disk.
+ *  Indexes and block maps are saved next to the cached media and reused on
+ *  the next run.
+ *
+ * @author Todd Noecker
+ */
+public final class MediaProxy {
+
+	/**
+	 * The size of one cached block.
+	 */
+	public static final int BLOCK_BYTES = 64 * 1024;
+
+	/**
+	 * How many blocks past the last sent byte are fetched in one request.
+	 */
+	static final int READ_AHEAD_BLOCKS = 4;
+
+	private static final String MEDIA = ".media";
+	private static final String BLOCKS = ".blocks";
+	private static final String INDEX = ".idx";
+	private static final String TEMP = ".tmp";
+
+	private final Path dir;
+	private final MediaProbe probe;
+	private final int timeoutMillis;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final ExecutorService scanner;
+	private final ConcurrentHashMap<String, Cached> cached = new ConcurrentHashMap<String, Cached>();
+
+	/**
+	 * Creates a proxy on a free loopback port. It does not accept requests
+	 * until started.
+	 *
+	 * @param dir           where cached media, block maps and indexes are kept.
+	 * @param probe         reads the headers indexes are built from.
+	 * @param timeoutMillis the connect and read timeout for enclosure fetches.
+	 * @throws IOException if the directory can not be made or the port bound.
+	 * @author Todd Noecker
+	 */
+	public MediaProxy(Path dir, MediaProbe probe, int timeoutMillis) throws IOException {
+		this.dir = dir;
+		this.probe = probe;
+		this.timeoutMillis = timeoutMillis;
+		Files.createDirectories(dir);
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		this.executor = Executors.newCachedThreadPool(r -> {
+			Thread thread = new Thread(r, "media-proxy");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.scanner = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "seek-index-scan");
+			// A scan reads a whole file; it must not keep the program running.
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		});
+		server.setExecutor(executor);
+		server.createContext("/media/", this::media);
+	}
+
+	/* ------------------------------------------------------------------------
+	 * ---------------------------PUBLIC METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Starts accepting requests.
+	 *
+	 * @author Todd Noecker
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stops accepting requests and saves the block map of every cached
+	 * enclosure.
+	 *
+	 * @author Todd Noecker
+	 */
+	public void stop() {
+		server.stop(0);
+		scanner.shutdownNow();
+		executor.shutdown();
+		for (Cached media : cached.values()) {
+			try {
+				media.close();
+			} catch (IOException ex) {
+				System.out.println("Media cache " + media.name + " could not be saved: " + ex.getMessage());
+			}
+		}
+		cached.clear();
+	}
+
+	/**
+	 * Fetches the port the proxy listens on.
+	 *
+	 * @return the bound port.
+	 * @author Todd Noecker
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Fetches the link the player should open for an enclosure, and starts
+	 * building its seek index if it has none.
+	 *
+	 * @param remote the enclosure link.
+	 * @return the proxy link, which keeps the enclosure's file extension.
+	 * @throws IOException if the cache file can not be opened.
+	 * @author Todd Noecker
+	 */
+	public URI localLink(URI remote) throws IOException {
+		Cached media = cached(remote);
+		String path = remote.getPath() == null ? "" : remote.getPath();
+		int dot = path.lastIndexOf('.');
+		String ext = dot > path.lastIndexOf('/') ? path.substring(dot).toLowerCase(Locale.ROOT) : "";
+		return URI.create("http://127.0.0.1:" + getPort() + "/media/" + media.name + ext);
+	}
+
+	/**
+	 * Fetches the blocks a play time starts in, so a seek to it is served
+	 * from the cache.
+	 *
+	 * @param remote the enclosure link.
+	 * @param millis the play time about to be sought to.
+	 * @return completes when the blocks are cached, at once if the enclosure
+	 *         has no seek index yet.
+	 * @author Todd Noecker
+	 */
+	public CompletableFuture<Void> prefetch(URI remote, long millis) {
+		return CompletableFuture.runAsync(() -> {
+			try {
+				Cached media = cached(remote);
+				SeekIndex index = media.index;
+				if (index != null) {
+					long offset = index.offsetAt(millis);
+					media.ensure(Math.max(0, offset - BLOCK_BYTES), offset + READ_AHEAD_BLOCKS * BLOCK_BYTES - 1);
+				}
+			} catch (IOException ex) {
+				System.out.println("Media " + remote + " could not be prefetched: " + ex.getMessage());
+			}
+		}, executor);
+	}
+
+	/**
+	 * Fetches an enclosure's seek index.
+	 *
+	 * @param remote the enclosure link.
+	 * @return the index, or null if it is still being built or could not be.
+	 * @throws IOException if the cache file can not be opened.
+	 * @author Todd Noecker
+	 */
+	public SeekIndex getSeekIndex(URI remote) throws IOException {
+		return cached(remote).index;
+	}
+
+	/**
+	 * Counts the bytes fetched from enclosure servers since this proxy was
+	 * created.
+	 *
+	 * @return the byte count.
+	 * @author Todd Noecker
+	 */
+	public long getFetchedBytes() {
+		long fetched = 0;
+		for (Cached media : cached.values()) {
+			fetched += media.getFetched();
+		}
+		return fetched;
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PRIVATE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Serves a byte range of a cached enclosure, fetching missing blocks a
+	 * few at a time as they are sent.
+	 */
+	private void media(HttpExchange exchange) throws IOException {
+		try {
+			String file = exchange.getRequestURI().getPath().substring("/media/".length());
+			int dot = file.indexOf('.');
+			Cached media = cached.get(dot < 0 ? file : file.substring(0, dot));
+			if (media == null || !(exchange.getRequestMethod().equals("GET")
+					|| exchange.getRequestMethod().equals("HEAD"))) {
+				exchange.sendResponseHeaders(media == null ? 404 : 405, -1);
+				return;
+			}
+			long length = media.length();
+			long from = 0;
+			long to = length - 1;
+			String range = exchange.getRequestHeaders().getFirst("Range");
+			boolean partial = range != null && range.startsWith("bytes=") && range.indexOf(',') < 0;
+			if (partial) {
+				String[] ends = range.substring("bytes=".length()).split("-", -1);
+				if (ends[0].isEmpty()) {
+					from = Math.max(0, length - Long.parseLong(ends[1].trim()));
+				} else {
+					from = Long.parseLong(ends[0].trim());
+					if (!ends[1].isEmpty()) {
+						to = Math.min(to, Long.parseLong(ends[1].trim()));
+					}
+				}
+				if (from > to) {
+					exchange.getResponseHeaders().add("Content-Range", "bytes */" + length);
+					exchange.sendResponseHeaders(416, -1);
+					return;
+				}
+				exchange.getResponseHeaders().add("Content-Range", "bytes " + from + "-" + to + "/" + length);
+			}
+			exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+			exchange.getResponseHeaders().add("Content-Type", media.contentType());
+			if (exchange.getRequestMethod().equals("HEAD")) {
+				exchange.getResponseHeaders().add("Content-Length", Long.toString(to - from + 1));
+				exchange.sendResponseHeaders(partial ? 206 : 200, -1);
+				return;
+			}
+			exchange.sendResponseHeaders(partial ? 206 : 200, to - from + 1);
+			try (OutputStream out = exchange.getResponseBody()) {
+				byte[] chunk = new byte[BLOCK_BYTES];
+				long pos = from;
+				while (pos <= to) {
+					long end = Math.min(to, (pos / BLOCK_BYTES + READ_AHEAD_BLOCKS) * BLOCK_BYTES - 1);
+					media.ensure(pos, end);
+					while (pos <= end) {
+						int len = (int) Math.min(chunk.length, end - pos + 1);
+						media.read(pos, chunk, len);
+						out.write(chunk, 0, len);
+						pos += len;
+					}
+				}
+			} catch (IOException ex) {
+				// The player closed the connection, most often to seek.
+			}
+		} catch (IOException | RuntimeException ex) {
+			System.out.println("Media request " + exchange.getRequestURI() + " failed: " + ex.getMessage());
+			try {
+				exchange.sendResponseHeaders(502, -1);
+			} catch (IOException | RuntimeException sent) {
+				// Headers were already sent.
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Opens the cache of an enclosure, loading its block map and index, and
+	 * starting an index build if there is no saved index.
+	 */
+	private Cached cached(URI remote) throws IOException {
+		String name = fileName(PodcastPlayerModel.canonicalLink(remote));
+		Cached media = cached.get(name);
+		if (media != null) {
+			return media;
+		}
+		synchronized (cached) {
+			media = cached.get(name);
+			if (media != null) {
+				return media;
+			}
+			media = new Cached(remote, name);
+			cached.put(name, media);
+		}
+		Path indexFile = dir.resolve(name + INDEX);
+		if (Files.exists(indexFile)) {
+			try {
+				media.index = SeekIndex.load(indexFile);
+				return media;
+			} catch (IOException ex) {
+				System.out.println("Seek index " + indexFile + " could not be read: " + ex.getMessage());
+			}
+		}
+		buildIndex(media);
+		return media;
+	}
+
+	/**
+	 * Builds an enclosure's seek index from its headers, then, for an MP3
+	 * whose headers have no seek table and do not say its bitrate is
+	 * constant, from a scan of its frames.
+	 */
+	private void buildIndex(Cached media) {
+		probe.probe(media.remote).thenAccept(info -> {
+			media.format = info.getFormat();
+			media.index = SeekIndex.fromProbe(info);
+			if (info.hasSeekTable() || info.isConstantBitrate() || !info.getFormat().equals("mp3")) {
+				saveIndex(media);
+				return;
+			}
+			scanner.execute(() -> scan(media, info));
+		}).exceptionally(ex -> {
+			System.out.println("Media " + media.remote + " could not be probed: " + ex.getMessage());
+			return null;
+		});
+	}
+
+	private void scan(Cached media, MediaInfo info) {
+		try (InputStream frames = media.stream(info.getAudioStart())) {
+			media.index = SeekIndex.scan(frames, info.getAudioStart(), media.length());
+			saveIndex(media);
+		} catch (IOException ex) {
+			System.out.println("Media " + media.remote + " could not be scanned: " + ex.getMessage());
+		}
+	}
+
+	private void saveIndex(Cached media) {
+		try {
+			media.index.save(dir.resolve(media.name + INDEX));
+		} catch (IOException ex) {
+			System.out.println("Seek index for " + media.remote + " could not be saved: " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * Names an enclosure's cache files by a hash of its canonical link.
+	 */
+	private static String fileName(String link) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(link.getBytes(StandardCharsets.UTF_8));
+			StringBuilder name = new StringBuilder();
+			for (int i = 0; i < 16; i++) {
+				name.append(String.format("%02x", digest[i]));
+			}
+			return name.toString();
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * The cache of one enclosure: a sparse file, the map of blocks it holds,
+	 * and the enclosure's size once known.
+	 */
+	private final class Cached {
+		private final URI remote;
+		private final String name;
+		private final FileChannel data;
+		private final BitSet blocks; // guarded by this
+		private final BitSet fetching = new BitSet(); // blocks being fetched, guarded by this
+		private long length = -1; // guarded by this
+		private volatile SeekIndex index;
+		private volatile String format;
+		private long fetched; // guarded by this
+
+		private Cached(URI remote, String name) throws IOException {
+			this.remote = remote;
+			this.name = name;
+			this.data = FileChannel.open(dir.resolve(name + MEDIA), StandardOpenOption.CREATE,
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+			Path map = dir.resolve(name + BLOCKS);
+			BitSet held = new BitSet();
+			if (Files.exists(map)) {
+				ByteBuffer saved = ByteBuffer.wrap(Files.readAllBytes(map));
+				if (saved.remaining() >= 8) {
+					length = saved.getLong();
+					held = BitSet.valueOf(saved);
+				}
+			}
+			this.blocks = held;
+		}
+
+		/**
+		 * Fetches the enclosure's size, fetching its first block to learn it.
+		 */
+		private long length() throws IOException {
+			synchronized (this) {
+				if (length >= 0) {
+					return length;
+				}
+			}
+			ensure(0, 0);
+			synchronized (this) {
+				if (length >= 0 || !blocks.get(0)) {
+					return length;
+				}
+			}
+			// The first block was cached before its size was saved.
+			fetch(0, 0);
+			synchronized (this) {
+				return length;
+			}
+		}
+
+		private String contentType() {
+			String path = remote.getPath() == null ? "" : remote.getPath().toLowerCase(Locale.ROOT);
+			return "mp4".equals(format) || path.endsWith(".m4a") || path.endsWith(".mp4") ? "audio/mp4"
+					: "audio/mpeg";
+		}
+
+		/**
+		 * Makes sure every block holding a byte in a range is cached, fetching
+		 * each run of missing blocks with one Range request. Blocks another
+		 * request is fetching are waited for rather than fetched again.
+		 */
+		private void ensure(long from, long to) throws IOException {
+			int first = (int) (from / BLOCK_BYTES);
+			while (true) {
+				int block;
+				int run;
+				synchronized (this) {
+					int last = (int) ((length >= 0 ? Math.min(to, length - 1) : to) / BLOCK_BYTES);
+					block = blocks.nextClearBit(first);
+					while (block <= last && fetching.get(block)) {
+						block = blocks.nextClearBit(block + 1);
+					}
+					if (block > last) {
+						if (blocks.nextClearBit(first) > last) {
+							return;
+						}
+						// Only blocks other requests are fetching are missing.
+						try {
+							wait();
+						} catch (InterruptedException ex) {
+							Thread.currentThread().interrupt();
+							throw new IOException(name + " fetch interrupted");
+						}
+						continue;
+					}
+					run = block;
+					while (run + 1 <= last && !blocks.get(run + 1) && !fetching.get(run + 1)) {
+						run++;
+					}
+					fetching.set(block, run + 1);
+				}
+				try {
+					fetch(block, run);
+				} finally {
+					synchronized (this) {
+						fetching.clear(block, run + 1);
+						notifyAll();
+					}
+				}
+				synchronized (this) {
+					if (!blocks.get(block) && (length < 0 || (long) block * BLOCK_BYTES < length)) {
+						throw new IOException(name + " ended early");
+					}
+				}
+			}
+		}
+
+		/**
+		 * Fetches a run of blocks from the enclosure server into the cache.
+		 * Called without the lock, which it takes only to record what it
+		 * learned.
+		 */
+		private void fetch(int first, int last) throws IOException {
+			long from = (long) first * BLOCK_BYTES;
+			long to = (long) (last + 1) * BLOCK_BYTES - 1;
+			URLConnection conn = remote.toURL().openConnection();
+			conn.setConnectTimeout(timeoutMillis);
+			conn.setReadTimeout(timeoutMillis);
+			conn.setRequestProperty("Range", "bytes=" + from + "-" + to);
+			try (InputStream in = conn.getInputStream()) {
+				String range = conn.getHeaderField("Content-Range");
+				if (range != null && range.lastIndexOf('/') > 0 && !range.endsWith("*")) {
+					learned(Long.parseLong(range.substring(range.lastIndexOf('/') + 1).trim()));
+				} else if (range == null) {
+					// The server sent the whole file; read up to the range.
+					learned(conn.getContentLengthLong());
+					for (long skip = from; skip > 0;) {
+						long skipped = in.skip(skip);
+						if (skipped <= 0) {
+							return;
+						}
+						skip -= skipped;
+					}
+				}
+				byte[] buf = new byte[BLOCK_BYTES];
+				long pos = from;
+				int block = first;
+				while (block <= last) {
+					int len = in.readNBytes(buf, 0, buf.length);
+					if (len > 0) {
+						data.write(ByteBuffer.wrap(buf, 0, len), pos);
+						pos += len;
+					}
+					synchronized (this) {
+						fetched += len;
+						if (len == buf.length || len > 0 && length >= 0 && pos >= length) {
+							blocks.set(block);
+						}
+					}
+					if (len < buf.length) {
+						break;
+					}
+					block++;
+				}
+				synchronized (this) {
+					if (length < 0 && pos <= to) {
+						// The file ended inside the range, in the block last read.
+						length = pos;
+						if (pos > (long) block * BLOCK_BYTES) {
+							blocks.set(block);
+						}
+					}
+				}
+			} finally {
+				if (conn instanceof HttpURLConnection) {
+					((HttpURLConnection) conn).disconnect();
+				}
+			}
+		}
+
+		private synchronized void learned(long size) {
+			length = size;
+		}
+
+		private synchronized long getFetched() {
+			return fetched;
+		}
+
+		private void read(long pos, byte[] into, int len) throws IOException {
+			ByteBuffer buf = ByteBuffer.wrap(into, 0, len);
+			while (buf.hasRemaining()) {
+				if (data.read(buf, pos + buf.position()) < 0) {
+					throw new IOException(name + " ended early");
+				}
+			}
+		}
+
+		/**
+		 * Reads the enclosure through the cache from an offset on.
+		 */
+		private InputStream stream(long start) {
+			return new InputStream() {
+				private long pos = start;
+
+				@Override
+				public int read() throws IOException {
+					byte[] one = new byte[1];
+					return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+				}
+
+				@Override
+				public int read(byte[] into, int off, int len) throws IOException {
+					long end = length();
+					if (pos >= end) {
+						return -1;
+					}
+					int n = (int) Math.min(len, Math.min(end - pos, BLOCK_BYTES - pos % BLOCK_BYTES));
+					ensure(pos, pos + n - 1);
+					ByteBuffer buf = ByteBuffer.wrap(into, off, n);
+					while (buf.hasRemaining()) {
+						if (data.read(buf, pos + (buf.position() - off)) < 0) {
+							throw new IOException(name + " ended early");
+						}
+					}
+					pos += n;
+					return n;
+				}
+			};
+		}
+
+		/**
+		 * Saves the block map and closes the cache file.
+		 */
+		private synchronized void close() throws IOException {
+			data.close();
+			byte[] held = blocks.toByteArray();
+			Path map = dir.resolve(name + BLOCKS);
+			Path temp = dir.resolve(name + BLOCKS + TEMP);
+			Files.write(temp, ByteBuffer.allocate(8 + held.length).putLong(length).put(held).array());
+			Files.move(temp, map, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+	}
+}
@@ -0,0 +1,204 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+import model.ChangeBatch;
+import model.ChangeBus;
+import model.PodcastPlayerModel;
+import model.PodcastPlayerModel.Episode;
+
+/**
+ * Checks that library changes are folded into batches, that a reader
+ * taking one batch a frame sees every change however fast they come, and
+ * that a library with no reader keeps no batch.
+ *
+ * @author Todd Noecker
+ */
+public class ChangeBusTest {
+
+	@Test
+	void testFoldsChanges() throws Exception {
+		PodcastPlayerModel model = new PodcastPlayerModel();
+		ChangeBus bus = model.getChanges();
+		bus.setCollecting(true);
+		assertNull(bus.drain());
+		for (int show = 0; show < 50; show++) {
+			model.addPodcast("https://feeds.example.com/" + show + ".xml", feed(show, 0, 20));
+		}
+		ChangeBatch batch = bus.drain();
+		assertEquals(50, batch.getAddedPodcasts().size());
+		assertEquals(50, batch.getEventCount());
+		assertNull(bus.drain());
+
+		// A thousand saves of the same position are one change.
+		Episode ep = model.getPodcast("Show 4").getEpisode("Episode 3");
+		for (int i = 0; i < 1000; i++) {
+			ep.setCurTimeMillis(i);
+		}
+		model.getEpisode("Show 4", "Episode 3");
+		batch = bus.drain();
+		assertEquals(List.of(ep), batch.getChangedEpisodes());
+		assertSame(ep, batch.getNowPlaying());
+		assertEquals(1001, batch.getEventCount());
+
+		// A Podcast added and removed before anyone looked leaves no trace,
+		// and one removed drops its waiting Episode changes.
+		model.addPodcast("https://feeds.example.com/new.xml", feed(99, 0, 5));
+		assertTrue(model.removePodcast("Show 99"));
+		model.getPodcast("Show 7").getEpisode("Episode 1").setCurTimeMillis(5);
+		assertTrue(model.removePodcast("Show 7"));
+		batch = bus.drain();
+		assertTrue(batch.getAddedPodcasts().isEmpty());
+		assertEquals(Set.of("Show 7"), batch.getRemovedPodcasts());
+		assertTrue(batch.getChangedEpisodes().isEmpty());
+		assertEquals(4, batch.getEventCount());
+		assertEquals(49, model.getLibrary().size());
+	}
+
+	@Test
+	void testHeadlessBusHoldsNothing() throws Exception {
+		PodcastPlayerModel model = new PodcastPlayerModel();
+		ChangeBus bus = model.getChanges();
+		assertFalse(bus.isCollecting());
+		for (int show = 0; show < 50; show++) {
+			model.addPodcast("https://feeds.example.com/" + show + ".xml", feed(show, 0, 20));
+			model.getPodcast("Show " + show).getEpisode("Episode 1").setCurTimeMillis(5);
+		}
+		// With no reader the adds and positions are not kept for one.
+		assertFalse(bus.isPending());
+		assertNull(bus.drain());
+
+		// A reader that turns up gets the changes from then on.
+		bus.setCollecting(true);
+		model.getPodcast("Show 3").getEpisode("Episode 2").setCurTimeMillis(7);
+		ChangeBatch batch = bus.drain();
+		assertEquals(1, batch.getEventCount());
+		assertEquals(1, batch.getChangedEpisodes().size());
+		bus.setCollecting(false);
+		model.getPodcast("Show 3").getEpisode("Episode 2").setCurTimeMillis(8);
+		assertNull(bus.drain());
+	}
+
+	@Test
+	void testRefreshDiff() throws Exception {
+		Path dir = Files.createTempDirectory("changes");
+		Path file = dir.resolve("show.xml");
+		Files.writeString(file, feedText(1, items(1, 0, 30, "")), StandardCharsets.ISO_8859_1);
+		PodcastPlayerModel model = new PodcastPlayerModel();
+		model.addPodcast(file.toUri().toString());
+		ChangeBus bus = model.getChanges();
+		bus.setCollecting(true);
+		bus.drain();
+
+		// 200 new items, and a new copy of Episode 0 under another GUID.
+		String newer = feedText(1, items(1, -200, 0, "") + items(1, 0, 1, "-again") + items(1, 0, 30, ""));
+		Episode old = model.getPodcast("Show 1").getEpisode("Episode 0");
+		Files.writeString(file, newer, StandardCharsets.ISO_8859_1);
+		assertEquals(201, model.refreshPodcast("Show 1").size());
+
+		ChangeBatch batch = bus.drain();
+		assertEquals(1, batch.getChangedPodcasts().size());
+		assertEquals(201, batch.getAddedEpisodes().size());
+		assertEquals(List.of(old), batch.getRemovedEpisodes());
+		assertEquals(203, batch.getEventCount());
+
+		Files.delete(file);
+		Files.delete(dir);
+	}
+
+	@Test
+	void testOneBatchPerFrame() throws Exception {
+		PodcastPlayerModel model = new PodcastPlayerModel();
+		for (int show = 0; show < 8; show++) {
+			model.addPodcast("https://feeds.example.com/" + show + ".xml", feed(show, 0, 500));
+		}
+		ChangeBus bus = model.getChanges();
+		bus.setCollecting(true);
+		bus.drain();
+
+		// Writers save positions as fast as they can while a reader takes a
+		// batch every 16 ms, as a screen would.
+		AtomicBoolean running = new AtomicBoolean(true);
+		List<Thread> writers = new ArrayList<Thread>();
+		long[] written = new long[4];
+		for (int w = 0; w < written.length; w++) {
+			int writer = w;
+			Thread thread = new Thread(() -> {
+				List<Episode> episodes = model.getPodcast("Show " + writer).getEpisodes();
+				int i = 0;
+				while (running.get()) {
+					episodes.get(i++ % episodes.size()).setCurTimeMillis(i);
+					written[writer]++;
+				}
+			});
+			writers.add(thread);
+			thread.start();
+		}
+		long events = 0;
+		int frames = 0;
+		int batches = 0;
+		int largest = 0;
+		long end = System.currentTimeMillis() + 1000;
+		while (System.currentTimeMillis() < end) {
+			Thread.sleep(16);
+			frames++;
+			ChangeBatch batch = bus.drain();
+			if (batch != null) {
+				batches++;
+				events += batch.getEventCount();
+				largest = Math.max(largest, batch.getChangedEpisodes().size());
+			}
+		}
+		running.set(false);
+		for (Thread thread : writers) {
+			thread.join();
+		}
+		ChangeBatch rest = bus.drain();
+		events += rest == null ? 0 : rest.getEventCount();
+
+		long total = 0;
+		for (long count : written) {
+			total += count;
+		}
+		System.out.println(total + " changes in " + batches + " batches over " + frames + " frames");
+		assertEquals(total, events);
+		assertTrue(batches <= frames);
+		assertTrue(total > 10 * batches);
+		assertTrue(largest <= 4 * 500);
+	}
+
+	private static ByteBuffer feed(int show, int first, int count) {
+		String text = feedText(show, items(show, first, count, ""));
+		return ByteBuffer.wrap(text.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	private static String feedText(int show, String items) {
+		return "<rss><channel><title>Show " + show + "</title><itunes:summary>Changing show " + show
+				+ "</itunes:summary>\n" + items + "</channel></rss>";
+	}
+
+	/**
+	 * Builds items first..count-1 of a show, newest first.
+	 */
+	private static String items(int show, int first, int count, String guidSuffix) {
+		StringBuilder items = new StringBuilder();
+		for (int i = first; i < count; i++) {
+			items.append("<item><title>Episode " + i + "</title><guid>show-" + show + "-" + i + guidSuffix
+					+ "</guid><enclosure url=\"https://cdn.example.com/" + show + "/" + i + ".mp3\"/></item>\n");
+		}
+		return items.toString();
+	}
+}
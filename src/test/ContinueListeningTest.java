@@ -0,0 +1,146 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import model.PodcastPlayerModel;
+import model.PodcastPlayerModel.Episode;
+import model.SegmentStore;
+
+/**
+ * Checks that the continue listening shelf lists started Episodes most
+ * recently played first, follows positions being saved and cleared, and
+ * is rebuilt from the saved library.
+ *
+ * @author Todd Noecker
+ */
+public class ContinueListeningTest {
+
+	@Test
+	void testShelfFollowsPlayback() throws Exception {
+		PodcastPlayerModel model = new PodcastPlayerModel();
+		for (int show = 0; show < 3; show++) {
+			model.addPodcast("https://feeds.example.com/" + show + ".xml", feed("Show " + show, 20, null));
+		}
+		assertTrue(model.getContinueListening(10).isEmpty());
+
+		play(model, "Show 0", "Episode 4", 1000);
+		play(model, "Show 2", "Episode 1", 2000);
+		play(model, "Show 1", "Episode 7", 3000);
+		assertEquals(List.of("Show 1/Episode 7", "Show 2/Episode 1", "Show 0/Episode 4"),
+				names(model.getContinueListening(10)));
+		assertEquals(List.of("Show 1/Episode 7", "Show 2/Episode 1"), names(model.getContinueListening(2)));
+		Episode first = model.getContinueListening(1).get(0);
+		assertEquals(3000, first.getCurTimeMillis());
+		assertTrue(first.getLastPlayedMillis() > 0);
+
+		// Saving again, or picking the Episode to play, moves it to the front.
+		play(model, "Show 0", "Episode 4", 1500);
+		assertEquals("Show 0/Episode 4", names(model.getContinueListening(1)).get(0));
+		Thread.sleep(2);
+		model.getEpisode("Show 2", "Episode 1");
+		assertEquals(List.of("Show 2/Episode 1", "Show 0/Episode 4", "Show 1/Episode 7"),
+				names(model.getContinueListening(10)));
+		// Picking an Episode that was never started leaves it off.
+		model.getEpisode("Show 2", "Episode 9");
+		assertEquals(3, model.getContinueListening(10).size());
+
+		// A cleared position, or a removed Podcast, takes it off the shelf.
+		play(model, "Show 0", "Episode 4", -1);
+		model.removePodcast("Show 1");
+		assertEquals(List.of("Show 2/Episode 1"), names(model.getContinueListening(10)));
+		assertThrows(IllegalArgumentException.class, () -> model.getContinueListening(0));
+	}
+
+	@Test
+	void testCopiesListedOnce() throws Exception {
+		PodcastPlayerModel model = new PodcastPlayerModel();
+		model.addPodcast("https://feeds.example.com/main.xml", feed("Main", 5, "https://cdn.example.com/main/"));
+		model.addPodcast("https://feeds.example.com/net.xml",
+				feed("Network", 5, "https://pdst.fm/e/cdn.example.com/main/"));
+		play(model, "Network", "Episode 2", 4000);
+		List<Episode> shelf = model.getContinueListening(10);
+		assertEquals(1, shelf.size());
+		assertEquals(4000, model.getPodcast("Main").getEpisode("Episode 2").getCurTimeMillis());
+	}
+
+	@Test
+	void testShelfSurvivesReleaseAndReload() throws Exception {
+		Path dir = Files.createTempDirectory("shelf");
+		PodcastPlayerModel model = new PodcastPlayerModel();
+		model.setResidency(dir.resolve("episodes").toString(), 0);
+		for (int show = 0; show < 8; show++) {
+			model.addPodcast("https://feeds.example.com/" + show + ".xml", feed("Show " + show, 50, null));
+			play(model, "Show " + show, "Episode " + show, 1000 * show);
+		}
+		assertEquals(6, model.releaseColdPodcasts(2));
+		// Played through a catalog view.
+		play(model, "Show 1", "Episode 1", 1111);
+		List<String> before = names(model.getContinueListening(20));
+		assertEquals(8, before.size());
+		assertEquals("Show 1/Episode 1", before.get(0));
+
+		SegmentStore.open(model, dir.resolve("library"), TimeUnit.HOURS.toMillis(1), 2).closeAsync().get();
+		PodcastPlayerModel loaded = new PodcastPlayerModel();
+		loaded.setResidency(dir.resolve("episodes").toString(), 0);
+		SegmentStore.open(loaded, dir.resolve("library"), TimeUnit.HOURS.toMillis(1), 2).closeAsync().get();
+		assertEquals(before, names(loaded.getContinueListening(20)));
+		assertEquals(model.getPodcast("Show 3").getEpisode("Episode 3").getLastPlayedMillis(),
+				loaded.getPodcast("Show 3").getEpisode("Episode 3").getLastPlayedMillis());
+
+		try (Stream<Path> files = Files.walk(dir)) {
+			for (Path path : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.delete(path);
+			}
+		}
+	}
+
+	/**
+	 * Saves a position, waiting first so each save is stamped later than the
+	 * one before.
+	 */
+	private static void play(PodcastPlayerModel model, String show, String title, long millis)
+			throws InterruptedException {
+		Thread.sleep(2);
+		model.savePlayPos(show, title, millis);
+	}
+
+	private static List<String> names(List<Episode> episodes) {
+		List<String> names = new ArrayList<String>();
+		for (Episode ep : episodes) {
+			names.add(ep.getPodcast().getTitle() + "/" + ep.getTitle());
+		}
+		return names;
+	}
+
+	/**
+	 * Builds a feed of count items whose enclosures are numbered under the
+	 * given base, or under the show's own folder when it is null.
+	 */
+	private static ByteBuffer feed(String title, int count, String base) {
+		String links = base != null ? base : "https://cdn.example.com/" + title.replace(' ', '-') + "/";
+		StringBuilder feed = new StringBuilder("<rss><channel><title>" + title + "</title>"
+				+ "<itunes:summary>A show to come back to</itunes:summary>\n");
+		for (int i = 0; i < count; i++) {
+			feed.append("<item><title>Episode " + i + "</title>"
+					+ "<guid isPermaLink=\"false\">" + title + "-" + i + "</guid>"
+					+ "<itunes:summary>Notes for episode " + i + "</itunes:summary>"
+					+ "<enclosure url=\"" + links + i + ".mp3\" length=\"" + (1000 + i) + "\" type=\"audio/mpeg\"/>"
+					+ "</item>\n");
+		}
+		feed.append("</channel></rss>");
+		return ByteBuffer.wrap(feed.toString().getBytes(StandardCharsets.ISO_8859_1));
+	}
+}
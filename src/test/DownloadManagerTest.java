@@ -0,0 +1,329 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import com.sun.net.httpserver.HttpServer;
+import model.DownloadManager;
+import model.DownloadManager.Priority;
+import model.DownloadManager.State;
+
+/**
+ * Runs downloads end to end against a local HTTP server: priority order,
+ * resumed transfers, verification, host and bandwidth limits, a queue
+ * carried over to the next manager, a file changed on the server before
+ * its transfer was resumed, and a resumed response with a broken range.
+ *
+ * @author Todd Noecker
+ */
+public class DownloadManagerTest {
+
+	private final Map<String, byte[]> files = new ConcurrentHashMap<String, byte[]>();
+	private final List<String> log = Collections.synchronizedList(new ArrayList<String>());
+	private final List<String> ifRanges = Collections.synchronizedList(new ArrayList<String>());
+	private final Map<String, AtomicInteger> activeByHost = new ConcurrentHashMap<String, AtomicInteger>();
+	private final Map<String, Integer> peakByHost = new ConcurrentHashMap<String, Integer>();
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicInteger peak = new AtomicInteger();
+	private final CountDownLatch gate = new CountDownLatch(1);
+	private final AtomicInteger cuts = new AtomicInteger();
+	private ExecutorService threads;
+	private HttpServer server;
+	private Path dir;
+
+	@BeforeEach
+	void start() throws IOException {
+		dir = Files.createTempDirectory("downloads");
+		threads = Executors.newCachedThreadPool();
+		server = HttpServer.create(new InetSocketAddress(0), 0);
+		server.setExecutor(threads);
+		server.createContext("/", exchange -> {
+			String path = exchange.getRequestURI().getPath();
+			String host = exchange.getRequestHeaders().getFirst("Host").replaceFirst(":\\d+$", "");
+			String range = exchange.getRequestHeaders().getFirst("Range");
+			log.add(path + (range == null ? "" : " " + range));
+			int now = activeByHost.computeIfAbsent(host, key -> new AtomicInteger()).incrementAndGet();
+			peakByHost.merge(host, now, Math::max);
+			peak.accumulateAndGet(active.incrementAndGet(), Math::max);
+			try {
+				if (path.startsWith("/gate/")) {
+					gate.await(10, TimeUnit.SECONDS);
+				}
+				byte[] file = files.get(path);
+				String etag = "\"" + Integer.toHexString(Arrays.hashCode(file)) + "\"";
+				String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+				if (ifRange != null) {
+					ifRanges.add(path + " " + ifRange);
+					if (!ifRange.equals(etag)) {
+						// The file changed since the part was sent; send it whole.
+						range = null;
+					}
+				}
+				exchange.getResponseHeaders().add("ETag", etag);
+				int from = range == null ? 0 : Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+				if (range != null) {
+					// A broken server names no usable length.
+					exchange.getResponseHeaders().add("Content-Range", "bytes " + from + "-" + (file.length - 1) + "/"
+							+ (path.contains("/bad/") ? "unknown-len" : Integer.toString(file.length)));
+				}
+				exchange.sendResponseHeaders(range == null ? 200 : 206, file.length - from);
+				try (OutputStream out = exchange.getResponseBody()) {
+					if (path.startsWith("/cut/") && cuts.getAndIncrement() == 0) {
+						// Break the first transfer off halfway.
+						out.write(file, from, (file.length - from) / 2);
+						out.flush();
+						throw new IOException("cut");
+					}
+					for (int at = from; at < file.length; at += 8192) {
+						out.write(file, at, Math.min(8192, file.length - at));
+					}
+				}
+			} catch (InterruptedException | IOException ex) {
+				// The transfer was cut or the client went away.
+			} finally {
+				active.decrementAndGet();
+				activeByHost.get(host).decrementAndGet();
+				exchange.close();
+			}
+		});
+		server.start();
+	}
+
+	@AfterEach
+	void stop() throws IOException {
+		gate.countDown();
+		server.stop(0);
+		threads.shutdownNow();
+		try (Stream<Path> all = Files.walk(dir)) {
+			for (Path file : all.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.delete(file);
+			}
+		}
+	}
+
+	@Test
+	void testUserRequestsGoFirst() throws Exception {
+		for (String name : List.of("/gate/a.mp3", "/b.mp3", "/c.mp3", "/d.mp3")) {
+			files.put(name, bytes(name.hashCode(), 20000));
+		}
+		DownloadManager manager = DownloadManager.open(dir, 1, 1, 0, 0, 5000);
+		try {
+			List<CompletableFuture<Path>> done = new ArrayList<CompletableFuture<Path>>();
+			done.add(manager.enqueue(uri("127.0.0.1", "/gate/a.mp3"), Priority.AUTO, null));
+			long end = System.currentTimeMillis() + 5000;
+			while (manager.getActiveCount() == 0 && System.currentTimeMillis() < end) {
+				Thread.sleep(10);
+			}
+			done.add(manager.enqueue(uri("127.0.0.1", "/b.mp3"), Priority.AUTO, null));
+			done.add(manager.enqueue(uri("127.0.0.1", "/c.mp3"), Priority.AUTO, null));
+			done.add(manager.enqueue(uri("127.0.0.1", "/d.mp3"), Priority.USER, null));
+			assertEquals(List.of(uri("127.0.0.1", "/gate/a.mp3"), uri("127.0.0.1", "/d.mp3"),
+					uri("127.0.0.1", "/b.mp3"), uri("127.0.0.1", "/c.mp3")), manager.getQueue());
+			gate.countDown();
+			for (CompletableFuture<Path> file : done) {
+				file.get(10, TimeUnit.SECONDS);
+			}
+			assertEquals(List.of("/gate/a.mp3", "/d.mp3", "/b.mp3", "/c.mp3"), log);
+			Path d = manager.getFile(uri("127.0.0.1", "/d.mp3"));
+			assertTrue(d.getFileName().toString().endsWith(".mp3"));
+			assertArrayEquals(files.get("/d.mp3"), Files.readAllBytes(d));
+			assertEquals(4 * 20000, manager.getReceivedBytes());
+		} finally {
+			manager.close();
+		}
+	}
+
+	@Test
+	void testResumeAndVerify() throws Exception {
+		byte[] cut = bytes(1, 300000);
+		files.put("/cut/long.mp3", cut);
+		files.put("/plain.mp3", bytes(2, 50000));
+		DownloadManager manager = DownloadManager.open(dir, 2, 2, 0, 0, 5000);
+		try {
+			Path file = manager.enqueue(uri("127.0.0.1", "/cut/long.mp3"), Priority.USER, sha256(cut))
+					.get(10, TimeUnit.SECONDS);
+			assertArrayEquals(cut, Files.readAllBytes(file));
+			// The second request picked up where the first broke off.
+			assertEquals(2, log.size());
+			assertTrue(log.get(1).startsWith("/cut/long.mp3 bytes="));
+			assertTrue(Integer.parseInt(log.get(1).replaceAll(".*=(\\d+)-", "$1")) > 0);
+
+			// A file whose digest does not match is never moved into place.
+			CompletableFuture<Path> wrong = manager.enqueue(uri("127.0.0.1", "/plain.mp3"), Priority.USER,
+					"00" + sha256(cut).substring(2));
+			ExecutionException failed = assertThrows(ExecutionException.class, () -> wrong.get(10, TimeUnit.SECONDS));
+			assertTrue(failed.getCause().getMessage().contains("digest"));
+			assertEquals(State.FAILED, manager.getState(uri("127.0.0.1", "/plain.mp3")));
+			assertNull(manager.getFile(uri("127.0.0.1", "/plain.mp3")));
+		} finally {
+			manager.close();
+		}
+	}
+
+	@Test
+	void testHostAndBandwidthLimits() throws Exception {
+		DownloadManager manager = DownloadManager.open(dir, 4, 1, 96 * 1024, 0, 5000);
+		try {
+			List<CompletableFuture<Path>> done = new ArrayList<CompletableFuture<Path>>();
+			for (int i = 0; i < 3; i++) {
+				files.put("/gate/" + i + ".mp3", bytes(i, 32 * 1024));
+				done.add(manager.enqueue(uri("127.0.0.1", "/gate/" + i + ".mp3"), Priority.AUTO, null));
+				done.add(manager.enqueue(uri("localhost", "/gate/" + i + ".mp3"), Priority.AUTO, null));
+			}
+			// Four transfers may run, but only one from each host.
+			long end = System.currentTimeMillis() + 5000;
+			while (active.get() < 2 && System.currentTimeMillis() < end) {
+				Thread.sleep(10);
+			}
+			Thread.sleep(200);
+			assertEquals(2, peak.get());
+			assertEquals(1, peakByHost.get("127.0.0.1"));
+			assertEquals(1, peakByHost.get("localhost"));
+			assertEquals(2, manager.getActiveCount());
+
+			long start = System.nanoTime();
+			gate.countDown();
+			for (CompletableFuture<Path> file : done) {
+				file.get(20, TimeUnit.SECONDS);
+			}
+			long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			// 192 KB at 96 KB a second, after a one second burst.
+			assertTrue(millis >= 800, "took " + millis);
+			assertEquals(6 * 32 * 1024, manager.getReceivedBytes());
+			assertTrue(manager.getBytesPerSecond() > 0);
+		} finally {
+			manager.close();
+		}
+	}
+
+	@Test
+	void testQueueSurvivesRestart() throws Exception {
+		byte[] slow = bytes(3, 256 * 1024);
+		files.put("/slow.mp3", slow);
+		files.put("/next.mp3", bytes(4, 1000));
+		DownloadManager manager = DownloadManager.open(dir, 1, 1, 64 * 1024, 0, 5000);
+		manager.enqueue(uri("127.0.0.1", "/slow.mp3"), Priority.USER, null);
+		manager.enqueue(uri("127.0.0.1", "/next.mp3"), Priority.AUTO, null);
+		long end = System.currentTimeMillis() + 5000;
+		while (manager.getReceivedBytes() <= 64 * 1024 && System.currentTimeMillis() < end) {
+			Thread.sleep(10);
+		}
+		manager.close();
+		assertEquals(List.of(uri("127.0.0.1", "/slow.mp3"), uri("127.0.0.1", "/next.mp3")), manager.getQueue());
+
+		DownloadManager next = DownloadManager.open(dir, 1, 1, 0, 0, 5000);
+		try {
+			Path file = next.enqueue(uri("127.0.0.1", "/slow.mp3"), Priority.USER, null)
+					.get(10, TimeUnit.SECONDS);
+			assertArrayEquals(slow, Files.readAllBytes(file));
+			assertTrue(next.getReceivedBytes() < slow.length);
+			assertTrue(log.get(1).startsWith("/slow.mp3 bytes="));
+			next.enqueue(uri("127.0.0.1", "/next.mp3"), Priority.AUTO, null).get(10, TimeUnit.SECONDS);
+			assertEquals(List.of(), next.getQueue());
+		} finally {
+			next.close();
+		}
+	}
+
+	@Test
+	void testBadContentRangeStartsOver() throws Exception {
+		byte[] cut = bytes(7, 100000);
+		files.put("/cut/bad/long.mp3", cut);
+		files.put("/plain.mp3", bytes(8, 1000));
+		DownloadManager manager = DownloadManager.open(dir, 1, 1, 0, 0, 5000);
+		try {
+			Path file = manager.enqueue(uri("127.0.0.1", "/cut/bad/long.mp3"), Priority.USER, sha256(cut))
+					.get(10, TimeUnit.SECONDS);
+			assertArrayEquals(cut, Files.readAllBytes(file));
+			// The resumed response could not be used, so the file was asked for
+			// whole again.
+			assertEquals(3, log.size());
+			assertTrue(log.get(1).startsWith("/cut/bad/long.mp3 bytes="));
+			assertEquals("/cut/bad/long.mp3", log.get(2));
+
+			// The worker and the host's slot are free for the next download.
+			manager.enqueue(uri("127.0.0.1", "/plain.mp3"), Priority.USER, null).get(10, TimeUnit.SECONDS);
+			assertEquals(0, manager.getActiveCount());
+		} finally {
+			manager.close();
+		}
+	}
+
+	@Test
+	void testChangedFileStartsOver() throws Exception {
+		files.put("/slow.mp3", bytes(5, 256 * 1024));
+		DownloadManager manager = DownloadManager.open(dir, 1, 1, 64 * 1024, 0, 5000);
+		manager.enqueue(uri("127.0.0.1", "/slow.mp3"), Priority.USER, null);
+		long end = System.currentTimeMillis() + 5000;
+		while (manager.getReceivedBytes() <= 64 * 1024 && System.currentTimeMillis() < end) {
+			Thread.sleep(10);
+		}
+		manager.close();
+
+		// The episode is replaced on the server before the next run.
+		byte[] fixed = bytes(6, 200 * 1024);
+		files.put("/slow.mp3", fixed);
+		log.clear();
+		DownloadManager next = DownloadManager.open(dir, 1, 1, 0, 0, 5000);
+		try {
+			Path file = next.enqueue(uri("127.0.0.1", "/slow.mp3"), Priority.USER, null)
+					.get(10, TimeUnit.SECONDS);
+			assertArrayEquals(fixed, Files.readAllBytes(file));
+			assertEquals(fixed.length, next.getReceivedBytes());
+			// The resumed request named the old version, and was sent it all.
+			assertTrue(log.get(0).startsWith("/slow.mp3 bytes="));
+			assertEquals(1, ifRanges.size());
+			assertTrue(ifRanges.get(0).startsWith("/slow.mp3 \""));
+		} finally {
+			next.close();
+		}
+	}
+
+	private URI uri(String host, String path) {
+		return URI.create("http://" + host + ":" + server.getAddress().getPort() + path);
+	}
+
+	private static byte[] bytes(long seed, int length) {
+		byte[] bytes = new byte[length];
+		new Random(seed).nextBytes(bytes);
+		return bytes;
+	}
+
+	private static String sha256(byte[] bytes) throws Exception {
+		StringBuilder hex = new StringBuilder();
+		for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+}
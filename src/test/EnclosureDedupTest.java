@@ -0,0 +1,159 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import com.sun.net.httpserver.HttpServer;
+import model.DownloadManager;
+import model.PodcastPlayerModel;
+import model.PodcastPlayerModel.Episode;
+
+/**
+ * Checks that Episodes cross-posted to several feeds are found to be copies
+ * of one media file, share its payload and play position, and are fetched
+ * once.
+ *
+ * @author Todd Noecker
+ */
+public class EnclosureDedupTest {
+
+	private static final String PLAIN = "https://cdn.example.com/show/%d.mp3?src=rss";
+	private static final String WRAPPED = "http://dts.podtrac.com/redirect.mp3/chtbl.com/track/A1B2/"
+			+ "CDN.example.com/show/%d.mp3?utm_source=network";
+
+	@Test
+	void testCrossPostedCopiesShare() throws IOException, URISyntaxException {
+		PodcastPlayerModel model = new PodcastPlayerModel();
+		addFeed(model, "Main Show", PLAIN, 5, 1000);
+		addFeed(model, "Network Feed", WRAPPED, 5, 1000);
+		// Same file name, but a different size, is a different file.
+		addFeed(model, "Rebroadcast", PLAIN, 1, 2000);
+		assertEquals(5, model.getSharedEnclosureCount());
+
+		Episode main = model.getEpisode("Main Show", "Main Show 3");
+		Episode network = model.getEpisode("Network Feed", "Network Feed 3");
+		Episode other = model.getEpisode("Rebroadcast", "Rebroadcast 0");
+		assertEquals(main.getLink(), model.getEnclosureLink(network));
+		assertEquals(main.getLink(), network.getLink());
+		assertSame(main.getDescription(), network.getDescription());
+		assertNotEquals(main.getLink(), model.getEnclosureLink(other));
+
+		model.savePlayPos("Network Feed", "Network Feed 3", 42000);
+		assertEquals(42000, main.getCurTimeMillis());
+		model.savePlayPos("Main Show", "Main Show 3", 43000);
+		assertEquals(43000, network.getCurTimeMillis());
+		assertEquals(-1, other.getCurTimeMillis());
+		assertEquals(-1, model.getEpisode("Network Feed", "Network Feed 2").getCurTimeMillis());
+
+		// Once the copy is gone, playing the other no longer touches it.
+		model.removePodcast("Network Feed");
+		assertEquals(0, model.getSharedEnclosureCount());
+		model.savePlayPos("Main Show", "Main Show 3", 50000);
+		assertEquals(43000, network.getCurTimeMillis());
+
+		// A copy added later takes the position the first copy reached.
+		addFeed(model, "Network Feed", WRAPPED, 5, 1000);
+		assertEquals(50000, model.getEpisode("Network Feed", "Network Feed 3").getCurTimeMillis());
+	}
+
+	@Test
+	void testDigestJoinsUnrelatedLinks() throws IOException, URISyntaxException {
+		PodcastPlayerModel model = new PodcastPlayerModel();
+		addFeed(model, "Main Show", PLAIN, 2, 0);
+		addFeed(model, "Mirror", "https://mirror.example.org/files/ep-%d.mp3", 2, 0);
+		assertEquals(0, model.getSharedEnclosureCount());
+
+		Episode main = model.getEpisode("Main Show", "Main Show 1");
+		Episode mirror = model.getEpisode("Mirror", "Mirror 1");
+		model.savePlayPos("Mirror", "Mirror 1", 9000);
+		model.recordEnclosureDigest(main, "AB12");
+		model.recordEnclosureDigest(mirror, "ab12");
+		assertEquals(1, model.getSharedEnclosureCount());
+		// The further position wins when the two are joined.
+		assertEquals(9000, main.getCurTimeMillis());
+		assertEquals(main.getLink(), model.getEnclosureLink(mirror));
+		model.savePlayPos("Main Show", "Main Show 1", 12000);
+		assertEquals(12000, mirror.getCurTimeMillis());
+	}
+
+	@Test
+	void testCopiesDownloadOnce() throws Exception {
+		byte[] audio = new byte[48 * 1024];
+		new Random(46).nextBytes(audio);
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", exchange -> {
+			exchange.sendResponseHeaders(200, audio.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(audio);
+			}
+		});
+		server.start();
+		Path dir = Files.createTempDirectory("dedup");
+		String base = "http://127.0.0.1:" + server.getAddress().getPort();
+		try (DownloadManager manager = DownloadManager.open(dir, 2, 2, 0, 0, 5000)) {
+			PodcastPlayerModel model = new PodcastPlayerModel();
+			model.setDownloadManager(manager);
+			addFeed(model, "Main Show", base + "/show/%d.mp3", 1, audio.length);
+			addFeed(model, "Network Feed", "https://op3.dev/e/" + base + "/show/%d.mp3", 1, audio.length);
+			addFeed(model, "Mirror", base + "/mirror/%d.mp3", 1, audio.length + 1);
+
+			Path file = model.downloadEpisode("Network Feed", "Network Feed 0").get(10, TimeUnit.SECONDS);
+			assertEquals(URI.create(base + "/show/0.mp3"),
+					model.getEnclosureLink(model.getEpisode("Network Feed", "Network Feed 0")));
+			Episode main = model.getEpisode("Main Show", "Main Show 0");
+			assertEquals(file.toUri(), model.getLocalFile(main));
+
+			// The mirror's feed gives the wrong size, so only its digest shows
+			// it is the same file.
+			Episode mirror = model.getEpisode("Mirror", "Mirror 0");
+			assertEquals(1, model.getSharedEnclosureCount());
+			model.downloadEpisode("Mirror", "Mirror 0").get(10, TimeUnit.SECONDS);
+			assertEquals(2, model.getSharedEnclosureCount());
+			assertNotNull(manager.getDigest(URI.create(base + "/mirror/0.mp3")));
+			model.savePlayPos("Mirror", "Mirror 0", 7000);
+			assertEquals(7000, main.getCurTimeMillis());
+		} finally {
+			server.stop(0);
+			try (Stream<Path> all = Files.walk(dir)) {
+				for (Path path : all.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+					Files.delete(path);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds a feed whose items link to the given pattern, numbered from 0.
+	 */
+	private static void addFeed(PodcastPlayerModel model, String title, String links, int count, long length)
+			throws IOException, URISyntaxException {
+		StringBuilder feed = new StringBuilder("<rss><channel><title>" + title + "</title>"
+				+ "<itunes:summary>Cross-posted episodes</itunes:summary>\n");
+		for (int i = 0; i < count; i++) {
+			feed.append("<item><title>" + title + " " + i + "</title>"
+					+ "<itunes:summary>Notes for episode " + i + "</itunes:summary>"
+					+ "<enclosure url=\"" + String.format(links, i) + "\""
+					+ (length > 0 ? " length=\"" + (length + i) + "\"" : "") + " type=\"audio/mpeg\"/></item>\n");
+		}
+		feed.append("</channel></rss>");
+		model.addPodcast("https://feeds.example.com/" + title.replace(' ', '-') + ".xml",
+				ByteBuffer.wrap(feed.toString().getBytes(StandardCharsets.ISO_8859_1)));
+	}
+}
@@ -0,0 +1,147 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import model.EpisodeCatalog;
+import model.PodcastPlayerModel.Episode;
+import model.PodcastPlayerModel.Podcast;
+
+/**
+ * Checks that Episodes read back from a memory-mapped catalog match what
+ * was written, that writing over an open catalog leaves it readable, and
+ * that a large catalog stays off the heap.
+ *
+ * @author Todd Noecker
+ */
+public class EpisodeCatalogTest {
+
+	@Test
+	void testRoundTrip() throws IOException {
+		Path file = Files.createTempFile("episodes", ".cat");
+		List<Episode> eps = new ArrayList<Episode>();
+		for (int i = 0; i < 100; i++) {
+			eps.add(new Episode("Episode " + i, "About episode " + i, URI.create("https://a.example/" + i + ".mp3"),
+					null, i));
+		}
+		eps.add(new Episode("No Link", null, null, null, 100));
+
+		try (EpisodeCatalog catalog = EpisodeCatalog.write(file, eps)) {
+			assertEquals(101, catalog.size());
+			List<Episode> read = catalog.episodes(null);
+			for (int i = 0; i < 100; i++) {
+				assertEquals("Episode " + i, read.get(i).getTitle());
+				assertEquals("About episode " + i, read.get(i).getDescription());
+				assertEquals(URI.create("https://a.example/" + i + ".mp3"), read.get(i).getLink());
+			}
+			Episode found = catalog.find("Episode 42", null);
+			assertEquals("About episode 42", found.getDescription());
+			assertNull(catalog.find("Episode 4200", null));
+			assertNull(catalog.find("No Link", null).getLink());
+
+			found.setCurTimeMillis(90000);
+		}
+		try (EpisodeCatalog catalog = EpisodeCatalog.open(file)) {
+			assertEquals(90000, catalog.find("Episode 42", null).getCurTimeMillis());
+			assertEquals(-1, catalog.find("Episode 41", null).getCurTimeMillis());
+		}
+		Files.delete(file);
+	}
+
+	@Test
+	void testPodcastInCatalog() throws IOException, URISyntaxException {
+		StringBuilder feed = new StringBuilder("<rss><channel><title>Catalog Show</title>"
+				+ "<itunes:summary>A show</itunes:summary><image><url>https://a.example/art.jpg</url></image>");
+		for (int i = 0; i < 20; i++) {
+			feed.append("<item><title>Show " + i + "</title><itunes:summary>Notes " + i + "</itunes:summary>"
+					+ "<enclosure url=\"https://a.example/" + i + ".mp3\" /></item>");
+		}
+		feed.append("</channel></rss>");
+		Podcast pod = new Podcast("https://a.example/feed.xml", feed.toString());
+		Path file = Files.createTempFile("podcast", ".cat");
+		pod.moveToCatalog(file);
+
+		assertEquals(20, pod.getEpisodes().size());
+		assertEquals("Show 0", pod.getEpisodes().get(0).getTitle());
+		assertEquals("Notes 7", pod.getEpisode("Show 7").getDescription());
+		assertEquals(pod, pod.getEpisode("Show 7").getPodcast());
+		Files.delete(file);
+	}
+
+	@Test
+	void testWriteOverOpenCatalog() throws IOException {
+		Path dir = Files.createTempDirectory("catalogs");
+		Path file = dir.resolve("show.cat");
+		List<Episode> first = new ArrayList<Episode>();
+		List<Episode> second = new ArrayList<Episode>();
+		for (int i = 0; i < 50; i++) {
+			first.add(new Episode("First " + i, "Old notes " + i, null, null, i));
+			second.add(new Episode("Second " + i, "New notes " + i, null, null, i));
+		}
+		try (EpisodeCatalog open = EpisodeCatalog.write(file, first);
+				EpisodeCatalog replaced = EpisodeCatalog.write(file, second)) {
+			// The open catalog still reads the file it mapped.
+			assertEquals("Old notes 49", open.find("First 49", null).getDescription());
+			assertEquals("New notes 49", replaced.find("Second 49", null).getDescription());
+			assertNull(replaced.find("First 49", null));
+		}
+		try (EpisodeCatalog reopened = EpisodeCatalog.open(file)) {
+			assertEquals(50, reopened.size());
+		}
+		// Nothing is left beside the catalog.
+		try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+			assertEquals(1, files.count());
+		}
+		Files.delete(file);
+		Files.delete(dir);
+	}
+
+	@Test
+	void testHeapStaysFlat() throws IOException {
+		int n = 100000;
+		Path file = Files.createTempFile("large", ".cat");
+		long empty = usedHeap();
+		List<Episode> eps = new ArrayList<Episode>();
+		for (int i = 0; i < n; i++) {
+			eps.add(new Episode("Archive Episode " + i, "Show notes for archive episode number " + i
+					+ " with a few more words to make it a realistic length.", URI.create("https://a.example/" + i),
+					null, i));
+		}
+		long heapSize = usedHeap() - empty;
+		EpisodeCatalog.write(file, eps).close();
+		eps = null;
+
+		long start = usedHeap();
+		try (EpisodeCatalog catalog = EpisodeCatalog.open(file)) {
+			int seen = 0;
+			for (Episode ep : catalog.episodes(null)) {
+				if (ep.getTitle() != null) {
+					seen++;
+				}
+			}
+			long catalogSize = usedHeap() - start;
+			System.out.println("On-heap episodes: " + heapSize / 1024 + " KB");
+			System.out.println("Catalog episodes: " + Math.max(catalogSize, 0) / 1024 + " KB");
+			assertEquals(n, seen);
+			assertTrue(catalogSize < heapSize / 4);
+		}
+		Files.delete(file);
+	}
+
+	private static long usedHeap() {
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+}
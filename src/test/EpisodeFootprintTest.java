@@ -0,0 +1,100 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import model.PodcastPlayerModel;
+import model.PodcastPlayerModel.Episode;
+
+/**
+ * Compares the bytes Episodes store in the default storage against
+ * compact storage, and checks that compact storage is set per model.
+ *
+ * @author Todd Noecker
+ */
+public class EpisodeFootprintTest {
+
+	private static final int EPISODES = 500;
+	private static final String[] WORDS = { "economy", "interview", "the", "market", "and", "history", "science",
+			"episode", "guest", "today", "we", "talk", "about", "with", "money", "planet", "story", "week" };
+
+	@Test
+	void testCompactRoundTrip() {
+		String desc = makeDescription(new Random(7), 3000);
+		Episode ep = new Episode("Day of the Debt", desc, URI.create("https://example.com/a.mp3"), null, 0, true);
+		assertEquals("Day of the Debt", ep.getTitle());
+		assertEquals(desc, ep.getDescription());
+		assertEquals(URI.create("https://example.com/a.mp3"), ep.getLink());
+		assertEquals(-1, ep.getCurTimeMillis());
+	}
+
+	@Test
+	void testCompactStorageIsPerModel() throws Exception {
+		String feed = "<rss><channel><title>Packed</title><itunes:summary>A show</itunes:summary>"
+				+ "<item><title>One</title><itunes:summary>" + makeDescription(new Random(3), 2000)
+				+ "</itunes:summary><enclosure url=\"https://cdn.example.com/one.mp3\"/></item></channel></rss>";
+		PodcastPlayerModel compact = new PodcastPlayerModel();
+		PodcastPlayerModel plain = new PodcastPlayerModel();
+		compact.setCompactStorage(true);
+		for (PodcastPlayerModel model : new PodcastPlayerModel[] { compact, plain }) {
+			model.addPodcast("https://feeds.example.com/packed.xml",
+					ByteBuffer.wrap(feed.getBytes(StandardCharsets.ISO_8859_1)));
+		}
+		assertTrue(compact.getPodcast("Packed").isCompactStorage());
+		assertFalse(plain.getPodcast("Packed").isCompactStorage());
+		assertEquals(plain.getEpisode("Packed", "One").getDescription(),
+				compact.getEpisode("Packed", "One").getDescription());
+	}
+
+	@Test
+	void testHeapFootprint() throws Exception {
+		// The model's estimate counts the bytes each Episode stores, so it
+		// does not move with the collector the way heap readings do.
+		Random rand = new Random(42);
+		StringBuilder feed = new StringBuilder(
+				"<rss><channel><title>Notes</title><itunes:summary>A show</itunes:summary>");
+		for (int i = 0; i < EPISODES; i++) {
+			feed.append("<item><title>Episode " + i + "</title><itunes:summary>")
+					.append(makeDescription(rand, 1500 + rand.nextInt(2000)))
+					.append("</itunes:summary><enclosure url=\"https://cdn.example.com/ep" + i + ".mp3\"/></item>");
+		}
+		feed.append("</channel></rss>");
+		Path dir = Files.createTempDirectory("footprint");
+		long[] bytes = new long[2];
+		for (int pass = 0; pass < 2; pass++) {
+			PodcastPlayerModel model = new PodcastPlayerModel();
+			model.setCompactStorage(pass == 1);
+			model.setResidency(dir.resolve("episodes" + pass).toString(), 0);
+			model.addPodcast("https://feeds.example.com/notes.xml",
+					ByteBuffer.wrap(feed.toString().getBytes(StandardCharsets.ISO_8859_1)));
+			assertEquals(EPISODES, model.getPodcast("Notes").getEpisodes().size());
+			bytes[pass] = model.getResidentBytes();
+			model.setResidency(null, 0);
+		}
+		try (Stream<Path> files = Files.walk(dir)) {
+			for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.delete(file);
+			}
+		}
+		assertTrue(bytes[1] * 2 < bytes[0], "Compact " + bytes[1] + " bytes, default " + bytes[0] + " bytes");
+	}
+
+	private static String makeDescription(Random rand, int len) {
+		StringBuilder build = new StringBuilder();
+		while (build.length() < len) {
+			build.append(WORDS[rand.nextInt(WORDS.length)]).append(' ');
+		}
+		return build.toString();
+	}
+}
@@ -0,0 +1,268 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+import model.EpisodeFilter;
+import model.EpisodeOrder;
+import model.EpisodePage;
+import model.FeedBudget;
+import model.PodcastPlayerModel.Episode;
+import model.PodcastPlayerModel.Podcast;
+
+/**
+ * Checks that Episode pages are stable, filtered, and cost only the
+ * Episodes they hold.
+ *
+ * @author Todd Noecker
+ */
+public class EpisodePagingTest {
+
+	private static final String URL = "https://feeds.example.com/paging.xml";
+	private static final long DAY = 86400000L;
+	private final ForkJoinPool serial = new ForkJoinPool(1);
+
+	@Test
+	void testPagesWalkEveryEpisode() throws IOException, URISyntaxException {
+		Podcast podcast = new Podcast(URL, makeFeed(0, 250), FeedBudget.DEFAULT, serial);
+		List<String> titles = walk(podcast, EpisodeFilter.ALL, 40);
+		assertEquals(250, titles.size());
+		assertEquals("Episode 0", titles.get(0));
+		assertEquals("Episode 249", titles.get(249));
+
+		EpisodePage last = podcast.getEpisodes(null, 250);
+		assertFalse(last.hasMore());
+		assertNull(last.getNextCursor());
+		assertThrows(IllegalArgumentException.class, () -> podcast.getEpisodes("bogus", 10));
+		assertThrows(IllegalArgumentException.class, () -> podcast.getEpisodes(null, 0));
+	}
+
+	@Test
+	void testCursorSurvivesRefresh() throws IOException, URISyntaxException {
+		Podcast podcast = new Podcast(URL, makeFeed(0, 100), FeedBudget.DEFAULT, serial);
+		EpisodePage first = podcast.getEpisodes(null, 10);
+		assertEquals("Episode 9", first.getEpisodes().get(9).getTitle());
+
+		// New Episodes arrive ahead of the list, so the next page carries on
+		// where the first left off.
+		assertEquals(3, podcast.refresh(makeFeed(-3, 100), 5).size());
+		EpisodePage second = podcast.getEpisodes(first.getNextCursor(), 10);
+		assertEquals("Episode 10", second.getEpisodes().get(0).getTitle());
+		assertEquals("Episode -3", podcast.getEpisodes(null, 1).getEpisodes().get(0).getTitle());
+	}
+
+	@Test
+	void testFilters() throws IOException, URISyntaxException {
+		Podcast podcast = new Podcast(URL, makeFeed(0, 100), FeedBudget.DEFAULT, serial);
+		assertTrue(podcast.getEpisodes(null, 10, EpisodeFilter.IN_PROGRESS).getEpisodes().isEmpty());
+		podcast.getEpisode("Episode 5").setCurTimeMillis(1000);
+		podcast.getEpisode("Episode 50").setCurTimeMillis(2000);
+		podcast.getEpisode("Episode 70").setCurTimeMillis(3000);
+
+		List<String> started = walk(podcast, EpisodeFilter.IN_PROGRESS, 2);
+		assertEquals(List.of("Episode 5", "Episode 50", "Episode 70"), started);
+		List<String> unplayed = walk(podcast, EpisodeFilter.UNPLAYED, 7);
+		assertEquals(97, unplayed.size());
+		assertFalse(unplayed.contains("Episode 50"));
+
+		podcast.getEpisode("Episode 50").setCurTimeMillis(-1);
+		assertEquals(List.of("Episode 5", "Episode 70"), walk(podcast, EpisodeFilter.IN_PROGRESS, 10));
+	}
+
+	@Test
+	void testCatalogPages() throws IOException, URISyntaxException {
+		Path dir = Files.createTempDirectory("paging");
+		Path file = dir.resolve("show.cat");
+		Podcast podcast = new Podcast(URL, makeFeed(0, 300), FeedBudget.DEFAULT, serial);
+		podcast.getEpisode("Episode 20").setCurTimeMillis(500);
+		podcast.moveToCatalog(file);
+
+		List<String> titles = walk(podcast, EpisodeFilter.ALL, 64);
+		assertEquals(300, titles.size());
+		assertEquals("Episode 299", titles.get(299));
+		assertEquals(List.of("Episode 20"), walk(podcast, EpisodeFilter.IN_PROGRESS, 10));
+		podcast.getEpisode("Episode 200").setCurTimeMillis(700);
+		assertEquals(List.of("Episode 20", "Episode 200"), walk(podcast, EpisodeFilter.IN_PROGRESS, 10));
+
+		EpisodePage first = podcast.getEpisodes(null, 50);
+		podcast.refresh(makeFeed(-2, 300), 5);
+		assertEquals("Episode 50", podcast.getEpisodes(first.getNextCursor(), 1).getEpisodes().get(0).getTitle());
+		assertEquals(302, walk(podcast, EpisodeFilter.ALL, 100).size());
+		Files.delete(file);
+		Files.delete(dir);
+	}
+
+	@Test
+	void testNewestOrder() throws IOException, URISyntaxException {
+		Podcast podcast = new Podcast(URL, makeDatedFeed(0, 60), FeedBudget.DEFAULT, serial);
+		Episode first = podcast.getEpisode("Episode 1");
+		assertEquals(Instant.parse("2021-03-01T09:00:00Z").toEpochMilli() - DAY, first.getPublishedMillis());
+		assertEquals(1800 + 1, first.getDurationSeconds());
+		assertEquals("dated-1", first.getGuid());
+		assertEquals(1000001, first.getEnclosureLength());
+		assertEquals("audio/mpeg", first.getEnclosureType());
+
+		List<String> expected = newestFirst(podcast);
+		assertEquals(expected, walk(podcast, EpisodeFilter.ALL, EpisodeOrder.NEWEST, 7));
+		// Undated Episodes come last, in epNum order.
+		assertEquals(List.of("Episode 10", "Episode 20", "Episode 30", "Episode 40", "Episode 50"),
+				expected.subList(55, 60));
+
+		long since = podcast.getEpisode("Episode 5").getPublishedMillis();
+		List<Episode> newer = podcast.getEpisodesSince(since);
+		assertEquals(expected.subList(0, newer.size()), titles(newer));
+		assertTrue(newer.size() > 0 && newer.size() < 10);
+
+		// A refresh adds Episodes without disturbing a cursor part way in.
+		EpisodePage page = podcast.getEpisodes(null, 30, EpisodeFilter.ALL, EpisodeOrder.NEWEST);
+		podcast.refresh(makeDatedFeed(-2, 60), 5);
+		EpisodePage next = podcast.getEpisodes(page.getNextCursor(), 30, EpisodeFilter.ALL, EpisodeOrder.NEWEST);
+		assertEquals(expected.subList(30, 60), titles(next.getEpisodes()));
+		assertEquals("Episode -2", podcast.getEpisodes(null, 1, EpisodeFilter.ALL, EpisodeOrder.NEWEST)
+				.getEpisodes().get(0).getTitle());
+		assertThrows(IllegalArgumentException.class,
+				() -> podcast.getEpisodes(page.getNextCursor(), 10, EpisodeFilter.ALL, EpisodeOrder.FEED));
+
+		// The catalog keeps the details and the order.
+		Path dir = Files.createTempDirectory("paging");
+		Path file = dir.resolve("show.cat");
+		expected = newestFirst(podcast);
+		podcast.moveToCatalog(file);
+		assertEquals(expected, walk(podcast, EpisodeFilter.ALL, EpisodeOrder.NEWEST, 25));
+		assertEquals("audio/mpeg", podcast.getEpisode("Episode 1").getEnclosureType());
+		assertEquals(1801, podcast.getEpisode("Episode 1").getDurationSeconds());
+		Files.delete(file);
+		Files.delete(dir);
+	}
+
+	@Test
+	void testPageCostDoesNotGrowWithPosition() throws IOException, URISyntaxException {
+		Podcast podcast = new Podcast(URL, makeFeed(0, 20000), FeedBudget.DEFAULT, serial);
+		String deep = podcast.getEpisodes(null, 19900).getNextCursor();
+
+		// Bytes allocated are counted, so unlike a clock reading they do not
+		// depend on what else the machine is doing.
+		long listBytes = Long.MAX_VALUE;
+		long firstBytes = Long.MAX_VALUE;
+		long deepBytes = Long.MAX_VALUE;
+		for (int round = 0; round < 5; round++) {
+			long before = allocated();
+			podcast.getEpisodes();
+			listBytes = Math.min(listBytes, allocated() - before);
+
+			before = allocated();
+			podcast.getEpisodes(null, 50);
+			firstBytes = Math.min(firstBytes, allocated() - before);
+
+			before = allocated();
+			EpisodePage page = podcast.getEpisodes(deep, 50);
+			deepBytes = Math.min(deepBytes, allocated() - before);
+			assertEquals("Episode 19900", page.getEpisodes().get(0).getTitle());
+		}
+		assertTrue(deepBytes < firstBytes * 2);
+		assertTrue(deepBytes * 10 < listBytes);
+	}
+
+	/**
+	 * Collects the titles of every page of a filter, in order.
+	 */
+	private static List<String> walk(Podcast podcast, EpisodeFilter filter, int limit) {
+		return walk(podcast, filter, EpisodeOrder.FEED, limit);
+	}
+
+	private static List<String> walk(Podcast podcast, EpisodeFilter filter, EpisodeOrder order, int limit) {
+		List<String> titles = new ArrayList<String>();
+		String cursor = null;
+		do {
+			EpisodePage page = podcast.getEpisodes(cursor, limit, filter, order);
+			for (Episode ep : page.getEpisodes()) {
+				titles.add(ep.getTitle());
+			}
+			cursor = page.getNextCursor();
+		} while (cursor != null);
+		return titles;
+	}
+
+	/**
+	 * Reads the bytes allocated so far by this thread, where HotSpot
+	 * reports it.
+	 */
+	private static long allocated() {
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Sorts a Podcast's titles newest first, the slow way.
+	 */
+	private static List<String> newestFirst(Podcast podcast) {
+		List<Episode> sorted = new ArrayList<Episode>(podcast.getEpisodes());
+		sorted.sort(Comparator.comparingLong(Episode::getPublishedMillis).reversed()
+				.thenComparingInt(Episode::getEpNum));
+		return titles(sorted);
+	}
+
+	private static List<String> titles(List<Episode> episodes) {
+		List<String> titles = new ArrayList<String>();
+		for (Episode ep : episodes) {
+			titles.add(ep.getTitle());
+		}
+		return titles;
+	}
+
+	/**
+	 * Builds a feed of items first..count-1 whose dates mostly fall in feed
+	 * order, with some out of place, some sharing a date and some undated.
+	 */
+	private static String makeDatedFeed(int first, int count) {
+		long base = Instant.parse("2021-03-01T09:00:00Z").toEpochMilli();
+		StringBuilder feed = new StringBuilder("<rss><channel><title>Dated Show</title>"
+				+ "<itunes:summary>A show with dates</itunes:summary>\n");
+		for (int i = first; i < count; i++) {
+			feed.append("<item><title>Episode " + i + "</title><guid isPermaLink=\"false\">dated-" + i + "</guid>");
+			if (i % 10 != 0 || i < 10) {
+				long days = i % 7 == 3 ? i + 9 : i % 11 == 4 ? i - 1 : i;
+				String date = DateTimeFormatter.RFC_1123_DATE_TIME
+						.format(Instant.ofEpochMilli(base - days * DAY).atOffset(ZoneOffset.ofHours(-5)));
+				feed.append("<pubDate>" + date + "</pubDate>");
+			}
+			feed.append("<itunes:duration>" + (30 + i / 60) + ":" + String.format("%02d", (i + 60) % 60)
+					+ "</itunes:duration><enclosure url=\"https://cdn.example.com/dated/" + i + ".mp3\" length=\""
+					+ (1000000 + i) + "\" type=\"audio/mpeg\"/></item>\n");
+		}
+		feed.append("</channel></rss>");
+		return feed.toString();
+	}
+
+	/**
+	 * Builds a feed holding items first..count-1, newest (lowest) first.
+	 */
+	private static String makeFeed(int first, int count) {
+		StringBuilder feed = new StringBuilder("<rss><channel><title>Paging Show</title>"
+				+ "<itunes:summary>A show with a long back catalog</itunes:summary>\n");
+		for (int i = first; i < count; i++) {
+			feed.append("<item><title>Episode " + i + "</title><guid>paging-" + i + "</guid>"
+					+ "<itunes:summary>Notes for episode " + i + "</itunes:summary>"
+					+ "<enclosure url=\"https://cdn.example.com/paging/" + i + ".mp3\" type=\"audio/mpeg\"/></item>\n");
+		}
+		feed.append("</channel></rss>");
+		return feed.toString();
+	}
+}
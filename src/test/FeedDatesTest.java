@@ -0,0 +1,234 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import model.FeedDates;
+
+/**
+ * Checks the feed date parser against a corpus of the date forms feeds
+ * really use, against java.time for well-formed dates, and for the work
+ * it does per date.
+ *
+ * @author Todd Noecker
+ */
+public class FeedDatesTest {
+
+	/**
+	 * Date text as found in feeds, and the instant it means, or null when
+	 * it is not a date.
+	 */
+	private static final String[][] CORPUS = {
+			// As RSS asks for.
+			{ "Tue, 05 Jan 2021 10:00:00 GMT", "2021-01-05T10:00:00Z" },
+			{ "Tue, 05 Jan 2021 10:00:00 +0000", "2021-01-05T10:00:00Z" },
+			{ "Tue, 05 Jan 2021 10:00:00 -0500", "2021-01-05T15:00:00Z" },
+			{ "Tue, 05 Jan 2021 10:00:00 EST", "2021-01-05T15:00:00Z" },
+			{ "Sat, 03 Jul 2021 23:30:00 PDT", "2021-07-04T06:30:00Z" },
+			{ "Mon, 29 Feb 2016 12:00:00 UT", "2016-02-29T12:00:00Z" },
+			// Day names missing, long or without a comma.
+			{ "05 Jan 2021 10:00:00 GMT", "2021-01-05T10:00:00Z" },
+			{ "Tuesday, 05 Jan 2021 10:00:00 GMT", "2021-01-05T10:00:00Z" },
+			{ "Tue 05 Jan 2021 10:00:00 GMT", "2021-01-05T10:00:00Z" },
+			{ "Tue,05 Jan 2021 10:00:00 GMT", "2021-01-05T10:00:00Z" },
+			{ "Wed, 05 Jan 2021 10:00:00 GMT", "2021-01-05T10:00:00Z" },
+			// Single-digit days, long and odd month names, lower case.
+			{ "Tue, 5 Jan 2021 10:00:00 GMT", "2021-01-05T10:00:00Z" },
+			{ "Tue, 05 January 2021 10:00:00 GMT", "2021-01-05T10:00:00Z" },
+			{ "Fri, 17 Sept 2021 08:15:00 GMT", "2021-09-17T08:15:00Z" },
+			{ "tue, 05 jan 2021 10:00:00 gmt", "2021-01-05T10:00:00Z" },
+			{ "TUE, 05 JAN 2021 10:00:00 GMT", "2021-01-05T10:00:00Z" },
+			// Month first, dashes, two-digit years.
+			{ "Tue, Jan 05 2021 10:00:00 GMT", "2021-01-05T10:00:00Z" },
+			{ "January 5, 2021 10:00 AM", "2021-01-05T10:00:00Z" },
+			{ "Tue, 05-Jan-2021 10:00:00 GMT", "2021-01-05T10:00:00Z" },
+			{ "Tue, 05 Jan 21 10:00:00 GMT", "2021-01-05T10:00:00Z" },
+			{ "Thu, 05 Jan 99 10:00:00 GMT", "1999-01-05T10:00:00Z" },
+			// Missing seconds, times and zones.
+			{ "Tue, 05 Jan 2021 10:00 GMT", "2021-01-05T10:00:00Z" },
+			{ "Tue, 05 Jan 2021 10:00:00", "2021-01-05T10:00:00Z" },
+			{ "Tue, 05 Jan 2021", "2021-01-05T00:00:00Z" },
+			{ "Tue, 05 Jan 2021 9:05:00 GMT", "2021-01-05T09:05:00Z" },
+			// Twelve-hour clocks.
+			{ "Tue, 05 Jan 2021 10:00 PM GMT", "2021-01-05T22:00:00Z" },
+			{ "Tue, 05 Jan 2021 12:30 am", "2021-01-05T00:30:00Z" },
+			// Odd zones.
+			{ "Tue, 05 Jan 2021 10:00:00 +05:30", "2021-01-05T04:30:00Z" },
+			{ "Tue, 05 Jan 2021 10:00:00 +0000 (UTC)", "2021-01-05T10:00:00Z" },
+			{ "Tue, 05 Jan 2021 10:00:00 GMT+0200", "2021-01-05T08:00:00Z" },
+			{ "Tue, 05 Jan 2021 10:00:00 UTC-5", "2021-01-05T15:00:00Z" },
+			{ "Tue, 05 Jan 2021 10:00:00 Z", "2021-01-05T10:00:00Z" },
+			{ "Tue, 05 Jan 2021 10:00:00 CEST", "2021-01-05T08:00:00Z" },
+			{ "Tue, 05 Jan 2021 10:00:00 XYZ", "2021-01-05T10:00:00Z" },
+			{ "Tue, 05 Jan 2021 10:00:00.250 GMT", "2021-01-05T10:00:00Z" },
+			// White space and CDATA from the feed.
+			{ "\n\t  Tue, 05 Jan 2021 10:00:00 GMT \n", "2021-01-05T10:00:00Z" },
+			{ "<![CDATA[Tue, 05 Jan 2021 10:00:00 GMT]]>", "2021-01-05T10:00:00Z" },
+			{ "Tue,  05  Jan  2021  10:00:00  GMT", "2021-01-05T10:00:00Z" },
+			// RFC 3339 and its relatives.
+			{ "2021-01-05T10:00:00Z", "2021-01-05T10:00:00Z" },
+			{ "2021-01-05T10:00:00.123+01:00", "2021-01-05T09:00:00Z" },
+			{ "2021-01-05T10:00:00-0800", "2021-01-05T18:00:00Z" },
+			{ "2021-01-05 10:00:00", "2021-01-05T10:00:00Z" },
+			{ "2021-01-05T10:00Z", "2021-01-05T10:00:00Z" },
+			{ "2021-01-05", "2021-01-05T00:00:00Z" },
+			{ "2016-12-31T23:59:60Z", "2016-12-31T23:59:59Z" },
+			{ "2021-01-05T24:00:00Z", "2021-01-06T00:00:00Z" },
+			// Not dates at all.
+			{ "", null },
+			{ "   ", null },
+			{ "yesterday", null },
+			{ "Tue, 30 Feb 2021 10:00:00 GMT", null },
+			{ "Tue, 29 Feb 2021 10:00:00 GMT", null },
+			{ "Tue, 05 Foo 2021 10:00:00 GMT", null },
+			{ "Tue, 05 Jan 2021 25:00:00 GMT", null },
+			{ "Tue, 05 Jan 2021 10:61:00 GMT", null },
+			{ "Tue, 05 Jan 2021 10:00:00 +9900", null },
+			{ "Tue, 05 Jan 2021 1000 GMT", null },
+			{ "Tue, 05 Jan 2021 13:00 PM", null },
+			{ "Tue, 05 Jan 202 10:00:00 GMT", null },
+			{ "2021-13-05T10:00:00Z", null },
+			{ "2021-01-05X10:00:00Z", null },
+			{ "2021-1-5", null },
+			{ "1609840800", null },
+			{ "Thu, 01 Jan 1970 00:00:00 GMT", null },
+	};
+
+	@Test
+	void testCorpus() {
+		for (String[] entry : CORPUS) {
+			long expected = entry[1] == null ? FeedDates.UNKNOWN : Instant.parse(entry[1]).toEpochMilli();
+			assertEquals(expected, FeedDates.parseDate(entry[0]), "For \"" + entry[0] + "\"");
+		}
+		// Parsing part of a larger text reads only that part.
+		String item = "<pubDate>Tue, 05 Jan 2021 10:00:00 GMT</pubDate>";
+		assertEquals(Instant.parse("2021-01-05T10:00:00Z").toEpochMilli(), FeedDates.parseDate(item, 9, 38));
+	}
+
+	@Test
+	void testMatchesJavaTime() {
+		Random rand = new Random(36);
+		for (int i = 0; i < 20000; i++) {
+			ZonedDateTime date = ZonedDateTime.ofInstant(Instant.ofEpochSecond(rand.nextInt(2000000000)),
+					ZoneOffset.ofHoursMinutes(rand.nextInt(25) - 12, 0));
+			String rfc = DateTimeFormatter.RFC_1123_DATE_TIME.format(date);
+			String iso = DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(date);
+			long expected = date.toInstant().toEpochMilli();
+			assertEquals(expected, FeedDates.parseDate(rfc), rfc);
+			assertEquals(expected, FeedDates.parseDate(iso), iso);
+		}
+	}
+
+	@Test
+	void testDurations() {
+		assertEquals(3600, duration("3600"));
+		assertEquals(1530, duration("25:30"));
+		assertEquals(3723, duration("1:02:03"));
+		assertEquals(3723, duration("01:02:03.500"));
+		assertEquals(90 * 60, duration("90:00"));
+		assertEquals(42, duration(" <![CDATA[42]]> "));
+		assertEquals(0, duration(""));
+		assertEquals(0, duration("45 min"));
+		assertEquals(0, duration("1:75:00"));
+		assertEquals(0, duration("1:2:3:4"));
+		assertEquals(0, duration("12345678901"));
+	}
+
+	@Test
+	void testWorkAndAllocation() {
+		String[] dates = new String[1000];
+		Random rand = new Random(7);
+		for (int i = 0; i < dates.length; i++) {
+			ZonedDateTime date = ZonedDateTime.ofInstant(Instant.ofEpochSecond(1000000000 + rand.nextInt(700000000)),
+					ZoneOffset.UTC);
+			dates[i] = DateTimeFormatter.RFC_1123_DATE_TIME.format(date);
+		}
+
+		// Work is counted, in chars read and bytes allocated, so unlike a
+		// clock reading it does not depend on what else the machine is doing.
+		long check = 0;
+		long chars = 0;
+		AtomicLong reads = new AtomicLong();
+		for (String date : dates) {
+			chars += date.length();
+			CountingChars counted = new CountingChars(date, reads);
+			check += FeedDates.parseDate(counted, 0, counted.length());
+			check -= ZonedDateTime.parse(date, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+		}
+		assertEquals(0, check);
+		// Trimming, checking the form and reading the fields each pass over
+		// the text once.
+		assertTrue(reads.get() <= 4 * chars, "Dates should be read in a few passes");
+
+		long formatterBytes = Long.MAX_VALUE;
+		long parserBytes = Long.MAX_VALUE;
+		for (int round = 0; round < 3; round++) {
+			long before = allocated();
+			for (String date : dates) {
+				check += ZonedDateTime.parse(date, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+			}
+			formatterBytes = Math.min(formatterBytes, allocated() - before);
+
+			before = allocated();
+			for (String date : dates) {
+				check -= FeedDates.parseDate(date, 0, date.length());
+			}
+			parserBytes = Math.min(parserBytes, allocated() - before);
+		}
+		assertEquals(0, check);
+		assertTrue(parserBytes < dates.length, "Parsing should not allocate");
+		assertTrue(formatterBytes > 100L * dates.length);
+	}
+
+	private static int duration(String text) {
+		return FeedDates.parseDuration(text, 0, text.length());
+	}
+
+	private static long allocated() {
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Counts every char read through it.
+	 */
+	private static final class CountingChars implements CharSequence {
+		private final String text;
+		private final AtomicLong reads;
+
+		CountingChars(String text, AtomicLong reads) {
+			this.text = text;
+			this.reads = reads;
+		}
+
+		@Override
+		public int length() {
+			return text.length();
+		}
+
+		@Override
+		public char charAt(int index) {
+			reads.incrementAndGet();
+			return text.charAt(index);
+		}
+
+		@Override
+		public CharSequence subSequence(int from, int to) {
+			return new CountingChars(text.substring(from, to), reads);
+		}
+
+		@Override
+		public String toString() {
+			return text;
+		}
+	}
+}
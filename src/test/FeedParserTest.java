@@ -0,0 +1,210 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import model.FeedBudget;
+import model.PodcastPlayerModel.Podcast;
+
+/**
+ * Property tests for the RSS parser. Malformed and truncated feeds must
+ * never throw mid-parse, and the characters read must grow linearly with
+ * input.
+ *
+ * @author Todd Noecker
+ */
+public class FeedParserTest {
+
+	private static final String URL = "https://feeds.example.com/show.xml";
+
+	private final ForkJoinPool serial = new ForkJoinPool(1);
+
+	@Test
+	void testWellFormedFeed() throws IOException, URISyntaxException {
+		Podcast pod = new Podcast(URL, makeFeed(25, new Random(1)));
+		assertEquals("Fuzz Show", pod.getTitle());
+		assertEquals("https://img.example.com/art.jpg", pod.getImage().toString());
+		assertEquals(25, pod.getEpisodes().size());
+		assertEquals("Episode 0", pod.getEpisodes().get(0).getTitle());
+	}
+
+	@Test
+	void testTruncatedFeeds() {
+		String feed = makeFeed(40, new Random(2));
+		// Cut the feed at every few characters, including inside tags.
+		for (int cut = 0; cut < feed.length(); cut += 7) {
+			parseQuietly(feed.substring(0, cut));
+		}
+	}
+
+	@Test
+	void testMutatedFeeds() {
+		Random rand = new Random(3);
+		String[] junk = { "<", "</", "/>", "<item>", "</item>", "<enclosure", "url=\"", "\"", "<title>", "<link>",
+				"<image>", "<a href=\"", "\">", "![CDATA[", "]]>", "&amp;", "©" };
+		for (int round = 0; round < 2000; round++) {
+			StringBuilder feed = new StringBuilder(makeFeed(1 + rand.nextInt(10), rand));
+			int edits = 1 + rand.nextInt(8);
+			for (int i = 0; i < edits; i++) {
+				int at = rand.nextInt(feed.length() + 1);
+				switch (rand.nextInt(3)) {
+				case 0:
+					feed.insert(at, junk[rand.nextInt(junk.length)]);
+					break;
+				case 1:
+					feed.delete(at, Math.min(feed.length(), at + rand.nextInt(20)));
+					break;
+				default:
+					feed.setLength(at);
+				}
+			}
+			parseQuietly(feed.toString());
+		}
+	}
+
+	@Test
+	void testItemBudget() throws IOException, URISyntaxException {
+		FeedBudget budget = new FeedBudget(1 << 20, 10, 1000, 10000, 4096);
+		Podcast pod = new Podcast(URL, makeFeed(50, new Random(4)), budget);
+		assertEquals(10, pod.getEpisodes().size());
+	}
+
+	@Test
+	void testLinearInFeedSize() {
+		Random rand = new Random(5);
+		String small = makeFeed(500, rand);
+		String large = makeFeed(4000, rand);
+		assertLinear(small, large, 8);
+	}
+
+	@Test
+	void testLinearOnPathologicalInput() {
+		String[] patterns = { "<", "<item>", "<item><title>", "<enclosure", "<item><enclosure url=\"x",
+				"<title>x", "<a href=\"", "<item><link>" };
+		for (String pattern : patterns) {
+			String small = repeat(pattern, 20000);
+			String large = repeat(pattern, 160000);
+			assertLinear(small, large, 8);
+		}
+	}
+
+	/* ------------------------------------------------------------------------
+	 * ---------------------------HELPER METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Checks that parsing the large input reads no more than twice as many
+	 * characters, per character of input, as parsing the small input does.
+	 * Characters are counted rather than timed, so the check does not depend
+	 * on the machine or the JIT.
+	 */
+	private void assertLinear(String small, String large, int growth) {
+		long smallVisits = visits(small);
+		long largeVisits = visits(large);
+		assertTrue(largeVisits <= smallVisits * growth * 2,
+				"Characters read grew from " + smallVisits + " to " + largeVisits);
+	}
+
+	/**
+	 * Counts the characters the parser reads from a feed.
+	 */
+	private long visits(String feed) {
+		CountingChars counted = new CountingChars(feed, 0, feed.length(), new AtomicLong());
+		try {
+			new Podcast(URL, counted, FeedBudget.DEFAULT, serial);
+		} catch (IOException | URISyntaxException ex) {
+			// A malformed image or feed link is reported, not a parser failure.
+		} catch (RuntimeException ex) {
+			fail("Parser threw " + ex + " on input of length " + feed.length());
+		}
+		return counted.reads.get();
+	}
+
+	/**
+	 * Parses a feed, allowing the checked exceptions the constructor declares
+	 * but failing on anything thrown mid-parse.
+	 */
+	private void parseQuietly(String feed) {
+		try {
+			new Podcast(URL, feed);
+		} catch (IOException | URISyntaxException ex) {
+			// A malformed image or feed link is reported, not a parser failure.
+		} catch (RuntimeException ex) {
+			fail("Parser threw " + ex + " on input of length " + feed.length());
+		}
+	}
+
+	private static String makeFeed(int items, Random rand) {
+		StringBuilder feed = new StringBuilder("<?xml version=\"1.0\"?><rss><channel><title>Fuzz Show</title>"
+				+ "<image><url>https://img.example.com/art.jpg</url></image>"
+				+ "<itunes:summary>A show about &amp; fuzzing</itunes:summary>\n");
+		for (int i = 0; i < items; i++) {
+			feed.append("<item>\n<title>Episode " + i + "</title>\n");
+			if (rand.nextBoolean()) {
+				feed.append("<description><![CDATA[<p>Notes for " + i + " <a href=\"https://a.example/" + i
+						+ "\">link</a> more text</p>]]></description>\n");
+			} else {
+				feed.append("<itunes:summary>Summary &apos;" + i + "&apos;</itunes:summary>\n");
+			}
+			feed.append("<enclosure url=\"https://cdn.example.com/" + i + ".mp3\" length=\"1000\" type=\"audio/mpeg\"/>"
+					+ "\n</item>\n");
+		}
+		return feed.append("</channel></rss>").toString();
+	}
+
+	/**
+	 * A view of part of a String that counts every character read through it
+	 * or through any view taken of it.
+	 */
+	private static final class CountingChars implements CharSequence {
+		private final String text;
+		private final int start;
+		private final int end;
+		private final AtomicLong reads;
+
+		CountingChars(String text, int start, int end, AtomicLong reads) {
+			this.text = text;
+			this.start = start;
+			this.end = end;
+			this.reads = reads;
+		}
+
+		@Override
+		public int length() {
+			return end - start;
+		}
+
+		@Override
+		public char charAt(int index) {
+			reads.incrementAndGet();
+			return text.charAt(start + index);
+		}
+
+		@Override
+		public CharSequence subSequence(int from, int to) {
+			return new CountingChars(text, start + from, start + to, reads);
+		}
+
+		@Override
+		public String toString() {
+			reads.addAndGet(length());
+			return text.substring(start, end);
+		}
+	}
+
+	private static String repeat(String pattern, int times) {
+		StringBuilder build = new StringBuilder(pattern.length() * times);
+		for (int i = 0; i < times; i++) {
+			build.append(pattern);
+		}
+		return build.toString();
+	}
+}
@@ -0,0 +1,131 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import com.sun.net.httpserver.HttpServer;
+import model.PodcastPlayerModel;
+
+/**
+ * Checks that the model runs without JavaFX and can ingest and refresh
+ * many feeds at once.
+ *
+ * @author Todd Noecker
+ */
+public class HeadlessModelTest {
+
+	private volatile int newest = 0;
+
+	@Test
+	void testModelHasNoJavaFX() throws Exception {
+		URL codeSource = PodcastPlayerModel.class.getProtectionDomain().getCodeSource().getLocation();
+		Path modelDir = Paths.get(codeSource.toURI()).resolve("model");
+		if (Files.isDirectory(modelDir)) {
+			try (Stream<Path> files = Files.list(modelDir)) {
+				for (Path file : (Iterable<Path>) files::iterator) {
+					String bytes = new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1);
+					assertFalse(bytes.contains("javafx/"), file + " refers to JavaFX");
+				}
+			}
+		}
+
+		// Load the model where JavaFX can not be found and use it.
+		try (URLClassLoader noFX = new URLClassLoader(new URL[] { codeSource }, ClassLoader.getPlatformClassLoader()) {
+			@Override
+			protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+				if (name.startsWith("javafx.")) {
+					throw new ClassNotFoundException(name);
+				}
+				return super.loadClass(name, resolve);
+			}
+		}) {
+			Class<?> modelClass = noFX.loadClass("model.PodcastPlayerModel");
+			Object model = modelClass.getConstructor().newInstance();
+			modelClass.getMethod("addPodcast", String.class, ByteBuffer.class).invoke(model,
+					"https://feeds.example.com/0.xml", ByteBuffer.wrap(makeFeed(0, 0, 20)));
+			modelClass.getMethod("getEpisode", String.class, String.class).invoke(model, "Show 0", "Episode 3");
+			modelClass.getMethod("savePlayPos", long.class).invoke(model, 1234L);
+			ByteArrayOutputStream saved = new ByteArrayOutputStream();
+			modelClass.getMethod("storeModel", ObjectOutputStream.class).invoke(model, new ObjectOutputStream(saved));
+			assertTrue(saved.size() > 0);
+		}
+	}
+
+	@Test
+	void testBatchIngestAndRefresh() throws Exception {
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.setExecutor(Executors.newFixedThreadPool(8));
+		server.createContext("/feed/", exchange -> {
+			String path = exchange.getRequestURI().getPath();
+			int show = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1, path.indexOf(".xml")));
+			byte[] body = makeFeed(show, newest, 200);
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.start();
+		try {
+			List<String> feeds = new ArrayList<String>();
+			for (int i = 0; i < 300; i++) {
+				feeds.add("http://127.0.0.1:" + server.getAddress().getPort() + "/feed/" + i + ".xml");
+			}
+			PodcastPlayerModel model = new PodcastPlayerModel();
+			long start = System.currentTimeMillis();
+			model.addPodcasts(feeds, 16);
+			System.out.println("Ingested 300 feeds in " + (System.currentTimeMillis() - start) + " ms");
+			assertEquals(300, model.getLibrary().size());
+			assertEquals(200, model.getLibrary().get(0).getEpisodes().size());
+
+			newest = -2;
+			start = System.currentTimeMillis();
+			assertEquals(600, model.refreshLibrary(16));
+			System.out.println("Refreshed 300 feeds in " + (System.currentTimeMillis() - start) + " ms");
+			assertEquals(202, model.getLibrary().get(0).getEpisodes().size());
+
+			ByteArrayOutputStream saved = new ByteArrayOutputStream();
+			model.storeModel(new ObjectOutputStream(saved));
+			Path file = Files.createTempFile("headless", ".sav");
+			Files.write(file, saved.toByteArray());
+			PodcastPlayerModel loaded = model.loadModel(file.toString());
+			assertEquals(300, loaded.getLibrary().size());
+			assertEquals(0, loaded.refreshLibrary(16));
+			Files.delete(file);
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	/**
+	 * Builds the feed of one show holding items first..count-1, newest first.
+	 */
+	private static byte[] makeFeed(int show, int first, int count) {
+		StringBuilder feed = new StringBuilder("<rss><channel><title>Show " + show + "</title>"
+				+ "<itunes:summary>Batch show " + show + "</itunes:summary>\n");
+		for (int i = first; i < count; i++) {
+			feed.append("<item><title>Episode " + i + "</title><guid>show-" + show + "-" + i + "</guid>"
+					+ "<itunes:summary>Notes for episode " + i + "</itunes:summary>"
+					+ "<enclosure url=\"https://cdn.example.com/" + show + "/" + i + ".mp3\" type=\"audio/mpeg\"/>"
+					+ "</item>\n");
+		}
+		feed.append("</channel></rss>");
+		return feed.toString().getBytes(StandardCharsets.ISO_8859_1);
+	}
+}
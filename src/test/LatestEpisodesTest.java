@@ -0,0 +1,194 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import model.EpisodePage;
+import model.PodcastPlayerModel;
+import model.PodcastPlayerModel.Episode;
+import model.PodcastPlayerModel.Podcast;
+
+/**
+ * Checks the library timeline against a full sort of every Episode, across
+ * refreshes, and for the cost of its first page.
+ *
+ * @author Todd Noecker
+ */
+public class LatestEpisodesTest {
+
+	private static final long HOUR = 3600 * 1000L;
+	private static final long BASE = Instant.parse("2022-06-01T12:00:00Z").toEpochMilli();
+
+	/**
+	 * Sorts Episodes the way the timeline lists them.
+	 */
+	private static final Comparator<Episode> NEWEST_FIRST = Comparator
+			.comparingLong((Episode ep) -> -ep.getPublishedMillis())
+			.thenComparing((Episode ep) -> ep.getPodcast().getTitle())
+			.thenComparingInt(Episode::getEpNum);
+
+	@Test
+	void testMatchesFullSort() throws IOException, URISyntaxException {
+		PodcastPlayerModel model = new PodcastPlayerModel();
+		for (int show = 0; show < 40; show++) {
+			model.addPodcast("https://feeds.example.com/" + show + ".xml",
+					ByteBuffer.wrap(makeFeed(show, 0, 30).getBytes(StandardCharsets.ISO_8859_1)));
+		}
+		List<String> expected = sortAll(model);
+		assertEquals(40 * 30, expected.size());
+		for (int limit : new int[] { 1, 7, 50, 2000 }) {
+			assertEquals(expected, walk(model, limit), "limit " + limit);
+		}
+		// Undated Episodes close the list.
+		assertTrue(expected.get(expected.size() - 1).endsWith("Episode 20"));
+
+		assertThrows(IllegalArgumentException.class, () -> model.getLatestEpisodes("n:3", 10));
+		assertThrows(IllegalArgumentException.class, () -> model.getLatestEpisodes("t:x:1:Show 1", 10));
+		assertThrows(IllegalArgumentException.class, () -> model.getLatestEpisodes(null, 0));
+		assertEquals(0, new PodcastPlayerModel().getLatestEpisodes(null, 10).getEpisodes().size());
+	}
+
+	@Test
+	void testFollowsRefreshes() throws Exception {
+		Path dir = Files.createTempDirectory("latest");
+		PodcastPlayerModel model = new PodcastPlayerModel();
+		List<Path> files = new ArrayList<Path>();
+		for (int show = 0; show < 5; show++) {
+			Path file = dir.resolve(show + ".xml");
+			Files.writeString(file, makeFeed(show, 0, 20), StandardCharsets.ISO_8859_1);
+			files.add(file);
+			model.addPodcast(file.toUri().toString());
+		}
+		EpisodePage first = model.getLatestEpisodes(null, 10);
+		List<String> before = sortAll(model);
+
+		// Show 3 publishes two episodes newer than anything in the library.
+		Files.writeString(files.get(3), makeFeed(3, -2, 20), StandardCharsets.ISO_8859_1);
+		assertEquals(2, model.refreshPodcast("Show 3").size());
+		List<String> after = sortAll(model);
+		assertEquals(List.of("Show 3/Episode -2", "Show 3/Episode -1"), after.subList(0, 2));
+		assertEquals(after, walk(model, 9));
+
+		// A cursor from before the refresh goes on where it left off.
+		EpisodePage next = model.getLatestEpisodes(first.getNextCursor(), 10);
+		assertEquals(before.subList(10, 20), names(next.getEpisodes()));
+
+		// A Podcast loaded again under the same title replaces the old one.
+		Path moved = dir.resolve("1-moved.xml");
+		Files.writeString(moved, makeFeed(1, 0, 3), StandardCharsets.ISO_8859_1);
+		files.add(moved);
+		model.addPodcast(moved.toUri().toString());
+		assertEquals(sortAll(model), walk(model, 9));
+		assertEquals(4 * 20 + 2 + 3, sortAll(model).size());
+
+		for (Path file : files) {
+			Files.delete(file);
+		}
+		Files.delete(dir);
+	}
+
+	@Test
+	void testFirstPageCost() throws IOException, URISyntaxException {
+		PodcastPlayerModel model = new PodcastPlayerModel();
+		for (int show = 0; show < 300; show++) {
+			model.addPodcast("https://feeds.example.com/" + show + ".xml",
+					ByteBuffer.wrap(makeFeed(show, 0, 200).getBytes(StandardCharsets.ISO_8859_1)));
+		}
+		List<String> expected = sortAll(model).subList(0, 20);
+		assertEquals(expected, names(model.getLatestEpisodes(null, 20).getEpisodes()));
+
+		// Bytes allocated are counted, so unlike a clock reading they do not
+		// depend on what else the machine is doing.
+		long sortBytes = Long.MAX_VALUE;
+		long pageBytes = Long.MAX_VALUE;
+		for (int round = 0; round < 5; round++) {
+			long before = allocated();
+			List<String> sorted = sortAll(model);
+			sortBytes = Math.min(sortBytes, allocated() - before);
+			assertEquals(expected, sorted.subList(0, 20));
+
+			before = allocated();
+			EpisodePage page = model.getLatestEpisodes(null, 20);
+			pageBytes = Math.min(pageBytes, allocated() - before);
+			assertEquals(20, page.getEpisodes().size());
+		}
+		assertTrue(pageBytes * 50 < sortBytes);
+	}
+
+	/**
+	 * Reads the bytes allocated so far by this thread, where HotSpot
+	 * reports it.
+	 */
+	private static long allocated() {
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Lists every Episode in the library the naive way.
+	 */
+	private static List<String> sortAll(PodcastPlayerModel model) {
+		List<Episode> all = new ArrayList<Episode>();
+		for (Podcast podcast : model.getLibrary()) {
+			all.addAll(podcast.getEpisodes());
+		}
+		all.sort(NEWEST_FIRST);
+		return names(all);
+	}
+
+	private static List<String> walk(PodcastPlayerModel model, int limit) {
+		List<String> seen = new ArrayList<String>();
+		String cursor = null;
+		do {
+			EpisodePage page = model.getLatestEpisodes(cursor, limit);
+			seen.addAll(names(page.getEpisodes()));
+			cursor = page.getNextCursor();
+		} while (cursor != null);
+		return seen;
+	}
+
+	private static List<String> names(List<Episode> episodes) {
+		List<String> names = new ArrayList<String>();
+		for (Episode ep : episodes) {
+			names.add(ep.getPodcast().getTitle() + "/" + ep.getTitle());
+		}
+		return names;
+	}
+
+	/**
+	 * Builds the feed of one show holding items first..count-1, newest
+	 * first. Shows publish every few hours on their own schedules, so some
+	 * dates are shared between shows; every tenth item has no date.
+	 */
+	private static String makeFeed(int show, int first, int count) {
+		StringBuilder feed = new StringBuilder("<rss><channel><title>Show " + show + "</title>"
+				+ "<itunes:summary>Timeline show " + show + "</itunes:summary>\n");
+		for (int i = first; i < count; i++) {
+			feed.append("<item><title>Episode " + i + "</title><guid>show-" + show + "-" + i + "</guid>");
+			if (i % 10 != 0 || i <= 0) {
+				long hours = (long) i * (3 + show % 5) + show % 7;
+				feed.append("<pubDate>" + DateTimeFormatter.RFC_1123_DATE_TIME
+						.format(Instant.ofEpochMilli(BASE - hours * HOUR).atOffset(ZoneOffset.UTC)) + "</pubDate>");
+			}
+			feed.append("<enclosure url=\"https://cdn.example.com/" + show + "/" + i + ".mp3\"/></item>\n");
+		}
+		feed.append("</channel></rss>");
+		return feed.toString();
+	}
+}
@@ -0,0 +1,250 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import model.PodcastPlayerModel;
+import model.PodcastPlayerModel.Podcast;
+import server.LibraryServer;
+
+/**
+ * Checks the library service's endpoints, its ETags, how its snapshots
+ * follow changed Podcasts, and how many requests it keeps up with.
+ *
+ * @author Todd Noecker
+ */
+public class LibraryServerTest {
+
+	private PodcastPlayerModel model;
+	private LibraryServer server;
+
+	@BeforeEach
+	void startServer() throws Exception {
+		model = new PodcastPlayerModel();
+		for (int show = 0; show < 20; show++) {
+			model.addPodcast("https://feeds.example.com/" + show + ".xml", ByteBuffer.wrap(makeFeed(show, 0, 300)));
+		}
+		server = new LibraryServer(model, 0);
+		server.start();
+	}
+
+	@AfterEach
+	void stopServer() {
+		server.stop();
+	}
+
+	@Test
+	void testEndpoints() throws IOException {
+		Response podcasts = get("/podcasts", null);
+		assertEquals(200, podcasts.status);
+		assertTrue(podcasts.body.startsWith("[{\"title\":\"Show 0\""));
+		assertTrue(podcasts.body.contains("\"episodes\":300"));
+
+		Response page = get("/episodes?podcast=" + enc("Show 3") + "&offset=10&limit=2", null);
+		assertEquals(200, page.status);
+		assertEquals("{\"podcast\":\"Show 3\",\"total\":300,\"offset\":10,\"episodes\":["
+				+ "{\"title\":\"Episode 10 \\\"quoted\\\" take\",\"description\":\"Notes for episode 10\","
+				+ "\"link\":\"https://cdn.example.com/3/10.mp3\",\"epNum\":10},"
+				+ "{\"title\":\"Episode 11 \\\"quoted\\\" take\",\"description\":\"Notes for episode 11\","
+				+ "\"link\":\"https://cdn.example.com/3/11.mp3\",\"epNum\":11}]}", page.body);
+
+		Response search = get("/search?q=" + enc("EPISODE 299") + "&limit=3", null);
+		assertEquals(200, search.status);
+		assertTrue(search.body.startsWith("[{\"podcast\":\"Show 0\",\"title\":\"Episode 299 \\\"quoted\\\" take\""));
+
+		assertEquals(204, post("/positions?podcast=" + enc("Show 3") + "&episode=" + enc("Episode 10 \"quoted\" take")
+				+ "&millis=61000"));
+		Response positions = get("/positions?podcast=" + enc("Show 3"), null);
+		assertEquals("[{\"title\":\"Episode 10 \\\"quoted\\\" take\",\"millis\":61000}]", positions.body);
+
+		Response firstPage = get("/episodes?podcast=" + enc("Show 3") + "&limit=1", null);
+		assertTrue(firstPage.body.endsWith("\"epNum\":0}],\"next\":\"n:0\"}"));
+		assertNotNull(firstPage.etag);
+		Response started = get("/episodes?podcast=" + enc("Show 3") + "&filter=in_progress", null);
+		assertEquals("{\"podcast\":\"Show 3\",\"episodes\":[{\"title\":\"Episode 10 \\\"quoted\\\" take\","
+				+ "\"description\":\"Notes for episode 10\",\"link\":\"https://cdn.example.com/3/10.mp3\","
+				+ "\"epNum\":10}],\"next\":null}", started.body);
+		assertEquals(null, started.etag);
+		assertEquals(400, get("/episodes?podcast=" + enc("Show 3") + "&filter=odd", null).status);
+		assertEquals(400, get("/episodes?podcast=" + enc("Show 3") + "&cursor=x", null).status);
+
+		Response latest = get("/latest?limit=1", null);
+		assertEquals(200, latest.status);
+		assertTrue(latest.body.startsWith("{\"episodes\":[{\"podcast\":\"Show 0\",\"title\":\"Episode 0 "));
+		assertTrue(latest.body.endsWith("\"next\":\"t:0:0:Show 0\"}"));
+		assertEquals(400, get("/latest?cursor=x", null).status);
+
+		assertEquals(404, get("/episodes?podcast=Nope", null).status);
+		assertEquals(400, get("/episodes?podcast=" + enc("Show 3") + "&limit=x", null).status);
+		assertEquals(405, post("/podcasts"));
+		assertEquals(404, post("/positions?podcast=" + enc("Show 3") + "&episode=Nope&millis=5"));
+	}
+
+	@Test
+	void testETags() throws Exception {
+		Response first = get("/podcasts", null);
+		assertNotNull(first.etag);
+		Response again = get("/podcasts", first.etag);
+		assertEquals(304, again.status);
+		assertEquals("", again.body);
+
+		// Saving a position does not change the library.
+		post("/positions?podcast=" + enc("Show 1") + "&episode=" + enc("Episode 1 \"quoted\" take") + "&millis=5");
+		assertEquals(304, get("/podcasts", first.etag).status);
+
+		model.addPodcast("https://feeds.example.com/new.xml", ByteBuffer.wrap(makeFeed(99, 0, 5)));
+		Response changed = get("/podcasts", first.etag);
+		assertEquals(200, changed.status);
+		assertTrue(changed.body.contains("Show 99"));
+		assertTrue(!changed.etag.equals(first.etag));
+	}
+
+	@Test
+	void testSnapshotsCopyChangedPodcasts() throws Exception {
+		String page = "/episodes?podcast=" + enc("Show 3") + "&offset=0&limit=1";
+		assertTrue(get(page, null).body.contains("\"total\":300"));
+		Podcast podcast = model.getPodcast("Show 3");
+		int before = podcast.getVersion();
+		model.savePlayPos("Show 3", "Episode 1 \"quoted\" take", 5);
+		assertEquals(before, podcast.getVersion());
+
+		podcast.refresh(new String(makeFeed(3, -2, 300), StandardCharsets.ISO_8859_1), 5);
+		assertTrue(podcast.getVersion() > before);
+		// The library version has not moved, so the copy already read stands.
+		assertTrue(get(page, null).body.contains("\"total\":300"));
+
+		// The next version copies Show 3 again, since it changed.
+		model.addPodcast("https://feeds.example.com/new.xml", ByteBuffer.wrap(makeFeed(99, 0, 5)));
+		assertTrue(get(page, null).body.contains("\"total\":302"));
+		assertTrue(get("/search?q=" + enc("episode -2"), null).body.contains("Episode -2"));
+	}
+
+	@Test
+	void testLoad() throws Exception {
+		int clients = 16;
+		long runMillis = 3000;
+		AtomicLong requests = new AtomicLong();
+		AtomicInteger failures = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(clients);
+		long end = System.currentTimeMillis() + runMillis;
+		List<Future<?>> running = new ArrayList<Future<?>>();
+		for (int c = 0; c < clients; c++) {
+			int client = c;
+			running.add(pool.submit(() -> {
+				String etag = null;
+				int i = 0;
+				while (System.currentTimeMillis() < end) {
+					try {
+						Response response;
+						switch (i++ % 4) {
+						case 0:
+							response = get("/podcasts", etag);
+							etag = response.etag;
+							break;
+						case 1:
+							response = get("/episodes?podcast=" + enc("Show " + (client + i) % 20) + "&offset="
+									+ (i % 250) + "&limit=50", null);
+							break;
+						case 2:
+							response = get("/search?q=" + (i % 300), null);
+							break;
+						default:
+							response = get("/positions?podcast=" + enc("Show " + client), null);
+						}
+						if (response.status != 200 && response.status != 304) {
+							failures.incrementAndGet();
+						}
+					} catch (IOException ex) {
+						failures.incrementAndGet();
+					}
+					requests.incrementAndGet();
+				}
+				return null;
+			}));
+		}
+		for (Future<?> client : running) {
+			client.get();
+		}
+		pool.shutdown();
+		System.out.println(clients + " clients, " + requests.get() + " requests in " + runMillis + " ms: "
+				+ requests.get() * 1000 / runMillis + " requests/sec");
+		assertEquals(0, failures.get());
+		assertTrue(requests.get() > clients);
+	}
+
+	private Response get(String path, String etag) throws IOException {
+		HttpURLConnection conn = open(path);
+		if (etag != null) {
+			conn.setRequestProperty("If-None-Match", etag);
+		}
+		Response response = new Response();
+		response.status = conn.getResponseCode();
+		response.etag = conn.getHeaderField("ETag");
+		InputStream in = response.status < 400 ? conn.getInputStream() : conn.getErrorStream();
+		response.body = in == null ? "" : new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		if (in != null) {
+			in.close();
+		}
+		return response;
+	}
+
+	private int post(String path) throws IOException {
+		HttpURLConnection conn = open(path);
+		conn.setRequestMethod("POST");
+		int status = conn.getResponseCode();
+		InputStream in = status < 400 ? conn.getInputStream() : conn.getErrorStream();
+		if (in != null) {
+			in.readAllBytes();
+			in.close();
+		}
+		return status;
+	}
+
+	private HttpURLConnection open(String path) throws IOException {
+		return (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + path).openConnection();
+	}
+
+	private static String enc(String value) {
+		return URLEncoder.encode(value, StandardCharsets.UTF_8);
+	}
+
+	private static final class Response {
+		int status;
+		String etag;
+		String body;
+	}
+
+	/**
+	 * Builds the feed of one show holding items first..count-1, newest first.
+	 */
+	private static byte[] makeFeed(int show, int first, int count) {
+		StringBuilder feed = new StringBuilder("<rss><channel><title>Show " + show + "</title>"
+				+ "<itunes:summary>Served show " + show + "</itunes:summary>\n");
+		for (int i = first; i < count; i++) {
+			feed.append("<item><title>Episode " + i + " \"quoted\" take</title><guid>show-" + show + "-" + i
+					+ "</guid><itunes:summary>Notes for episode " + i + "</itunes:summary>"
+					+ "<enclosure url=\"https://cdn.example.com/" + show + "/" + i + ".mp3\" type=\"audio/mpeg\"/>"
+					+ "</item>\n");
+		}
+		feed.append("</channel></rss>");
+		return feed.toString().getBytes(StandardCharsets.ISO_8859_1);
+	}
+}
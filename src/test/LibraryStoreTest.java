@@ -0,0 +1,212 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import model.EpisodeFilter;
+import model.EpisodeQuery;
+import model.JdbcLibraryStore;
+import model.PodcastPlayerModel;
+import model.PodcastPlayerModel.Episode;
+import model.PodcastPlayerModel.Podcast;
+
+/**
+ * Checks that library searches find the same Episodes in memory and in a
+ * database, that a database library keeps play positions, and that reading
+ * the timeline of one does not keep its Podcasts on the heap.
+ *
+ * The database checks use H2 and are skipped when it is not on the class
+ * path.
+ *
+ * @author Todd Noecker
+ */
+public class LibraryStoreTest {
+
+	private static final long NOW = 1700000000000L;
+	private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+	private Path dir;
+
+	@BeforeEach
+	void makeDir() throws IOException {
+		dir = Files.createTempDirectory("library");
+	}
+
+	@AfterEach
+	void removeDir() throws IOException {
+		try (Stream<Path> files = Files.walk(dir)) {
+			for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.delete(file);
+			}
+		}
+	}
+
+	@Test
+	void testMemorySearch() throws Exception {
+		PodcastPlayerModel model = library();
+		play(model);
+		List<Episode> week = model.findEpisodes(new EpisodeQuery(null, NOW - 7 * DAY, EpisodeFilter.UNPLAYED, 1000));
+		// Seven days of each of twelve shows, and an eighth of Show 0, which
+		// publishes first each day, less the three started.
+		assertEquals(12 * 7 + 1 - 3, week.size());
+		for (int i = 1; i < week.size(); i++) {
+			assertTrue(week.get(i - 1).getPublishedMillis() >= week.get(i).getPublishedMillis());
+		}
+		for (Episode ep : week) {
+			assertTrue(ep.getCurTimeMillis() < 0 && ep.getPublishedMillis() >= NOW - 7 * DAY);
+		}
+		assertEquals(List.of("Show 3/Episode 2", "Show 3/Episode 40"),
+				names(model.findEpisodes(new EpisodeQuery("Show 3", 0, EpisodeFilter.IN_PROGRESS, 10))));
+		assertEquals(5, model.findEpisodes(new EpisodeQuery(null, 0, EpisodeFilter.ALL, 5)).size());
+	}
+
+	@Test
+	void testDatabaseMatchesMemory() throws Exception {
+		assumeH2();
+		PodcastPlayerModel memory = library();
+		PodcastPlayerModel database = library();
+		database.setLibraryStore(JdbcLibraryStore.open(url(), 4));
+		play(memory);
+		play(database);
+		// A finished Episode is neither unplayed nor in progress.
+		memory.savePlayPos("Show 5", "Episode 1", Episode.FINISHED);
+		database.savePlayPos("Show 5", "Episode 1", Episode.FINISHED);
+		assertEquals(4, memory.findEpisodes(new EpisodeQuery(null, 0, EpisodeFilter.IN_PROGRESS, 10)).size());
+
+		List<EpisodeQuery> queries = List.of(new EpisodeQuery(null, NOW - 7 * DAY, EpisodeFilter.UNPLAYED, 1000),
+				new EpisodeQuery(null, 0, EpisodeFilter.IN_PROGRESS, 1000),
+				new EpisodeQuery(null, NOW - 30 * DAY, EpisodeFilter.ALL, 25),
+				new EpisodeQuery("Show 3", 0, EpisodeFilter.ALL, 1000),
+				new EpisodeQuery("Show 3", NOW - 3 * DAY, EpisodeFilter.UNPLAYED, 1000));
+		for (EpisodeQuery query : queries) {
+			assertEquals(names(memory.findEpisodes(query)), names(database.findEpisodes(query)));
+		}
+		assertEquals(names(memory.getLatestEpisodes(null, 50).getEpisodes()),
+				names(database.getLatestEpisodes(null, 50).getEpisodes()));
+		database.getLibraryStore().close();
+	}
+
+	@Test
+	void testDatabaseKeepsPositions() throws Exception {
+		assumeH2();
+		PodcastPlayerModel model = library();
+		model.setLibraryStore(JdbcLibraryStore.open(url(), 2));
+		play(model);
+		assertTrue(model.removePodcast("Show 11"));
+		model.getLibraryStore().close();
+
+		PodcastPlayerModel reopened = new PodcastPlayerModel();
+		reopened.setLibraryStore(JdbcLibraryStore.open(url(), 2));
+		assertEquals(11, reopened.getLibrary().size());
+		assertEquals(List.of("Show 7/Episode 0", "Show 3/Episode 2", "Show 3/Episode 40"),
+				names(reopened.findEpisodes(new EpisodeQuery(null, 0, EpisodeFilter.IN_PROGRESS, 10))));
+		assertEquals(1500, reopened.getPodcast("Show 7").getEpisode("Episode 0").getCurTimeMillis());
+
+		// A position saved on a reopened library reaches the next search.
+		reopened.savePlayPos("Show 7", "Episode 0", -1);
+		assertEquals(List.of("Show 3/Episode 2", "Show 3/Episode 40"),
+				names(reopened.findEpisodes(new EpisodeQuery(null, 0, EpisodeFilter.IN_PROGRESS, 10))));
+		reopened.getLibraryStore().close();
+	}
+
+	@Test
+	void testTimelineKeepsNoPodcasts() throws Exception {
+		assumeH2();
+		PodcastPlayerModel model = library();
+		model.setLibraryStore(JdbcLibraryStore.open(url(), 2));
+		List<Episode> first = model.getLatestEpisodes(null, 50).getEpisodes();
+		List<WeakReference<Podcast>> read = new ArrayList<WeakReference<Podcast>>();
+		for (Episode ep : first) {
+			read.add(new WeakReference<Podcast>(ep.getPodcast()));
+		}
+		assertEquals(12, read.stream().map(Reference::get).distinct().count());
+		first = null;
+
+		// Once the page is let go, only the store's two cached Podcasts may
+		// still be on the heap.
+		long end = System.currentTimeMillis() + 10000;
+		long live;
+		do {
+			System.gc();
+			Thread.sleep(20);
+			live = read.stream().map(Reference::get).filter(Objects::nonNull).distinct().count();
+		} while (live > 2 && System.currentTimeMillis() < end);
+		assertTrue(live <= 2, live + " Podcasts still on the heap");
+		assertEquals(50, model.getLatestEpisodes(null, 50).getEpisodes().size());
+		model.getLibraryStore().close();
+	}
+
+	/**
+	 * Builds twelve shows of 60 daily Episodes, Episode 0 published on NOW.
+	 */
+	private static PodcastPlayerModel library() throws Exception {
+		PodcastPlayerModel model = new PodcastPlayerModel();
+		for (int show = 0; show < 12; show++) {
+			model.addPodcast("https://feeds.example.com/" + show + ".xml", feed(show, 60));
+		}
+		return model;
+	}
+
+	private static void play(PodcastPlayerModel model) {
+		model.savePlayPos("Show 3", "Episode 2", 100);
+		model.savePlayPos("Show 3", "Episode 40", 200);
+		model.savePlayPos("Show 7", "Episode 0", 1500);
+		model.savePlayPos("Show 11", "Episode 1", 5);
+	}
+
+	private static List<String> names(List<Episode> episodes) {
+		List<String> names = new ArrayList<String>();
+		for (Episode ep : episodes) {
+			names.add(ep.getPodcast().getTitle() + "/" + ep.getTitle());
+		}
+		return names;
+	}
+
+	private String url() {
+		return "jdbc:h2:" + dir.resolve("library").toAbsolutePath();
+	}
+
+	private static void assumeH2() {
+		try {
+			Class.forName("org.h2.Driver");
+		} catch (ClassNotFoundException ex) {
+			Assumptions.assumeTrue(false, "H2 is not on the class path");
+		}
+	}
+
+	private static ByteBuffer feed(int show, int count) {
+		StringBuilder feed = new StringBuilder("<rss><channel><title>Show " + show + "</title>"
+				+ "<itunes:summary>Stored show " + show + "</itunes:summary>\n");
+		for (int i = 0; i < count; i++) {
+			// Shows publish a minute apart, so no two dates are equal.
+			String date = DateTimeFormatter.RFC_1123_DATE_TIME
+					.format(Instant.ofEpochMilli(NOW - i * DAY - show * 60000L).atOffset(ZoneOffset.UTC));
+			feed.append("<item><title>Episode " + i + "</title><guid>show-" + show + "-" + i + "</guid><pubDate>"
+					+ date + "</pubDate><enclosure url=\"https://cdn.example.com/" + show + "/" + i
+					+ ".mp3\"/></item>\n");
+		}
+		feed.append("</channel></rss>");
+		return ByteBuffer.wrap(feed.toString().getBytes(StandardCharsets.ISO_8859_1));
+	}
+}
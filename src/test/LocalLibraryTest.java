@@ -0,0 +1,294 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import model.LocalLibraryScanner;
+import model.PodcastPlayerModel;
+import model.PodcastPlayerModel.Episode;
+import model.PodcastPlayerModel.Podcast;
+import model.TagReader;
+import model.TrackTags;
+
+/**
+ * Checks that local files' tags are read from their headers, that folders
+ * of them become local Podcasts, that a file with broken tags does not stop
+ * a scan, and that later scans and watched changes only read what changed.
+ *
+ * @author Todd Noecker
+ */
+public class LocalLibraryTest {
+
+	/** MPEG 1 layer III, 128 kbps, 44.1 kHz, stereo. */
+	private static final int FRAME_HEADER = 0xFFFB9000;
+	private static final int FRAME_BYTES = 417;
+
+	private Path dir;
+
+	@BeforeEach
+	void start() throws IOException {
+		dir = Files.createTempDirectory("local");
+	}
+
+	@AfterEach
+	void stop() throws IOException {
+		try (Stream<Path> all = Files.walk(dir)) {
+			for (Path file : all.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.delete(file);
+			}
+		}
+	}
+
+	@Test
+	void testReadsTags() throws IOException {
+		// Artwork ahead of the text frames is stepped over.
+		Path v23 = write(dir.resolve("a.mp3"), mp3(id3(3, frame(3, "APIC", new byte[200 * 1024]),
+				text(3, "TIT2", "First Light"), text(3, "TPE1", "The Host"), text(3, "TALB", "Morning Show"),
+				text(3, "TRCK", "2/9"), comment(3, "Notes on the first episode")), 400));
+		TrackTags tags = TagReader.read(v23);
+		assertEquals("mp3", tags.getFormat());
+		assertEquals("First Light", tags.getTitle());
+		assertEquals("The Host", tags.getArtist());
+		assertEquals("Morning Show", tags.getAlbum());
+		assertEquals("Notes on the first episode", tags.getComment());
+		assertEquals(2, tags.getTrack());
+		// No TLEN frame, so the play time comes from the frames.
+		assertEquals(400L * 1152 * 1000 / 44100, tags.getDurationMillis(), 30);
+
+		Path v24 = write(dir.resolve("b.mp3"), mp3(id3(4, utf8("TIT2", "Caf\u00E9 Talk"), utf8("TLEN", "61000")), 10));
+		tags = TagReader.read(v24);
+		assertEquals("Caf\u00E9 Talk", tags.getTitle());
+		assertEquals(61000, tags.getDurationMillis());
+		assertNull(tags.getAlbum());
+
+		Path v1 = write(dir.resolve("c.mp3"), concat(mp3(new byte[0], 10), id3v1("Old Tag", "Someone", "Archive", 7)));
+		tags = TagReader.read(v1);
+		assertEquals("Old Tag", tags.getTitle());
+		assertEquals("Archive", tags.getAlbum());
+		assertEquals(7, tags.getTrack());
+
+		tags = TagReader.read(write(dir.resolve("d.m4a"), m4a("Long Talk", "Evening Show", "The Guest", 3, 90000)));
+		assertEquals("mp4", tags.getFormat());
+		assertEquals("Long Talk", tags.getTitle());
+		assertEquals("Evening Show", tags.getAlbum());
+		assertEquals("The Guest", tags.getArtist());
+		assertEquals(3, tags.getTrack());
+		assertEquals(90000, tags.getDurationMillis());
+	}
+
+	@Test
+	void testScanBuildsLocalFolders() throws IOException {
+		Path morning = Files.createDirectories(dir.resolve("morning"));
+		write(morning.resolve("02.mp3"), tagged("Second", "Morning Show", 2));
+		write(morning.resolve("01.mp3"), tagged("First", "Morning Show", 1));
+		write(morning.resolve("cover.jpg"), new byte[10]);
+		Path evening = Files.createDirectories(dir.resolve("shows/evening"));
+		write(evening.resolve("talk.m4a"), m4a("Long Talk", "Evening Show", "The Guest", 1, 90000));
+		write(evening.resolve("untagged.mp3"), mp3(new byte[0], 10));
+		Files.createDirectories(dir.resolve("empty"));
+
+		PodcastPlayerModel model = new PodcastPlayerModel();
+		try (LocalLibraryScanner scanner = new LocalLibraryScanner(model, dir, 4)) {
+			assertEquals(4, scanner.scan());
+			assertEquals(4, scanner.getTagReads());
+			assertEquals(2, model.getLibrary().size());
+
+			Podcast show = model.getPodcast("Morning Show");
+			assertTrue(show.isLocal());
+			assertEquals(morning.toUri(), show.getLink());
+			List<String> titles = new ArrayList<String>();
+			for (Episode ep : show.getEpisodes(null, 10).getEpisodes()) {
+				titles.add(ep.getTitle());
+			}
+			assertEquals(List.of("First", "Second"), titles);
+			Episode first = show.getEpisode("First");
+			assertEquals(morning.resolve("01.mp3").toUri(), model.getLocalFile(first));
+			assertEquals("audio/mpeg", first.getEnclosureType());
+			assertTrue(first.getDurationSeconds() > 0);
+			assertEquals(0, model.refreshPodcast("Morning Show").size());
+
+			Podcast other = model.getPodcast("Evening Show");
+			assertNotNull(other.getEpisode("Long Talk"));
+			assertNotNull(other.getEpisode("untagged"));
+
+			// An unchanged tree is listed again but no tags are read.
+			model.savePlayPos("Morning Show", "First", 4200);
+			long version = model.getVersion();
+			assertEquals(4, scanner.scan());
+			assertEquals(4, scanner.getTagReads());
+			assertEquals(version, model.getVersion());
+
+			// A changed file is read again, and play positions are kept.
+			write(morning.resolve("02.mp3"), tagged("Second, Revised", "Morning Show", 2));
+			scanner.scan();
+			assertEquals(5, scanner.getTagReads());
+			show = model.getPodcast("Morning Show");
+			assertNotNull(show.getEpisode("Second, Revised"));
+			assertNull(show.getEpisode("Second"));
+			assertEquals(4200, show.getEpisode("First").getCurTimeMillis());
+		}
+	}
+
+	@Test
+	void testBadTagsDoNotStopScan() throws IOException {
+		// An ID3v2.4 tag says an extended header follows, and the file ends.
+		byte[] cut = { 'I', 'D', '3', 4, 0, 0x40, 0, 0, 0, 0 };
+		Path morning = Files.createDirectories(dir.resolve("morning"));
+		Path bad = write(morning.resolve("00.mp3"), cut);
+		write(morning.resolve("01.mp3"), tagged("First", "Morning Show", 1));
+		assertThrows(IOException.class, () -> TagReader.read(bad));
+
+		PodcastPlayerModel model = new PodcastPlayerModel();
+		try (LocalLibraryScanner scanner = new LocalLibraryScanner(model, dir, 4)) {
+			assertEquals(2, scanner.scan());
+			Podcast show = model.getPodcast("Morning Show");
+			assertNotNull(show.getEpisode("First"));
+			// The file whose tags could not be read is listed by its name.
+			assertNotNull(show.getEpisode("00"));
+		}
+	}
+
+	@Test
+	void testWatchFollowsChanges() throws Exception {
+		Path morning = Files.createDirectories(dir.resolve("morning"));
+		write(morning.resolve("01.mp3"), tagged("First", "Morning Show", 1));
+		PodcastPlayerModel model = new PodcastPlayerModel();
+		try (LocalLibraryScanner scanner = new LocalLibraryScanner(model, dir, 4)) {
+			scanner.watch();
+			assertNotNull(model.getPodcast("Morning Show"));
+
+			write(morning.resolve("02.mp3"), tagged("Second", "Morning Show", 2));
+			await(() -> model.getPodcast("Morning Show").getEpisodeCount() == 2);
+
+			// A folder moved in whole is walked.
+			Path staging = Files.createDirectories(dir.resolveSibling(dir.getFileName() + "-staging/night"));
+			write(staging.resolve("01.mp3"), tagged("Late", "Night Show", 1));
+			Files.move(staging, dir.resolve("night"));
+			Files.delete(staging.getParent());
+			await(() -> model.getPodcast("Night Show") != null);
+
+			Files.delete(morning.resolve("01.mp3"));
+			await(() -> model.getPodcast("Morning Show").getEpisodeCount() == 1);
+			Files.delete(morning.resolve("02.mp3"));
+			Files.delete(morning);
+			await(() -> model.getPodcast("Morning Show") == null);
+			assertEquals(1, model.getLibrary().size());
+		}
+	}
+
+	private static void await(BooleanSupplier done) throws InterruptedException {
+		long end = System.currentTimeMillis() + 10000;
+		while (!done.getAsBoolean()) {
+			if (System.currentTimeMillis() > end) {
+				throw new AssertionError("Change was not seen");
+			}
+			Thread.sleep(20);
+		}
+	}
+
+	private static Path write(Path file, byte[] bytes) throws IOException {
+		return Files.write(file, bytes);
+	}
+
+	private static byte[] tagged(String title, String album, int track) {
+		return mp3(id3(3, text(3, "TIT2", title), text(3, "TALB", album), text(3, "TRCK", Integer.toString(track))),
+				100);
+	}
+
+	private static byte[] mp3(byte[] tag, int frames) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.writeBytes(tag);
+		for (int i = 0; i < frames; i++) {
+			out.writeBytes(ByteBuffer.allocate(FRAME_BYTES).putInt(0, FRAME_HEADER).array());
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] id3(int version, byte[]... frames) {
+		byte[] body = concat(frames);
+		ByteBuffer header = ByteBuffer.allocate(10).put("ID3".getBytes(StandardCharsets.ISO_8859_1))
+				.put((byte) version).put((byte) 0).put((byte) 0);
+		header.putInt(syncSafe(body.length));
+		return concat(header.array(), body);
+	}
+
+	private static byte[] frame(int version, String id, byte[] body) {
+		ByteBuffer header = ByteBuffer.allocate(10).put(id.getBytes(StandardCharsets.ISO_8859_1));
+		header.putInt(version == 4 ? syncSafe(body.length) : body.length).putShort((short) 0);
+		return concat(header.array(), body);
+	}
+
+	private static byte[] text(int version, String id, String text) {
+		return frame(version, id, concat(new byte[] { 0 }, text.getBytes(StandardCharsets.ISO_8859_1)));
+	}
+
+	private static byte[] utf8(String id, String text) {
+		return frame(4, id, concat(new byte[] { 3 }, text.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static byte[] comment(int version, String text) {
+		return frame(version, "COMM",
+				concat(new byte[] { 0, 'e', 'n', 'g', 0 }, text.getBytes(StandardCharsets.ISO_8859_1)));
+	}
+
+	private static byte[] id3v1(String title, String artist, String album, int track) {
+		ByteBuffer tag = ByteBuffer.allocate(128).put("TAG".getBytes(StandardCharsets.ISO_8859_1));
+		tag.put(3, title.getBytes(StandardCharsets.ISO_8859_1));
+		tag.put(33, artist.getBytes(StandardCharsets.ISO_8859_1));
+		tag.put(63, album.getBytes(StandardCharsets.ISO_8859_1));
+		tag.put(126, (byte) track);
+		return tag.array();
+	}
+
+	private static int syncSafe(int size) {
+		return (size >>> 21 & 0x7F) << 24 | (size >>> 14 & 0x7F) << 16 | (size >>> 7 & 0x7F) << 8 | size & 0x7F;
+	}
+
+	private static byte[] m4a(String title, String album, String artist, int track, int millis) {
+		byte[] mvhd = ByteBuffer.allocate(100).putInt(12, 1000).putInt(16, millis).array();
+		byte[] trkn = ByteBuffer.allocate(8).putShort(2, (short) track).array();
+		byte[] ilst = box("ilst", item("\u00A9nam", 1, title.getBytes(StandardCharsets.UTF_8)),
+				item("\u00A9alb", 1, album.getBytes(StandardCharsets.UTF_8)),
+				item("\u00A9ART", 1, artist.getBytes(StandardCharsets.UTF_8)), item("trkn", 0, trkn));
+		byte[] meta = box("meta", new byte[4], box("hdlr", new byte[25]), ilst);
+		return concat(box("ftyp", "M4A ".getBytes(StandardCharsets.ISO_8859_1), new byte[4]),
+				box("moov", box("mvhd", mvhd), box("udta", meta)), box("mdat", new byte[5000]));
+	}
+
+	private static byte[] item(String type, int dataType, byte[] value) {
+		return box(type, box("data", ByteBuffer.allocate(8).putInt(dataType).array(), value));
+	}
+
+	private static byte[] box(String type, byte[]... parts) {
+		byte[] body = concat(parts);
+		ByteBuffer header = ByteBuffer.allocate(8).putInt(8 + body.length)
+				.put(type.getBytes(StandardCharsets.ISO_8859_1));
+		return concat(header.array(), body);
+	}
+
+	private static byte[] concat(byte[]... parts) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (byte[] part : parts) {
+			out.writeBytes(part);
+		}
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,234 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import com.sun.net.httpserver.HttpServer;
+import model.MediaInfo;
+import model.MediaProbe;
+
+/**
+ * Checks that play times, bitrates and seek tables are read from the
+ * headers of MP3 and MP4 files, local and remote, and that remote probes
+ * read only a few KB of each file.
+ *
+ * @author Todd Noecker
+ */
+public class MediaProbeTest {
+
+	/** MPEG 1 layer III, 128 kbps, 44.1 kHz, stereo: 417 byte frames. */
+	private static final int FRAME_HEADER = 0xFFFB9000;
+	private static final int FRAME_BYTES = 417;
+
+	private final Map<String, byte[]> files = new ConcurrentHashMap<String, byte[]>();
+	private final AtomicInteger requests = new AtomicInteger();
+	private final AtomicLong sent = new AtomicLong();
+	private HttpServer server;
+
+	@BeforeEach
+	void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", exchange -> {
+			requests.incrementAndGet();
+			String path = exchange.getRequestURI().getPath();
+			byte[] file = files.get(path);
+			if (file == null) {
+				exchange.sendResponseHeaders(404, -1);
+				exchange.close();
+				return;
+			}
+			String range = exchange.getRequestHeaders().getFirst("Range");
+			int from = 0;
+			int to = file.length - 1;
+			if (range != null && !path.startsWith("/norange")) {
+				String[] ends = range.substring("bytes=".length()).split("-");
+				from = Integer.parseInt(ends[0]);
+				to = Math.min(to, Integer.parseInt(ends[1]));
+				exchange.getResponseHeaders().add("Content-Range", "bytes " + from + "-" + to + "/" + file.length);
+				exchange.sendResponseHeaders(206, to - from + 1);
+			} else {
+				exchange.sendResponseHeaders(200, file.length);
+			}
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(file, from, to - from + 1);
+				sent.addAndGet(to - from + 1);
+			} catch (IOException ex) {
+				// The probe hung up once it had enough.
+			}
+		});
+		server.start();
+	}
+
+	@AfterEach
+	void stopServer() {
+		server.stop(0);
+	}
+
+	@Test
+	void testXingAfterLargeTag() throws Exception {
+		// A 40 KB tag, as artwork would make, pushes the first frame past the head.
+		byte[] mp3 = mp3(40 * 1024, 2000, true);
+		files.put("/xing.mp3", mp3);
+		MediaInfo info = MediaProbe.probeNow(uri("/xing.mp3"), 5000);
+		assertEquals("mp3", info.getFormat());
+		assertEquals(10 + 40 * 1024, info.getAudioStart());
+		assertEquals((2000L * 1152 - 576 - 1000) * 1000 / 44100, info.getDurationMillis());
+		assertEquals(128, Math.round(info.getBitrate() / 1000.0));
+		assertTrue(info.hasSeekTable());
+		assertEquals(100, info.getSeekOffsets().length);
+		assertEquals(info.getAudioStart(), info.byteOffsetAt(0));
+		long half = info.byteOffsetAt(info.getDurationMillis() / 2);
+		assertTrue(Math.abs(half - (info.getAudioStart() + 1000L * FRAME_BYTES)) < 2 * FRAME_BYTES);
+		assertEquals(2, requests.get());
+		assertTrue(sent.get() <= 2 * MediaProbe.HEAD_BYTES);
+
+		// The same file read locally gives the same answer.
+		Path local = Files.createTempFile("probe", ".mp3");
+		try {
+			Files.write(local, mp3);
+			MediaInfo file = MediaProbe.probeNow(local.toUri(), 5000);
+			assertEquals(info.getDurationMillis(), file.getDurationMillis());
+			assertEquals(info.getSeekOffsets()[50], file.getSeekOffsets()[50]);
+		} finally {
+			Files.delete(local);
+		}
+	}
+
+	@Test
+	void testConstantBitrateAndVbri() throws Exception {
+		files.put("/cbr.mp3", mp3(100, 3000, false));
+		MediaInfo cbr = MediaProbe.probeNow(uri("/cbr.mp3"), 5000);
+		assertFalse(cbr.hasSeekTable());
+		assertEquals(128000, cbr.getBitrate());
+		assertEquals(3000L * FRAME_BYTES * 8000 / 128000, cbr.getDurationMillis());
+		assertEquals(cbr.getAudioStart() + 16000, cbr.byteOffsetAt(1000));
+
+		files.put("/vbri.mp3", vbri(1000, 10));
+		MediaInfo vbri = MediaProbe.probeNow(uri("/vbri.mp3"), 5000);
+		assertEquals(1000L * 1152 * 1000 / 44100, vbri.getDurationMillis());
+		assertEquals(101, vbri.getSeekOffsets().length);
+		assertEquals(vbri.getAudioStart() + 500L * FRAME_BYTES, vbri.getSeekOffsets()[50]);
+	}
+
+	@Test
+	void testMp4MoovAfterMedia() throws Exception {
+		files.put("/moov.m4a", mp4(2 * 1024 * 1024, 600, 600 * 3600));
+		MediaInfo info = MediaProbe.probeNow(uri("/moov.m4a"), 5000);
+		assertEquals("mp4", info.getFormat());
+		assertEquals(3600000, info.getDurationMillis());
+		assertEquals(files.get("/moov.m4a").length, info.getMediaBytes());
+		assertTrue(sent.get() < 3 * MediaProbe.HEAD_BYTES);
+
+		// A server that ignores ranges is read only as far as needed.
+		files.put("/norange.mp3", mp3(100, 5000, true));
+		assertTrue(MediaProbe.probeNow(uri("/norange.mp3"), 5000).getDurationMillis() > 0);
+	}
+
+	@Test
+	void testProbesAreShared() throws Exception {
+		files.put("/shared.mp3", mp3(100, 500, true));
+		try (MediaProbe probe = new MediaProbe(2, 5000)) {
+			MediaInfo first = probe.probe(uri("/shared.mp3")).get(5, TimeUnit.SECONDS);
+			// The same link written another way joins the first probe.
+			assertSame(first, probe.probe(uri("/audio/../shared.mp3")).get(5, TimeUnit.SECONDS));
+			assertSame(first, probe.getCached(uri("/shared.mp3")));
+			assertEquals(1, requests.get());
+
+			// Failures are not kept.
+			try {
+				probe.probe(uri("/missing.mp3")).get(5, TimeUnit.SECONDS);
+			} catch (Exception ex) {
+				// Expected.
+			}
+			assertEquals(null, probe.getCached(uri("/missing.mp3")));
+		}
+	}
+
+	private URI uri(String path) {
+		return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + path);
+	}
+
+	/**
+	 * Builds an MP3 of identical frames after an ID3v2 tag, the first frame
+	 * holding a Xing header with an even seek table and a LAME header.
+	 */
+	private static byte[] mp3(int tagBytes, int frames, boolean xing) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.writeBytes(new byte[] { 'I', 'D', '3', 4, 0, 0, (byte) (tagBytes >> 21 & 0x7F),
+				(byte) (tagBytes >> 14 & 0x7F), (byte) (tagBytes >> 7 & 0x7F), (byte) (tagBytes & 0x7F) });
+		out.writeBytes(new byte[tagBytes]);
+		if (xing) {
+			ByteBuffer frame = frame();
+			frame.position(36);
+			frame.put("Xing".getBytes()).putInt(7).putInt(frames).putInt((frames + 1) * FRAME_BYTES);
+			for (int i = 0; i < 100; i++) {
+				frame.put((byte) (i * 256 / 100));
+			}
+			frame.put("LAME3.100".getBytes());
+			// Delay 576 and padding 1000, 21 bytes into the LAME header.
+			frame.position(frame.position() + 12);
+			frame.put((byte) (576 >> 4)).put((byte) ((576 & 0xF) << 4 | 1000 >> 8)).put((byte) (1000 & 0xFF));
+			out.writeBytes(frame.array());
+		}
+		for (int i = 0; i < frames; i++) {
+			out.writeBytes(frame().array());
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Builds an MP3 whose first frame holds a VBRI header, each table entry
+	 * covering the given number of frames.
+	 */
+	private static byte[] vbri(int frames, int framesPerEntry) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteBuffer frame = frame();
+		int entries = frames / framesPerEntry;
+		frame.position(36);
+		frame.put("VBRI".getBytes()).putShort((short) 1).putShort((short) 0).putShort((short) 75)
+				.putInt(frames * FRAME_BYTES).putInt(frames).putShort((short) entries).putShort((short) 1)
+				.putShort((short) 2).putShort((short) framesPerEntry);
+		for (int i = 0; i < entries; i++) {
+			frame.putShort((short) (framesPerEntry * FRAME_BYTES));
+		}
+		out.writeBytes(frame.array());
+		for (int i = 0; i < frames; i++) {
+			out.writeBytes(frame().array());
+		}
+		return out.toByteArray();
+	}
+
+	private static ByteBuffer frame() {
+		return ByteBuffer.allocate(FRAME_BYTES).putInt(0, FRAME_HEADER);
+	}
+
+	/**
+	 * Builds an MP4 with its moov box after the media data.
+	 */
+	private static byte[] mp4(int mediaBytes, int timescale, int duration) {
+		ByteBuffer mp4 = ByteBuffer.allocate(16 + 8 + mediaBytes + 8 + 8 + 100);
+		mp4.putInt(16).put("ftypM4A ".getBytes()).putInt(0);
+		mp4.putInt(8 + mediaBytes).put("mdat".getBytes()).position(mp4.position() + mediaBytes);
+		mp4.putInt(8 + 8 + 100).put("moov".getBytes());
+		mp4.putInt(8 + 100).put("mvhd".getBytes()).putInt(0).putInt(0).putInt(0).putInt(timescale).putInt(duration);
+		return mp4.array();
+	}
+}
@@ -0,0 +1,309 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import com.sun.net.httpserver.HttpServer;
+import model.MediaProbe;
+import model.SeekIndex;
+import server.MediaProxy;
+
+/**
+ * Checks that the media proxy fetches only the blocks near a seek target,
+ * that seek indexes come from headers or a frame scan, that a slow fetch
+ * holds up only the requests needing its blocks, and that indexes and
+ * cached blocks are reused by the next proxy.
+ *
+ * @author Todd Noecker
+ */
+public class MediaProxyTest {
+
+	/** MPEG 1 layer III, 44.1 kHz, stereo, at 128 and at 64 kbps. */
+	private static final int FAST_HEADER = 0xFFFB9000;
+	private static final int FAST_BYTES = 417;
+	private static final int SLOW_HEADER = 0xFFFB5000;
+	private static final int SLOW_BYTES = 208;
+
+	private final Map<String, byte[]> files = new ConcurrentHashMap<String, byte[]>();
+	private final AtomicInteger requests = new AtomicInteger();
+	private final AtomicInteger holds = new AtomicInteger(); // requests held
+	private volatile long holdFrom = -1; // requests from this byte on are held
+	private volatile CountDownLatch hold; // until this is counted down
+	private final CountDownLatch held = new CountDownLatch(1);
+	private HttpServer origin;
+	private MediaProbe probe;
+	private Path dir;
+
+	@BeforeEach
+	void start() throws IOException {
+		dir = Files.createTempDirectory("media");
+		probe = new MediaProbe(2, 5000);
+		origin = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		origin.createContext("/", exchange -> {
+			requests.incrementAndGet();
+			byte[] file = files.get(exchange.getRequestURI().getPath());
+			String[] ends = exchange.getRequestHeaders().getFirst("Range").substring("bytes=".length()).split("-");
+			int from = Integer.parseInt(ends[0]);
+			CountDownLatch holding = hold;
+			if (holding != null && from == holdFrom) {
+				holds.incrementAndGet();
+				held.countDown();
+				try {
+					holding.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			int to = Math.min(file.length - 1, Integer.parseInt(ends[1]));
+			exchange.getResponseHeaders().add("Content-Range", "bytes " + from + "-" + to + "/" + file.length);
+			exchange.sendResponseHeaders(206, to - from + 1);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(file, from, to - from + 1);
+			}
+		});
+		origin.setExecutor(Executors.newCachedThreadPool());
+		origin.start();
+	}
+
+	@AfterEach
+	void stop() throws IOException {
+		origin.stop(0);
+		probe.close();
+		try (Stream<Path> all = Files.walk(dir)) {
+			for (Path file : all.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.delete(file);
+			}
+		}
+	}
+
+	@Test
+	void testSeekFetchesNearTarget() throws Exception {
+		byte[] mp3 = xing(20000);
+		files.put("/long.mp3", mp3);
+		URI remote = uri("/long.mp3");
+		MediaProxy proxy = new MediaProxy(dir, probe, 5000);
+		proxy.start();
+		try {
+			URI local = proxy.localLink(remote);
+			assertTrue(local.getPath().endsWith(".mp3"));
+			SeekIndex index = awaitIndex(proxy, remote, false);
+
+			// A seek three quarters in fetches a few blocks around its target.
+			long target = index.getDurationMillis() * 3 / 4;
+			long offset = index.offsetAt(target);
+			assertTrue(Math.abs(offset - (4 + 15000L * FAST_BYTES)) < 2 * FAST_BYTES);
+			proxy.prefetch(remote, target).get(5, TimeUnit.SECONDS);
+			long fetched = proxy.getFetchedBytes();
+			assertTrue(fetched <= (MediaProxy.BLOCK_BYTES + 2L) * 6, "fetched " + fetched);
+
+			// A request for the bytes at the target is served from the cache.
+			assertArrayEquals(Arrays.copyOfRange(mp3, (int) offset, (int) offset + 5000),
+					get(local, "bytes=" + offset + "-" + (offset + 4999), 5000));
+			assertEquals(fetched, proxy.getFetchedBytes());
+
+			// A player that reads the start and hangs up fetches only the start,
+			// and what the socket buffers took before the hang up was seen.
+			assertArrayEquals(Arrays.copyOfRange(mp3, 0, 10000), get(local, "bytes=0-", 10000));
+			assertTrue(proxy.getFetchedBytes() - fetched <= mp3.length / 8);
+		} finally {
+			proxy.stop();
+		}
+	}
+
+	@Test
+	void testSlowFetchHoldsOnlyItsBlocks() throws Exception {
+		byte[] mp3 = info(20000);
+		files.put("/steady.mp3", mp3);
+		URI remote = uri("/steady.mp3");
+		MediaProxy proxy = new MediaProxy(dir, probe, 5000);
+		proxy.start();
+		try {
+			URI local = proxy.localLink(remote);
+			// An Info header says the bitrate is constant, so the index from
+			// the headers is used and no scan reads the file.
+			SeekIndex index = awaitIndex(proxy, remote, false);
+			assertFalse(index.isDetailed());
+			long offset = index.offsetAt(index.getDurationMillis() * 3 / 4);
+			assertTrue(Math.abs(offset - 15000L * FAST_BYTES) < 2 * FAST_BYTES, "offset " + offset);
+			assertArrayEquals(Arrays.copyOfRange(mp3, (int) offset, (int) offset + 1000),
+					get(local, "bytes=" + offset + "-", 1000));
+
+			// One stretch of the file is slow to come; two players ask for it.
+			int slow = 10 * MediaProxy.BLOCK_BYTES;
+			holdFrom = slow;
+			hold = new CountDownLatch(1);
+			CompletableFuture<byte[]> first = CompletableFuture.supplyAsync(() -> read(local, "bytes=" + slow + "-"));
+			assertTrue(held.await(5, TimeUnit.SECONDS));
+			CompletableFuture<byte[]> second = CompletableFuture.supplyAsync(() -> read(local, "bytes=" + slow + "-"));
+
+			// Blocks elsewhere are fetched and served meanwhile.
+			long middle = mp3.length / 2;
+			assertArrayEquals(Arrays.copyOfRange(mp3, (int) middle, (int) middle + 1000),
+					CompletableFuture.supplyAsync(() -> read(local, "bytes=" + middle + "-"))
+							.get(5, TimeUnit.SECONDS));
+			assertFalse(first.isDone());
+
+			hold.countDown();
+			assertArrayEquals(Arrays.copyOfRange(mp3, slow, slow + 1000), first.get(5, TimeUnit.SECONDS));
+			assertArrayEquals(Arrays.copyOfRange(mp3, slow, slow + 1000), second.get(5, TimeUnit.SECONDS));
+			// The second player waited for the first one's fetch.
+			assertEquals(1, holds.get());
+			assertTrue(proxy.getFetchedBytes() < mp3.length / 4, "fetched " + proxy.getFetchedBytes());
+		} finally {
+			proxy.stop();
+		}
+	}
+
+	@Test
+	void testScannedIndexIsKept() throws Exception {
+		// No Xing header, and the bitrate halves halfway through.
+		byte[] mp3 = mixed(3000, 3000);
+		files.put("/mixed.mp3", mp3);
+		URI remote = uri("/mixed.mp3");
+		MediaProxy proxy = new MediaProxy(dir, probe, 5000);
+		proxy.start();
+		long offset;
+		try {
+			proxy.localLink(remote);
+			SeekIndex index = awaitIndex(proxy, remote, true);
+			assertEquals(6000L * 1152 * 1000 / 44100, index.getDurationMillis());
+			long frame = 4500;
+			offset = index.offsetAt(frame * 1152 * 1000 / 44100 + 1);
+			assertTrue(Math.abs(offset - (3000L * FAST_BYTES + 1500L * SLOW_BYTES)) < 2 * FAST_BYTES,
+					"offset " + offset);
+		} finally {
+			proxy.stop();
+		}
+
+		// The next run reads the index and the cached blocks back.
+		int before = requests.get();
+		MediaProxy next = new MediaProxy(dir, probe, 5000);
+		next.start();
+		try {
+			URI local = next.localLink(remote);
+			assertNotNull(next.getSeekIndex(remote));
+			assertEquals(offset, next.getSeekIndex(remote).offsetAt(4500L * 1152 * 1000 / 44100 + 1));
+			assertArrayEquals(Arrays.copyOfRange(mp3, (int) offset, (int) offset + 2000), get(local, "bytes=" + offset + "-", 2000));
+			assertEquals(0, next.getFetchedBytes());
+			assertEquals(before, requests.get());
+		} finally {
+			next.stop();
+		}
+	}
+
+	private URI uri(String path) {
+		return URI.create("http://127.0.0.1:" + origin.getAddress().getPort() + path);
+	}
+
+	private static SeekIndex awaitIndex(MediaProxy proxy, URI remote, boolean detailed) throws Exception {
+		long end = System.currentTimeMillis() + 10000;
+		while (System.currentTimeMillis() < end) {
+			SeekIndex index = proxy.getSeekIndex(remote);
+			if (index != null && (!detailed || index.isDetailed())) {
+				return index;
+			}
+			Thread.sleep(20);
+		}
+		throw new AssertionError("No seek index for " + remote);
+	}
+
+	/**
+	 * Reads some bytes of a range, as a player does, then hangs up.
+	 */
+	private static byte[] get(URI local, String range, int count) throws IOException {
+		HttpURLConnection conn = (HttpURLConnection) local.toURL().openConnection();
+		conn.setRequestProperty("Range", range);
+		try (InputStream in = conn.getInputStream()) {
+			assertEquals(206, conn.getResponseCode());
+			return in.readNBytes(count);
+		} finally {
+			conn.disconnect();
+		}
+	}
+
+	private static byte[] read(URI local, String range) {
+		try {
+			return get(local, range, 1000);
+		} catch (IOException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * Builds an MP3 of 128 kbps frames whose first frame holds an Info
+	 * header, as encoders write for a constant bitrate, with no seek table.
+	 */
+	private static byte[] info(int frames) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteBuffer first = frame(FAST_HEADER, FAST_BYTES);
+		first.position(36);
+		first.put("Info".getBytes()).putInt(3).putInt(frames).putInt((frames + 1) * FAST_BYTES);
+		out.writeBytes(first.array());
+		for (int i = 0; i < frames; i++) {
+			out.writeBytes(frame(FAST_HEADER, FAST_BYTES).array());
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Builds an MP3 of 128 kbps frames whose first frame holds a Xing header
+	 * with an even seek table. It starts with four stray bytes.
+	 */
+	private static byte[] xing(int frames) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.writeBytes(new byte[4]);
+		ByteBuffer first = frame(FAST_HEADER, FAST_BYTES);
+		first.position(36);
+		first.put("Xing".getBytes()).putInt(7).putInt(frames).putInt((frames + 1) * FAST_BYTES);
+		for (int i = 0; i < 100; i++) {
+			first.put((byte) (i * 256 / 100));
+		}
+		out.writeBytes(first.array());
+		for (int i = 0; i < frames; i++) {
+			out.writeBytes(frame(FAST_HEADER, FAST_BYTES).array());
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] mixed(int fast, int slow) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (int i = 0; i < fast; i++) {
+			out.writeBytes(frame(FAST_HEADER, FAST_BYTES).array());
+		}
+		for (int i = 0; i < slow; i++) {
+			out.writeBytes(frame(SLOW_HEADER, SLOW_BYTES).array());
+		}
+		return out.toByteArray();
+	}
+
+	private static ByteBuffer frame(int header, int bytes) {
+		return ByteBuffer.allocate(bytes).putInt(0, header);
+	}
+}
@@ -0,0 +1,81 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+import model.FeedBudget;
+import model.PodcastPlayerModel.Episode;
+import model.PodcastPlayerModel.Podcast;
+
+/**
+ * Checks that large feeds parsed in parallel match a serial parse, and
+ * reports the speedup for each core count.
+ *
+ * @author Todd Noecker
+ */
+public class ParallelParseTest {
+
+	private static final String URL = "https://feeds.example.com/archive.xml";
+
+	@Test
+	void testMatchesSerialParse() throws IOException, URISyntaxException {
+		String feed = makeFeed(3000);
+		ForkJoinPool one = new ForkJoinPool(1);
+		ForkJoinPool four = new ForkJoinPool(4);
+		List<Episode> serial = new Podcast(URL, feed, FeedBudget.DEFAULT, one).getEpisodes();
+		List<Episode> parallel = new Podcast(URL, feed, FeedBudget.DEFAULT, four).getEpisodes();
+		one.shutdown();
+		four.shutdown();
+
+		assertEquals(3000, parallel.size());
+		assertEquals(serial.size(), parallel.size());
+		for (int i = 0; i < serial.size(); i++) {
+			assertEquals(i, parallel.get(i).getEpNum());
+			assertEquals(serial.get(i).getTitle(), parallel.get(i).getTitle());
+			assertEquals(serial.get(i).getDescription(), parallel.get(i).getDescription());
+			assertEquals(serial.get(i).getLink(), parallel.get(i).getLink());
+		}
+	}
+
+	@Test
+	void testSpeedupPerCore() throws IOException, URISyntaxException {
+		String feed = makeFeed(20000);
+		int cores = Runtime.getRuntime().availableProcessors();
+		long serial = 0;
+		System.out.println("Feed of " + feed.length() / 1024 + " KB with 20000 items");
+		for (int threads = 1; threads <= cores; threads *= 2) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			long best = Long.MAX_VALUE;
+			for (int run = 0; run < 4; run++) {
+				long start = System.nanoTime();
+				Podcast pod = new Podcast(URL, feed, FeedBudget.DEFAULT, pool);
+				best = Math.min(best, System.nanoTime() - start);
+				assertEquals(20000, pod.getEpisodes().size());
+			}
+			pool.shutdown();
+			if (threads == 1) {
+				serial = best;
+			}
+			System.out.printf("%2d cores: %6d ms, speedup %.2fx%n", threads, best / 1000000,
+					(double) serial / best);
+		}
+	}
+
+	private static String makeFeed(int items) {
+		StringBuilder feed = new StringBuilder("<rss><channel><title>Archive</title>"
+				+ "<itunes:summary>Every episode ever</itunes:summary>"
+				+ "<image><url>https://img.example.com/a.jpg</url></image>\n");
+		for (int i = 0; i < items; i++) {
+			feed.append("<item><title>Archive &amp; Episode " + i + "</title><description><![CDATA[<p>Show notes "
+					+ i + " &apos;with&apos; entities, <a href=\"https://a.example/" + i + "\">links</a> and more"
+					+ " text about the episode so the item is a realistic size.</p>]]></description>"
+					+ "<enclosure url=\"https://cdn.example.com/archive/" + i
+					+ ".mp3\" length=\"1000\" type=\"audio/mpeg\"/></item>\n");
+		}
+		return feed.append("</channel></rss>").toString();
+	}
+}
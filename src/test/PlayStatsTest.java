@@ -0,0 +1,168 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import model.PlayStats;
+import model.PodcastPlayerModel;
+import model.PodcastPlayerModel.Episode;
+import model.PodcastPlayerModel.Podcast;
+import model.SegmentStore;
+
+/**
+ * Checks that the play counts of each Podcast and of the library follow
+ * Episodes being added, replaced, removed and played, matching a count made
+ * by walking every Episode.
+ *
+ * @author Todd Noecker
+ */
+public class PlayStatsTest {
+
+	@Test
+	void testCountsFollowPlayback() throws IOException, URISyntaxException {
+		PodcastPlayerModel model = new PodcastPlayerModel();
+		model.addPodcast("https://feeds.example.com/a.xml", feed("Show A", 0, 10, 600));
+		model.addPodcast("https://feeds.example.com/b.xml", feed("Show B", 0, 5, 0));
+		PlayStats stats = model.getPlayStats();
+		assertEquals(15, stats.getEpisodeCount());
+		assertEquals(15, stats.getUnplayedCount());
+		assertEquals(10 * 600 * 1000L, stats.getRemainingMillis());
+		assertCounts(model);
+
+		model.savePlayPos("Show A", "Episode 3", 60000);
+		assertEquals(14, model.getPlayStats().getUnplayedCount());
+		assertEquals(1, model.getPlayStats("Show A").getInProgressCount());
+		assertEquals(10 * 600 * 1000L - 60000, model.getPlayStats().getRemainingMillis());
+		model.savePlayPos("Show A", "Episode 3", 700000);
+		model.savePlayPos("Show B", "Episode 1", 5000);
+		assertEquals(9 * 600 * 1000L, model.getPlayStats("Show A").getRemainingMillis());
+		assertEquals(2, model.getPlayStats().getInProgressCount());
+		assertCounts(model);
+		model.savePlayPos("Show A", "Episode 3", -1);
+		assertEquals(1, model.getPlayStats().getInProgressCount());
+		assertCounts(model);
+
+		// A Podcast stored again under the same title replaces the old counts.
+		model.addPodcast("https://feeds.example.com/a2.xml", feed("Show A", 0, 4, 60));
+		assertEquals(9, model.getPlayStats().getEpisodeCount());
+		assertCounts(model);
+		model.removePodcast("Show B");
+		assertEquals(4, model.getPlayStats().getEpisodeCount());
+		assertEquals(0, model.getPlayStats().getInProgressCount());
+		assertCounts(model);
+	}
+
+	@Test
+	void testCountsFollowRefreshes() throws Exception {
+		Path dir = Files.createTempDirectory("stats");
+		Path file = dir.resolve("show.xml");
+		Files.write(file, bytes(feed("Show R", 0, 20, 300)));
+		PodcastPlayerModel model = new PodcastPlayerModel();
+		model.addPodcast(file.toUri().toString());
+		model.savePlayPos("Show R", "Episode 0", 1000);
+		assertCounts(model);
+
+		Files.write(file, bytes(feed("Show R", -3, 20, 300)));
+		assertEquals(3, model.refreshPodcast("Show R").size());
+		assertEquals(23, model.getPlayStats().getEpisodeCount());
+		assertEquals(22, model.getPlayStats().getUnplayedCount());
+		assertCounts(model);
+		Files.delete(file);
+		Files.delete(dir);
+	}
+
+	@Test
+	void testCountsSurviveReleaseAndReload() throws Exception {
+		Path dir = Files.createTempDirectory("stats");
+		PodcastPlayerModel model = new PodcastPlayerModel();
+		model.setResidency(dir.resolve("episodes").toString(), 0);
+		Episode held = null;
+		for (int show = 0; show < 6; show++) {
+			model.addPodcast("https://feeds.example.com/" + show + ".xml", feed("Show " + show, 0, 50, 120));
+			if (show == 1) {
+				held = model.getPodcast("Show 1").getEpisode("Episode 4");
+			}
+		}
+		assertEquals(4, model.releaseColdPodcasts(2));
+		// A position set through a released copy and through a catalog view.
+		held.setCurTimeMillis(30000);
+		model.getPodcast("Show 0").getEpisode("Episode 9").setCurTimeMillis(60000);
+		assertEquals(2, model.getPlayStats().getInProgressCount());
+		assertCounts(model);
+
+		SegmentStore.open(model, dir.resolve("library"), TimeUnit.HOURS.toMillis(1), 2).closeAsync().get();
+		PodcastPlayerModel loaded = new PodcastPlayerModel();
+		loaded.setResidency(dir.resolve("episodes").toString(), 0);
+		SegmentStore.open(loaded, dir.resolve("library"), TimeUnit.HOURS.toMillis(1), 2).closeAsync().get();
+		assertEquals(model.getPlayStats(), loaded.getPlayStats());
+		assertCounts(loaded);
+
+		try (Stream<Path> files = Files.walk(dir)) {
+			for (Path path : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.delete(path);
+			}
+		}
+	}
+
+	/**
+	 * Counts every Episode by walking the library and compares the result
+	 * with the kept counts.
+	 */
+	private static void assertCounts(PodcastPlayerModel model) {
+		long[] all = new long[4];
+		for (Podcast podcast : model.getLibrary()) {
+			long[] one = new long[4];
+			for (Episode ep : podcast.getEpisodes()) {
+				long position = ep.getCurTimeMillis();
+				one[0]++;
+				one[position < 0 ? 1 : 2]++;
+				one[3] += Math.max(0, ep.getDurationSeconds() * 1000L - Math.max(0, position));
+			}
+			assertEquals(List.of(one[0], one[1], one[2], one[3]), counts(podcast.getPlayStats()), podcast.getTitle());
+			for (int i = 0; i < 4; i++) {
+				all[i] += one[i];
+			}
+		}
+		assertEquals(List.of(all[0], all[1], all[2], all[3]), counts(model.getPlayStats()));
+	}
+
+	private static List<Long> counts(PlayStats stats) {
+		return List.of((long) stats.getEpisodeCount(), (long) stats.getUnplayedCount(),
+				(long) stats.getInProgressCount(), stats.getRemainingMillis());
+	}
+
+	private static byte[] bytes(ByteBuffer feed) {
+		byte[] bytes = new byte[feed.remaining()];
+		feed.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Builds a feed holding items first..count-1, newest (lowest) first.
+	 */
+	private static ByteBuffer feed(String title, int first, int count, int seconds) {
+		StringBuilder feed = new StringBuilder("<rss><channel><title>" + title + "</title>"
+				+ "<itunes:summary>A show with counts</itunes:summary>\n");
+		for (int i = first; i < count; i++) {
+			feed.append("<item><title>Episode " + i + "</title>"
+					+ "<guid isPermaLink=\"false\">" + title + "-" + i + "</guid>"
+					+ (seconds > 0 ? "<itunes:duration>" + seconds + "</itunes:duration>" : "")
+					+ "<itunes:summary>Notes for episode " + i + "</itunes:summary>"
+					+ "<enclosure url=\"https://cdn.example.com/" + title.replace(' ', '-') + "/" + i + ".mp3\""
+					+ " type=\"audio/mpeg\"/></item>\n");
+		}
+		feed.append("</channel></rss>");
+		return ByteBuffer.wrap(feed.toString().getBytes(StandardCharsets.ISO_8859_1));
+	}
+}
@@ -0,0 +1,168 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+import controller.PositionCheckpointer;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.util.Duration;
+import model.PodcastPlayerModel;
+import model.PodcastPlayerModel.Episode;
+
+/**
+ * Checks that play positions are checkpointed no more often than asked,
+ * that quick checkpoints are written once, that a position left behind when
+ * another Episode is loaded is still written, that an Episode played to the
+ * end is saved as finished, and that asking whether a checkpoint is due
+ * allocates nothing.
+ *
+ * @author Todd Noecker
+ */
+public class PositionCheckpointTest {
+
+	@Test
+	void testCheckpointsAreThrottled() throws Exception {
+		PodcastPlayerModel model = library();
+		try (PositionCheckpointer checkpoints = new PositionCheckpointer(200)) {
+			Episode ep = model.getEpisode("Show", "Episode 1");
+			checkpoints.follow(ep);
+			int taken = 0;
+			long start = System.nanoTime();
+			for (long tick = 0; System.nanoTime() - start < 500_000_000L; tick++) {
+				if (checkpoints.isDue()) {
+					checkpoints.checkpoint(tick);
+					taken++;
+				}
+			}
+			assertTrue(taken >= 1 && taken <= 3, taken + " checkpoints");
+			assertTrue(checkpoints.flush(5000));
+			assertTrue(checkpoints.getWriteCount() <= taken);
+			assertTrue(ep.getCurTimeMillis() > 0);
+			assertThrows(IllegalArgumentException.class, () -> checkpoints.setIntervalMillis(0));
+		}
+	}
+
+	@Test
+	void testListenerCheckpointsWhilePlaying() throws Exception {
+		PodcastPlayerModel model = library();
+		try (PositionCheckpointer checkpoints = new PositionCheckpointer(20)) {
+			Episode ep = model.getEpisode("Show", "Episode 4");
+			checkpoints.follow(ep);
+			// A player sets its current time on every tick, as this does.
+			ReadOnlyObjectWrapper<Duration> currentTime = new ReadOnlyObjectWrapper<Duration>(Duration.ZERO);
+			currentTime.getReadOnlyProperty().addListener(checkpoints.getTickListener());
+			for (int tick = 1; tick <= 100; tick++) {
+				currentTime.set(Duration.millis(tick * 100));
+				Thread.sleep(2);
+			}
+			assertTrue(checkpoints.flush(5000));
+			assertTrue(checkpoints.getWriteCount() >= 3, checkpoints.getWriteCount() + " writes");
+			assertTrue(ep.getCurTimeMillis() > 1000, ep.getCurTimeMillis() + " ms");
+		}
+	}
+
+	@Test
+	void testFinishedEpisodesStayFinished() throws Exception {
+		PodcastPlayerModel model = library();
+		try (PositionCheckpointer checkpoints = new PositionCheckpointer(60000)) {
+			Episode ep = model.getEpisode("Show", "Episode 0");
+			checkpoints.follow(ep);
+			checkpoints.checkpoint(120000);
+			assertTrue(checkpoints.flush(5000));
+			assertEquals(1, model.getContinueListening(5).size());
+
+			// The player stays at the end; pausing or leaving there keeps it.
+			checkpoints.finish(600000);
+			checkpoints.checkpoint(600000);
+			assertTrue(checkpoints.flush(5000));
+			assertTrue(ep.isFinished());
+			assertEquals(Episode.FINISHED, checkpoints.positionOf(ep));
+			assertTrue(model.getContinueListening(5).isEmpty());
+			assertEquals(0, model.getPlayStats().getInProgressCount());
+			assertEquals(1, model.getPlayStats().getFinishedCount());
+			assertEquals(4, model.getPlayStats().getUnplayedCount());
+
+			// Seeking back to play again starts it over.
+			checkpoints.checkpoint(30000);
+			assertTrue(checkpoints.flush(5000));
+			assertEquals(30000, ep.getCurTimeMillis());
+			assertEquals(1, model.getPlayStats().getInProgressCount());
+		}
+	}
+
+	@Test
+	void testCheckpointsCoalesceAndSurviveChanges() throws Exception {
+		PodcastPlayerModel model = library();
+		PositionCheckpointer checkpoints = new PositionCheckpointer(PositionCheckpointer.DEFAULT_INTERVAL_MILLIS);
+		Episode first = model.getEpisode("Show", "Episode 1");
+		checkpoints.follow(first);
+		for (long millis = 1; millis <= 10000; millis++) {
+			checkpoints.checkpoint(millis);
+		}
+		// The next Episode is loaded before the last position may be written.
+		Episode second = model.getEpisode("Show", "Episode 2");
+		assertEquals(10000, checkpoints.positionOf(first));
+		checkpoints.follow(second);
+		checkpoints.checkpoint(2500);
+		checkpoints.checkpoint(2500);
+		assertTrue(checkpoints.flush(5000));
+		assertTrue(checkpoints.getWriteCount() < 10001, checkpoints.getWriteCount() + " writes");
+		assertEquals(10000, model.getPodcast("Show").getEpisode("Episode 1").getCurTimeMillis());
+		assertEquals(2500, second.getCurTimeMillis());
+		assertEquals(2500, checkpoints.positionOf(second));
+
+		// Closing writes what was handed off last.
+		checkpoints.checkpoint(3000);
+		checkpoints.close();
+		assertEquals(3000, second.getCurTimeMillis());
+	}
+
+	@Test
+	void testTicksAllocateNothing() throws Exception {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+			return;
+		}
+		com.sun.management.ThreadMXBean counted = (com.sun.management.ThreadMXBean) threads;
+		PodcastPlayerModel model = library();
+		try (PositionCheckpointer checkpoints = new PositionCheckpointer(60000)) {
+			checkpoints.follow(model.getEpisode("Show", "Episode 3"));
+			int due = 0;
+			for (int i = 0; i < 100_000; i++) {
+				due += checkpoints.isDue() ? 1 : 0;
+			}
+			long id = Thread.currentThread().getId();
+			long before = counted.getThreadAllocatedBytes(id);
+			for (int i = 0; i < 1_000_000; i++) {
+				due += checkpoints.isDue() ? 1 : 0;
+			}
+			long allocated = counted.getThreadAllocatedBytes(id) - before;
+			assertEquals(0, due);
+			// Reading the counter may itself allocate a little.
+			assertTrue(allocated < 1024, allocated + " bytes allocated");
+		}
+	}
+
+	private static PodcastPlayerModel library() throws Exception {
+		PodcastPlayerModel model = new PodcastPlayerModel();
+		StringBuilder feed = new StringBuilder("<rss><channel><title>Show</title>"
+				+ "<itunes:summary>A show to checkpoint</itunes:summary>\n");
+		for (int i = 0; i < 5; i++) {
+			feed.append("<item><title>Episode " + i + "</title>"
+					+ "<guid isPermaLink=\"false\">show-" + i + "</guid>"
+					+ "<itunes:duration>600</itunes:duration>"
+					+ "<itunes:summary>Notes for episode " + i + "</itunes:summary>"
+					+ "<enclosure url=\"https://cdn.example.com/show/" + i + ".mp3\" type=\"audio/mpeg\"/>"
+					+ "</item>\n");
+		}
+		feed.append("</channel></rss>");
+		model.addPodcast("https://feeds.example.com/show.xml",
+				ByteBuffer.wrap(feed.toString().getBytes(StandardCharsets.ISO_8859_1)));
+		return model;
+	}
+}
@@ -0,0 +1,159 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+import model.FeedBudget;
+import model.KnownItems;
+import model.PodcastPlayerModel.Episode;
+import model.PodcastPlayerModel.Podcast;
+
+/**
+ * Checks that refreshing a Podcast only parses the items ahead of the
+ * ones it already knows.
+ *
+ * @author Todd Noecker
+ */
+public class RefreshTest {
+
+	private static final String URL = "https://feeds.example.com/refresh.xml";
+	private final ForkJoinPool serial = new ForkJoinPool(1);
+
+	@Test
+	void testKnownItems() throws IOException, ClassNotFoundException {
+		KnownItems known = new KnownItems();
+		Random rand = new Random(32);
+		long[] keys = new long[20000];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = rand.nextLong();
+			assertTrue(known.add(keys[i]));
+		}
+		assertFalse(known.add(keys[7]));
+		assertEquals(keys.length, known.size());
+		for (long key : keys) {
+			assertTrue(known.contains(key));
+		}
+		for (int i = 0; i < 20000; i++) {
+			assertFalse(known.contains(rand.nextLong()));
+		}
+		assertTrue(known.add(0));
+		assertFalse(known.add(0));
+
+		// A saved set reads back whole.
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(known);
+		}
+		KnownItems read;
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			read = (KnownItems) in.readObject();
+		}
+		assertEquals(keys.length + 1, read.size());
+		for (long key : keys) {
+			assertTrue(read.contains(key));
+		}
+		assertTrue(read.contains(0));
+		assertFalse(read.add(keys[19999]));
+
+		String guid = "  tag:example.com,2021:ep-1\n";
+		assertEquals(KnownItems.keyOf("tag:example.com,2021:ep-1", 0, 25), KnownItems.keyOf(guid, 0, guid.length()));
+	}
+
+	@Test
+	void testRefreshParsesOnlyNewItems() throws IOException, URISyntaxException {
+		String before = makeFeed(0, 3000, true);
+		String after = makeFeed(-2, 3000, true);
+
+		long parseNanos = Long.MAX_VALUE;
+		long refreshNanos = Long.MAX_VALUE;
+		List<Episode> fresh = null;
+		Podcast podcast = null;
+		for (int round = 0; round < 5; round++) {
+			long start = System.nanoTime();
+			podcast = new Podcast(URL, before, FeedBudget.DEFAULT, serial);
+			parseNanos = Math.min(parseNanos, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			fresh = podcast.refresh(after, 5);
+			refreshNanos = Math.min(refreshNanos, System.nanoTime() - start);
+		}
+		System.out.println("Full parse:  " + parseNanos / 1000 + " us");
+		System.out.println("Refresh:     " + refreshNanos / 1000 + " us");
+
+		assertEquals(2, fresh.size());
+		assertEquals("Episode -2", fresh.get(0).getTitle());
+		assertEquals("Episode -1", fresh.get(1).getTitle());
+		List<Episode> episodes = podcast.getEpisodes();
+		assertEquals(3002, episodes.size());
+		assertEquals("Episode -2", episodes.get(0).getTitle());
+		assertEquals("Episode 0", episodes.get(2).getTitle());
+		// Two new items should cost a tiny fraction of parsing 3,000.
+		assertTrue(refreshNanos * 20 < parseNanos);
+
+		// Nothing new the second time round.
+		assertTrue(podcast.refresh(after, 5).isEmpty());
+		assertEquals(3002, podcast.getEpisodes().size());
+	}
+
+	@Test
+	void testRefreshWithoutGuids() throws IOException, URISyntaxException {
+		Podcast podcast = new Podcast(URL, makeFeed(0, 50, false), FeedBudget.DEFAULT, serial);
+		List<Episode> fresh = podcast.refresh(makeFeed(-3, 50, false), 5);
+		assertEquals(3, fresh.size());
+		assertEquals(53, podcast.getEpisodes().size());
+	}
+
+	@Test
+	void testRefreshCatalogPodcast() throws IOException, URISyntaxException {
+		Path dir = Files.createTempDirectory("refresh");
+		Path file = dir.resolve("show.cat");
+		Podcast podcast = new Podcast(URL, makeFeed(0, 200, true), FeedBudget.DEFAULT, serial);
+		podcast.moveToCatalog(file);
+		Episode old = podcast.getEpisode("Episode 10");
+
+		List<Episode> fresh = podcast.refresh(makeFeed(-1, 200, true), 5);
+		assertEquals(1, fresh.size());
+		assertEquals(201, podcast.getEpisodes().size());
+		assertEquals("Episode -1", podcast.getEpisodes().get(0).getTitle());
+		assertNotNull(podcast.getEpisode("Episode -1"));
+		// Episodes handed out before the refresh still read, and positions
+		// set on them reach the new catalog.
+		assertEquals("Episode 10", old.getTitle());
+		old.setCurTimeMillis(4200);
+		assertEquals(4200, podcast.getEpisode("Episode 10").getCurTimeMillis());
+		Files.delete(file);
+		Files.delete(dir);
+	}
+
+	/**
+	 * Builds a feed holding items first..first+count-1, newest (lowest) first.
+	 */
+	private static String makeFeed(int first, int count, boolean guids) {
+		StringBuilder feed = new StringBuilder("<rss><channel><title>Refresh Show</title>"
+				+ "<itunes:summary>A show that keeps growing</itunes:summary>\n");
+		for (int i = first; i < count; i++) {
+			feed.append("<item><title>Episode " + i + "</title>");
+			if (guids) {
+				feed.append("<guid isPermaLink=\"false\">refresh-" + i + "</guid>");
+			}
+			feed.append("<itunes:summary>Notes for episode " + i + " with &amp; some &quot;markup&quot;</itunes:summary>"
+					+ "<enclosure url=\"https://cdn.example.com/refresh/" + i + ".mp3\" type=\"audio/mpeg\"/></item>\n");
+		}
+		feed.append("</channel></rss>");
+		return feed.toString();
+	}
+}
@@ -0,0 +1,178 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import model.PodcastPlayerModel;
+import model.PodcastPlayerModel.Episode;
+import model.PodcastPlayerModel.Podcast;
+import model.SegmentStore;
+
+/**
+ * Checks that only recently opened Podcasts keep their Episodes on the
+ * heap, and that released Podcasts come back whole when opened, even
+ * when opened again while their Episodes are moving.
+ *
+ * @author Todd Noecker
+ */
+public class ResidencyTest {
+
+	private Path dir;
+
+	@BeforeEach
+	void makeDir() throws IOException {
+		dir = Files.createTempDirectory("residency");
+	}
+
+	@AfterEach
+	void removeDir() throws IOException {
+		try (Stream<Path> files = Files.walk(dir)) {
+			for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.delete(file);
+			}
+		}
+	}
+
+	@Test
+	void testBudgetKeepsRecentOnHeap() throws Exception {
+		PodcastPlayerModel model = new PodcastPlayerModel();
+		model.setResidency(dir.resolve("episodes").toString(), 0);
+		model.addPodcast("https://feeds.example.com/0.xml", feed(0, 200));
+		long one = model.getResidentBytes();
+		assertTrue(one > 200 * 100);
+
+		model.setResidency(dir.resolve("episodes").toString(), 5 * one);
+		model.savePlayPos("Show 0", "Episode 7", 700);
+		Episode held = model.getPodcast("Show 0").getEpisode("Episode 8");
+		for (int show = 1; show < 200; show++) {
+			model.addPodcast("https://feeds.example.com/" + show + ".xml", feed(show, 200));
+			assertTrue(model.getResidentBytes() <= 5 * one);
+		}
+		System.out.println("200 podcasts, " + model.getResidentBytes() / 1024 + " KB of episodes on the heap, budget "
+				+ 5 * one / 1024 + " KB");
+
+		// Released Episodes are still read, from their catalog.
+		assertEquals(200, model.getLibrary().get(0).getEpisodeCount());
+		assertEquals(20, model.getLatestEpisodes(null, 20).getEpisodes().size());
+
+		// A position set on an Episode handed out before the release is kept.
+		held.setCurTimeMillis(800);
+		Podcast reopened = model.getPodcast("Show 0");
+		assertEquals(200, reopened.getEpisodeCount());
+		assertEquals(700, reopened.getEpisode("Episode 7").getCurTimeMillis());
+		assertEquals(800, reopened.getEpisode("Episode 8").getCurTimeMillis());
+		assertEquals("Episode 8 of show 0", reopened.getEpisode("Episode 8").getDescription());
+		assertTrue(model.getResidentBytes() <= 5 * one);
+	}
+
+	@Test
+	void testReleaseColdPodcasts() throws Exception {
+		PodcastPlayerModel model = new PodcastPlayerModel();
+		model.setResidency(dir.resolve("episodes").toString(), 0);
+		Episode held = null;
+		for (int show = 0; show < 10; show++) {
+			model.addPodcast("https://feeds.example.com/" + show + ".xml", feed(show, 100));
+			if (show == 3) {
+				held = model.getPodcast("Show 3").getEpisode("Episode 5");
+			}
+		}
+		long before = model.getResidentBytes();
+		assertEquals(8, model.releaseColdPodcasts(2));
+		assertTrue(model.getResidentBytes() * 4 < before);
+		try (Stream<Path> files = Files.list(dir.resolve("episodes"))) {
+			assertEquals(8, files.count());
+		}
+
+		// A library saved while Podcasts are released loads them released,
+		// and they come back onto the heap when opened.
+		held.setCurTimeMillis(55);
+		SegmentStore.open(model, dir.resolve("library"), TimeUnit.HOURS.toMillis(1), 2).closeAsync().get();
+		PodcastPlayerModel loaded = new PodcastPlayerModel();
+		loaded.setResidency(dir.resolve("episodes").toString(), 0);
+		SegmentStore.open(loaded, dir.resolve("library"), TimeUnit.HOURS.toMillis(1), 2).closeAsync().get();
+		assertEquals(10, loaded.getLibrary().size());
+		long heap = loaded.getResidentBytes();
+		assertEquals(55, loaded.getPodcast("Show 3").getEpisode("Episode 5").getCurTimeMillis());
+		assertTrue(loaded.getResidentBytes() > heap);
+	}
+
+	@Test
+	void testHeldEpisodeSurvivesReleaseAndReopen() throws Exception {
+		PodcastPlayerModel model = new PodcastPlayerModel();
+		model.setResidency(dir.resolve("episodes").toString(), 0);
+		model.addPodcast("https://feeds.example.com/0.xml", feed(0, 50));
+		Episode held = model.getPodcast("Show 0").getEpisode("Episode 3");
+		assertEquals(1, model.releaseColdPodcasts(0));
+		// The library list leaves the Podcast released, so this is a view
+		// over its catalog.
+		Episode view = model.getLibrary().get(0).getEpisode("Episode 4");
+		// Opening the Podcast brings new copies onto the heap, each time.
+		model.getPodcast("Show 0");
+		assertEquals(1, model.releaseColdPodcasts(0));
+		model.getPodcast("Show 0");
+
+		// Copies from before the release, and from the catalog in between,
+		// both reach the copies held now.
+		held.setCurTimeMillis(12345);
+		view.setCurTimeMillis(678);
+		Podcast reopened = model.getPodcast("Show 0");
+		assertEquals(12345, reopened.getEpisode("Episode 3").getCurTimeMillis());
+		assertEquals(678, reopened.getEpisode("Episode 4").getCurTimeMillis());
+		assertEquals(2, reopened.getPlayStats().getInProgressCount());
+		assertEquals(2, model.getPlayStats().getInProgressCount());
+		assertEquals(2, model.getContinueListening(5).size());
+	}
+
+	@Test
+	void testReopenWhileMoving() throws Exception {
+		PodcastPlayerModel model = new PodcastPlayerModel();
+		model.setResidency(dir.resolve("episodes").toString(), 0);
+		for (int show = 0; show < 6; show++) {
+			model.addPodcast("https://feeds.example.com/" + show + ".xml", feed(show, 300));
+		}
+		long one = model.getResidentBytes() / 6;
+		model.setResidency(dir.resolve("episodes").toString(), 2 * one + one / 2);
+		// Podcasts are opened faster than their Episodes move, so some are
+		// opened again while they wait to move out or are moving.
+		for (int round = 0; round < 60; round++) {
+			int show = round % 6;
+			model.getPodcast("Show " + show).getEpisode("Episode " + round).setCurTimeMillis(1000 + round);
+		}
+		assertTrue(model.getResidentBytes() <= 2 * one + one / 2);
+		for (int round = 0; round < 60; round++) {
+			Podcast podcast = model.getPodcast("Show " + round % 6);
+			assertEquals(1000 + round, podcast.getEpisode("Episode " + round).getCurTimeMillis());
+			assertEquals(300, podcast.getEpisodeCount());
+		}
+		assertEquals(60, model.getPlayStats().getInProgressCount());
+		// Checking opened them all again; wait for the moves that started.
+		assertTrue(model.getResidentBytes() <= 2 * one + one / 2);
+		try (Stream<Path> files = Files.list(dir.resolve("episodes"))) {
+			assertTrue(files.allMatch(file -> file.toString().endsWith(".cat")));
+		}
+	}
+
+	private static ByteBuffer feed(int show, int count) {
+		StringBuilder feed = new StringBuilder("<rss><channel><title>Show " + show + "</title>"
+				+ "<itunes:summary>Resident show " + show + "</itunes:summary>\n");
+		for (int i = 0; i < count; i++) {
+			feed.append("<item><title>Episode " + i + "</title><itunes:summary>Episode " + i + " of show " + show
+					+ "</itunes:summary><guid>show-" + show + "-" + i + "</guid><enclosure url=\"https://cdn.example.com/"
+					+ show + "/" + i + ".mp3\"/></item>\n");
+		}
+		feed.append("</channel></rss>");
+		return ByteBuffer.wrap(feed.toString().getBytes(StandardCharsets.ISO_8859_1));
+	}
+}
@@ -0,0 +1,168 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import model.PodcastPlayerModel;
+import model.SegmentStore;
+
+/**
+ * Checks that the library is saved one Podcast per file, that only changed
+ * Podcasts are written, and that it loads back whole after bad files.
+ *
+ * @author Todd Noecker
+ */
+public class SegmentStoreTest {
+
+	private static final long NEVER = TimeUnit.HOURS.toMillis(1);
+
+	private Path dir;
+
+	@BeforeEach
+	void makeDir() throws IOException {
+		dir = Files.createTempDirectory("segments");
+	}
+
+	@AfterEach
+	void removeDir() throws IOException {
+		try (Stream<Path> files = Files.walk(dir)) {
+			for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.delete(file);
+			}
+		}
+	}
+
+	@Test
+	void testSavesOnlyChangedPodcasts() throws Exception {
+		PodcastPlayerModel model = new PodcastPlayerModel();
+		SegmentStore store = SegmentStore.open(model, dir, NEVER, 4);
+		for (int show = 0; show < 30; show++) {
+			model.addPodcast("https://feeds.example.com/" + show + ".xml", feed(show, 40));
+		}
+		assertEquals(30, (int) store.flush().get());
+		assertEquals(30, segments().size());
+		assertEquals(0, store.saveDirty());
+
+		model.savePlayPos("Show 12", "Episode 3", 4500);
+		model.savePlayPos("Show 12", "Episode 4", 100);
+		assertTrue(model.removePodcast("Show 20"));
+		assertEquals(2, store.saveDirty());
+		assertEquals(29, segments().size());
+		store.closeAsync().get();
+
+		PodcastPlayerModel loaded = new PodcastPlayerModel();
+		SegmentStore again = SegmentStore.open(loaded, dir, NEVER, 4);
+		assertEquals(29, loaded.getLibrary().size());
+		assertNull(loaded.getPodcast("Show 20"));
+		assertEquals(4500, loaded.getPodcast("Show 12").getEpisode("Episode 3").getCurTimeMillis());
+		assertEquals(40, loaded.getPodcast("Show 7").getEpisodeCount());
+		// Loading is not a change.
+		assertEquals(0, again.saveDirty());
+
+		// Restored Podcasts report their changes like any other.
+		loaded.savePlayPos("Show 7", "Episode 0", 9);
+		assertEquals(1, again.saveDirty());
+		again.closeAsync().get();
+	}
+
+	@Test
+	void testSurvivesBadFiles() throws Exception {
+		PodcastPlayerModel model = new PodcastPlayerModel();
+		SegmentStore store = SegmentStore.open(model, dir, NEVER, 2);
+		for (int show = 0; show < 5; show++) {
+			model.addPodcast("https://feeds.example.com/" + show + ".xml", feed(show, 10));
+		}
+		store.closeAsync().get();
+
+		// A save cut off before its move, and a segment cut short.
+		List<Path> files = segments();
+		Files.write(dir.resolve(files.get(0).getFileName() + ".tmp"), new byte[] { 1, 2, 3 });
+		byte[] whole = Files.readAllBytes(files.get(1));
+		Files.write(files.get(1), Arrays.copyOf(whole, whole.length / 2));
+
+		PodcastPlayerModel loaded = new PodcastPlayerModel();
+		SegmentStore.open(loaded, dir, NEVER, 2).closeAsync().get();
+		assertEquals(4, loaded.getLibrary().size());
+		try (Stream<Path> left = Files.list(dir)) {
+			assertTrue(left.noneMatch(file -> file.toString().endsWith(".tmp")));
+		}
+	}
+
+	@Test
+	void testImportsSingleFileSave() throws Exception {
+		PodcastPlayerModel old = new PodcastPlayerModel();
+		for (int show = 0; show < 3; show++) {
+			old.addPodcast("https://feeds.example.com/" + show + ".xml", feed(show, 10));
+		}
+		old.savePlayPos("Show 1", "Episode 2", 77);
+		Path save = dir.resolve("save.txt");
+		old.storeModel(new ObjectOutputStream(Files.newOutputStream(save)));
+		PodcastPlayerModel model;
+		try (ObjectInputStream in = new ObjectInputStream(Files.newInputStream(save))) {
+			model = (PodcastPlayerModel) in.readObject();
+		}
+		Files.delete(save);
+
+		Path library = dir.resolve("library");
+		SegmentStore store = SegmentStore.open(model, library, NEVER, 2);
+		assertEquals(3, store.saveDirty());
+		store.closeAsync().get();
+
+		PodcastPlayerModel loaded = new PodcastPlayerModel();
+		SegmentStore.open(loaded, library, NEVER, 2).closeAsync().get();
+		assertEquals(77, loaded.getPodcast("Show 1").getEpisode("Episode 2").getCurTimeMillis());
+	}
+
+	@Test
+	void testCloseDoesNotWait() throws Exception {
+		PodcastPlayerModel model = new PodcastPlayerModel();
+		SegmentStore store = SegmentStore.open(model, dir, NEVER, 1);
+		for (int show = 0; show < 100; show++) {
+			model.addPodcast("https://feeds.example.com/" + show + ".xml", feed(show, 300));
+		}
+		long start = System.nanoTime();
+		CompletableFuture<Void> saved = store.closeAsync();
+		long closeNanos = System.nanoTime() - start;
+		saved.get();
+		long saveNanos = System.nanoTime() - start;
+		System.out.println("Close returned in " + closeNanos / 1000 + " us; save took " + saveNanos / 1000000
+				+ " ms");
+		assertEquals(100, segments().size());
+		assertTrue(closeNanos * 10 < saveNanos);
+	}
+
+	private List<Path> segments() throws IOException {
+		try (Stream<Path> files = Files.list(dir)) {
+			return files.filter(file -> file.toString().endsWith(".seg")).sorted().collect(Collectors.toList());
+		}
+	}
+
+	private static ByteBuffer feed(int show, int count) {
+		StringBuilder feed = new StringBuilder("<rss><channel><title>Show " + show + "</title>"
+				+ "<itunes:summary>Saved show " + show + "</itunes:summary>\n");
+		for (int i = 0; i < count; i++) {
+			feed.append("<item><title>Episode " + i + "</title><guid>show-" + show + "-" + i + "</guid>"
+					+ "<enclosure url=\"https://cdn.example.com/" + show + "/" + i + ".mp3\"/></item>\n");
+		}
+		feed.append("</channel></rss>");
+		return ByteBuffer.wrap(feed.toString().getBytes(StandardCharsets.ISO_8859_1));
+	}
+}
@@ -0,0 +1,134 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import com.sun.net.httpserver.HttpServer;
+import model.PodcastPlayerModel;
+import model.SingleFlight;
+
+/**
+ * Checks that duplicate requests share one load, that results are dropped
+ * once their memo time is up, and that only successful loads are kept, so
+ * a feed that failed to fetch is fetched again.
+ *
+ * @author Todd Noecker
+ */
+public class SingleFlightTest {
+
+	@Test
+	void testConcurrentRequestsShareOneLoad() throws Exception {
+		SingleFlight<String, String> flights = new SingleFlight<String, String>(1000);
+		AtomicInteger loads = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		List<Future<String>> results = new ArrayList<Future<String>>();
+		for (int i = 0; i < 8; i++) {
+			results.add(pool.submit(() -> flights.get("feed", () -> {
+				loads.incrementAndGet();
+				release.await();
+				return "parsed";
+			})));
+		}
+		Thread.sleep(200);
+		release.countDown();
+		for (Future<String> result : results) {
+			assertEquals("parsed", result.get());
+		}
+		pool.shutdown();
+		assertEquals(1, loads.get());
+
+		// Back-to-back requests inside the memo time reuse the result.
+		assertEquals("parsed", flights.get("feed", () -> "again"));
+		flights.forget("feed");
+		assertEquals("again", flights.get("feed", () -> "again"));
+	}
+
+	@Test
+	void testMemoExpires() throws Exception {
+		SingleFlight<String, Integer> flights = new SingleFlight<String, Integer>(50);
+		AtomicInteger loads = new AtomicInteger();
+		flights.get("art", loads::incrementAndGet);
+		flights.get("art", loads::incrementAndGet);
+		assertEquals(1, loads.get());
+		Thread.sleep(100);
+		flights.get("art", loads::incrementAndGet);
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	void testExpiredResultsAreDropped() throws Exception {
+		SingleFlight<String, String> flights = new SingleFlight<String, String>(50);
+		for (int i = 0; i < 100; i++) {
+			flights.get("feed-" + i, () -> "parsed");
+		}
+		assertEquals(100, flights.size());
+		Thread.sleep(100);
+		// Results past their time are not held for keys nobody asks for again.
+		flights.get("feed-new", () -> "parsed");
+		assertEquals(1, flights.size());
+	}
+
+	@Test
+	void testFailuresAreNotKept() throws Exception {
+		SingleFlight<String, String> flights = new SingleFlight<String, String>(60000);
+		assertThrows(IOException.class, () -> flights.get("bad", () -> {
+			throw new IOException("offline");
+		}));
+		assertEquals("ok", flights.get("bad", () -> "ok"));
+	}
+
+	@Test
+	void testFailedFeedIsFetchedAgain() throws Exception {
+		AtomicInteger requests = new AtomicInteger();
+		byte[] feed = ("<rss><channel><title>Flaky</title><itunes:summary>Up again</itunes:summary>"
+				+ "<item><title>One</title><enclosure url=\"https://cdn.example.com/1.mp3\"/></item>"
+				+ "</channel></rss>").getBytes(StandardCharsets.ISO_8859_1);
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/feed.xml", exchange -> {
+			// The first request fails, as a site that is briefly down does.
+			if (requests.incrementAndGet() == 1) {
+				exchange.sendResponseHeaders(503, -1);
+			} else {
+				exchange.sendResponseHeaders(200, feed.length);
+				exchange.getResponseBody().write(feed);
+			}
+			exchange.close();
+		});
+		server.start();
+		try {
+			PodcastPlayerModel model = new PodcastPlayerModel();
+			String link = "http://127.0.0.1:" + server.getAddress().getPort() + "/feed.xml";
+			model.addPodcast(link);
+			assertEquals(0, model.getLibrary().size());
+			model.addPodcast(link);
+			assertEquals(2, requests.get());
+			assertEquals(1, model.getLibrary().size());
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	void testCanonicalLink() {
+		assertEquals("https://feeds.npr.org/510289/podcast.xml",
+				PodcastPlayerModel.canonicalLink(URI.create("HTTPS://Feeds.NPR.org:443/510289/./podcast.xml#top")));
+		assertEquals("http://example.com/",
+				PodcastPlayerModel.canonicalLink(URI.create("http://example.com:80")));
+		assertEquals("http://example.com:8080/a?b=1",
+				PodcastPlayerModel.canonicalLink(URI.create("http://example.com:8080/a?b=1")));
+	}
+}
@@ -0,0 +1,175 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import com.sun.net.httpserver.HttpServer;
+import model.ByteFeed;
+import model.FeedBudget;
+import model.PodcastPlayerModel;
+import model.PodcastPlayerModel.Episode;
+import model.PodcastPlayerModel.Podcast;
+
+/**
+ * Compares parsing a feed from one big String against parsing it in place
+ * from a memory-mapped file, and checks that feeds fetched into the cache
+ * directory each get their own file.
+ *
+ * @author Todd Noecker
+ */
+public class ZeroCopyParseTest {
+
+	private static final String URL = "https://feeds.example.com/big.xml";
+
+	@Test
+	void testSameEpisodes() throws IOException, URISyntaxException {
+		byte[] feed = makeFeed(500, 200);
+		Podcast fromString = new Podcast(URL, new String(feed, StandardCharsets.ISO_8859_1));
+		Podcast fromBytes = new Podcast(URL, new ByteFeed(ByteBuffer.wrap(feed)), FeedBudget.DEFAULT,
+				ForkJoinPool.commonPool());
+		assertEquals(fromString.getTitle(), fromBytes.getTitle());
+		assertEquals(fromString.getDescription(), fromBytes.getDescription());
+		assertEquals(fromString.getImage(), fromBytes.getImage());
+		List<Episode> expected = fromString.getEpisodes();
+		List<Episode> actual = fromBytes.getEpisodes();
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getTitle(), actual.get(i).getTitle());
+			assertEquals(expected.get(i).getDescription(), actual.get(i).getDescription());
+			assertEquals(expected.get(i).getLink(), actual.get(i).getLink());
+		}
+	}
+
+	@Test
+	void testAllocationForLargeFeed() throws IOException, URISyntaxException {
+		// About 20 MB, mostly show notes the parser never keeps.
+		byte[] feed = makeFeed(4000, 4800);
+		Path file = Files.createTempFile("big", ".xml");
+		Files.write(file, feed);
+		ForkJoinPool serial = new ForkJoinPool(1);
+
+		// Warm up both paths.
+		parseString(file, serial);
+		parseMapped(file, serial);
+
+		long before = allocated();
+		Podcast fromString = parseString(file, serial);
+		long stringAlloc = allocated() - before;
+
+		before = allocated();
+		Podcast fromMap = parseMapped(file, serial);
+		long mappedAlloc = allocated() - before;
+		serial.shutdown();
+
+		long output = 0;
+		for (Episode ep : fromMap.getEpisodes()) {
+			output += ep.getTitle().length() + ep.getDescription().length() + ep.getLink().toString().length();
+		}
+		System.out.println("Feed size:          " + feed.length / 1024 + " KB");
+		System.out.println("Parsed text:        " + output / 1024 + " KB");
+		System.out.println("String path alloc:  " + stringAlloc / 1024 + " KB");
+		System.out.println("Mapped path alloc:  " + mappedAlloc / 1024 + " KB");
+		assertEquals(fromString.getEpisodes().size(), fromMap.getEpisodes().size());
+		assertTrue(mappedAlloc < stringAlloc);
+		// The mapped path should cost far less than a copy of the input.
+		assertTrue(mappedAlloc < feed.length / 4);
+		Files.delete(file);
+	}
+
+	private Podcast parseString(Path file, ForkJoinPool pool) throws IOException, URISyntaxException {
+		String html = new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1);
+		return new Podcast(URL, html, FeedBudget.DEFAULT, pool);
+	}
+
+	private Podcast parseMapped(Path file, ForkJoinPool pool) throws IOException, URISyntaxException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new Podcast(URL, new ByteFeed(map), FeedBudget.DEFAULT, pool);
+		}
+	}
+
+	@Test
+	void testCachedFeedsHaveTheirOwnFiles() throws Exception {
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/", exchange -> {
+			String name = exchange.getRequestURI().getPath().replaceAll("\\W|xml", "");
+			byte[] feed = ("<rss><channel><title>Show " + name + "</title><itunes:summary>Cached</itunes:summary>"
+					+ "<item><title>One</title><enclosure url=\"https://cdn.example.com/" + name + ".mp3\"/></item>"
+					+ "</channel></rss>").getBytes(StandardCharsets.ISO_8859_1);
+			exchange.sendResponseHeaders(200, feed.length);
+			exchange.getResponseBody().write(feed);
+			exchange.close();
+		});
+		server.start();
+		Path dir = Files.createTempDirectory("feeds");
+		try {
+			PodcastPlayerModel model = new PodcastPlayerModel();
+			model.setFeedCacheDirectory(dir.toString());
+			// Links whose Java hash codes are equal.
+			String base = "http://127.0.0.1:" + server.getAddress().getPort();
+			assertEquals((base + "/Aa.xml").hashCode(), (base + "/BB.xml").hashCode());
+			model.addPodcast(base + "/Aa.xml");
+			model.addPodcast(base + "/BB.xml");
+			assertEquals("One", model.getPodcast("Show Aa").getEpisode("One").getTitle());
+			assertEquals("One", model.getPodcast("Show BB").getEpisode("One").getTitle());
+			try (Stream<Path> files = Files.list(dir)) {
+				assertEquals(2, files.filter(file -> file.toString().endsWith(".xml")).count());
+			}
+		} finally {
+			server.stop(0);
+			try (Stream<Path> files = Files.list(dir)) {
+				for (Path file : files.collect(Collectors.toList())) {
+					Files.delete(file);
+				}
+			}
+			Files.delete(dir);
+		}
+	}
+
+	/**
+	 * Reads the bytes allocated so far by this thread, where HotSpot
+	 * reports it.
+	 */
+	private static long allocated() {
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Builds a feed whose items carry a short summary the parser keeps and
+	 * a long content block it skips.
+	 */
+	private static byte[] makeFeed(int items, int notesLen) {
+		StringBuilder notes = new StringBuilder();
+		while (notes.length() < notesLen) {
+			notes.append("Full transcript text that only the web page shows. ");
+		}
+		StringBuilder feed = new StringBuilder("<rss><channel><title>Big Show</title>"
+				+ "<itunes:summary>A very large feed</itunes:summary>"
+				+ "<image><url>https://img.example.com/big.jpg</url></image>\n");
+		for (int i = 0; i < items; i++) {
+			feed.append("<item><title>Big Episode " + i + "</title><itunes:summary>Summary of episode " + i
+					+ "</itunes:summary><content:encoded><![CDATA[" + notes + "]]></content:encoded>"
+					+ "<enclosure url=\"https://cdn.example.com/big/" + i + ".mp3\" type=\"audio/mpeg\"/></item>\n");
+		}
+		feed.append("</channel></rss>");
+		return feed.toString().getBytes(StandardCharsets.ISO_8859_1);
+	}
+}
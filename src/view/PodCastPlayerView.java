@@ -1,26 +1,33 @@
 package view;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.ObjectOutputStream;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Observable;
-import java.util.Observer;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
 import controller.PodCastPlayerController;
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Orientation;
 import javafx.geometry.Pos;
 import javafx.scene.Group;
 import javafx.scene.Node;
 import javafx.scene.Scene;
+import javafx.scene.control.ContentDisplay;
 import javafx.scene.control.Label;
 import javafx.scene.control.ScrollPane;
+import javafx.scene.control.Tooltip;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.scene.input.MouseButton;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.FlowPane;
 import javafx.scene.layout.HBox;
@@ -32,9 +39,16 @@ import javafx.scene.shape.Polygon;
 import javafx.scene.shape.Rectangle;
 import javafx.scene.text.Font;
 import javafx.stage.Stage;
+import model.ChangeBatch;
+import model.DownloadManager;
+import model.EpisodePage;
+import model.LocalLibraryScanner;
+import model.PlayStats;
 import model.PodcastPlayerModel;
 import model.PodcastPlayerModel.Episode;
 import model.PodcastPlayerModel.Podcast;
+import model.SegmentStore;
+import server.MediaProxy;
 
 /**
  * This Class functions as the view for the podcast Player Application. Its
@@ -43,8 +57,7 @@ import model.PodcastPlayerModel.Podcast;
  * @author Sara Grimes, Sean O'Meara, Garrett Scott, Todd Noecker
  */
 
-@SuppressWarnings("deprecation")
-public class PodCastPlayerView extends Application implements Observer {
+public class PodCastPlayerView extends Application {
 	/**
 	 * Field for the controller
 	 */
@@ -70,9 +83,70 @@ public class PodCastPlayerView extends Application implements Observer {
 	 */
 	private BorderPane border;
 	/**
-	 * Field for the file for serialization
+	 * Field for the file for serialization, from before the library was
+	 * saved in segments. It is read once to fill an empty library.
 	 */
 	private static final String FILENAME = "podcastSaveState.txt";
+	/**
+	 * The directory the library is saved in, one file per podcast
+	 */
+	private static final String LIBRARY_DIR = "podcastLibrary";
+	/**
+	 * The directory episodes of podcasts not opened lately are moved to
+	 */
+	private static final String EPISODES_DIR = "podcastEpisodes";
+	/**
+	 * The directory the parts of episodes played so far are cached in
+	 */
+	private static final String MEDIA_DIR = "podcastMedia";
+	/**
+	 * Serves episodes to the player from the media cache
+	 */
+	private MediaProxy proxy;
+	/**
+	 * The directory episodes are downloaded to for offline play
+	 */
+	private static final String DOWNLOADS_DIR = "podcastDownloads";
+	/**
+	 * Downloads episodes in the background
+	 */
+	private DownloadManager downloads;
+	/**
+	 * The directory whose audio files are listed as local podcasts
+	 */
+	private static final String LOCAL_DIR = "localFiles";
+	/**
+	 * Keeps the local podcasts in step with the local directory
+	 */
+	private LocalLibraryScanner localLibrary;
+	/**
+	 * Saves changed podcasts in the background
+	 */
+	private SegmentStore store;
+	/**
+	 * How many episodes the episode list shows at a time.
+	 */
+	private static final int EPISODE_PAGE = 100;
+	/**
+	 * Shows the episode list in the center again, or null if none is shown
+	 */
+	private Runnable shownListing;
+	/**
+	 * Whether the shown episode list is the latest episodes of every podcast
+	 */
+	private boolean showingLatest;
+	/**
+	 * The podcast whose episodes are shown, if one is
+	 */
+	private String shownPodcast;
+	/**
+	 * Takes the model's changes once a frame
+	 */
+	private AnimationTimer changeTimer;
+	/**
+	 * The badge beside each listed podcast, by title
+	 */
+	private final Map<String, Label> podcastBadges = new HashMap<String, Label>();
 
 	/**
 	 * Starts the GUI and makes the layout.
@@ -83,14 +157,74 @@ public class PodCastPlayerView extends Application implements Observer {
 	@Override
 	public void start(Stage mainStage) throws Exception {
 		this.model = new PodcastPlayerModel();
-		// Check if file exists to load model from.
+		// An old single-file save only fills a library that has no segments yet.
 		File loadFile = new File(FILENAME);
-		if (loadFile.exists()) {
-			this.model.loadModel(FILENAME);
+		if (loadFile.exists() && !new File(LIBRARY_DIR).exists()) {
+			this.model = this.model.loadModel(FILENAME);
 		}
-		this.model.addObserver(this);
+		// Only the episodes of podcasts opened lately stay on the heap.
+		this.model.setResidency(EPISODES_DIR, Runtime.getRuntime().maxMemory() / 4);
+		this.store = SegmentStore.open(this.model, Paths.get(LIBRARY_DIR), SegmentStore.DEFAULT_SAVE_MILLIS,
+				Runtime.getRuntime().availableProcessors());
 		this.controller = new PodCastPlayerController(this.model);
+		// Seeks fetch only the bytes near their target.
+		this.proxy = new MediaProxy(Paths.get(MEDIA_DIR), this.model.getMediaProbe(),
+				this.model.getFeedBudget().getMaxFetchMillis());
+		this.proxy.start();
+		this.controller.setMediaProxy(this.proxy);
+		// Four downloads at once, two from any one server.
+		this.downloads = DownloadManager.open(Paths.get(DOWNLOADS_DIR), 4, 2, 0, 0,
+				this.model.getFeedBudget().getMaxFetchMillis());
+		this.model.setDownloadManager(this.downloads);
+		// The screen takes the library's changes from here on.
+		this.model.getChanges().setCollecting(true);
+		// Local files are read off the FX thread; the folders found reach the
+		// list through the change bus.
+		this.localLibrary = new LocalLibraryScanner(this.model, Paths.get(LOCAL_DIR), 8);
+		Thread localScan = new Thread(() -> {
+			try {
+				localLibrary.watch();
+			} catch (Exception ex) {
+				System.out.println("Local files in " + LOCAL_DIR + " could not be watched: " + ex.getMessage());
+			}
+		}, "local-library-scan");
+		localScan.setDaemon(true);
+		localScan.start();
+
+		makeScene(this.model, this.controller);
+
+		mainStage.setTitle("Powerful Podcast Player");
+		mainStage.setScene(scene);
+		mainStage.show();
 
+		// Changes made on other threads are drawn at most once a frame.
+		changeTimer = new AnimationTimer() {
+			@Override
+			public void handle(long now) {
+				ChangeBatch batch = model.getChanges().drain();
+				if (batch != null) {
+					applyChanges(batch);
+				}
+			}
+		};
+		changeTimer.start();
+
+	}
+
+	/**
+	 * Lays out the window over a model and its controller: the podcast list,
+	 * the play bar and the image box, with no episode list until one is
+	 * picked. Nothing else is started, so the screen can be built and timed
+	 * without the rest of the player.
+	 * 
+	 * @param model      The model to show
+	 * @param controller The controller over the model
+	 * @return the scene, not yet shown
+	 * @author Sara Grimes, seanomeara02, Todd Noecker
+	 */
+	Scene makeScene(PodcastPlayerModel model, PodCastPlayerController controller) {
+		this.model = model;
+		this.controller = controller;
 		Group root = new Group();
 		this.scene = new Scene(root);
 		border = new BorderPane();
@@ -108,33 +242,36 @@ public class PodCastPlayerView extends Application implements Observer {
 		border.autosize();
 
 		root.getChildren().add(border);
-
-		mainStage.setTitle("Powerful Podcast Player");
-		mainStage.setScene(scene);
-		mainStage.show();
-
+		return this.scene;
 	}
 
 	/**
-	 * On program exit this method will save the state of the current model instance
-	 * to be loaded on next runtime.
+	 * On program exit this method hands the podcasts changed since the last
+	 * save to a background save, to be loaded on next runtime. The window
+	 * closes without waiting for it.
 	 * 
-	 * @author Garrett Scott
+	 * @author Garrett Scott, Todd Noecker
 	 */
-	public void stop() throws IOException {
-		// Create a save file to store if one doesn't exist
-		File saveFile = new File(FILENAME);
-		saveFile.createNewFile();
-
-		// Create a file output stream that will write to the file.
-		FileOutputStream fos = new FileOutputStream(FILENAME);
-
-		// Create the Object Stream that will write the model through the file stream to
-		// file.
-		ObjectOutputStream oos = new ObjectOutputStream(fos);
-		// Write the model's state to file.
-		this.model.storeModel(oos);
-
+	public void stop() {
+		if (changeTimer != null) {
+			changeTimer.stop();
+		}
+		// The last play position reaches the model before the library is saved.
+		if (controller != null) {
+			controller.close();
+		}
+		if (store != null) {
+			store.close();
+		}
+		if (proxy != null) {
+			proxy.stop();
+		}
+		if (downloads != null) {
+			downloads.close();
+		}
+		if (localLibrary != null) {
+			localLibrary.close();
+		}
 	}
 
 	/**
@@ -153,18 +290,38 @@ public class PodCastPlayerView extends Application implements Observer {
 		VBox.setMargin(podList, new Insets(5, 10, 10, 10));
 		podMenu.getChildren().addAll(podHeader, podList);
 		podList.setPrefWidth(200);
+		Label latest = makeLabel("Latest Episodes", null, 0, null, false, 0, 0);
+		latest.setOnMouseClicked((event) -> {
+			deselect(podList, null);
+			latest.getStyleClass().clear();
+			latest.getStyleClass().add("selected");
+			displayLatest();
+		});
+		podList.getChildren().add(latest);
+		latest.setTextFill(Color.WHITE);
+		podcastBadges.clear();
 		for (int i = 0; i < podcasts.size(); i++) {
 			Podcast thisPod = podcasts.get(i);
 			Label name = makeLabel(thisPod.getTitle(), null, 0, null, false, 0, 0);
-			List<Episode> episodes = thisPod.getEpisodes();
+			Label badge = makeLabel("", null, 0, null, false, 0, 0);
+			badge.setTextFill(Color.LIGHTGRAY);
+			name.setGraphic(badge);
+			name.setContentDisplay(ContentDisplay.RIGHT);
+			podcastBadges.put(thisPod.getTitle(), badge);
+			showStats(badge, thisPod.getPlayStats());
 			name.setOnMouseClicked((event) -> {
 				deselect(podList, null);
 				name.getStyleClass().clear();
 				name.getStyleClass().add("selected");
-				displayEpisodes(name.getText(), episodes);
+				displayEpisodes(name.getText());
 				VBox imageBox = (VBox) border.getRight();
 				ImageView podImage = (ImageView) imageBox.getChildren().get(0);
-				podImage.setImage(new Image(thisPod.getImage().toString()));
+				// Shown when it arrives, unless another podcast was picked since.
+				controller.getArtwork(thisPod).thenAccept(artwork -> Platform.runLater(() -> {
+					if (artwork != null && thisPod.getTitle().equals(shownPodcast)) {
+						podImage.setImage(new Image(new ByteArrayInputStream(artwork)));
+					}
+				}));
 				Label podLabel = (Label) imageBox.getChildren().get(1);
 				podLabel.setText(thisPod.getDescription());
 				podLabel.getStyleClass().addAll("border");
@@ -197,35 +354,103 @@ public class PodCastPlayerView extends Application implements Observer {
 		}
 	}
 
+	/**
+	 * Shows an episode row as selected and every other row as not
+	 * 
+	 * @param flow The pane holding the episode rows
+	 * @param name The name label of the selected row
+	 * @author Sara Grimes, Todd Noecker
+	 */
+	void markSelected(FlowPane flow, Label name) {
+		deselect(null, flow);
+		name.getStyleClass().clear();
+		name.getStyleClass().add("selected");
+	}
+
 	/**
 	 * Displays the available episodes for the specified podcast
 	 * 
 	 * @param podcastName The name of the selected podcast
-	 * @param episodes    The list of episodes for the selected podcast
-	 * @author Sara Grimes, Garrett Scott, seanomeara02
+	 * @author Sara Grimes, Garrett Scott, seanomeara02, Todd Noecker
 	 */
-	private void displayEpisodes(String podcastName, List<Episode> episodes) {
+	void displayEpisodes(String podcastName) {
+		shownListing = () -> displayEpisodes(podcastName);
+		showingLatest = false;
+		shownPodcast = podcastName;
+		displayListing("Available Episodes for " + podcastName,
+				(cursor) -> controller.getEpisodePage(podcastName, cursor, EPISODE_PAGE), false);
+	}
+
+	/**
+	 * Displays the newest episodes of every podcast in one list
+	 * 
+	 * @author Todd Noecker
+	 */
+	private void displayLatest() {
+		shownListing = this::displayLatest;
+		showingLatest = true;
+		shownPodcast = null;
+		displayListing("Latest Episodes", (cursor) -> controller.getLatestPage(cursor, EPISODE_PAGE), true);
+	}
+
+	/**
+	 * Displays a paged list of episodes in the center of the window
+	 * 
+	 * @param title       The header shown above the list
+	 * @param pages       Fetches the page after a cursor
+	 * @param showPodcast Whether each row names the podcast it is from
+	 * @author Sara Grimes, Garrett Scott, seanomeara02, Todd Noecker
+	 */
+	private void displayListing(String title, Function<String, EpisodePage> pages, boolean showPodcast) {
 		ScrollPane scroll = new ScrollPane();
 		scroll.setPrefSize(1000, 500);
 		scroll.getStyleClass().add("scroll-pane");
 		scroll.autosize();
 		BorderPane.setMargin(scroll, new Insets(10, 10, 10, 10));
 		VBox epMenu = new VBox();
-		Label epHeader = makeLabel("Available Episodes for " + podcastName, null, 20.0, null, false, 0, 0);
+		Label epHeader = makeLabel(title, null, 20.0, null, false, 0, 0);
 		epHeader.getStyleClass().add("border");
 		VBox.setMargin(epHeader, new Insets(10, 10, 5, 10));
 		FlowPane flow = new FlowPane(Orientation.HORIZONTAL);
 		VBox.setMargin(flow, new Insets(5, 10, 10, 10));
+		Label more = makeLabel("More episodes", null, 0, null, false, 0, 0);
+		more.getStyleClass().add("deselected");
+		VBox.setMargin(more, new Insets(5, 10, 10, 10));
+		VBox listing = new VBox();
+		listing.getChildren().addAll(flow, more);
 		epMenu.getChildren().addAll(epHeader, scroll);
-		scroll.setContent(flow);
+		scroll.setContent(listing);
+		appendEpisodes(pages, null, flow, more, showPodcast);
+		border.setCenter(epMenu);
+	}
+
+	/**
+	 * Adds the next page of episodes to the episode list, so a podcast with
+	 * thousands of episodes only builds the rows that are asked for.
+	 * 
+	 * @param pages       Fetches the page after a cursor
+	 * @param cursor      The cursor of the page to add, or null for the first
+	 * @param flow        The pane the episode rows are added to
+	 * @param more        The label that loads the page after this one
+	 * @param showPodcast Whether each row names the podcast it is from
+	 * @author Todd Noecker
+	 */
+	private void appendEpisodes(Function<String, EpisodePage> pages, String cursor, FlowPane flow, Label more,
+			boolean showPodcast) {
+		EpisodePage page = pages.apply(cursor);
+		List<Episode> episodes = page.getEpisodes();
 		for (int i = 0; i < episodes.size(); i++) {
+			String podcastName = episodes.get(i).getPodcast().getTitle();
 			HBox epInfo = new HBox();
 			Label name = makeLabel(episodes.get(i).getTitle(), null, 0, null, true, 200, 30);
 			HBox.setMargin(name, new Insets(5, 10, 5, 5));
 			name.setOnMouseClicked((event) -> {
-				deselect(null, flow);
-				name.getStyleClass().clear();
-				name.getStyleClass().add("selected");
+				if (event.getButton() == MouseButton.SECONDARY) {
+					// A right click downloads the episode for offline play.
+					controller.downloadEp(podcastName, name.getText());
+					return;
+				}
+				markSelected(flow, name);
 				controller.changeEp(podcastName, name.getText());
 				if (this.mp != null) {
 					this.mp.dispose();
@@ -235,12 +460,60 @@ public class PodCastPlayerView extends Application implements Observer {
 				this.mv = new MediaView(this.mp);
 				((Group) this.scene.getRoot()).getChildren().add(this.mv);
 			});
-			Label desc = makeLabel(episodes.get(i).getDescription(), null, 0, null, true, 390, 50);
+			String description = episodes.get(i).getDescription();
+			if (showPodcast) {
+				description = podcastName + ": " + description;
+			}
+			Label desc = makeLabel(description, null, 0, null, true, 390, 50);
 			HBox.setMargin(desc, new Insets(5, 5, 5, 10));
-			epInfo.getChildren().addAll(name, desc);
+			Label length = makeLabel("", null, 0, null, false, 90, 30);
+			HBox.setMargin(length, new Insets(5, 5, 5, 5));
+			showLength(episodes.get(i), length);
+			epInfo.getChildren().addAll(name, desc, length);
 			flow.getChildren().add(epInfo);
 		}
-		border.setCenter(epMenu);
+		more.setVisible(page.hasMore());
+		more.setManaged(page.hasMore());
+		more.setOnMouseClicked((event) -> appendEpisodes(pages, page.getNextCursor(), flow, more, showPodcast));
+	}
+
+	/**
+	 * Shows how long an episode is, how much of it is left once started, or
+	 * that it was played to the end.
+	 * When the feed does not give the length, the start of the file is
+	 * probed for it and the label is filled in when the probe finishes.
+	 * 
+	 * @param episode The episode the row is for
+	 * @param length  The label to show the length in
+	 * @author Todd Noecker
+	 */
+	private void showLength(Episode episode, Label length) {
+		if (episode.getDurationSeconds() > 0) {
+			length.setText(lengthText(episode.getDurationSeconds() * 1000L, episode.getCurTimeMillis()));
+			return;
+		}
+		model.getMediaProbe().probe(episode.getLink()).thenAccept(info -> {
+			if (info.getDurationMillis() > 0) {
+				Platform.runLater(() -> length.setText(lengthText(info.getDurationMillis(), episode.getCurTimeMillis())));
+			}
+		});
+	}
+
+	/**
+	 * Writes a length in minutes, as time left if the episode was started.
+	 * 
+	 * @param durationMillis The length of the episode
+	 * @param curMillis      Where the episode was stopped, Episode.FINISHED,
+	 *                       or below 0 if never
+	 * @return The text to show
+	 * @author Todd Noecker
+	 */
+	private static String lengthText(long durationMillis, long curMillis) {
+		if (curMillis == Episode.FINISHED) {
+			return "played";
+		}
+		long minutes = (Math.max(0, durationMillis - Math.max(0, curMillis)) + 59999) / 60000;
+		return curMillis > 0 ? minutes + " min left" : minutes + " min";
 	}
 
 	/**
@@ -433,17 +706,99 @@ public class PodCastPlayerView extends Application implements Observer {
 		return title;
 	}
 
+	/**
+	 * Brings the screen up to date with a batch of model changes. Each part
+	 * of the screen is built again at most once per batch, however many
+	 * changes the batch holds.
+	 * 
+	 * @param batch The changes since the last frame
+	 * @author Todd Noecker
+	 */
+	private void applyChanges(ChangeBatch batch) {
+		if (batch.getNowPlaying() != null) {
+			showNowPlaying(batch.getNowPlaying());
+		}
+		if (!batch.getAddedPodcasts().isEmpty() || !batch.getRemovedPodcasts().isEmpty()) {
+			border.setLeft(displayPodcasts());
+		}
+		if (shownPodcast != null && batch.getRemovedPodcasts().contains(shownPodcast)) {
+			border.setCenter(null);
+			shownListing = null;
+			shownPodcast = null;
+		} else if (shownListing != null && listingChanged(batch)) {
+			shownListing.run();
+		}
+		updateBadges(batch);
+	}
+
+	/**
+	 * Redraws the badges of the podcasts a batch changed. Each badge reads
+	 * counts the model keeps current, so this costs nothing per episode.
+	 * 
+	 * @param batch The changes since the last frame
+	 * @author Todd Noecker
+	 */
+	private void updateBadges(ChangeBatch batch) {
+		Set<Podcast> touched = new HashSet<Podcast>(batch.getChangedPodcasts());
+		for (List<Episode> episodes : List.of(batch.getAddedEpisodes(), batch.getChangedEpisodes(),
+				batch.getRemovedEpisodes())) {
+			for (Episode episode : episodes) {
+				if (episode.getPodcast() != null) {
+					touched.add(episode.getPodcast());
+				}
+			}
+		}
+		for (Podcast podcast : touched) {
+			Label badge = podcastBadges.get(podcast.getTitle());
+			if (badge != null) {
+				showStats(badge, podcast.getPlayStats());
+			}
+		}
+	}
+
+	/**
+	 * Shows a podcast's unplayed count on its badge, with the rest of its
+	 * counts in a tooltip
+	 * 
+	 * @param badge The badge beside the podcast's name
+	 * @param stats The podcast's counts
+	 * @author Todd Noecker
+	 */
+	private void showStats(Label badge, PlayStats stats) {
+		badge.setText(stats.getUnplayedCount() == 0 ? "" : String.valueOf(stats.getUnplayedCount()));
+		long minutes = stats.getRemainingMillis() / 60000;
+		badge.setTooltip(new Tooltip(stats.getUnplayedCount() + " unplayed, " + stats.getInProgressCount()
+				+ " in progress, " + minutes / 60 + "h " + minutes % 60 + "m left"));
+	}
+
+	/**
+	 * Reports whether a batch changes the episode list being shown
+	 * 
+	 * @param batch The changes since the last frame
+	 * @return true if the list should be built again
+	 * @author Todd Noecker
+	 */
+	private boolean listingChanged(ChangeBatch batch) {
+		if (showingLatest) {
+			return !batch.getAddedEpisodes().isEmpty() || !batch.getRemovedEpisodes().isEmpty()
+					|| !batch.getChangedPodcasts().isEmpty() || !batch.getRemovedPodcasts().isEmpty();
+		}
+		for (Podcast podcast : batch.getChangedPodcasts()) {
+			if (podcast.getTitle().equals(shownPodcast)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Updates the labels indicating which Podcast and Episode is being played
 	 * currently in response to the model.
 	 * 
-	 * @param o  is a reference to the model, which is ignored.
-	 * @param ep is the Episode chosen by the user.
+	 * @param episode is the Episode chosen by the user.
 	 * @author seanomeara02
 	 */
-	@Override
-	public void update(Observable o, Object ep) {
-		Episode episode = (Episode) ep;
+	private void showNowPlaying(Episode episode) {
 		BorderPane playBar = (BorderPane) border.getBottom();
 		VBox podLabel = (VBox) playBar.getLeft();
 
@@ -453,7 +808,6 @@ public class PodCastPlayerView extends Application implements Observer {
 		Label epTitle = (Label) podLabel.getChildren().get(1);
 		epTitle.setText(episode.getTitle());
 		podLabel.getStyleClass().add("border");
-		;
 	}
 
 }
\ No newline at end of file
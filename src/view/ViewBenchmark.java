@@ -0,0 +1,361 @@
+package view;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import controller.PodCastPlayerController;
+import javafx.application.Platform;
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.image.WritableImage;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.FlowPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import model.PodcastPlayerModel;
+import model.PodcastPlayerModel.Podcast;
+import server.JsonWriter;
+
+/**
+ * Times the podcast and episode panes over made-up libraries of growing
+ * size, so a change to the view can be checked for slowing the screen down.
+ *
+ * Usage: ViewBenchmark [-sizes N,N,...] [-podcasts N] [-frames N] [-out FILE]
+ *  where each size is how many Episodes every Podcast of a library holds.
+ *  For each size the window is built, a Podcast's episode list opened, and
+ *  then every page of it. Each step records the time spent building nodes,
+ *  applying CSS, laying out and drawing, with the node count and the heap
+ *  in use afterwards. The full list is then scrolled from top to bottom and
+ *  rows along it are selected, and the list is switched between Podcasts,
+ *  one frame at a time, recording how long each frame took. A first run
+ *  over the smallest size warms up and is not reported. Results are written
+ *  as JSON, one object per size on its own line, to FILE or to standard
+ *  output.
+ *
+ * Frames are drawn by the software renderer into an off-screen image, so
+ *  no window is shown. With no display the Monocle headless platform is
+ *  used and must be on the class path, for example
+ *  java -cp bin:javafx/*:openjfx-monocle.jar view.ViewBenchmark -sizes 100,1000,5000
+ *
+ * @author Todd Noecker
+ */
+public final class ViewBenchmark {
+
+	private static final int[] DEFAULT_SIZES = { 100, 1000, 5000 };
+	private static final int DEFAULT_PODCASTS = 10;
+	private static final int DEFAULT_FRAMES = 60;
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param args are the command-line arguments described above.
+	 * @author Todd Noecker
+	 */
+	public static void main(String[] args) throws IOException, URISyntaxException, InterruptedException,
+			ExecutionException {
+		int[] sizes = DEFAULT_SIZES;
+		int podcasts = DEFAULT_PODCASTS;
+		int frames = DEFAULT_FRAMES;
+		String out = null;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-sizes") && i + 1 < args.length) {
+				sizes = Arrays.stream(args[++i].split(",")).mapToInt(Integer::parseInt).toArray();
+			} else if (args[i].equals("-podcasts") && i + 1 < args.length) {
+				podcasts = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-frames") && i + 1 < args.length) {
+				frames = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-out") && i + 1 < args.length) {
+				out = args[++i];
+			} else {
+				usage();
+				return;
+			}
+		}
+		if (sizes.length == 0 || Arrays.stream(sizes).min().getAsInt() < 1 || podcasts < 1 || frames < 1) {
+			usage();
+			return;
+		}
+		if (!prepareToolkit()) {
+			return;
+		}
+		Platform.startup(() -> {
+		});
+		Writer writer = out == null ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+				: Files.newBufferedWriter(Paths.get(out), StandardCharsets.UTF_8);
+		try {
+			run(Arrays.stream(sizes).min().getAsInt(), podcasts, frames, null);
+			for (int size : sizes) {
+				JsonWriter json = new JsonWriter(writer);
+				run(size, podcasts, frames, json);
+				writer.write('\n');
+				writer.flush();
+			}
+		} finally {
+			if (out != null) {
+				writer.close();
+			}
+			Platform.exit();
+		}
+	}
+
+	/* ------------------------------------------------------------------------
+	 * --------------------------PRIVATE METHODS-------------------------------
+	 * ------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Picks the headless platform and the software renderer unless told
+	 * otherwise. Must run before the toolkit starts.
+	 *
+	 * @return false if there is no display and no Monocle to stand in.
+	 */
+	private static boolean prepareToolkit() {
+		if (System.getProperty("glass.platform") == null && System.getenv("DISPLAY") == null) {
+			System.setProperty("glass.platform", "Monocle");
+			System.setProperty("monocle.platform", "Headless");
+		}
+		if (System.getProperty("prism.order") == null) {
+			System.setProperty("prism.order", "sw");
+		}
+		if ("Monocle".equals(System.getProperty("glass.platform"))) {
+			try {
+				Class.forName("com.sun.glass.ui.monocle.MonocleApplication");
+			} catch (ClassNotFoundException ex) {
+				System.err.println("There is no display, and Monocle is not on the class path");
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Measures one library size, writing the results as one JSON object, or
+	 * throwing them away when json is null.
+	 */
+	private static void run(int size, int podcasts, int frames, JsonWriter json)
+			throws IOException, URISyntaxException, InterruptedException, ExecutionException {
+		PodcastPlayerModel model = library(size, podcasts);
+		PodCastPlayerController controller = new PodCastPlayerController(model, false);
+		JsonWriter sink = json != null ? json : new JsonWriter(Writer.nullWriter());
+		onFxThread(() -> {
+			measure(model, controller, size, podcasts, frames, sink);
+			return null;
+		});
+	}
+
+	/**
+	 * Measures a library on the FX thread.
+	 */
+	private static void measure(PodcastPlayerModel model, PodCastPlayerController controller, int size,
+			int podcasts, int frames, JsonWriter json) throws IOException {
+		PodCastPlayerView view = new PodCastPlayerView();
+		List<String> titles = new ArrayList<String>();
+		for (Podcast podcast : model.getLibrary()) {
+			titles.add(podcast.getTitle());
+		}
+		json.beginObject();
+		json.name("size").value(size);
+		json.name("podcasts").value(podcasts);
+		json.name("javafx").value(System.getProperty("javafx.runtime.version"));
+		json.name("platform").value(System.getProperty("glass.platform"));
+		json.name("renderer").value(System.getProperty("prism.order"));
+
+		Frame frame = new Frame();
+		step(json, "podcastPane", frame, () -> frame.scene = view.makeScene(model, controller));
+		step(json, "firstPage", frame, () -> view.displayEpisodes(titles.get(0)));
+		step(json, "allPages", frame, () -> {
+			Label more = (Label) listing(frame.scene).getChildren().get(1);
+			while (more.isVisible()) {
+				more.getOnMouseClicked().handle(null);
+			}
+		});
+		FlowPane flow = (FlowPane) listing(frame.scene).getChildren().get(0);
+		json.name("rows").value(flow.getChildren().size());
+
+		ScrollPane scroll = (ScrollPane) ((VBox) border(frame.scene).getCenter()).getChildren().get(1);
+		long[] times = new long[frames];
+		for (int i = 0; i < frames; i++) {
+			long start = System.nanoTime();
+			scroll.setVvalue(scroll.getVmin() + (scroll.getVmax() - scroll.getVmin()) * (i + 1) / frames);
+			frame.draw();
+			times[i] = System.nanoTime() - start;
+		}
+		frames(json, "scroll", times);
+
+		for (int i = 0; i < frames; i++) {
+			HBox row = (HBox) flow.getChildren().get((int) ((long) i * flow.getChildren().size() / frames));
+			long start = System.nanoTime();
+			view.markSelected(flow, (Label) row.getChildren().get(0));
+			frame.draw();
+			times[i] = System.nanoTime() - start;
+		}
+		frames(json, "select", times);
+
+		for (int i = 0; i < frames; i++) {
+			String title = titles.get((i + 1) % titles.size());
+			long start = System.nanoTime();
+			view.displayEpisodes(title);
+			frame.draw();
+			times[i] = System.nanoTime() - start;
+		}
+		frames(json, "switch", times);
+		json.endObject();
+		json.flush();
+	}
+
+	/**
+	 * Times a change to the screen in its parts: building nodes, then CSS,
+	 * layout and drawing; then counts the nodes and the heap left in use.
+	 */
+	private static void step(JsonWriter json, String name, Frame frame, Runnable build) throws IOException {
+		long heapBefore = usedHeap();
+		long start = System.nanoTime();
+		build.run();
+		long built = System.nanoTime();
+		Parent root = frame.scene.getRoot();
+		root.applyCss();
+		long styled = System.nanoTime();
+		root.layout();
+		long laidOut = System.nanoTime();
+		frame.image = frame.scene.snapshot(frame.image);
+		long drawn = System.nanoTime();
+		long heapAfter = usedHeap();
+		json.name(name).beginObject();
+		json.name("buildMicros").value((built - start) / 1000);
+		json.name("cssMicros").value((styled - built) / 1000);
+		json.name("layoutMicros").value((laidOut - styled) / 1000);
+		json.name("drawMicros").value((drawn - laidOut) / 1000);
+		json.name("nodes").value(count(root));
+		json.name("heapBytes").value(heapAfter);
+		json.name("heapGrowthBytes").value(heapAfter - heapBefore);
+		json.endObject();
+	}
+
+	/**
+	 * Writes the spread of a run of frame times.
+	 */
+	private static void frames(JsonWriter json, String name, long[] times) throws IOException {
+		long[] sorted = times.clone();
+		Arrays.sort(sorted);
+		long total = 0;
+		for (long time : sorted) {
+			total += time;
+		}
+		json.name(name).beginObject();
+		json.name("frames").value(sorted.length);
+		json.name("meanMicros").value(total / sorted.length / 1000);
+		json.name("p50Micros").value(sorted[sorted.length / 2] / 1000);
+		json.name("p95Micros").value(sorted[Math.max(0, (int) Math.ceil(sorted.length * 0.95) - 1)] / 1000);
+		json.name("maxMicros").value(sorted[sorted.length - 1] / 1000);
+		json.endObject();
+	}
+
+	/**
+	 * Counts a node and every node under it, including those the skins of
+	 * controls add.
+	 */
+	private static long count(Node node) {
+		long count = 1;
+		if (node instanceof Parent) {
+			for (Node child : ((Parent) node).getChildrenUnmodifiable()) {
+				count += count(child);
+			}
+		}
+		return count;
+	}
+
+	private static long usedHeap() {
+		System.gc();
+		System.gc();
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	private static BorderPane border(Scene scene) {
+		return (BorderPane) ((Group) scene.getRoot()).getChildren().get(0);
+	}
+
+	/**
+	 * Finds the box holding the shown episode rows and the label that loads
+	 * the next page, as displayListing builds it.
+	 */
+	private static VBox listing(Scene scene) {
+		VBox epMenu = (VBox) border(scene).getCenter();
+		return (VBox) ((ScrollPane) epMenu.getChildren().get(1)).getContent();
+	}
+
+	/**
+	 * Runs a task on the FX thread and waits for it.
+	 */
+	private static <T> T onFxThread(Callable<T> task) throws InterruptedException, ExecutionException {
+		FutureTask<T> future = new FutureTask<T>(task);
+		Platform.runLater(future);
+		return future.get();
+	}
+
+	/**
+	 * Makes a library of made-up Podcasts, each with size Episodes whose
+	 * lengths are given, so no episode is probed over the network.
+	 */
+	private static PodcastPlayerModel library(int size, int podcasts) throws IOException, URISyntaxException {
+		PodcastPlayerModel model = new PodcastPlayerModel();
+		for (int p = 0; p < podcasts; p++) {
+			String title = "Show " + p;
+			StringBuilder feed = new StringBuilder("<rss><channel><title>" + title + "</title>"
+					+ "<itunes:summary>A made-up show for timing the view</itunes:summary>\n");
+			for (int i = 0; i < size; i++) {
+				feed.append("<item><title>Episode " + i + "</title>"
+						+ "<guid isPermaLink=\"false\">" + title + "-" + i + "</guid>"
+						+ "<itunes:duration>" + (600 + i % 3000) + "</itunes:duration>"
+						+ "<itunes:summary>Episode " + i + " of " + title + ", in which the hosts talk at some"
+						+ " length about the week's news and answer listener questions.</itunes:summary>"
+						+ "<enclosure url=\"https://cdn.example.com/show-" + p + "/" + i + ".mp3\""
+						+ " length=\"" + (1000000 + i) + "\" type=\"audio/mpeg\"/></item>\n");
+			}
+			feed.append("</channel></rss>");
+			model.addPodcast("https://feeds.example.com/show-" + p + ".xml",
+					ByteBuffer.wrap(feed.toString().getBytes(StandardCharsets.ISO_8859_1)));
+		}
+		return model;
+	}
+
+	private static void usage() {
+		System.out.println("Usage: ViewBenchmark [-sizes N,N,...] [-podcasts N] [-frames N] [-out FILE]");
+		System.out.println("  -sizes     episodes in every podcast, one library per size (100,1000,5000)");
+		System.out.println("  -podcasts  podcasts in every library (10)");
+		System.out.println("  -frames    frames timed while scrolling, selecting and switching (60)");
+		System.out.println("  -out       file the JSON results are written to, one line per size");
+	}
+
+	/**
+	 * The scene being timed and the image it is drawn into, kept from one
+	 * frame to the next.
+	 */
+	private static final class Frame {
+		Scene scene;
+		WritableImage image;
+
+		void draw() {
+			Parent root = scene.getRoot();
+			root.applyCss();
+			root.layout();
+			image = scene.snapshot(image);
+		}
+	}
+}